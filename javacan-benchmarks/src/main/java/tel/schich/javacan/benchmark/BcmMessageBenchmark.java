@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tel.schich.javacan.BcmFlag;
+import tel.schich.javacan.BcmMessage;
+import tel.schich.javacan.BcmOpcode;
+import tel.schich.javacan.CanFrame;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static tel.schich.javacan.CanFrame.FD_NO_FLAGS;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BcmMessageBenchmark {
+
+    @Param({"1", "16"})
+    public int frameCount;
+
+    private CanFrame[] frames;
+    private ByteBuffer encoded;
+
+    @Setup
+    public void setup() {
+        Random random = BenchmarkSupport.random();
+        frames = new CanFrame[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            frames[i] = CanFrame.create(0x7EA, FD_NO_FLAGS, BenchmarkSupport.data(random, CanFrame.MAX_DATA_LENGTH));
+        }
+        encoded = build().getBuffer();
+    }
+
+    @Benchmark
+    public BcmMessage build() {
+        BcmMessage.Builder builder = BcmMessage.builder(BcmOpcode.TX_SETUP)
+                .flag(BcmFlag.SETTIMER)
+                .flag(BcmFlag.STARTTIMER)
+                .interval2(Duration.ofMillis(100))
+                .canId(0x7EA);
+        for (CanFrame frame : frames) {
+            builder.frame(frame);
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public BcmMessage parse() {
+        encoded.clear();
+        return new BcmMessage(encoded);
+    }
+
+    @Benchmark
+    public List<CanFrame> parseFrames() {
+        encoded.clear();
+        return new BcmMessage(encoded).getFrames();
+    }
+}
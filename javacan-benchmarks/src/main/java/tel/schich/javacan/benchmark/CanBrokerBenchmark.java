@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tel.schich.javacan.CanChannels;
+import tel.schich.javacan.CanFilter;
+import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.NetworkDevice;
+import tel.schich.javacan.RawCanChannel;
+import tel.schich.javacan.linux.epoll.EPollEventLoop;
+import tel.schich.javacan.util.CanBroker;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static tel.schich.javacan.CanFrame.FD_NO_FLAGS;
+
+/**
+ * Measures the end-to-end throughput of a {@link CanBroker}: a separate channel writes a batch of frames to the
+ * interface and the invocation completes once the broker dispatched all of them to its handler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class CanBrokerBenchmark {
+
+    private static final int BATCH_SIZE = 32;
+    private static final int ID = 0x7EA;
+    private static final Duration TIMEOUT = Duration.ofSeconds(1);
+
+    /**
+     * {@code selector} dispatches through selection keys, {@code epoll} directly from an {@link EPollEventLoop}.
+     */
+    @Param({"selector", "epoll"})
+    public String loop;
+
+    private CanBroker broker;
+    private RawCanChannel sender;
+    private CanFrame[] frames;
+    private final AtomicLong received = new AtomicLong();
+
+    @Setup
+    public void setup() throws IOException {
+        NetworkDevice device = BenchmarkSupport.device();
+        if ("epoll".equals(loop)) {
+            broker = new CanBroker(Thread::new, new EPollEventLoop(), TIMEOUT);
+        } else {
+            broker = new CanBroker(Thread::new, TIMEOUT);
+        }
+        broker.setFrameReuse(true);
+        broker.addFilter(new CanFilter(ID));
+        broker.addDevice(device, (ch, frame) -> received.incrementAndGet());
+
+        sender = CanChannels.newRawChannel(device);
+        Random random = BenchmarkSupport.random();
+        frames = new CanFrame[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            frames[i] = CanFrame.create(ID, FD_NO_FLAGS, BenchmarkSupport.data(random, CanFrame.MAX_DATA_LENGTH));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sender.close();
+        broker.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long sendAndDispatch() throws IOException {
+        final long target = received.get() + BATCH_SIZE;
+        int written = 0;
+        while (written < BATCH_SIZE) {
+            written += sender.writeBatch(frames, written, BATCH_SIZE - written);
+        }
+        long current;
+        while ((current = received.get()) < target) {
+            Thread.yield();
+        }
+        return current;
+    }
+}
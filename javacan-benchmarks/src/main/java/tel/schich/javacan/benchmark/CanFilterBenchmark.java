@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tel.schich.javacan.CanFilter;
+import tel.schich.javacan.CanId;
+import tel.schich.javacan.util.CanIdRoutingTable;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matches a fixed sequence of CAN IDs against filter sets of different sizes, once by scanning the filters with
+ * {@link CanFilter#matchId(int)} as the kernel does and once through a {@link CanIdRoutingTable}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CanFilterBenchmark {
+
+    private static final int IDS = 1024;
+
+    @Param({"1", "16", "256"})
+    public int filterCount;
+
+    /**
+     * The share of filters that use a mask instead of matching a single ID, in percent.
+     */
+    @Param({"0", "25"})
+    public int maskedPercent;
+
+    private CanFilter[] filters;
+    private CanIdRoutingTable<CanFilter> table;
+    private int[] ids;
+
+    @Setup
+    public void setup() {
+        Random random = BenchmarkSupport.random();
+        filters = new CanFilter[filterCount];
+        table = new CanIdRoutingTable<>();
+        for (int i = 0; i < filterCount; i++) {
+            int id = random.nextInt(CanId.SFF_MASK + 1);
+            CanFilter filter;
+            if (random.nextInt(100) < maskedPercent) {
+                filter = new CanFilter(id, 0x7F0);
+            } else {
+                filter = new CanFilter(id);
+            }
+            filters[i] = filter;
+            table.add(filter, filter);
+        }
+        ids = new int[IDS];
+        for (int i = 0; i < IDS; i++) {
+            ids[i] = random.nextInt(CanId.SFF_MASK + 1);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IDS)
+    public int matchLinear() {
+        int matches = 0;
+        for (int id : ids) {
+            for (CanFilter filter : filters) {
+                if (filter.matchId(id)) {
+                    matches++;
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IDS)
+    public int matchRoutingTable() {
+        int matches = 0;
+        for (int id : ids) {
+            if (table.hasRoute(id)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
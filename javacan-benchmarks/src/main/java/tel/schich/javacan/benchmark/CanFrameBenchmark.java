@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tel.schich.javacan.CanFrame;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static tel.schich.javacan.CanFrame.FD_NO_FLAGS;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CanFrameBenchmark {
+
+    @Param({"8", "64"})
+    public int length;
+
+    private byte[] data;
+    private CanFrame frame;
+    private CanFrame equalFrame;
+    private ByteBuffer exactDestination;
+    private ByteBuffer largeDestination;
+    private ByteBuffer rawFrame;
+
+    @Setup
+    public void setup() {
+        Random random = BenchmarkSupport.random();
+        data = BenchmarkSupport.data(random, length);
+        frame = CanFrame.create(0x7EA, FD_NO_FLAGS, data);
+        equalFrame = CanFrame.create(0x7EA, FD_NO_FLAGS, data.clone());
+        // a destination that fits exactly takes the fast path of getData, a larger one adjusts the limit
+        exactDestination = ByteBuffer.allocateDirect(length);
+        largeDestination = ByteBuffer.allocateDirect(CanFrame.MAX_FD_DATA_LENGTH * 2);
+        rawFrame = ByteBuffer.allocateDirect(frame.getSize());
+        rawFrame.put(frame.getBuffer());
+        rawFrame.flip();
+    }
+
+    @Benchmark
+    public CanFrame create() {
+        return CanFrame.create(0x7EA, FD_NO_FLAGS, data);
+    }
+
+    @Benchmark
+    public CanFrame createFromBuffer() {
+        rawFrame.clear();
+        return CanFrame.create(rawFrame);
+    }
+
+    @Benchmark
+    public int accessors() {
+        return frame.getId() + frame.getDataLength() + frame.getFlags() + (frame.isExtended() ? 1 : 0);
+    }
+
+    @Benchmark
+    public ByteBuffer getDataExact() {
+        exactDestination.clear();
+        frame.getData(exactDestination);
+        return exactDestination;
+    }
+
+    @Benchmark
+    public ByteBuffer getDataLarger() {
+        largeDestination.clear();
+        frame.getData(largeDestination);
+        return largeDestination;
+    }
+
+    @Benchmark
+    public byte[] getDataArray() {
+        frame.getData(data, 0, length);
+        return data;
+    }
+
+    @Benchmark
+    public boolean equalsEqual() {
+        return frame.equals(equalFrame);
+    }
+
+    @Benchmark
+    public int hashCodeFrame() {
+        return frame.hashCode();
+    }
+}
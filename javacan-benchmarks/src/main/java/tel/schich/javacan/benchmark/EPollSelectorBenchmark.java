@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tel.schich.javacan.CanChannels;
+import tel.schich.javacan.CanFilter;
+import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.CanFrameView;
+import tel.schich.javacan.NetworkDevice;
+import tel.schich.javacan.RawCanChannel;
+import tel.schich.javacan.linux.epoll.EPollSelector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import static tel.schich.javacan.CanFrame.FD_NO_FLAGS;
+import static tel.schich.javacan.CanSocketOptions.FILTER;
+
+/**
+ * Measures a full select cycle: one frame is written to the interface, every registered channel receives it, the
+ * selector reports the channels and each channel is drained. {@link #selectNowIdle()} measures the cost of the poll
+ * itself when nothing is ready.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EPollSelectorBenchmark {
+
+    private static final int ID = 0x7EA;
+
+    @Param({"1", "16"})
+    public int channelCount;
+
+    private EPollSelector selector;
+    private RawCanChannel writer;
+    private RawCanChannel[] readers;
+    private CanFrame frame;
+    private ByteBuffer readBuffer;
+    private CanFrameView view;
+
+    @Setup
+    public void setup() throws IOException {
+        NetworkDevice device = BenchmarkSupport.device();
+        selector = (EPollSelector) CanChannels.PROVIDER.openSelector();
+        writer = CanChannels.newRawChannel(device);
+        readers = new RawCanChannel[channelCount];
+        for (int i = 0; i < channelCount; i++) {
+            RawCanChannel reader = CanChannels.newRawChannel(device);
+            // ignore unrelated traffic on the interface
+            reader.setOption(FILTER, new CanFilter[]{new CanFilter(ID)});
+            reader.configureBlocking(false);
+            reader.register(selector, SelectionKey.OP_READ);
+            readers[i] = reader;
+        }
+        frame = CanFrame.create(ID, FD_NO_FLAGS, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        readBuffer = ByteBuffer.allocateDirect(RawCanChannel.FD_MTU);
+        view = new CanFrameView();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        selector.close();
+        writer.close();
+        for (RawCanChannel reader : readers) {
+            reader.close();
+        }
+    }
+
+    @Benchmark
+    public int writeSelectRead() throws IOException {
+        writer.write(frame);
+        int received = 0;
+        while (received < channelCount) {
+            selector.select();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                readBuffer.clear();
+                ((RawCanChannel) key.channel()).read(readBuffer, view);
+                received++;
+            }
+        }
+        return received;
+    }
+
+    @Benchmark
+    public int selectNowIdle() throws IOException {
+        return selector.selectNow();
+    }
+}
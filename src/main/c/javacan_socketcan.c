@@ -20,18 +20,22 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
  * THE SOFTWARE.
  */
+#define _GNU_SOURCE
 #include "common.h"
 #include <jni-c-to-java.h>
+#include <errno.h>
 #include <unistd.h>
 #include <sys/socket.h>
 #include <linux/can.h>
 #include <linux/can/raw.h>
 #include <linux/can/isotp.h>
+#include <linux/filter.h>
 #include <stdlib.h>
 #include <stdint.h>
 #include <string.h>
 #include <jni.h>
 #include <limits.h>
+#include <time.h>
 
 JNIEXPORT jint JNICALL Java_tel_schich_javacan_SocketCAN_createRawSocket(JNIEnv *env, jclass class) {
     jint fd = create_can_raw_socket();
@@ -145,6 +149,65 @@ JNIEXPORT jint JNICALL Java_tel_schich_javacan_SocketCAN_getReceiveBufferSize(JN
     return size;
 }
 
+JNIEXPORT jint JNICALL Java_tel_schich_javacan_SocketCAN_setTimestampNanos(JNIEnv *env, jclass class, jint sock, jboolean enable) {
+    int enabled = enable ? 1 : 0;
+    jint result = setsockopt(sock, SOL_SOCKET, SO_TIMESTAMPNS, &enabled, sizeof(enabled));
+    if (result) {
+        throw_native_exception(env, "Unable to set nanosecond timestamps");
+    }
+    return result;
+}
+
+JNIEXPORT jint JNICALL Java_tel_schich_javacan_SocketCAN_getTimestampNanos(JNIEnv *env, jclass class, jint sock) {
+    int enabled = 0;
+    socklen_t len = sizeof(enabled);
+    int result = getsockopt(sock, SOL_SOCKET, SO_TIMESTAMPNS, &enabled, &len);
+    if (result) {
+        throw_native_exception(env, "Unable to get nanosecond timestamps");
+        return result;
+    }
+    return enabled;
+}
+
+JNIEXPORT jint JNICALL Java_tel_schich_javacan_SocketCAN_setRxQueueOverflow(JNIEnv *env, jclass class, jint sock, jboolean enable) {
+    int enabled = enable ? 1 : 0;
+    jint result = setsockopt(sock, SOL_SOCKET, SO_RXQ_OVFL, &enabled, sizeof(enabled));
+    if (result) {
+        throw_native_exception(env, "Unable to set the receive queue overflow reporting");
+    }
+    return result;
+}
+
+JNIEXPORT jint JNICALL Java_tel_schich_javacan_SocketCAN_getRxQueueOverflow(JNIEnv *env, jclass class, jint sock) {
+    int enabled = 0;
+    socklen_t len = sizeof(enabled);
+    int result = getsockopt(sock, SOL_SOCKET, SO_RXQ_OVFL, &enabled, &len);
+    if (result) {
+        throw_native_exception(env, "Unable to get the receive queue overflow reporting");
+        return result;
+    }
+    return enabled;
+}
+
+JNIEXPORT jint JNICALL Java_tel_schich_javacan_SocketCAN_setTimestamping(JNIEnv *env, jclass class, jint sock, jint flags) {
+    jint result = setsockopt(sock, SOL_SOCKET, SO_TIMESTAMPING, &flags, sizeof(flags));
+    if (result) {
+        throw_native_exception(env, "Unable to set the timestamping flags");
+    }
+    return result;
+}
+
+JNIEXPORT jint JNICALL Java_tel_schich_javacan_SocketCAN_getTimestamping(JNIEnv *env, jclass class, jint sock) {
+    int flags = 0;
+    socklen_t len = sizeof(flags);
+    int result = getsockopt(sock, SOL_SOCKET, SO_TIMESTAMPING, &flags, &len);
+    if (result) {
+        throw_native_exception(env, "Unable to get the timestamping flags");
+        return result;
+    }
+    return flags;
+}
+
 JNIEXPORT jlong JNICALL Java_tel_schich_javacan_SocketCAN_write(JNIEnv *env, jclass class, jint sock, jobject buf, jint offset, jint length) {
     void *raw_buf = (*env)->GetDirectBufferAddress(env, buf);
     void *data_start = raw_buf + offset;
@@ -165,15 +228,261 @@ JNIEXPORT jlong JNICALL Java_tel_schich_javacan_SocketCAN_read(JNIEnv *env, jcla
     return bytes_read;
 }
 
-JNIEXPORT jint JNICALL Java_tel_schich_javacan_SocketCAN_setFilters(JNIEnv *env, jclass class, jint sock, jobject data) {
+#define ANCILLARY_SOFTWARE_TIMESTAMP 0
+#define ANCILLARY_HARDWARE_TIMESTAMP 1
+#define ANCILLARY_DROPPED_FRAMES 2
+#define ANCILLARY_LENGTH 3
+#define NO_ANCILLARY_VALUE (-1)
+// enough space for SO_TIMESTAMPING, SO_TIMESTAMPNS and SO_RXQ_OVFL messages
+#define ANCILLARY_CONTROL_SIZE (CMSG_SPACE(3 * sizeof(struct timespec)) + CMSG_SPACE(sizeof(struct timespec)) + CMSG_SPACE(sizeof(uint32_t)))
+
+static jlong timespec_to_nanos(const struct timespec *ts) {
+    return ((jlong) ts->tv_sec) * 1000000000LL + ts->tv_nsec;
+}
+
+static void extract_ancillary_data(struct msghdr *header, jlong *values) {
+    for (int i = 0; i < ANCILLARY_LENGTH; ++i) {
+        values[i] = NO_ANCILLARY_VALUE;
+    }
+    for (struct cmsghdr *cmsg = CMSG_FIRSTHDR(header); cmsg != NULL; cmsg = CMSG_NXTHDR(header, cmsg)) {
+        if (cmsg->cmsg_level != SOL_SOCKET) {
+            continue;
+        }
+        // these constants are not necessarily compile-time constants, so no switch here
+        if (cmsg->cmsg_type == SO_TIMESTAMPNS) {
+            struct timespec ts;
+            memcpy(&ts, CMSG_DATA(cmsg), sizeof(ts));
+            values[ANCILLARY_SOFTWARE_TIMESTAMP] = timespec_to_nanos(&ts);
+        } else if (cmsg->cmsg_type == SO_TIMESTAMPING) {
+            // struct scm_timestamping: [0] software, [1] deprecated, [2] raw hardware
+            struct timespec ts[3];
+            memcpy(&ts, CMSG_DATA(cmsg), sizeof(ts));
+            if (ts[0].tv_sec != 0 || ts[0].tv_nsec != 0) {
+                values[ANCILLARY_SOFTWARE_TIMESTAMP] = timespec_to_nanos(&ts[0]);
+            }
+            if (ts[2].tv_sec != 0 || ts[2].tv_nsec != 0) {
+                values[ANCILLARY_HARDWARE_TIMESTAMP] = timespec_to_nanos(&ts[2]);
+            }
+        } else if (cmsg->cmsg_type == SO_RXQ_OVFL) {
+            // the kernel reports the total amount of frames dropped by the socket so far
+            uint32_t dropped;
+            memcpy(&dropped, CMSG_DATA(cmsg), sizeof(dropped));
+            values[ANCILLARY_DROPPED_FRAMES] = (jlong) dropped;
+        }
+    }
+}
+
+JNIEXPORT jlong JNICALL Java_tel_schich_javacan_SocketCAN_readMessage(JNIEnv *env, jclass class, jint sock, jobject buf, jint offset, jint length, jlongArray ancillary) {
+    void *raw_buf = (*env)->GetDirectBufferAddress(env, buf);
+    struct iovec vector;
+    vector.iov_base = raw_buf + offset;
+    vector.iov_len = (size_t) length;
+
+    union {
+        char buf[ANCILLARY_CONTROL_SIZE];
+        struct cmsghdr align;
+    } control;
+    struct msghdr header = {0};
+    header.msg_iov = &vector;
+    header.msg_iovlen = 1;
+    header.msg_control = control.buf;
+    header.msg_controllen = sizeof(control.buf);
+
+    ssize_t bytes_read = recvmsg(sock, &header, 0);
+    if (bytes_read == -1) {
+        throw_native_exception(env, "Unable to read from the socket");
+        return bytes_read;
+    }
+
+    jlong values[ANCILLARY_LENGTH];
+    extract_ancillary_data(&header, values);
+    (*env)->SetLongArrayRegion(env, ancillary, 0, ANCILLARY_LENGTH, values);
+    return bytes_read;
+}
+
+static jint send_messages(JNIEnv *env, jint sock, struct mmsghdr *messages, jint count) {
+    int sent = sendmmsg(sock, messages, (unsigned int) count, 0);
+    if (sent == -1) {
+        if (errno == EAGAIN || errno == EWOULDBLOCK) {
+            return 0;
+        }
+        throw_native_exception(env, "Unable to write to the socket");
+    }
+    return sent;
+}
+
+JNIEXPORT jint JNICALL Java_tel_schich_javacan_SocketCAN_writeMany(JNIEnv *env, jclass class, jint sock, jobject buf, jint offset, jintArray lengths, jint count) {
+    if (count <= 0) {
+        return 0;
+    }
+    void *raw_buf = (*env)->GetDirectBufferAddress(env, buf);
+    uint8_t *data_start = raw_buf + offset;
+
+    void *scratch = malloc(count * (sizeof(struct mmsghdr) + sizeof(struct iovec) + sizeof(jint)));
+    if (scratch == NULL) {
+        throw_native_exception(env, "Unable to allocate memory");
+        return -1;
+    }
+    struct mmsghdr *messages = scratch;
+    struct iovec *vectors = (struct iovec *) (messages + count);
+    jint *sizes = (jint *) (vectors + count);
+    (*env)->GetIntArrayRegion(env, lengths, 0, count, sizes);
+
+    memset(messages, 0, count * sizeof(struct mmsghdr));
+    size_t packed = 0;
+    for (int i = 0; i < count; ++i) {
+        vectors[i].iov_base = data_start + packed;
+        vectors[i].iov_len = (size_t) sizes[i];
+        messages[i].msg_hdr.msg_iov = &vectors[i];
+        messages[i].msg_hdr.msg_iovlen = 1;
+        packed += sizes[i];
+    }
+
+    jint sent = send_messages(env, sock, messages, count);
+    free(scratch);
+    return sent;
+}
+
+JNIEXPORT jint JNICALL Java_tel_schich_javacan_SocketCAN_writeManyBuffers(JNIEnv *env, jclass class, jint sock, jobjectArray bufs, jintArray offsets, jintArray lengths, jint count) {
+    if (count <= 0) {
+        return 0;
+    }
+
+    void *scratch = malloc(count * (sizeof(struct mmsghdr) + sizeof(struct iovec) + 2 * sizeof(jint)));
+    if (scratch == NULL) {
+        throw_native_exception(env, "Unable to allocate memory");
+        return -1;
+    }
+    struct mmsghdr *messages = scratch;
+    struct iovec *vectors = (struct iovec *) (messages + count);
+    jint *starts = (jint *) (vectors + count);
+    jint *sizes = starts + count;
+    (*env)->GetIntArrayRegion(env, offsets, 0, count, starts);
+    (*env)->GetIntArrayRegion(env, lengths, 0, count, sizes);
+
+    memset(messages, 0, count * sizeof(struct mmsghdr));
+    for (int i = 0; i < count; ++i) {
+        jobject buf = (*env)->GetObjectArrayElement(env, bufs, i);
+        uint8_t *raw_buf = (*env)->GetDirectBufferAddress(env, buf);
+        (*env)->DeleteLocalRef(env, buf);
+        vectors[i].iov_base = raw_buf + starts[i];
+        vectors[i].iov_len = (size_t) sizes[i];
+        messages[i].msg_hdr.msg_iov = &vectors[i];
+        messages[i].msg_hdr.msg_iovlen = 1;
+    }
+
+    jint sent = send_messages(env, sock, messages, count);
+    free(scratch);
+    return sent;
+}
+
+JNIEXPORT jint JNICALL Java_tel_schich_javacan_SocketCAN_readMany(JNIEnv *env, jclass class, jint sock, jobject buf, jint offset, jint stride, jintArray lengths, jint count, jlongArray ancillary) {
+    if (count <= 0) {
+        return 0;
+    }
+    void *raw_buf = (*env)->GetDirectBufferAddress(env, buf);
+    uint8_t *data_start = raw_buf + offset;
+    size_t control_size = ancillary == NULL ? 0 : CMSG_ALIGN(ANCILLARY_CONTROL_SIZE);
+
+    // a single allocation for the message headers, their control buffers, their io vectors and the resulting lengths
+    void *scratch = malloc(count * (sizeof(struct mmsghdr) + control_size + sizeof(struct iovec) + sizeof(jint)));
+    if (scratch == NULL) {
+        throw_native_exception(env, "Unable to allocate memory");
+        return -1;
+    }
+    struct mmsghdr *messages = scratch;
+    uint8_t *controls = (uint8_t *) (messages + count);
+    struct iovec *vectors = (struct iovec *) (controls + count * control_size);
+    jint *sizes = (jint *) (vectors + count);
+
+    memset(messages, 0, count * sizeof(struct mmsghdr));
+    for (int i = 0; i < count; ++i) {
+        vectors[i].iov_base = data_start + i * stride;
+        vectors[i].iov_len = (size_t) stride;
+        messages[i].msg_hdr.msg_iov = &vectors[i];
+        messages[i].msg_hdr.msg_iovlen = 1;
+        if (control_size > 0) {
+            messages[i].msg_hdr.msg_control = controls + i * control_size;
+            messages[i].msg_hdr.msg_controllen = control_size;
+        }
+    }
+
+    // MSG_WAITFORONE: only block (in blocking mode) until the first message arrived, then take what is there
+    int received = recvmmsg(sock, messages, (unsigned int) count, MSG_WAITFORONE, NULL);
+    if (received == -1) {
+        free(scratch);
+        if (errno == EAGAIN || errno == EWOULDBLOCK) {
+            return 0;
+        }
+        throw_native_exception(env, "Unable to read from the socket");
+        return -1;
+    }
+
+    // pack the messages back-to-back, slots are only sparse if a message was shorter than the stride
+    size_t packed = 0;
+    for (int i = 0; i < received; ++i) {
+        size_t length = messages[i].msg_len;
+        size_t slot = (size_t) i * stride;
+        if (packed != slot) {
+            memmove(data_start + packed, data_start + slot, length);
+        }
+        sizes[i] = (jint) length;
+        packed += length;
+    }
+    (*env)->SetIntArrayRegion(env, lengths, 0, received, sizes);
+    if (ancillary != NULL && received > 0) {
+        // the ancillary data of the last message is the most recent
+        jlong values[ANCILLARY_LENGTH];
+        extract_ancillary_data(&messages[received - 1].msg_hdr, values);
+        (*env)->SetLongArrayRegion(env, ancillary, 0, ANCILLARY_LENGTH, values);
+    }
+    free(scratch);
+    return received;
+}
+
+JNIEXPORT jint JNICALL Java_tel_schich_javacan_SocketCAN_setFilters(JNIEnv *env, jclass class, jint sock, jobject data, jint length) {
     void *rawData = (*env)->GetDirectBufferAddress(env, data);
-    int result = setsockopt(sock, SOL_CAN_RAW, CAN_RAW_FILTER, rawData, (socklen_t) (*env)->GetDirectBufferCapacity(env, data));
+    int result = setsockopt(sock, SOL_CAN_RAW, CAN_RAW_FILTER, rawData, (socklen_t) length);
     if (result == -1) {
         throw_native_exception(env, "Unable to set the filters");
     }
     return result;
 }
 
+JNIEXPORT jint JNICALL Java_tel_schich_javacan_SocketCAN_setBpfFilter(JNIEnv *env, jclass class, jint sock, jobject program, jint length) {
+    struct sock_fprog fprog = {
+        .len = (unsigned short) length,
+        .filter = (*env)->GetDirectBufferAddress(env, program),
+    };
+    int result = setsockopt(sock, SOL_SOCKET, SO_ATTACH_FILTER, &fprog, sizeof(fprog));
+    if (result == -1) {
+        throw_native_exception(env, "Unable to attach the BPF filter");
+    }
+    return result;
+}
+
+JNIEXPORT jint JNICALL Java_tel_schich_javacan_SocketCAN_detachBpfFilter(JNIEnv *env, jclass class, jint sock) {
+    int unused = 0;
+    int result = setsockopt(sock, SOL_SOCKET, SO_DETACH_FILTER, &unused, sizeof(unused));
+    if (result == -1 && errno != ENOENT) {
+        throw_native_exception(env, "Unable to detach the BPF filter");
+        return result;
+    }
+    return 0;
+}
+
+JNIEXPORT jint JNICALL Java_tel_schich_javacan_SocketCAN_getBpfFilter(JNIEnv *env, jclass class, jint sock, jobject program, jint length) {
+    // the length is given and returned in instructions, a length of 0 only queries the length of the attached program
+    socklen_t len = (socklen_t) length;
+    void *raw_program = program == NULL ? NULL : (*env)->GetDirectBufferAddress(env, program);
+    int result = getsockopt(sock, SOL_SOCKET, SO_GET_FILTER, raw_program, &len);
+    if (result == -1) {
+        throw_native_exception(env, "Unable to get the BPF filter");
+        return result;
+    }
+    return (jint) len;
+}
+
 JNIEXPORT jobject JNICALL Java_tel_schich_javacan_SocketCAN_getFilters(JNIEnv *env, jclass class, jint sock) {
     // assign the signed integer max value to an unsigned integer, socketcan's getsockopt implementation uses int's
     // instead of uint's and resets the size to the actual size only if the given size is larger.
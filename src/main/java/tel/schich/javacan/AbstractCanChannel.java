@@ -25,15 +25,19 @@ package tel.schich.javacan;
 import java.io.IOException;
 import java.net.SocketOption;
 import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.spi.AbstractSelectableChannel;
 import java.nio.channels.spi.SelectorProvider;
 
+import tel.schich.javacan.linux.LinuxNativeOperationException;
 import tel.schich.javacan.linux.UnixFileDescriptor;
+import tel.schich.javacan.metrics.ChannelMetrics;
 import tel.schich.javacan.option.CanSocketOption;
 import tel.schich.javacan.select.NativeChannel;
 import tel.schich.javacan.select.NativeHandle;
+import tel.schich.javacan.select.ReadinessPoller;
 
 /**
  * This abstract base class for CAN channels implements all shared APIs common to CAN communication: It implements
@@ -46,6 +50,8 @@ public abstract class AbstractCanChannel extends AbstractSelectableChannel imple
 
     private final int sock;
     private final UnixFileDescriptor fileDescriptor;
+    private volatile ReadinessPoller readinessPoller;
+    private volatile ChannelMetrics metrics;
 
     public AbstractCanChannel(SelectorProvider provider, int sock) {
         super(provider);
@@ -84,14 +90,143 @@ public abstract class AbstractCanChannel extends AbstractSelectableChannel imple
         return fileDescriptor;
     }
 
+    /**
+     * Sets the {@link tel.schich.javacan.select.ReadinessPoller} used by this channel while it is in blocking mode.
+     * With a poller, the socket is switched to non-blocking mode internally and blocking operations park the calling
+     * thread until the socket is ready instead of blocking in a system call. This allows blocking usage from virtual
+     * threads without pinning their carrier threads. Since the socket no longer blocks, the
+     * {@link tel.schich.javacan.CanSocketOptions#SO_RCVTIMEO} and {@link tel.schich.javacan.CanSocketOptions#SO_SNDTIMEO}
+     * options have no effect while a poller is set.
+     *
+     * @param poller the poller to use or null to block in system calls again
+     * @return fluent interface
+     * @throws IOException if the native calls fail
+     */
+    public AbstractCanChannel setReadinessPoller(ReadinessPoller poller) throws IOException {
+        synchronized (blockingLock()) {
+            if (!isOpen()) {
+                throw new ClosedChannelException();
+            }
+            final ReadinessPoller previous = this.readinessPoller;
+            if (previous != null && previous != poller) {
+                previous.cancel(this);
+            }
+            this.readinessPoller = poller;
+            if (isBlocking()) {
+                SocketCAN.setBlockingMode(sock, poller == null);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the {@link tel.schich.javacan.select.ReadinessPoller} used by this channel.
+     *
+     * @return the poller or null if blocking operations block in system calls
+     */
+    public ReadinessPoller getReadinessPoller() {
+        return readinessPoller;
+    }
+
+    /**
+     * Parks the calling thread until the socket is ready for the given operations, if the given exception signals
+     * that the socket would have blocked and this channel is supposed to park instead.
+     *
+     * @param ops the operations to wait for
+     * @param e the exception thrown by the native call
+     * @throws IOException the given exception if parking is not applicable
+     */
+    private void awaitReadiness(int ops, LinuxNativeOperationException e) throws IOException {
+        if (e.getErrorNumber() != LinuxNativeOperationException.EAGAIN) {
+            recordException();
+            throw e;
+        }
+        // EAGAIN is not an error, the batch operations report the same condition by returning 0
+        if (!awaitReadiness(ops)) {
+            throw e;
+        }
+    }
+
+    /**
+     * Sets the {@link tel.schich.javacan.metrics.ChannelMetrics} recording the IO of this channel.
+     *
+     * @param metrics the metrics or null to disable recording
+     * @return fluent interface
+     */
+    public AbstractCanChannel setMetrics(ChannelMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Returns the {@link tel.schich.javacan.metrics.ChannelMetrics} recording the IO of this channel.
+     *
+     * @return the metrics or null if none are recorded
+     */
+    public ChannelMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void recordSyscall() {
+        final ChannelMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.recordSyscall();
+        }
+    }
+
+    private void recordException() {
+        final ChannelMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.recordException();
+        }
+    }
+
+    private void recordRead(long frames, long bytes) {
+        final ChannelMetrics metrics = this.metrics;
+        if (metrics != null && frames > 0) {
+            metrics.recordRead(frames, bytes);
+        }
+    }
+
+    private void recordWrite(long frames, long bytes) {
+        final ChannelMetrics metrics = this.metrics;
+        if (metrics != null && frames > 0) {
+            metrics.recordWrite(frames, bytes);
+        }
+    }
+
+    /**
+     * Parks the calling thread until the socket is ready for the given operations, if this channel is supposed to
+     * park instead of blocking.
+     *
+     * @param ops the operations to wait for
+     * @return true if the calling thread has been parked and should retry the operation
+     * @throws IOException if the channel got closed while waiting
+     */
+    private boolean awaitReadiness(int ops) throws IOException {
+        final ReadinessPoller poller = this.readinessPoller;
+        if (poller == null || !isBlocking()) {
+            return false;
+        }
+        poller.await(this, ops, -1);
+        if (!isOpen()) {
+            throw new AsynchronousCloseException();
+        }
+        return true;
+    }
+
     @Override
     protected void implCloseSelectableChannel() throws IOException {
+        final ReadinessPoller poller = this.readinessPoller;
+        if (poller != null) {
+            poller.cancel(this);
+        }
         SocketCAN.close(sock);
     }
 
     @Override
     protected void implConfigureBlocking(boolean block) throws IOException {
-        SocketCAN.setBlockingMode(sock, block);
+        SocketCAN.setBlockingMode(sock, block && readinessPoller == null);
     }
 
     @Override
@@ -157,14 +292,131 @@ public abstract class AbstractCanChannel extends AbstractSelectableChannel imple
         begin();
         try {
             int pos = buffer.position();
-            bytesRead = (int)SocketCAN.read(sock, buffer, pos, buffer.remaining());
+            while (true) {
+                try {
+                    recordSyscall();
+                    bytesRead = (int) SocketCAN.read(sock, buffer, pos, buffer.remaining());
+                    break;
+                } catch (LinuxNativeOperationException e) {
+                    awaitReadiness(SelectionKey.OP_READ, e);
+                }
+            }
+            buffer.position(pos + bytesRead);
+            recordRead(1, bytesRead);
+            return bytesRead;
+        } finally {
+            end(bytesRead > 0);
+        }
+    }
+
+    /**
+     * Reads data from this socket into the given {@link java.nio.ByteBuffer} like {@link #readSocket(ByteBuffer)},
+     * but additionally extracts the ancillary data provided by the kernel into the given array.
+     * The {@link java.nio.ByteBuffer} must be a direct buffer as it is passed into native code.
+     * Buffer position and limit will be respected and the position will be updated.
+     *
+     * @param buffer the buffer to read into
+     * @param ancillary the array receiving the ancillary data as laid out by {@link FrameTimestamp}
+     * @return The number of bytes read from the socket
+     * @throws IOException if the native call fails
+     */
+    protected long readSocketMessage(ByteBuffer buffer, long[] ancillary) throws IOException {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("The buffer must be a direct buffer!");
+        }
+        int bytesRead = 0;
+        begin();
+        try {
+            int pos = buffer.position();
+            while (true) {
+                try {
+                    recordSyscall();
+                    bytesRead = (int) SocketCAN.readMessage(sock, buffer, pos, buffer.remaining(), ancillary);
+                    break;
+                } catch (LinuxNativeOperationException e) {
+                    awaitReadiness(SelectionKey.OP_READ, e);
+                }
+            }
             buffer.position(pos + bytesRead);
+            recordRead(1, bytesRead);
             return bytesRead;
         } finally {
             end(bytesRead > 0);
         }
     }
 
+    /**
+     * Reads up to as many messages as there are elements in {@code lengths} from this socket into the given
+     * {@link java.nio.ByteBuffer} using a single system call. Each message is received into a slot of {@code stride}
+     * bytes, afterwards the messages are packed back-to-back starting at the buffer's position and the length of each
+     * message is stored in {@code lengths}. The position will be updated to point right after the last message.
+     * The {@link java.nio.ByteBuffer} must be a direct buffer as it is passed into native code.
+     *
+     * @param buffer the buffer to read into
+     * @param stride the maximum size of a single message
+     * @param lengths the array receiving the length of each message
+     * @return The number of messages read from the socket, 0 if the socket is non-blocking and no message is available
+     * @throws IOException if the native call fails
+     */
+    protected int readSocketBatch(ByteBuffer buffer, int stride, int[] lengths) throws IOException {
+        return readSocketBatch(buffer, stride, lengths, null);
+    }
+
+    /**
+     * Reads messages like {@link #readSocketBatch(ByteBuffer, int, int[])}, but additionally extracts the ancillary
+     * data of the last message read into the given array.
+     *
+     * @param buffer the buffer to read into
+     * @param stride the maximum size of a single message
+     * @param lengths the array receiving the length of each message
+     * @param ancillary the array receiving the ancillary data as laid out by {@link FrameTimestamp} or null
+     * @return The number of messages read from the socket, 0 if the socket is non-blocking and no message is available
+     * @throws IOException if the native call fails
+     */
+    protected int readSocketBatch(ByteBuffer buffer, int stride, int[] lengths, long[] ancillary) throws IOException {
+        return readSocketBatch(buffer, stride, lengths, lengths.length, ancillary);
+    }
+
+    /**
+     * Reads messages like {@link #readSocketBatch(ByteBuffer, int, int[], long[])}, but at most {@code maxMessages}
+     * messages regardless of how many would fit into the buffer.
+     *
+     * @param buffer the buffer to read into
+     * @param stride the maximum size of a single message
+     * @param lengths the array receiving the length of each message
+     * @param maxMessages the maximum amount of messages to read
+     * @param ancillary the array receiving the ancillary data as laid out by {@link FrameTimestamp} or null
+     * @return The number of messages read from the socket, 0 if the socket is non-blocking and no message is available
+     * @throws IOException if the native call fails
+     */
+    protected int readSocketBatch(ByteBuffer buffer, int stride, int[] lengths, int maxMessages, long[] ancillary) throws IOException {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("The buffer must be a direct buffer!");
+        }
+        final int count = Math.min(Math.min(maxMessages, lengths.length), buffer.remaining() / stride);
+        if (count <= 0) {
+            throw new IllegalArgumentException("The buffer must be able to hold at least one message!");
+        }
+        int messagesRead = 0;
+        begin();
+        try {
+            int pos = buffer.position();
+            do {
+                recordSyscall();
+                messagesRead = readMany(buffer, pos, stride, lengths, count, ancillary);
+            } while (messagesRead == 0 && awaitReadiness(SelectionKey.OP_READ));
+            int bytesRead = 0;
+            for (int i = 0; i < messagesRead; ++i) {
+                bytesRead += lengths[i];
+            }
+            buffer.position(pos + bytesRead);
+            recordRead(messagesRead, bytesRead);
+            return messagesRead;
+        } finally {
+            end(messagesRead > 0);
+        }
+    }
+
     /**
      * Writes data to this socket from the given {@link java.nio.ByteBuffer}.
      * The {@link java.nio.ByteBuffer} must be a direct buffer as it is passed into native code.
@@ -182,11 +434,126 @@ public abstract class AbstractCanChannel extends AbstractSelectableChannel imple
         begin();
         try {
             int pos = buffer.position();
-            bytesWritten = (int) SocketCAN.write(sock, buffer, pos, buffer.remaining());
+            while (true) {
+                try {
+                    recordSyscall();
+                    bytesWritten = (int) SocketCAN.write(sock, buffer, pos, buffer.remaining());
+                    break;
+                } catch (LinuxNativeOperationException e) {
+                    awaitReadiness(SelectionKey.OP_WRITE, e);
+                }
+            }
             buffer.position(pos + bytesWritten);
+            recordWrite(1, bytesWritten);
             return bytesWritten;
         } finally {
             end(bytesWritten > 0);
         }
     }
+
+    /**
+     * Writes {@code count} messages stored back-to-back in the given {@link java.nio.ByteBuffer} to this socket using
+     * a single system call. The length of each message is taken from {@code lengths}. The position will be updated
+     * to point right after the last message that has been written.
+     * The {@link java.nio.ByteBuffer} must be a direct buffer as it is passed into native code.
+     *
+     * @param buffer the buffer to write from
+     * @param lengths the length of each message
+     * @param count the amount of messages to write
+     * @return The number of messages written to the socket, 0 if the socket is non-blocking and would block
+     * @throws IOException if the native call fails
+     */
+    protected int writeSocketBatch(ByteBuffer buffer, int[] lengths, int count) throws IOException {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("The buffer must be a direct buffer!");
+        }
+        if (count < 0 || count > lengths.length) {
+            throw new IllegalArgumentException("The message count must be within the given lengths!");
+        }
+        int total = 0;
+        for (int i = 0; i < count; ++i) {
+            total += lengths[i];
+        }
+        if (total > buffer.remaining()) {
+            throw new IllegalArgumentException("The buffer does not contain all messages!");
+        }
+        int messagesWritten = 0;
+        begin();
+        try {
+            int pos = buffer.position();
+            do {
+                recordSyscall();
+                messagesWritten = writeMany(buffer, pos, lengths, count);
+            } while (messagesWritten == 0 && count > 0 && awaitReadiness(SelectionKey.OP_WRITE));
+            int bytesWritten = 0;
+            for (int i = 0; i < messagesWritten; ++i) {
+                bytesWritten += lengths[i];
+            }
+            buffer.position(pos + bytesWritten);
+            recordWrite(messagesWritten, bytesWritten);
+            return messagesWritten;
+        } finally {
+            end(messagesWritten > 0);
+        }
+    }
+
+    /**
+     * Writes {@code count} messages from the given direct {@link java.nio.ByteBuffer}s to this socket using a single
+     * system call. The i-th message starts at {@code offsets[i]} in {@code buffers[i]} and is {@code lengths[i]}
+     * bytes long. Buffer positions and limits are neither respected nor updated.
+     *
+     * @param buffers the buffers to write from
+     * @param offsets the offset of each message within its buffer
+     * @param lengths the length of each message
+     * @param count the amount of messages to write
+     * @return The number of messages written to the socket, 0 if the socket is non-blocking and would block
+     * @throws IOException if the native call fails
+     */
+    protected int writeSocketBatch(ByteBuffer[] buffers, int[] offsets, int[] lengths, int count) throws IOException {
+        int messagesWritten = 0;
+        begin();
+        try {
+            do {
+                recordSyscall();
+                messagesWritten = writeManyBuffers(buffers, offsets, lengths, count);
+            } while (messagesWritten == 0 && count > 0 && awaitReadiness(SelectionKey.OP_WRITE));
+            if (messagesWritten > 0) {
+                long bytesWritten = 0;
+                for (int i = 0; i < messagesWritten; ++i) {
+                    bytesWritten += lengths[i];
+                }
+                recordWrite(messagesWritten, bytesWritten);
+            }
+            return messagesWritten;
+        } finally {
+            end(messagesWritten > 0);
+        }
+    }
+
+    private int readMany(ByteBuffer buffer, int pos, int stride, int[] lengths, int count, long[] ancillary) throws IOException {
+        try {
+            return SocketCAN.readMany(sock, buffer, pos, stride, lengths, count, ancillary);
+        } catch (LinuxNativeOperationException e) {
+            recordException();
+            throw e;
+        }
+    }
+
+    private int writeMany(ByteBuffer buffer, int pos, int[] lengths, int count) throws IOException {
+        try {
+            return SocketCAN.writeMany(sock, buffer, pos, lengths, count);
+        } catch (LinuxNativeOperationException e) {
+            recordException();
+            throw e;
+        }
+    }
+
+    private int writeManyBuffers(ByteBuffer[] buffers, int[] offsets, int[] lengths, int count) throws IOException {
+        try {
+            return SocketCAN.writeManyBuffers(sock, buffers, offsets, lengths, count);
+        } catch (LinuxNativeOperationException e) {
+            recordException();
+            throw e;
+        }
+    }
 }
@@ -0,0 +1,406 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class represents a classic BPF program that can be attached to a CAN socket using the
+ * {@link tel.schich.javacan.CanSocketOptions#BPF_FILTER} option. Unlike {@link tel.schich.javacan.CanFilter}s, which
+ * can only match CAN IDs, BPF filters can also match the data length and the payload of frames, so frames can be
+ * discarded by the kernel based on their content.
+ * <p>
+ * The program operates on the kernel's {@code struct can_frame} or {@code struct canfd_frame}. Programs are usually
+ * built using a {@link tel.schich.javacan.BpfFilter.Builder}.
+ */
+public final class BpfFilter {
+
+    /**
+     * The size of the native representation of a single instruction ({@code struct sock_filter}).
+     */
+    public static final int INSTRUCTION_BYTES = 8;
+
+    /**
+     * The maximum amount of instructions accepted by the kernel.
+     */
+    public static final int MAX_INSTRUCTIONS = 4096;
+
+    /**
+     * The value returned by programs to accept a frame.
+     */
+    public static final int ACCEPT = 0xFFFF;
+
+    /**
+     * The value returned by programs to drop a frame.
+     */
+    public static final int DROP = 0;
+
+    static final short LD_W_ABS = 0x20;
+    static final short LD_B_ABS = 0x30;
+    static final short ALU_AND_K = 0x54;
+    static final short JMP_JEQ_K = 0x15;
+    static final short JMP_JGT_K = 0x25;
+    static final short JMP_JGE_K = 0x35;
+    static final short RET_K = 0x06;
+
+    private static final int OFFSET_ID = 0;
+    private static final int OFFSET_DATA_LENGTH = 4;
+    private static final int OFFSET_DATA = CanFrame.HEADER_LENGTH;
+    private static final int MAX_JUMP = 255;
+
+    private final short[] codes;
+    private final byte[] jumpsTrue;
+    private final byte[] jumpsFalse;
+    private final int[] constants;
+
+    private BpfFilter(short[] codes, byte[] jumpsTrue, byte[] jumpsFalse, int[] constants) {
+        this.codes = codes;
+        this.jumpsTrue = jumpsTrue;
+        this.jumpsFalse = jumpsFalse;
+        this.constants = constants;
+    }
+
+    /**
+     * Returns the amount of instructions of this program.
+     *
+     * @return the amount of instructions
+     */
+    public int getLength() {
+        return codes.length;
+    }
+
+    /**
+     * Writes the native representation of this program into the given buffer.
+     *
+     * @param buffer the buffer to write to, it must have at least {@link #getLength()} * {@link #INSTRUCTION_BYTES}
+     *               bytes remaining
+     */
+    public void writeTo(ByteBuffer buffer) {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.nativeOrder());
+        for (int i = 0; i < codes.length; i++) {
+            buffer.putShort(codes[i]);
+            buffer.put(jumpsTrue[i]);
+            buffer.put(jumpsFalse[i]);
+            buffer.putInt(constants[i]);
+        }
+        buffer.order(order);
+    }
+
+    /**
+     * Reads a program from its native representation.
+     *
+     * @param buffer the buffer to read from
+     * @param length the amount of instructions to read
+     * @return the program
+     */
+    public static BpfFilter readFrom(ByteBuffer buffer, int length) {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.nativeOrder());
+        short[] codes = new short[length];
+        byte[] jumpsTrue = new byte[length];
+        byte[] jumpsFalse = new byte[length];
+        int[] constants = new int[length];
+        for (int i = 0; i < length; i++) {
+            codes[i] = buffer.getShort();
+            jumpsTrue[i] = buffer.get();
+            jumpsFalse[i] = buffer.get();
+            constants[i] = buffer.getInt();
+        }
+        buffer.order(order);
+        return new BpfFilter(codes, jumpsTrue, jumpsFalse, constants);
+    }
+
+    /**
+     * Evaluates this program against the given frame in the same way the kernel would. Only the instructions
+     * generated by the {@link tel.schich.javacan.BpfFilter.Builder} are supported.
+     *
+     * @param frame the frame to evaluate
+     * @return true if the program accepts the frame
+     * @throws UnsupportedOperationException if the program contains unsupported instructions
+     */
+    public boolean matches(CanFrame frame) {
+        final ByteBuffer buffer = frame.getBuffer();
+        final int base = frame.getBase();
+        final int size = frame.getSize();
+        int a = 0;
+        int pc = 0;
+        while (pc < codes.length) {
+            final int k = constants[pc];
+            switch (codes[pc]) {
+                case LD_W_ABS:
+                    if (k < 0 || k + Integer.BYTES > size) {
+                        return false;
+                    }
+                    a = ((buffer.get(base + k) & 0xFF) << 24) | ((buffer.get(base + k + 1) & 0xFF) << 16)
+                            | ((buffer.get(base + k + 2) & 0xFF) << 8) | (buffer.get(base + k + 3) & 0xFF);
+                    break;
+                case LD_B_ABS:
+                    if (k < 0 || k >= size) {
+                        return false;
+                    }
+                    a = buffer.get(base + k) & 0xFF;
+                    break;
+                case ALU_AND_K:
+                    a &= k;
+                    break;
+                case JMP_JEQ_K:
+                    pc += a == k ? jumpsTrue[pc] & 0xFF : jumpsFalse[pc] & 0xFF;
+                    break;
+                case JMP_JGT_K:
+                    pc += Integer.compareUnsigned(a, k) > 0 ? jumpsTrue[pc] & 0xFF : jumpsFalse[pc] & 0xFF;
+                    break;
+                case JMP_JGE_K:
+                    pc += Integer.compareUnsigned(a, k) >= 0 ? jumpsTrue[pc] & 0xFF : jumpsFalse[pc] & 0xFF;
+                    break;
+                case RET_K:
+                    return k != DROP;
+                default:
+                    throw new UnsupportedOperationException("Unsupported instruction: " + Integer.toHexString(codes[pc]));
+            }
+            pc++;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        BpfFilter bpfFilter = (BpfFilter) o;
+        return Arrays.equals(codes, bpfFilter.codes) && Arrays.equals(jumpsTrue, bpfFilter.jumpsTrue)
+                && Arrays.equals(jumpsFalse, bpfFilter.jumpsFalse) && Arrays.equals(constants, bpfFilter.constants);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(codes) + Arrays.hashCode(constants);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("BpfFilter(");
+        for (int i = 0; i < codes.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(String.format("{ 0x%02x, %d, %d, 0x%08x }", codes[i], jumpsTrue[i] & 0xFF,
+                    jumpsFalse[i] & 0xFF, constants[i]));
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * Creates a new builder.
+     *
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * This builder compiles predicates over the CAN ID, the data length and the data bytes of frames into a
+     * {@link tel.schich.javacan.BpfFilter}. Predicates are combined with a logical AND, {@link #or()} starts a new
+     * group of predicates. A frame is accepted if all predicates of any group match.
+     * <p>
+     * Example accepting frames with ID 0x123 that have the mux byte 0x02 at index 0:
+     * <pre>
+     * BpfFilter filter = BpfFilter.builder()
+     *         .id(0x123)
+     *         .dataByte(0, 0x02)
+     *         .build();
+     * </pre>
+     */
+    public static final class Builder {
+        private final List<List<int[]>> groups = new ArrayList<>();
+        private List<int[]> current = new ArrayList<>();
+
+        private Builder() {
+            groups.add(current);
+        }
+
+        /**
+         * Matches the raw CAN ID exactly, including the flag bits like {@link tel.schich.javacan.CanId#EFF_FLAG}.
+         *
+         * @param id the raw CAN ID
+         * @return this builder
+         */
+        public Builder id(int id) {
+            return id(id, -1);
+        }
+
+        /**
+         * Matches the raw CAN ID using the given mask, similar to {@link tel.schich.javacan.CanFilter}.
+         *
+         * @param id the raw CAN ID
+         * @param mask the mask applied to the CAN ID before comparison
+         * @return this builder
+         */
+        public Builder id(int id, int mask) {
+            // the kernel stores the ID in host byte order, but BPF loads words in network byte order
+            if (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+                id = Integer.reverseBytes(id);
+                mask = Integer.reverseBytes(mask);
+            }
+            current.add(new int[] { LD_W_ABS, OFFSET_ID, id & mask, mask });
+            return this;
+        }
+
+        /**
+         * Matches the data length of frames within the given inclusive bounds.
+         *
+         * @param min the minimum data length
+         * @param max the maximum data length
+         * @return this builder
+         */
+        public Builder dataLength(int min, int max) {
+            if (min < 0 || max < min || max > CanFrame.MAX_FD_DATA_LENGTH) {
+                throw new IllegalArgumentException("Invalid data length bounds: " + min + " to " + max);
+            }
+            current.add(new int[] { LD_B_ABS, OFFSET_DATA_LENGTH, min, max });
+            return this;
+        }
+
+        /**
+         * Matches a single data byte exactly. Frames too short to contain the byte are not matched.
+         *
+         * @param index the index of the byte in the data
+         * @param value the expected value
+         * @return this builder
+         */
+        public Builder dataByte(int index, int value) {
+            return dataByte(index, value, 0xFF);
+        }
+
+        /**
+         * Matches a single data byte using the given mask. Frames too short to contain the byte are not matched.
+         *
+         * @param index the index of the byte in the data
+         * @param value the expected value
+         * @param mask the mask applied to the data byte before comparison
+         * @return this builder
+         */
+        public Builder dataByte(int index, int value, int mask) {
+            if (index < 0 || index >= CanFrame.MAX_FD_DATA_LENGTH) {
+                throw new IllegalArgumentException("Invalid data index: " + index);
+            }
+            mask &= 0xFF;
+            // the data length check prevents matching stale bytes of the frame buffer
+            current.add(new int[] { LD_B_ABS, OFFSET_DATA_LENGTH, index + 1, CanFrame.MAX_FD_DATA_LENGTH });
+            current.add(new int[] { LD_B_ABS, OFFSET_DATA + index, value & mask, mask });
+            return this;
+        }
+
+        /**
+         * Starts a new group of predicates, the filter will accept frames matching the previous groups or this one.
+         *
+         * @return this builder
+         */
+        public Builder or() {
+            current = new ArrayList<>();
+            groups.add(current);
+            return this;
+        }
+
+        /**
+         * Compiles the predicates into a program. A group without predicates matches every frame.
+         *
+         * @return the program
+         * @throws IllegalStateException if the program exceeds the limits of classic BPF
+         */
+        public BpfFilter build() {
+            List<int[]> program = new ArrayList<>();
+            for (List<int[]> group : groups) {
+                int groupLength = 1;
+                for (int[] predicate : group) {
+                    groupLength += length(predicate);
+                }
+                // every failing predicate jumps to the start of the next group
+                int end = program.size() + groupLength;
+                for (int[] predicate : group) {
+                    compile(predicate, end, program);
+                }
+                program.add(new int[] { RET_K, 0, 0, ACCEPT });
+            }
+            program.add(new int[] { RET_K, 0, 0, DROP });
+            if (program.size() > MAX_INSTRUCTIONS) {
+                throw new IllegalStateException("The program exceeds " + MAX_INSTRUCTIONS + " instructions!");
+            }
+
+            int length = program.size();
+            short[] codes = new short[length];
+            byte[] jumpsTrue = new byte[length];
+            byte[] jumpsFalse = new byte[length];
+            int[] constants = new int[length];
+            for (int i = 0; i < length; i++) {
+                int[] instruction = program.get(i);
+                codes[i] = (short) instruction[0];
+                jumpsTrue[i] = (byte) instruction[1];
+                jumpsFalse[i] = (byte) instruction[2];
+                constants[i] = instruction[3];
+            }
+            return new BpfFilter(codes, jumpsTrue, jumpsFalse, constants);
+        }
+
+        private static int length(int[] predicate) {
+            if (predicate[0] == LD_W_ABS) {
+                return predicate[3] == -1 ? 2 : 3;
+            }
+            return predicate[1] == OFFSET_DATA_LENGTH ? 3 : (predicate[3] == 0xFF ? 2 : 3);
+        }
+
+        private static void compile(int[] predicate, int fail, List<int[]> program) {
+            final int code = predicate[0];
+            final int offset = predicate[1];
+            program.add(new int[] { code, 0, 0, offset });
+            if (code == LD_B_ABS && offset == OFFSET_DATA_LENGTH) {
+                int min = predicate[2];
+                int max = predicate[3];
+                program.add(new int[] { JMP_JGE_K, 0, jump(program, fail), min });
+                program.add(new int[] { JMP_JGT_K, jump(program, fail), 0, max });
+                return;
+            }
+            int value = predicate[2];
+            int mask = predicate[3];
+            if (mask != (code == LD_W_ABS ? -1 : 0xFF)) {
+                program.add(new int[] { ALU_AND_K, 0, 0, mask });
+            }
+            program.add(new int[] { JMP_JEQ_K, 0, jump(program, fail), value });
+        }
+
+        private static int jump(List<int[]> program, int target) {
+            int distance = target - program.size() - 1;
+            if (distance > MAX_JUMP) {
+                throw new IllegalStateException("Too many predicates in a single group!");
+            }
+            return distance;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.BiConsumer;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * This class applies {@link tel.schich.javacan.CanFilter}s to {@link tel.schich.javacan.RawCanChannel}s with as few
+ * system calls as possible. Every channel gets a native buffer for its filters that is reused across updates, and
+ * channels whose effective filter set (the order of filters is irrelevant to the kernel) did not change are skipped.
+ * <p>
+ * Optionally updates can be coalesced: all updates requested within the coalescing window are applied at once by a
+ * background thread at the end of the window, so bursts of filter changes result in a single {@code setsockopt} per
+ * channel. Failures of coalesced updates are reported to the error handler, since there is no caller to throw them to.
+ */
+public final class CanFilterManager implements Closeable {
+
+    private final ThreadFactory threadFactory;
+    private final Map<RawCanChannel, ChannelFilters> channels = new IdentityHashMap<>();
+    private final Object lock = new Object();
+
+    private long windowNanos = 0;
+    private ScheduledExecutorService scheduler;
+    private boolean flushScheduled = false;
+    private volatile BiConsumer<RawCanChannel, IOException> errorHandler = (ch, e) -> {
+        System.err.println("Failed to update the filters of channel: " + ch);
+        e.printStackTrace(System.err);
+    };
+
+    /**
+     * Creates a filter manager.
+     *
+     * @param threadFactory the factory for the thread applying coalesced updates
+     */
+    public CanFilterManager(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Sets the coalescing window. With a window of zero (the default) updates are applied immediately.
+     *
+     * @param window the coalescing window
+     */
+    public void setCoalescingWindow(Duration window) {
+        if (window.isNegative()) {
+            throw new IllegalArgumentException("The coalescing window must not be negative!");
+        }
+        synchronized (lock) {
+            this.windowNanos = window.toNanos();
+            if (windowNanos > 0 && scheduler == null) {
+                scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            }
+        }
+    }
+
+    /**
+     * Returns the coalescing window.
+     *
+     * @return the coalescing window
+     */
+    public Duration getCoalescingWindow() {
+        synchronized (lock) {
+            return Duration.ofNanos(windowNanos);
+        }
+    }
+
+    /**
+     * Sets the handler for failures of coalesced updates.
+     *
+     * @param errorHandler the handler receiving the channel and the failure
+     */
+    public void setErrorHandler(BiConsumer<RawCanChannel, IOException> errorHandler) {
+        if (errorHandler == null) {
+            throw new NullPointerException("errorHandler must not be null!");
+        }
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Applies the given filters to the given channel immediately, regardless of the coalescing window. This is meant
+     * for newly added channels, which should not receive unfiltered frames while waiting for the window to end.
+     *
+     * @param channel the channel
+     * @param filters the filters
+     * @throws IOException if the native call fails
+     */
+    public void apply(RawCanChannel channel, CanFilter[] filters) throws IOException {
+        Set<CanFilter> filterSet = new HashSet<>(Arrays.asList(filters));
+        synchronized (lock) {
+            ChannelFilters state = channels.computeIfAbsent(channel, ch -> new ChannelFilters());
+            state.pending = filters;
+            state.pendingSet = filterSet;
+            state.flush(channel);
+        }
+    }
+
+    /**
+     * Updates the filters of all given channels. If a coalescing window is configured, the update is applied at the
+     * end of the window, otherwise it is applied immediately.
+     *
+     * @param channels the channels
+     * @param filters the filters
+     * @throws IOException if the native call fails on any channel, only if updates are applied immediately
+     */
+    public void update(Collection<RawCanChannel> channels, CanFilter[] filters) throws IOException {
+        Set<CanFilter> filterSet = new HashSet<>(Arrays.asList(filters));
+        synchronized (lock) {
+            for (RawCanChannel channel : channels) {
+                ChannelFilters state = this.channels.computeIfAbsent(channel, ch -> new ChannelFilters());
+                state.pending = filters;
+                state.pendingSet = filterSet;
+            }
+            if (windowNanos == 0) {
+                flush();
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                scheduler.schedule(this::flushCoalesced, windowNanos, NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Applies all pending updates immediately.
+     *
+     * @throws IOException if the native call fails on any channel
+     */
+    public void flush() throws IOException {
+        synchronized (lock) {
+            flushScheduled = false;
+            IOException e = null;
+            for (Map.Entry<RawCanChannel, ChannelFilters> entry : channels.entrySet()) {
+                try {
+                    entry.getValue().flush(entry.getKey());
+                } catch (IOException e1) {
+                    if (e != null) {
+                        e1.addSuppressed(e);
+                    }
+                    e = e1;
+                }
+            }
+            if (e != null) {
+                throw e;
+            }
+        }
+    }
+
+    private void flushCoalesced() {
+        synchronized (lock) {
+            flushScheduled = false;
+            for (Map.Entry<RawCanChannel, ChannelFilters> entry : channels.entrySet()) {
+                try {
+                    entry.getValue().flush(entry.getKey());
+                } catch (IOException e) {
+                    errorHandler.accept(entry.getKey(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the given channel, this should be called before or after closing a channel.
+     *
+     * @param channel the channel
+     */
+    public void remove(RawCanChannel channel) {
+        synchronized (lock) {
+            channels.remove(channel);
+        }
+    }
+
+    /**
+     * Discards all pending updates and stops the background thread.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            channels.clear();
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+            windowNanos = 0;
+            flushScheduled = false;
+        }
+    }
+
+    private static final class ChannelFilters {
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(0);
+        private Set<CanFilter> applied = null;
+        private CanFilter[] pending = null;
+        private Set<CanFilter> pendingSet = null;
+
+        void flush(RawCanChannel channel) throws IOException {
+            if (pending == null) {
+                return;
+            }
+            final CanFilter[] filters = pending;
+            final Set<CanFilter> filterSet = pendingSet;
+            pending = null;
+            pendingSet = null;
+            if (filterSet.equals(applied) || !channel.isOpen()) {
+                return;
+            }
+            int length = filters.length * CanFilter.BYTES;
+            if (buffer.capacity() < length) {
+                buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(length - 1) << 1);
+                buffer.order(ByteOrder.nativeOrder());
+            }
+            buffer.clear();
+            for (CanFilter f : filters) {
+                buffer.putInt(f.getId());
+                buffer.putInt(f.getMask());
+            }
+            SocketCAN.setFilters(channel.getSocket(), buffer, length);
+            applied = filterSet;
+        }
+    }
+}
@@ -30,6 +30,10 @@ import java.nio.ByteOrder;
 /**
  * This class represents a CAN frame. It is a shallow wrapper around a {@link java.nio.ByteBuffer} with the field
  * accessors directly reading from the backing buffer using absolute positions.
+ * <p>
+ * Frames created by the factory methods of this class never change which part of which buffer they are backed by, their
+ * fields are final so frames are safely published to other threads.
+ * {@link tel.schich.javacan.CanFrameView} on the other hand is a frame that can be repointed to reuse it.
  */
 public class CanFrame {
 
@@ -72,10 +76,21 @@ public class CanFrame {
     private final int base;
     private final int size;
 
-    private CanFrame(ByteBuffer buffer) {
+    CanFrame(ByteBuffer buffer, int base, int size) {
         this.buffer = buffer;
-        this.base = buffer.position();
-        this.size = buffer.remaining();
+        this.base = base;
+        this.size = size;
+    }
+
+    /**
+     * Returns the backing buffer without touching its position and limit. All accessors go through this method,
+     * {@link #getBase()} and {@link #getSize()}, which allows {@link tel.schich.javacan.CanFrameView} to be repointed
+     * while the fields of all other frames stay final.
+     *
+     * @return the backing buffer
+     */
+    ByteBuffer buffer() {
+        return this.buffer;
     }
 
     /**
@@ -94,7 +109,7 @@ public class CanFrame {
      * @return the CAN ID as given by the kernel
      */
     public int getRawId() {
-        return this.buffer.getInt(base + OFFSET_ID);
+        return buffer().getInt(getBase() + OFFSET_ID);
     }
 
     /**
@@ -103,7 +118,7 @@ public class CanFrame {
      * @return the CAN FD flags or an undefined byte for non-FD frames
      */
     public byte getFlags() {
-        return this.buffer.get(base + OFFSET_FLAGS);
+        return buffer().get(getBase() + OFFSET_FLAGS);
     }
 
     /**
@@ -112,10 +127,12 @@ public class CanFrame {
      * @return the backing buffer
      */
     public ByteBuffer getBuffer() {
-        this.buffer.clear()
-                   .position(base)
-                   .limit(base + size);
-        return this.buffer;
+        final ByteBuffer buffer = buffer();
+        final int base = getBase();
+        buffer.clear()
+              .position(base)
+              .limit(base + getSize());
+        return buffer;
     }
 
     /**
@@ -133,7 +150,7 @@ public class CanFrame {
      * @return the data offset in the buffer
      */
     int getDataOffset() {
-        return this.base + OFFSET_DATA;
+        return getBase() + OFFSET_DATA;
     }
 
     /**
@@ -142,7 +159,7 @@ public class CanFrame {
      * @return the data length
      */
     public int getDataLength() {
-        return this.buffer.get(this.base + OFFSET_DATA_LENGTH);
+        return buffer().get(getBase() + OFFSET_DATA_LENGTH);
     }
 
     /**
@@ -173,16 +190,17 @@ public class CanFrame {
         final int offset = getDataOffset();
         final int length = getDataLength();
         final int limit = offset + length;
-        final int currentLimit = this.buffer.limit();
-        this.buffer.position(offset);
+        final ByteBuffer buffer = buffer();
+        final int currentLimit = buffer.limit();
+        buffer.position(offset);
         // try to save a bunch of limit changes
         // TODO benchmark if this is even remotely worth the complexity
         if (dest.remaining() <= length && currentLimit == limit) {
-            dest.put(this.buffer);
+            dest.put(buffer);
         } else {
-            this.buffer.limit(limit);
-            dest.put(this.buffer);
-            this.buffer.limit(currentLimit);
+            buffer.limit(limit);
+            dest.put(buffer);
+            buffer.limit(currentLimit);
         }
     }
 
@@ -194,8 +212,9 @@ public class CanFrame {
      * @param length the amount of bytes to write to the destination
      */
     public void getData(byte[] dest, int offset, int length) {
-        this.buffer.position(getDataOffset());
-        this.buffer.get(dest, offset, length);
+        final ByteBuffer buffer = buffer();
+        buffer.position(getDataOffset());
+        buffer.get(dest, offset, length);
     }
 
     /**
@@ -243,6 +262,24 @@ public class CanFrame {
         return CanId.isRemoteTransmissionRequest(getId());
     }
 
+    /**
+     * Copies this frame into a newly allocated direct {@link java.nio.ByteBuffer}. This is necessary to retain frames
+     * that are backed by reused buffers, like those passed to a {@link tel.schich.javacan.util.FrameHandler}.
+     *
+     * @return the copied frame
+     */
+    public CanFrame copy() {
+        final ByteBuffer buffer = buffer();
+        final int base = getBase();
+        final int size = getSize();
+        ByteBuffer source = buffer.duplicate();
+        source.limit(base + size).position(base);
+        ByteBuffer copy = ByteBuffer.allocateDirect(size);
+        copy.order(buffer.order());
+        copy.put(source);
+        return new CanFrame(copy, 0, size);
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("Can");
@@ -262,9 +299,9 @@ public class CanFrame {
                 .append(length)
                 .append(", DATA=[");
         if (length > 0) {
-            sb.append(String.format("%02X", buffer.get(dataOffset)));
+            sb.append(String.format("%02X", buffer().get(dataOffset)));
             for (int i = 1; i < length; ++i) {
-                sb.append(", ").append(String.format("%02X", buffer.get(dataOffset + i)));
+                sb.append(", ").append(String.format("%02X", buffer().get(dataOffset + i)));
             }
         }
         return sb.append("])").toString();
@@ -282,7 +319,7 @@ public class CanFrame {
         if (!(o instanceof CanFrame)) return false;
         CanFrame b = (CanFrame) o;
 
-        return BufferHelper.equals(buffer, base, size, b.buffer, b.base, b.size);
+        return BufferHelper.equals(buffer(), getBase(), getSize(), b.buffer(), b.getBase(), b.getSize());
     }
 
     /**
@@ -292,7 +329,7 @@ public class CanFrame {
      */
     @Override
     public int hashCode() {
-        return BufferHelper.hashCode(buffer, base, size);
+        return BufferHelper.hashCode(buffer(), getBase(), getSize());
     }
 
     /**
@@ -406,12 +443,7 @@ public class CanFrame {
      */
     public static CanFrame create(ByteBuffer buffer) {
         CanFrame frame = createUnsafe(buffer);
-        int maxDlen = frame.getMaxDataLength();
-        int dlen = frame.getDataLength();
-        // even though the buffer size matches a valid MTU, it might still have conflicting configuration (FD data in a non-FD MTU)
-        if (dlen > maxDlen) {
-            throw new IllegalArgumentException("payload must fit in " + maxDlen + " bytes, but specifies a length of " + dlen + "!");
-        }
+        checkDataLength(frame);
         return frame;
     }
 
@@ -427,10 +459,32 @@ public class CanFrame {
      */
     public static CanFrame createUnsafe(ByteBuffer buffer) {
         int length = buffer.remaining();
-        // does the buffer slice size match the non-FD or FD MTU?
+        checkLength(length);
+        return new CanFrame(buffer, buffer.position(), length);
+    }
+
+    /**
+     * Verifies that the given length matches the non-FD or FD MTU.
+     *
+     * @param length the length of a frame
+     */
+    static void checkLength(int length) {
         if (length != RawCanChannel.MTU && length != RawCanChannel.FD_MTU) {
             throw new IllegalArgumentException("length must be either MTU or FD_MTU, but was " + length + "!");
         }
-        return new CanFrame(buffer);
+    }
+
+    /**
+     * Verifies that the data length field of the given frame fits into its size.
+     *
+     * @param frame the frame to check
+     */
+    static void checkDataLength(CanFrame frame) {
+        int maxDlen = frame.getMaxDataLength();
+        int dlen = frame.getDataLength();
+        // even though the buffer size matches a valid MTU, it might still have conflicting configuration (FD data in a non-FD MTU)
+        if (dlen > maxDlen) {
+            throw new IllegalArgumentException("payload must fit in " + maxDlen + " bytes, but specifies a length of " + dlen + "!");
+        }
     }
 }
@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class is a reusable {@link tel.schich.javacan.CanFrame} that can be pointed at arbitrary frames within a
+ * {@link java.nio.ByteBuffer}. Wrapping a frame does not allocate, which makes this class suitable to walk over the
+ * frames of a batch read or to process frames on a hot path.
+ * <p>
+ * A view is only valid as long as the underlying buffer region is not overwritten, so it must not be retained past
+ * the next read into the same buffer. Use {@link #copy()} to obtain an independent frame. Views are not thread-safe.
+ */
+public final class CanFrameView extends CanFrame {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocateDirect(0);
+
+    private ByteBuffer buffer = EMPTY;
+    private int base;
+    private int size;
+
+    /**
+     * Creates a new view that does not yet point to any frame. It has to be wrapped around a frame using
+     * {@link #wrap(java.nio.ByteBuffer, int, int)} before its accessors can be used.
+     */
+    public CanFrameView() {
+        super(EMPTY, 0, 0);
+    }
+
+    @Override
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    @Override
+    public int getBase() {
+        return base;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Points this view to the frame located in the given buffer at the given offset. The frame is validated the same
+     * way as by {@link tel.schich.javacan.CanFrame#create(java.nio.ByteBuffer)}.
+     *
+     * @param buffer the buffer containing the frame
+     * @param offset the offset of the frame within the buffer
+     * @param length the length of the frame, must be either {@link tel.schich.javacan.RawCanChannel#MTU} or
+     *               {@link tel.schich.javacan.RawCanChannel#FD_MTU}
+     * @return this view
+     */
+    public CanFrameView wrap(ByteBuffer buffer, int offset, int length) {
+        checkLength(length);
+        if (offset < 0 || offset + length > buffer.limit()) {
+            throw new IndexOutOfBoundsException("frame at offset " + offset + " with length " + length + " exceeds the buffer limit " + buffer.limit() + "!");
+        }
+        this.buffer = buffer;
+        this.base = offset;
+        this.size = length;
+        checkDataLength(this);
+        return this;
+    }
+
+    /**
+     * Points this view to the frame located between the position and the limit of the given buffer.
+     *
+     * @param buffer the buffer containing the frame
+     * @return this view
+     */
+    public CanFrameView wrap(ByteBuffer buffer) {
+        return wrap(buffer, buffer.position(), buffer.remaining());
+    }
+}
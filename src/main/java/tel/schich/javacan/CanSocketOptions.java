@@ -134,7 +134,7 @@ public class CanSocketOptions {
                 filterData.putInt(f.getMask());
             }
 
-            SocketCAN.setFilters(sock, filterData);
+            SocketCAN.setFilters(sock, filterData, filterData.capacity());
         }
 
         /**
@@ -157,6 +157,35 @@ public class CanSocketOptions {
         }
     });
 
+    /**
+     * Option to attach a classic BPF program ({@code SO_ATTACH_FILTER}) that is run by the kernel on every received
+     * frame. Frames rejected by the program are dropped before they reach the socket's receive queue. The BPF filter
+     * is applied in addition to the {@link #FILTER}. Setting {@code null} detaches the program.
+     */
+    public static final SocketOption<BpfFilter> BPF_FILTER = new CanSocketOption<>("BPF_FILTER", BpfFilter.class, new LinuxSocketOptionHandler<BpfFilter>() {
+        @Override
+        public void set(int sock, BpfFilter val) throws IOException {
+            if (val == null) {
+                SocketCAN.detachBpfFilter(sock);
+                return;
+            }
+            ByteBuffer program = ByteBuffer.allocateDirect(val.getLength() * BpfFilter.INSTRUCTION_BYTES);
+            val.writeTo(program);
+            SocketCAN.setBpfFilter(sock, program, val.getLength());
+        }
+
+        @Override
+        public BpfFilter get(int sock) throws IOException {
+            int length = SocketCAN.getBpfFilter(sock, null, 0);
+            if (length == 0) {
+                return null;
+            }
+            ByteBuffer program = ByteBuffer.allocateDirect(length * BpfFilter.INSTRUCTION_BYTES);
+            length = SocketCAN.getBpfFilter(sock, program, length);
+            return BpfFilter.readFrom(program, length);
+        }
+    });
+
     /**
      * Option to configure the send timeout.
      */
@@ -207,4 +236,80 @@ public class CanSocketOptions {
             return size;
         }
     });
+
+    /**
+     * Option to configure whether the kernel reports the amount of frames dropped because the socket's receive queue
+     * was full ({@code SO_RXQ_OVFL}). The count is delivered along with each received frame and can be obtained using
+     * {@link tel.schich.javacan.RawCanChannel#getDroppedFrames()}.
+     */
+    public static final SocketOption<Boolean> RXQ_OVFL = new CanSocketOption<>("RXQ_OVFL", Boolean.class, new LinuxSocketOptionHandler<Boolean>() {
+        @Override
+        public void set(int sock, Boolean val) throws IOException {
+            SocketCAN.setRxQueueOverflow(sock, val);
+        }
+
+        @Override
+        public Boolean get(int sock) throws IOException {
+            final int result = SocketCAN.getRxQueueOverflow(sock);
+            return result != 0;
+        }
+    });
+
+    /**
+     * Option to configure whether the kernel attaches a nanosecond receive timestamp ({@code SO_TIMESTAMPNS}) to each
+     * frame. The timestamp can be obtained using
+     * {@link tel.schich.javacan.RawCanChannel#readWithTimestamp(ByteBuffer, FrameTimestamp)}.
+     */
+    public static final SocketOption<Boolean> TIMESTAMP_NS = new CanSocketOption<>("TIMESTAMP_NS", Boolean.class, new LinuxSocketOptionHandler<Boolean>() {
+        @Override
+        public void set(int sock, Boolean val) throws IOException {
+            SocketCAN.setTimestampNanos(sock, val);
+        }
+
+        @Override
+        public Boolean get(int sock) throws IOException {
+            final int result = SocketCAN.getTimestampNanos(sock);
+            return result != 0;
+        }
+    });
+
+    /**
+     * Option to configure the timestamping flags ({@code SO_TIMESTAMPING}). The value is a combination of the
+     * {@code TIMESTAMPING_*} flags in this class. Hardware timestamps are only available if the CAN interface supports
+     * them. The timestamps can be obtained using
+     * {@link tel.schich.javacan.RawCanChannel#readWithTimestamp(ByteBuffer, FrameTimestamp)}.
+     */
+    public static final SocketOption<Integer> TIMESTAMPING = new CanSocketOption<>("TIMESTAMPING", Integer.class, new LinuxSocketOptionHandler<Integer>() {
+        @Override
+        public void set(int sock, Integer val) throws IOException {
+            SocketCAN.setTimestamping(sock, val);
+        }
+
+        @Override
+        public Integer get(int sock) throws IOException {
+            final int flags = SocketCAN.getTimestamping(sock);
+            return flags;
+        }
+    });
+
+    /**
+     * {@link #TIMESTAMPING} flag requesting receive timestamps generated by the network adapter.
+     */
+    public static final int TIMESTAMPING_RX_HARDWARE = 1 << 2;
+
+    /**
+     * {@link #TIMESTAMPING} flag requesting receive timestamps generated by the kernel when the frame enters the
+     * network stack.
+     */
+    public static final int TIMESTAMPING_RX_SOFTWARE = 1 << 3;
+
+    /**
+     * {@link #TIMESTAMPING} flag requesting the kernel to report software timestamps.
+     */
+    public static final int TIMESTAMPING_SOFTWARE = 1 << 4;
+
+    /**
+     * {@link #TIMESTAMPING} flag requesting the kernel to report hardware timestamps.
+     */
+    public static final int TIMESTAMPING_RAW_HARDWARE = 1 << 6;
 }
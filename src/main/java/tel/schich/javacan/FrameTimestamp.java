@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan;
+
+import java.time.Instant;
+
+/**
+ * This class is a reusable container for the kernel timestamps of a received frame. It is filled by
+ * {@link tel.schich.javacan.RawCanChannel#readWithTimestamp(java.nio.ByteBuffer, FrameTimestamp)} without any
+ * allocations, so a single instance can be used for all reads of a thread. Reading into a
+ * {@link tel.schich.javacan.CanFrameView} using
+ * {@link tel.schich.javacan.RawCanChannel#readWithTimestamp(java.nio.ByteBuffer, CanFrameView, FrameTimestamp)}
+ * avoids allocating the frame as well.
+ * <p>
+ * All timestamps are given in nanoseconds since the UNIX epoch (software timestamps) or in nanoseconds of the
+ * adapter's clock (hardware timestamps).
+ */
+public final class FrameTimestamp {
+
+    /**
+     * This value is returned for timestamps that have not been provided by the kernel.
+     */
+    public static final long UNAVAILABLE = -1;
+
+    static final int SOFTWARE = 0;
+    static final int HARDWARE = 1;
+    // the drop counter reported with SO_RXQ_OVFL shares the ancillary data array with the timestamps
+    static final int DROPPED_FRAMES = 2;
+    static final int ANCILLARY_LENGTH = 3;
+
+    final long[] ancillary = new long[ANCILLARY_LENGTH];
+
+    /**
+     * Creates a new timestamp container without any timestamps.
+     */
+    public FrameTimestamp() {
+        clear();
+    }
+
+    /**
+     * Resets all timestamps to {@link #UNAVAILABLE}.
+     */
+    public void clear() {
+        for (int i = 0; i < ancillary.length; i++) {
+            ancillary[i] = UNAVAILABLE;
+        }
+    }
+
+    /**
+     * Returns the software receive timestamp in nanoseconds since the UNIX epoch.
+     *
+     * @return the timestamp or {@link #UNAVAILABLE}
+     */
+    public long getSoftwareNanos() {
+        return ancillary[SOFTWARE];
+    }
+
+    /**
+     * Returns the raw hardware receive timestamp in nanoseconds.
+     *
+     * @return the timestamp or {@link #UNAVAILABLE}
+     */
+    public long getHardwareNanos() {
+        return ancillary[HARDWARE];
+    }
+
+    /**
+     * Checks if a software timestamp has been provided by the kernel.
+     *
+     * @return true if a software timestamp is available
+     */
+    public boolean hasSoftwareTimestamp() {
+        return ancillary[SOFTWARE] != UNAVAILABLE;
+    }
+
+    /**
+     * Checks if a hardware timestamp has been provided by the kernel.
+     *
+     * @return true if a hardware timestamp is available
+     */
+    public boolean hasHardwareTimestamp() {
+        return ancillary[HARDWARE] != UNAVAILABLE;
+    }
+
+    /**
+     * Converts the software timestamp into an {@link java.time.Instant}. Unlike the other accessors this allocates.
+     *
+     * @return the timestamp or null if it is not available
+     */
+    public Instant getSoftwareInstant() {
+        if (!hasSoftwareTimestamp()) {
+            return null;
+        }
+        long nanos = getSoftwareNanos();
+        return Instant.ofEpochSecond(nanos / 1_000_000_000L, nanos % 1_000_000_000L);
+    }
+
+    @Override
+    public String toString() {
+        return "FrameTimestamp(software=" + getSoftwareNanos() + ", hardware=" + getHardwareNanos() + ")";
+    }
+}
@@ -87,6 +87,20 @@ public abstract class IsotpCanChannel extends AbstractCanChannel {
      */
     public abstract int read(ByteBuffer buffer) throws IOException;
 
+    /**
+     * Reads up to as many messages as there are elements in {@code messageLengths} from the socket into the given
+     * direct {@link java.nio.ByteBuffer} using a single system call. The messages are stored back-to-back starting
+     * at the buffer's position and the length of each message is stored into {@code messageLengths}. The buffer
+     * should be allocated using {@link #allocateSufficientMemory(int)}.
+     * If this channel is in blocking mode, this call blocks until at least one message has been received.
+     *
+     * @param buffer the destination buffer
+     * @param messageLengths the array receiving the length of each message
+     * @return the amount of messages that have been read, 0 if the channel is non-blocking and nothing was available
+     * @throws IOException if the native calls fail
+     */
+    public abstract int readBatch(ByteBuffer buffer, int[] messageLengths) throws IOException;
+
     /**
      * Writes a message from the given {@link java.nio.ByteBuffer} into this socket. Buffer position and limit will be
      * respected and will be updated according to the data that has been written.
@@ -106,4 +120,14 @@ public abstract class IsotpCanChannel extends AbstractCanChannel {
     public static ByteBuffer allocateSufficientMemory() {
         return ByteBuffer.allocateDirect(MAX_MESSAGE_LENGTH + 1);
     }
+
+    /**
+     * Allocates a new direct {@link java.nio.ByteBuffer} that can hold the given amount of messages of any size.
+     *
+     * @param messages the amount of messages
+     * @return the newly allocated buffer
+     */
+    public static ByteBuffer allocateSufficientMemory(int messages) {
+        return ByteBuffer.allocateDirect(messages * (MAX_MESSAGE_LENGTH + 1));
+    }
 }
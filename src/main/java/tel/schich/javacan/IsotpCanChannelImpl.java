@@ -91,6 +91,11 @@ class IsotpCanChannelImpl extends IsotpCanChannel {
         return (int) bytesRead;
     }
 
+    @Override
+    public int readBatch(ByteBuffer buffer, int[] messageLengths) throws IOException {
+        return readSocketBatch(buffer, MAX_MESSAGE_LENGTH + 1, messageLengths);
+    }
+
     @Override
     public int write(ByteBuffer buffer) throws IOException {
         if (buffer.remaining() > MAX_MESSAGE_LENGTH) {
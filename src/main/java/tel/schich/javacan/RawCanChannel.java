@@ -50,11 +50,139 @@ public abstract class RawCanChannel extends AbstractCanChannel {
 
     public abstract CanFrame read() throws IOException;
     public abstract CanFrame read(ByteBuffer buffer) throws IOException;
+
+    /**
+     * Reads a frame from this channel into the given direct {@link java.nio.ByteBuffer} and points the given
+     * {@link tel.schich.javacan.CanFrameView} at it. Other than {@link #read(java.nio.ByteBuffer)} this does not
+     * allocate, so the returned view is only valid until the buffer is reused.
+     *
+     * @param buffer the destination buffer
+     * @param view the reusable view to point at the frame
+     * @return the given view
+     * @throws IOException if the native calls fail
+     */
+    public abstract CanFrameView read(ByteBuffer buffer, CanFrameView view) throws IOException;
+
+    /**
+     * Reads a frame from this channel into the given direct {@link java.nio.ByteBuffer} just like
+     * {@link #read(java.nio.ByteBuffer)}, but additionally stores the kernel's receive timestamps into the given
+     * {@link tel.schich.javacan.FrameTimestamp}. Timestamps are only provided by the kernel if they have been enabled
+     * using {@link tel.schich.javacan.CanSocketOptions#TIMESTAMP_NS} or
+     * {@link tel.schich.javacan.CanSocketOptions#TIMESTAMPING}.
+     *
+     * @param buffer the destination buffer
+     * @param timestamp the reusable timestamp container to store the timestamps into
+     * @return the frame
+     * @throws IOException if the native calls fail
+     */
+    public abstract CanFrame readWithTimestamp(ByteBuffer buffer, FrameTimestamp timestamp) throws IOException;
+
+    /**
+     * Reads a frame just like {@link #readWithTimestamp(java.nio.ByteBuffer, FrameTimestamp)}, but points the given
+     * reusable {@link tel.schich.javacan.CanFrameView} at the frame instead of allocating a new frame. Together with
+     * a reused {@link tel.schich.javacan.FrameTimestamp} this receives timestamped frames without any allocations.
+     * The frame is stored starting at the buffer's position.
+     *
+     * @param buffer the destination buffer
+     * @param view the reusable view to point at the frame
+     * @param timestamp the reusable timestamp container to store the timestamps into
+     * @return the given view
+     * @throws IOException if the native calls fail
+     */
+    public abstract CanFrameView readWithTimestamp(ByteBuffer buffer, CanFrameView view, FrameTimestamp timestamp) throws IOException;
+
+    /**
+     * Returns the total amount of frames the kernel dropped on this channel because its receive queue was full. The
+     * count is only tracked if the {@link tel.schich.javacan.CanSocketOptions#RXQ_OVFL} option has been enabled on
+     * this channel and it is updated with every frame read, so drops are only noticed once the next frame is read.
+     *
+     * @return the amount of dropped frames
+     */
+    public abstract long getDroppedFrames();
+
     public abstract RawCanChannel write(CanFrame frame) throws IOException;
 
+    /**
+     * Reads as many frames as are available, but at most {@code frameLengths.length} frames, from this channel into
+     * the given direct {@link java.nio.ByteBuffer} using a single system call. The frames are stored back-to-back
+     * starting at the buffer's position, each being either {@link #MTU} or {@link #FD_MTU} bytes long, and the length
+     * of each frame is stored in {@code frameLengths}. The buffer's position will be updated to point right after the
+     * last frame. If this channel is in blocking mode, this call blocks until at least one frame is available.
+     *
+     * @param buffer the destination buffer, it must be able to hold at least one frame
+     * @param frameLengths the array receiving the length of each frame
+     * @return the number of frames read, 0 if this channel is non-blocking and no frame is available
+     * @throws IOException if the native calls fail
+     */
+    public int readBatch(ByteBuffer buffer, int[] frameLengths) throws IOException {
+        return readBatch(buffer, frameLengths, frameLengths.length);
+    }
+
+    /**
+     * Reads frames just like {@link #readBatch(java.nio.ByteBuffer, int[])}, but at most {@code maxFrames} frames.
+     * The amount of frames fitting into the buffer depends on whether {@link #MTU} or {@link #FD_MTU} sized frames are
+     * received, so an explicit maximum is the only way to bound the amount of frames read.
+     *
+     * @param buffer the destination buffer, it must be able to hold at least one frame
+     * @param frameLengths the array receiving the length of each frame
+     * @param maxFrames the maximum amount of frames to read
+     * @return the number of frames read, 0 if this channel is non-blocking and no frame is available
+     * @throws IOException if the native calls fail
+     */
+    public abstract int readBatch(ByteBuffer buffer, int[] frameLengths, int maxFrames) throws IOException;
+
+    /**
+     * Writes {@code count} frames stored back-to-back in the given direct {@link java.nio.ByteBuffer} to this channel
+     * using a single system call. The length of each frame, which must be either {@link #MTU} or {@link #FD_MTU}, is
+     * taken from {@code frameLengths}. The buffer's position will be updated to point right after the last frame that
+     * has been written.
+     *
+     * @param buffer the source buffer
+     * @param frameLengths the length of each frame
+     * @param count the amount of frames to write
+     * @return the number of frames accepted by the kernel, 0 if this channel is non-blocking and would block
+     * @throws IOException if the native calls fail
+     */
+    public abstract int writeBatch(ByteBuffer buffer, int[] frameLengths, int count) throws IOException;
+
+    /**
+     * Writes the given range of {@link tel.schich.javacan.CanFrame}s to this channel using a single system call.
+     *
+     * @param frames the frames to write
+     * @param offset the index of the first frame to write
+     * @param length the amount of frames to write
+     * @return the number of frames accepted by the kernel, 0 if this channel is non-blocking and would block
+     * @throws IOException if the native calls fail
+     */
+    public abstract int writeBatch(CanFrame[] frames, int offset, int length) throws IOException;
+
+    /**
+     * Writes all given {@link tel.schich.javacan.CanFrame}s to this channel using a single system call.
+     *
+     * @param frames the frames to write
+     * @return the number of frames accepted by the kernel, 0 if this channel is non-blocking and would block
+     * @throws IOException if the native calls fail
+     */
+    public int writeBatch(CanFrame[] frames) throws IOException {
+        return writeBatch(frames, 0, frames.length);
+    }
+
     public static ByteBuffer allocateSufficientMemory() {
         ByteBuffer buf = ByteBuffer.allocateDirect(FD_MTU + 1);
         buf.order(ByteOrder.nativeOrder());
         return buf;
     }
+
+    /**
+     * Allocates a new direct {@link java.nio.ByteBuffer} in native byte order that can hold the given amount of
+     * frames of any size, so it is suitable for {@link #readBatch(java.nio.ByteBuffer, int[])}.
+     *
+     * @param frames the amount of frames the buffer should be able to hold
+     * @return the newly allocated buffer
+     */
+    public static ByteBuffer allocateSufficientMemory(int frames) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(frames * FD_MTU);
+        buf.order(ByteOrder.nativeOrder());
+        return buf;
+    }
 }
@@ -23,10 +23,12 @@
 package tel.schich.javacan;
 
 import java.io.IOException;
+import java.net.SocketOption;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.NotYetBoundException;
 import java.nio.channels.spi.SelectorProvider;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import tel.schich.javacan.linux.LinuxNativeOperationException;
 import tel.schich.javacan.linux.LinuxNetworkDevice;
@@ -36,7 +38,20 @@ import tel.schich.javacan.linux.LinuxNetworkDevice;
  */
 public class RawCanChannelImpl extends RawCanChannel {
 
+    private static final AtomicLongFieldUpdater<RawCanChannelImpl> DROPPED_FRAMES =
+            AtomicLongFieldUpdater.newUpdater(RawCanChannelImpl.class, "droppedFrames");
+
+    /**
+     * The ancillary data is only needed for the duration of a single read, so each thread gets its own array instead
+     * of serializing concurrent (and possibly blocking) reads on a shared one.
+     */
+    private static final ThreadLocal<long[]> ANCILLARY =
+            ThreadLocal.withInitial(() -> new long[FrameTimestamp.ANCILLARY_LENGTH]);
+
     private volatile NetworkDevice device;
+    private volatile boolean fdFrames = false;
+    private volatile boolean dropMonitoring = false;
+    private volatile long droppedFrames = 0;
 
     RawCanChannelImpl(SelectorProvider provider, int sock) {
         super(provider, sock);
@@ -65,9 +80,22 @@ public class RawCanChannelImpl extends RawCanChannel {
         return this.device != null;
     }
 
+    @Override
+    public <T> RawCanChannel setOption(SocketOption<T> option, T value) throws IOException {
+        super.setOption(option, value);
+        // the frame size of batch reads depends on this option, tracking it saves a system call per batch
+        if (option == CanSocketOptions.FD_FRAMES) {
+            this.fdFrames = (Boolean) value;
+        } else if (option == CanSocketOptions.RXQ_OVFL) {
+            // reads switch to recvmsg to receive the drop counter as ancillary data
+            this.dropMonitoring = (Boolean) value;
+        }
+        return this;
+    }
+
     @Override
     public CanFrame read() throws IOException {
-        int length = getOption(CanSocketOptions.FD_FRAMES) ? FD_MTU : MTU;
+        int length = fdFrames ? FD_MTU : MTU;
         ByteBuffer frameBuf = ByteBuffer.allocateDirect(length);
         return read(frameBuf);
     }
@@ -75,11 +103,75 @@ public class RawCanChannelImpl extends RawCanChannel {
     @Override
     public CanFrame read(ByteBuffer buffer) throws IOException {
         buffer.order(ByteOrder.nativeOrder());
-        readSocket(buffer);
+        readFrame(buffer);
+        buffer.flip();
+        return CanFrame.create(buffer);
+    }
+
+    @Override
+    public CanFrameView read(ByteBuffer buffer, CanFrameView view) throws IOException {
+        buffer.order(ByteOrder.nativeOrder());
+        int offset = buffer.position();
+        int length = (int) readFrame(buffer);
+        return view.wrap(buffer, offset, length);
+    }
+
+    private long readFrame(ByteBuffer buffer) throws IOException {
+        if (!dropMonitoring) {
+            return readSocket(buffer);
+        }
+        final long[] ancillary = ANCILLARY.get();
+        long bytesRead = readSocketMessage(buffer, ancillary);
+        updateDroppedFrames(ancillary);
+        return bytesRead;
+    }
+
+    @Override
+    public CanFrame readWithTimestamp(ByteBuffer buffer, FrameTimestamp timestamp) throws IOException {
+        buffer.order(ByteOrder.nativeOrder());
+        readSocketMessage(buffer, timestamp.ancillary);
+        updateDroppedFrames(timestamp.ancillary);
         buffer.flip();
         return CanFrame.create(buffer);
     }
 
+    @Override
+    public CanFrameView readWithTimestamp(ByteBuffer buffer, CanFrameView view, FrameTimestamp timestamp) throws IOException {
+        buffer.order(ByteOrder.nativeOrder());
+        int offset = buffer.position();
+        int length = (int) readSocketMessage(buffer, timestamp.ancillary);
+        updateDroppedFrames(timestamp.ancillary);
+        return view.wrap(buffer, offset, length);
+    }
+
+    @Override
+    public int readBatch(ByteBuffer buffer, int[] frameLengths, int maxFrames) throws IOException {
+        buffer.order(ByteOrder.nativeOrder());
+        int stride = fdFrames ? FD_MTU : MTU;
+        if (!dropMonitoring) {
+            return readSocketBatch(buffer, stride, frameLengths, maxFrames, null);
+        }
+        final long[] ancillary = ANCILLARY.get();
+        int count = readSocketBatch(buffer, stride, frameLengths, maxFrames, ancillary);
+        if (count > 0) {
+            updateDroppedFrames(ancillary);
+        }
+        return count;
+    }
+
+    private void updateDroppedFrames(long[] ancillary) {
+        long dropped = ancillary[FrameTimestamp.DROPPED_FRAMES];
+        if (dropped != FrameTimestamp.UNAVAILABLE) {
+            // the kernel's counter only grows, concurrent readers must not publish an older value over a newer one
+            DROPPED_FRAMES.accumulateAndGet(this, dropped, Math::max);
+        }
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
     @Override
     public RawCanChannel write(CanFrame frame) throws IOException {
         long written = writeSocket(frame.getBuffer());
@@ -89,4 +181,33 @@ public class RawCanChannelImpl extends RawCanChannel {
 
         return this;
     }
+
+    @Override
+    public int writeBatch(ByteBuffer buffer, int[] frameLengths, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            int length = frameLengths[i];
+            if (length != MTU && length != FD_MTU) {
+                throw new IllegalArgumentException("length must be either MTU or FD_MTU, but was " + length + "!");
+            }
+        }
+        return writeSocketBatch(buffer, frameLengths, count);
+    }
+
+    @Override
+    public int writeBatch(CanFrame[] frames, int offset, int length) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[length];
+        int[] bases = new int[length];
+        int[] sizes = new int[length];
+        for (int i = 0; i < length; i++) {
+            CanFrame frame = frames[offset + i];
+            ByteBuffer buffer = frame.getBuffer();
+            if (!buffer.isDirect()) {
+                throw new IllegalArgumentException("The frame buffers must be direct buffers!");
+            }
+            buffers[i] = buffer;
+            bases[i] = frame.getBase();
+            sizes[i] = frame.getSize();
+        }
+        return writeSocketBatch(buffers, bases, sizes, length);
+    }
 }
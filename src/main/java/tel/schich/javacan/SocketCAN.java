@@ -60,15 +60,41 @@ class SocketCAN {
 
     public static native int getReceiveBufferSize(int sock) throws LinuxNativeOperationException;
 
+    public static native int setTimestampNanos(int sock, boolean enable) throws LinuxNativeOperationException;
+
+    public static native int getTimestampNanos(int sock) throws LinuxNativeOperationException;
+
+    public static native int setTimestamping(int sock, int flags) throws LinuxNativeOperationException;
+
+    public static native int getTimestamping(int sock) throws LinuxNativeOperationException;
+
+    public static native int setRxQueueOverflow(int sock, boolean enable) throws LinuxNativeOperationException;
+
+    public static native int getRxQueueOverflow(int sock) throws LinuxNativeOperationException;
+
     public static native long write(int sock, ByteBuffer buf, int offset, int len) throws LinuxNativeOperationException;
 
     public static native long read(int sock, ByteBuffer buf, int offset, int len) throws LinuxNativeOperationException;
 
-    public static native int setFilters(int sock, ByteBuffer data) throws LinuxNativeOperationException;
+    public static native long readMessage(int sock, ByteBuffer buf, int offset, int len, long[] ancillary) throws LinuxNativeOperationException;
+
+    public static native int writeMany(int sock, ByteBuffer buf, int offset, int[] lengths, int count) throws LinuxNativeOperationException;
+
+    public static native int writeManyBuffers(int sock, ByteBuffer[] bufs, int[] offsets, int[] lengths, int count) throws LinuxNativeOperationException;
+
+    public static native int readMany(int sock, ByteBuffer buf, int offset, int stride, int[] lengths, int count, long[] ancillary) throws LinuxNativeOperationException;
+
+    public static native int setFilters(int sock, ByteBuffer data, int length) throws LinuxNativeOperationException;
 
     @Deprecated
     public static native ByteBuffer getFilters(int sock) throws LinuxNativeOperationException;
 
+    public static native int setBpfFilter(int sock, ByteBuffer program, int length) throws LinuxNativeOperationException;
+
+    public static native int detachBpfFilter(int sock) throws LinuxNativeOperationException;
+
+    public static native int getBpfFilter(int sock, ByteBuffer program, int length) throws LinuxNativeOperationException;
+
     public static native int setLoopback(int sock, boolean enable) throws LinuxNativeOperationException;
 
     public static native int getLoopback(int sock) throws LinuxNativeOperationException;
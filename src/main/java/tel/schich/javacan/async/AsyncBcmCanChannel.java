@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.async;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import tel.schich.javacan.BcmCanChannel;
+import tel.schich.javacan.BcmMessage;
+import tel.schich.javacan.select.ReadinessPoller;
+
+/**
+ * This class is an asynchronous facade over a {@link tel.schich.javacan.BcmCanChannel}.
+ */
+public class AsyncBcmCanChannel extends AsyncCanChannel<BcmCanChannel> {
+
+    // reads are processed one at a time, so they can share this buffer
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BcmCanChannel.MTU);
+
+    public AsyncBcmCanChannel(BcmCanChannel channel, ReadinessPoller poller) throws IOException {
+        super(channel, poller);
+    }
+
+    /**
+     * Reads the next message. The message is copied out of a buffer shared by all reads of this channel.
+     *
+     * @return the future of the message
+     */
+    public CompletableFuture<BcmMessage> read() {
+        return submitRead(() -> {
+            readBuffer.clear();
+            getChannel().read(readBuffer);
+            final ByteBuffer message = ByteBuffer.allocateDirect(readBuffer.remaining());
+            message.order(readBuffer.order());
+            message.put(readBuffer);
+            message.flip();
+            return new BcmMessage(message);
+        });
+    }
+
+    /**
+     * Reads the next message into the given direct buffer just like
+     * {@link tel.schich.javacan.BcmCanChannel#read(java.nio.ByteBuffer)}. The buffer must not be accessed until the
+     * returned future has been completed.
+     *
+     * @param buffer the destination buffer
+     * @return the future of the message backed by the given buffer
+     */
+    public CompletableFuture<BcmMessage> read(ByteBuffer buffer) {
+        return submitRead(() -> getChannel().read(buffer));
+    }
+
+    /**
+     * Writes the given message.
+     *
+     * @param message the message to write
+     * @return the future of the amount of bytes written
+     */
+    public CompletableFuture<Integer> write(BcmMessage message) {
+        return submitWrite(() -> {
+            final int length = message.getBuffer().remaining();
+            getChannel().write(message);
+            return length;
+        });
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.async;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import tel.schich.javacan.AbstractCanChannel;
+import tel.schich.javacan.linux.LinuxNativeOperationException;
+import tel.schich.javacan.select.ReadinessPoller;
+
+/**
+ * This class is the base for asynchronous facades over CAN channels. Operations return a
+ * {@link java.util.concurrent.CompletableFuture} immediately. They are attempted right away and, if the socket would
+ * block, retried on the polling thread of the shared {@link tel.schich.javacan.select.ReadinessPoller} once the
+ * socket is ready. Reads and writes are queued separately and each queue is processed in submission order, so any
+ * number of operations can be outstanding without a thread per channel.
+ * <p>
+ * Futures may be completed on the polling thread, so dependent actions that might block or take a long time should
+ * use the {@code *Async} methods of {@link java.util.concurrent.CompletableFuture}.
+ *
+ * @param <C> the type of the underlying channel
+ */
+public abstract class AsyncCanChannel<C extends AbstractCanChannel> implements Closeable {
+
+    private final C channel;
+    private final ReadinessPoller poller;
+    private final Queue reads = new Queue(SelectionKey.OP_READ);
+    private final Queue writes = new Queue(SelectionKey.OP_WRITE);
+
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a new asynchronous facade. The channel will be switched to non-blocking mode and must not be used for
+     * IO directly anymore.
+     *
+     * @param channel the underlying channel
+     * @param poller the poller to wait for readiness with
+     * @throws IOException if the native calls fail
+     */
+    protected AsyncCanChannel(C channel, ReadinessPoller poller) throws IOException {
+        this.channel = channel;
+        this.poller = poller;
+        channel.configureBlocking(false);
+    }
+
+    /**
+     * Returns the underlying channel.
+     *
+     * @return the channel
+     */
+    public C getChannel() {
+        return channel;
+    }
+
+    /**
+     * An IO operation attempted on a non-blocking socket.
+     *
+     * @param <T> the result type
+     */
+    @FunctionalInterface
+    protected interface Operation<T> {
+        /**
+         * Attempts the operation.
+         *
+         * @return the result or null if the socket would block
+         * @throws IOException if the operation failed
+         */
+        T attempt() throws IOException;
+    }
+
+    /**
+     * Submits a read operation.
+     *
+     * @param operation the operation
+     * @param <T> the result type
+     * @return the future of the result
+     */
+    protected <T> CompletableFuture<T> submitRead(Operation<T> operation) {
+        return reads.submit(operation);
+    }
+
+    /**
+     * Submits a write operation.
+     *
+     * @param operation the operation
+     * @param <T> the result type
+     * @return the future of the result
+     */
+    protected <T> CompletableFuture<T> submitWrite(Operation<T> operation) {
+        return writes.submit(operation);
+    }
+
+    /**
+     * Returns the number of operations that have not completed yet.
+     *
+     * @return the amount of pending reads and writes
+     */
+    public int getPendingOperations() {
+        return reads.size() + writes.size();
+    }
+
+    /**
+     * Checks if this channel is open.
+     *
+     * @return true if open
+     */
+    public boolean isOpen() {
+        return !closed && channel.isOpen();
+    }
+
+    /**
+     * Closes the underlying channel and fails all pending operations with an
+     * {@link java.nio.channels.AsynchronousCloseException}.
+     *
+     * @throws IOException if closing the channel fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            poller.cancel(channel);
+            channel.close();
+        } finally {
+            reads.process();
+            writes.process();
+        }
+    }
+
+    private static boolean wouldBlock(IOException e) {
+        return e instanceof LinuxNativeOperationException
+                && ((LinuxNativeOperationException) e).getErrorNumber() == LinuxNativeOperationException.EAGAIN;
+    }
+
+    private static final class Pending<T> {
+        final Operation<T> operation;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+        private Throwable failure;
+
+        Pending(Operation<T> operation) {
+            this.operation = operation;
+        }
+
+        /**
+         * Attempts the operation and records its outcome unless the socket would block. The future is not completed
+         * here, see {@link #complete()}.
+         *
+         * @return true if the operation is done
+         */
+        boolean attempt() {
+            try {
+                result = operation.attempt();
+            } catch (IOException e) {
+                if (wouldBlock(e)) {
+                    return false;
+                }
+                failure = e;
+                return true;
+            } catch (RuntimeException e) {
+                failure = e;
+                return true;
+            }
+            return result != null;
+        }
+
+        void fail(Throwable t) {
+            failure = t;
+        }
+
+        /**
+         * Completes the future with the recorded outcome. This runs dependent actions, so it must not be called while
+         * holding the queue's monitor.
+         */
+        void complete() {
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+
+    private final class Queue {
+        private final int ops;
+        private final ArrayDeque<Pending<?>> pending = new ArrayDeque<>();
+        private boolean waiting = false;
+        private final Runnable onReady = this::ready;
+
+        Queue(int ops) {
+            this.ops = ops;
+        }
+
+        <T> CompletableFuture<T> submit(Operation<T> operation) {
+            final Pending<T> p = new Pending<>(operation);
+            if (closed) {
+                p.future.completeExceptionally(new ClosedChannelException());
+                return p.future;
+            }
+            synchronized (this) {
+                pending.addLast(p);
+                if (pending.size() > 1 || waiting) {
+                    // earlier operations are still waiting for the socket
+                    return p.future;
+                }
+            }
+            process();
+            return p.future;
+        }
+
+        synchronized int size() {
+            return pending.size();
+        }
+
+        private void ready() {
+            synchronized (this) {
+                waiting = false;
+            }
+            process();
+        }
+
+        void process() {
+            final List<Pending<?>> done = new ArrayList<>();
+            synchronized (this) {
+                Pending<?> head;
+                while ((head = pending.peekFirst()) != null) {
+                    if (closed) {
+                        head.fail(new AsynchronousCloseException());
+                    } else if (!head.attempt()) {
+                        if (waiting) {
+                            break;
+                        }
+                        waiting = true;
+                        try {
+                            poller.whenReady(channel, ops, onReady);
+                            break;
+                        } catch (IOException | RuntimeException e) {
+                            waiting = false;
+                            head.fail(e);
+                        }
+                    }
+                    done.add(pending.pollFirst());
+                }
+            }
+            // completing runs dependent actions, which may submit further operations or block
+            for (Pending<?> p : done) {
+                p.complete();
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.async;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import tel.schich.javacan.IsotpCanChannel;
+import tel.schich.javacan.select.ReadinessPoller;
+
+/**
+ * This class is an asynchronous facade over an {@link tel.schich.javacan.IsotpCanChannel}.
+ * <p>
+ * Buffers passed to operations must not be accessed until the returned future has been completed.
+ */
+public class AsyncIsotpCanChannel extends AsyncCanChannel<IsotpCanChannel> {
+
+    // reads are processed one at a time, so they can share this buffer
+    private final ByteBuffer readBuffer = IsotpCanChannel.allocateSufficientMemory();
+
+    public AsyncIsotpCanChannel(IsotpCanChannel channel, ReadinessPoller poller) throws IOException {
+        super(channel, poller);
+    }
+
+    /**
+     * Reads the next message into a newly allocated buffer of exactly the message's length.
+     *
+     * @return the future of the message, the buffer is flipped for reading
+     */
+    public CompletableFuture<ByteBuffer> read() {
+        return submitRead(() -> {
+            readBuffer.clear();
+            getChannel().read(readBuffer);
+            readBuffer.flip();
+            final ByteBuffer message = ByteBuffer.allocateDirect(readBuffer.remaining());
+            message.put(readBuffer);
+            message.flip();
+            return message;
+        });
+    }
+
+    /**
+     * Reads the next message into the given direct buffer just like
+     * {@link tel.schich.javacan.IsotpCanChannel#read(java.nio.ByteBuffer)}.
+     *
+     * @param buffer the destination buffer
+     * @return the future of the amount of bytes read
+     */
+    public CompletableFuture<Integer> read(ByteBuffer buffer) {
+        return submitRead(() -> getChannel().read(buffer));
+    }
+
+    /**
+     * Writes a message from the given direct buffer just like
+     * {@link tel.schich.javacan.IsotpCanChannel#write(java.nio.ByteBuffer)}.
+     *
+     * @param buffer the source buffer
+     * @return the future of the amount of bytes written
+     */
+    public CompletableFuture<Integer> write(ByteBuffer buffer) {
+        return submitWrite(() -> getChannel().write(buffer));
+    }
+}
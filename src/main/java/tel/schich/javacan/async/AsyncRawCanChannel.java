@@ -0,0 +1,81 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.async;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.RawCanChannel;
+import tel.schich.javacan.select.ReadinessPoller;
+
+/**
+ * This class is an asynchronous facade over a {@link tel.schich.javacan.RawCanChannel}.
+ */
+public class AsyncRawCanChannel extends AsyncCanChannel<RawCanChannel> {
+
+    // reads are processed one at a time, so they can share this buffer
+    private final ByteBuffer readBuffer = RawCanChannel.allocateSufficientMemory();
+
+    public AsyncRawCanChannel(RawCanChannel channel, ReadinessPoller poller) throws IOException {
+        super(channel, poller);
+    }
+
+    /**
+     * Reads the next frame. The frame is copied out of a buffer shared by all reads of this channel.
+     *
+     * @return the future of the frame
+     */
+    public CompletableFuture<CanFrame> read() {
+        return submitRead(() -> {
+            readBuffer.clear();
+            return getChannel().read(readBuffer).copy();
+        });
+    }
+
+    /**
+     * Reads the next frame into the given direct buffer just like
+     * {@link tel.schich.javacan.RawCanChannel#read(java.nio.ByteBuffer)}. The buffer must not be accessed until the
+     * returned future has been completed.
+     *
+     * @param buffer the destination buffer
+     * @return the future of the frame backed by the given buffer
+     */
+    public CompletableFuture<CanFrame> read(ByteBuffer buffer) {
+        return submitRead(() -> getChannel().read(buffer));
+    }
+
+    /**
+     * Writes the given frame.
+     *
+     * @param frame the frame to write
+     * @return the future of the amount of bytes written
+     */
+    public CompletableFuture<Integer> write(CanFrame frame) {
+        return submitWrite(() -> {
+            getChannel().write(frame);
+            return frame.getSize();
+        });
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.capture;
+
+import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.CanId;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static tel.schich.javacan.CanFrame.MAX_DATA_LENGTH;
+import static tel.schich.javacan.CanFrame.MAX_FD_DATA_LENGTH;
+
+/**
+ * Parses Vector ASC logs. Classic frames ({@code 1.234567 1 18DAF110x Rx d 3 01 02 03}), remote frames
+ * ({@code 1.234567 1 123 Rx r}) and CAN FD frames ({@code 1.234567 CANFD 1 Rx 123 0 0 8 8 01 02 ...}) are decoded,
+ * other events are ignored. The {@code base} header line selects between hexadecimal and decimal numbers and between
+ * absolute and relative timestamps.
+ * <p>
+ * Timestamps in ASC logs are seconds since the start of the measurement, use {@link #setTimeOffset(long)} to move
+ * them to the epoch. ASC channels are numbered from 1, channel {@code n} is reported as device {@code can<n-1>}.
+ * </p>
+ */
+final class AscLogParser extends LogParser {
+
+    private static final byte[] BASE = "base".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DEC = "dec".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RELATIVE = "relative".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CANFD = "CANFD".getBytes(StandardCharsets.US_ASCII);
+
+    private boolean decimal = false;
+    private boolean relative = false;
+    private long previousTimestamp = 0;
+
+    @Override
+    public void prepare(ByteBuffer head) {
+        final int limit = head.limit();
+        int start = head.position();
+        while (start < limit) {
+            int end = start;
+            while (end < limit && head.get(end) != '\n') {
+                end++;
+            }
+            int offset = skipBlanks(head, start, end);
+            if (offset < end && head.get(offset) >= '0' && head.get(offset) <= '9') {
+                // the first event, the header is over
+                break;
+            }
+            parseHeader(head, offset, end);
+            start = end + 1;
+        }
+    }
+
+    @Override
+    public boolean isSplittable() {
+        return !relative;
+    }
+
+    @Override
+    protected int parseLine(ByteBuffer buffer, int start, int end) {
+        int offset = skipBlanks(buffer, start, end);
+        if (offset == end) {
+            return IGNORED;
+        }
+        byte first = buffer.get(offset);
+        if (first < '0' || first > '9') {
+            parseHeader(buffer, offset, end);
+            return IGNORED;
+        }
+        int tokenEnd = tokenEnd(buffer, offset, end);
+        long timestamp = parseSeconds(buffer, offset, tokenEnd);
+        if (timestamp < 0) {
+            return INVALID;
+        }
+        if (relative) {
+            timestamp += previousTimestamp;
+            previousTimestamp = timestamp;
+        }
+
+        offset = skipBlanks(buffer, tokenEnd, end);
+        tokenEnd = tokenEnd(buffer, offset, end);
+        if (matches(buffer, offset, tokenEnd, CANFD)) {
+            return parseFdEvent(buffer, tokenEnd, end, timestamp);
+        }
+        if (parseNumber(buffer, offset, tokenEnd, false) < 0) {
+            // not a frame on a channel, e.g. "Start of measurement"
+            return IGNORED;
+        }
+        final String device = channel(buffer, offset, tokenEnd);
+
+        offset = skipBlanks(buffer, tokenEnd, end);
+        tokenEnd = tokenEnd(buffer, offset, end);
+        final int id = parseId(buffer, offset, tokenEnd);
+        if (id == -1) {
+            // ErrorFrame, statistics and other events
+            return IGNORED;
+        }
+
+        // direction
+        offset = skipBlanks(buffer, tokenEnd, end);
+        offset = skipBlanks(buffer, tokenEnd(buffer, offset, end), end);
+        if (offset == end) {
+            return INVALID;
+        }
+        final byte type = buffer.get(offset);
+        offset = skipBlanks(buffer, offset + 1, end);
+        tokenEnd = tokenEnd(buffer, offset, end);
+        if (type == 'r') {
+            int length = offset == end ? 0 : (int) parseNumber(buffer, offset, tokenEnd, true);
+            if (length < 0 || length > MAX_DATA_LENGTH) {
+                return INVALID;
+            }
+            setFrame(timestamp, device, id | CanId.RTR_FLAG, (byte) 0, length, false);
+            return FRAME;
+        }
+        if (type != 'd') {
+            return INVALID;
+        }
+        final int length = (int) parseNumber(buffer, offset, tokenEnd, true);
+        if (length < 0 || length > MAX_DATA_LENGTH) {
+            return INVALID;
+        }
+        setFrame(timestamp, device, id, (byte) 0, length, false);
+        return parseData(buffer, tokenEnd, end, length);
+    }
+
+    private int parseFdEvent(ByteBuffer buffer, int offset, int end, long timestamp) {
+        offset = skipBlanks(buffer, offset, end);
+        int tokenEnd = tokenEnd(buffer, offset, end);
+        if (parseNumber(buffer, offset, tokenEnd, false) < 0) {
+            return INVALID;
+        }
+        final String device = channel(buffer, offset, tokenEnd);
+
+        // direction
+        offset = skipBlanks(buffer, tokenEnd, end);
+        offset = skipBlanks(buffer, tokenEnd(buffer, offset, end), end);
+        tokenEnd = tokenEnd(buffer, offset, end);
+        final int id = parseId(buffer, offset, tokenEnd);
+        if (id == -1) {
+            return IGNORED;
+        }
+
+        offset = skipBlanks(buffer, tokenEnd, end);
+        tokenEnd = tokenEnd(buffer, offset, end);
+        if (tokenEnd - offset != 1 || (buffer.get(offset) != '0' && buffer.get(offset) != '1')) {
+            // an optional symbolic name precedes the bit rate switch
+            offset = skipBlanks(buffer, tokenEnd, end);
+            tokenEnd = tokenEnd(buffer, offset, end);
+        }
+        final long brs = parseNumber(buffer, offset, tokenEnd, false);
+        offset = skipBlanks(buffer, tokenEnd, end);
+        tokenEnd = tokenEnd(buffer, offset, end);
+        final long esi = parseNumber(buffer, offset, tokenEnd, false);
+        // the DLC is followed by the actual data length
+        offset = skipBlanks(buffer, tokenEnd(buffer, skipBlanks(buffer, tokenEnd, end), end), end);
+        tokenEnd = tokenEnd(buffer, offset, end);
+        final long length = parseNumber(buffer, offset, tokenEnd, false);
+        if (brs < 0 || brs > 1 || esi < 0 || esi > 1 || length < 0 || length > MAX_FD_DATA_LENGTH) {
+            return INVALID;
+        }
+        int flags = 0;
+        if (brs == 1) {
+            flags |= CanFrame.FD_FLAG_BIT_RATE_SWITCH;
+        }
+        if (esi == 1) {
+            flags |= CanFrame.FD_FLAG_ERROR_STATE_INDICATOR;
+        }
+        setFrame(timestamp, device, id, (byte) flags, (int) length, true);
+        return parseData(buffer, tokenEnd, end, (int) length);
+    }
+
+    private int parseData(ByteBuffer buffer, int offset, int end, int length) {
+        for (int i = 0; i < length; i++) {
+            offset = skipBlanks(buffer, offset, end);
+            int tokenEnd = tokenEnd(buffer, offset, end);
+            long value = parseNumber(buffer, offset, tokenEnd, !decimal);
+            if (value < 0 || value > 0xFF) {
+                return INVALID;
+            }
+            setData(i, (byte) value);
+            offset = tokenEnd;
+        }
+        return FRAME;
+    }
+
+    private void parseHeader(ByteBuffer buffer, int offset, int end) {
+        int tokenEnd = tokenEnd(buffer, offset, end);
+        if (!matches(buffer, offset, tokenEnd, BASE)) {
+            return;
+        }
+        offset = skipBlanks(buffer, tokenEnd, end);
+        tokenEnd = tokenEnd(buffer, offset, end);
+        decimal = matches(buffer, offset, tokenEnd, DEC);
+        // "timestamps absolute|relative"
+        offset = skipBlanks(buffer, tokenEnd(buffer, skipBlanks(buffer, tokenEnd, end), end), end);
+        relative = matches(buffer, offset, tokenEnd(buffer, offset, end), RELATIVE);
+    }
+
+    /**
+     * Parses a CAN ID with an optional {@code x} suffix for extended IDs.
+     *
+     * @return the ID in kernel representation or -1 if the token is no ID
+     */
+    private int parseId(ByteBuffer buffer, int start, int end) {
+        boolean extended = false;
+        if (end > start && (buffer.get(end - 1) == 'x' || buffer.get(end - 1) == 'X')) {
+            extended = true;
+            end--;
+        }
+        long id = parseNumber(buffer, start, end, !decimal);
+        if (id < 0 || id > (extended ? CanId.EFF_MASK : CanId.SFF_MASK)) {
+            return -1;
+        }
+        return extended ? (int) id | CanId.EFF_FLAG : (int) id;
+    }
+
+    private String channel(ByteBuffer buffer, int start, int end) {
+        String name = findDevice(buffer, start, end);
+        if (name == null) {
+            name = device(copy(buffer, start, end), "can" + (parseNumber(buffer, start, end, false) - 1));
+        }
+        return name;
+    }
+
+    private static long parseNumber(ByteBuffer buffer, int start, int end, boolean hex) {
+        if (start == end || end - start > 10) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = hexValue(buffer.get(i));
+            if (digit < 0 || (!hex && digit > 9)) {
+                return -1;
+            }
+            value = value * (hex ? 16 : 10) + digit;
+        }
+        return value;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int start, int end, byte[] word) {
+        if (end - start != word.length) {
+            return false;
+        }
+        for (int i = 0; i < word.length; i++) {
+            if (buffer.get(start + i) != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
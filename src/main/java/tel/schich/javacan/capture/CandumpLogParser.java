@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.capture;
+
+import tel.schich.javacan.CanId;
+
+import java.nio.ByteBuffer;
+
+import static tel.schich.javacan.CanFrame.MAX_DATA_LENGTH;
+import static tel.schich.javacan.CanFrame.MAX_FD_DATA_LENGTH;
+
+/**
+ * Parses logs written by {@code candump -l} (or {@code -L}), which consist of lines like
+ * {@code (1576495052.545849) can0 301#084C014E02C20C5C}. The frame notation follows the one of {@code cansend}:
+ * <ul>
+ * <li>{@code <id>#<data>} for classic frames with an ID of 3 (SFF) or 8 (EFF or error frame) hex digits</li>
+ * <li>{@code <id>#R[<length>]} for remote transmission requests</li>
+ * <li>{@code <id>##<flags><data>} for CAN FD frames</li>
+ * </ul>
+ * Data bytes may be separated by dots and anything after the frame, like the direction marker of newer versions,
+ * is ignored.
+ */
+final class CandumpLogParser extends LogParser {
+
+    @Override
+    protected int parseLine(ByteBuffer buffer, int start, int end) {
+        int offset = skipBlanks(buffer, start, end);
+        if (offset == end) {
+            return IGNORED;
+        }
+        if (buffer.get(offset) != '(') {
+            return INVALID;
+        }
+        final int timestampStart = offset + 1;
+        int timestampEnd = timestampStart;
+        while (timestampEnd < end && buffer.get(timestampEnd) != ')') {
+            timestampEnd++;
+        }
+        final long timestamp = parseSeconds(buffer, timestampStart, timestampEnd);
+        if (timestamp < 0 || timestampEnd == end) {
+            return INVALID;
+        }
+
+        final int deviceStart = skipBlanks(buffer, timestampEnd + 1, end);
+        final int deviceEnd = tokenEnd(buffer, deviceStart, end);
+        if (deviceStart == deviceEnd) {
+            return INVALID;
+        }
+        offset = skipBlanks(buffer, deviceEnd, end);
+        final int frameEnd = tokenEnd(buffer, offset, end);
+
+        int id = 0;
+        int idDigits = 0;
+        while (offset < frameEnd && buffer.get(offset) != '#') {
+            int digit = hexValue(buffer.get(offset++));
+            if (digit < 0) {
+                return INVALID;
+            }
+            id = (id << 4) | digit;
+            idDigits++;
+        }
+        if (offset == frameEnd) {
+            return INVALID;
+        }
+        offset++; // #
+        if (idDigits == 8) {
+            // like cansend, 8 digits denote an EFF frame unless the error flag is given
+            if ((id & CanId.ERR_FLAG) == 0) {
+                id |= CanId.EFF_FLAG;
+            }
+        } else if (idDigits == 3) {
+            if (id > CanId.SFF_MASK) {
+                return INVALID;
+            }
+        } else {
+            return INVALID;
+        }
+        final String device = device(buffer, deviceStart, deviceEnd);
+
+        if (offset < frameEnd && buffer.get(offset) == '#') {
+            // CAN FD frame
+            offset++;
+            if (offset == frameEnd) {
+                return INVALID;
+            }
+            int flags = hexValue(buffer.get(offset++));
+            if (flags < 0) {
+                return INVALID;
+            }
+            setFrame(timestamp, device, id, (byte) flags, 0, true);
+            return parseData(buffer, offset, frameEnd, MAX_FD_DATA_LENGTH);
+        }
+        if (offset < frameEnd && (buffer.get(offset) == 'R' || buffer.get(offset) == 'r')) {
+            offset++;
+            int length = 0;
+            if (offset < frameEnd) {
+                length = hexValue(buffer.get(offset));
+                if (length < 0 || length > MAX_DATA_LENGTH) {
+                    return INVALID;
+                }
+            }
+            setFrame(timestamp, device, id | CanId.RTR_FLAG, (byte) 0, length, false);
+            return FRAME;
+        }
+        setFrame(timestamp, device, id, (byte) 0, 0, false);
+        return parseData(buffer, offset, frameEnd, MAX_DATA_LENGTH);
+    }
+
+    private int parseData(ByteBuffer buffer, int offset, int end, int maxLength) {
+        int length = 0;
+        while (offset < end) {
+            if (buffer.get(offset) == '.') {
+                offset++;
+                continue;
+            }
+            if (offset + 1 >= end || length == maxLength) {
+                return INVALID;
+            }
+            int high = hexValue(buffer.get(offset));
+            int low = hexValue(buffer.get(offset + 1));
+            if (high < 0 || low < 0) {
+                return INVALID;
+            }
+            setData(length++, (byte) ((high << 4) | low));
+            offset += 2;
+        }
+        setLength(length);
+        return FRAME;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.capture;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Describes the layout of capture segment files as written by {@link tel.schich.javacan.capture.CaptureWriter}.
+ * <p>
+ * A capture consists of segment files of a fixed, pre-allocated size. Each segment starts with a header of
+ * {@link #HEADER_LENGTH} bytes:
+ * </p>
+ * <pre>
+ * offset  type   field
+ *      0  int    magic ({@link #MAGIC})
+ *      4  short  version ({@link #VERSION})
+ *      6  byte   byte order of all following fields and of the frames (0 = big endian, 1 = little endian)
+ *      7  byte   reserved
+ *      8  int    header length
+ *     12  int    segment index
+ *     16  long   creation time in nanoseconds since the epoch
+ *     24  long   end offset of the last complete record
+ *     32  long   amount of frame records
+ *     40  long   earliest timestamp of all frame records or -1
+ *     48  long   latest timestamp of all frame records or -1
+ * </pre>
+ * <p>
+ * The header is followed by records, each starting at an offset aligned to {@link #RECORD_ALIGNMENT} bytes:
+ * </p>
+ * <pre>
+ * offset  type   field
+ *      0  int    payload length, 0 marks the end of the segment
+ *      4  short  record type ({@link #RECORD_FRAME} or {@link #RECORD_DEVICE})
+ *      6  short  device id
+ *      8  long   timestamp in nanoseconds since the epoch
+ *     16  ...    payload
+ * </pre>
+ * <p>
+ * The payload of a frame record is the CAN frame exactly as the kernel provides it ({@code struct can_frame} or
+ * {@code struct canfd_frame}). The payload of a device record is the UTF-8 encoded name of the network device that is
+ * referenced by its device id in the following frame records. Every segment declares the devices it uses, so segments
+ * can be read independently of each other. Frame records are usually in timestamp order, but they are stored as
+ * written, so readers must not rely on the order.
+ * </p>
+ */
+public final class CaptureFormat {
+
+    /**
+     * The magic number at the start of every segment, the ASCII string {@code JCAN}.
+     */
+    public static final int MAGIC = 0x4A43414E;
+
+    /**
+     * The current version of the format.
+     */
+    public static final short VERSION = 1;
+
+    /**
+     * The file extension of segment files.
+     */
+    public static final String EXTENSION = ".jcap";
+
+    /**
+     * The length of the segment header.
+     */
+    public static final int HEADER_LENGTH = 64;
+
+    public static final int OFFSET_MAGIC = 0;
+    public static final int OFFSET_VERSION = 4;
+    public static final int OFFSET_BYTE_ORDER = 6;
+    public static final int OFFSET_HEADER_LENGTH = 8;
+    public static final int OFFSET_SEGMENT_INDEX = 12;
+    public static final int OFFSET_CREATED = 16;
+    public static final int OFFSET_END = 24;
+    public static final int OFFSET_FRAME_COUNT = 32;
+    public static final int OFFSET_FIRST_TIMESTAMP = 40;
+    public static final int OFFSET_LAST_TIMESTAMP = 48;
+
+    /**
+     * The length of the header of every record.
+     */
+    public static final int RECORD_HEADER_LENGTH = 16;
+
+    /**
+     * The alignment of records within a segment.
+     */
+    public static final int RECORD_ALIGNMENT = 8;
+
+    public static final int RECORD_OFFSET_LENGTH = 0;
+    public static final int RECORD_OFFSET_TYPE = 4;
+    public static final int RECORD_OFFSET_DEVICE = 6;
+    public static final int RECORD_OFFSET_TIMESTAMP = 8;
+
+    /**
+     * The record type of a CAN frame.
+     */
+    public static final short RECORD_FRAME = 1;
+
+    /**
+     * The record type of a device declaration.
+     */
+    public static final short RECORD_DEVICE = 2;
+
+    /**
+     * The value of timestamp fields when no timestamp is known.
+     */
+    public static final long NO_TIMESTAMP = -1;
+
+    static final Charset DEVICE_NAME_CHARSET = StandardCharsets.UTF_8;
+
+    private CaptureFormat() {
+    }
+
+    /**
+     * Returns the size of a record with the given payload length including its alignment padding.
+     *
+     * @param payloadLength the length of the payload
+     * @return the size of the record
+     */
+    public static int recordSize(int payloadLength) {
+        int size = RECORD_HEADER_LENGTH + payloadLength;
+        return (size + RECORD_ALIGNMENT - 1) & -RECORD_ALIGNMENT;
+    }
+
+    /**
+     * Extracts the segment index from the name of a segment file of the capture with the given prefix. Files of other
+     * captures whose prefix merely starts with the given prefix (like {@code bus-a-000000.jcap} for {@code bus}) do not
+     * have a numeric suffix and are rejected.
+     *
+     * @param file the segment file
+     * @param prefix the prefix of the capture
+     * @return the segment index or -1 if the file is not a segment of the capture
+     */
+    static int segmentIndexOf(Path file, String prefix) {
+        final String name = file.getFileName().toString();
+        final int start = prefix.length() + 1;
+        final int end = name.length() - EXTENSION.length();
+        if (end <= start || !name.startsWith(prefix) || name.charAt(prefix.length()) != '-' || !name.endsWith(EXTENSION)) {
+            return -1;
+        }
+        for (int i = start; i < end; i++) {
+            if (name.charAt(i) < '0' || name.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        try {
+            return Integer.parseInt(name.substring(start, end));
+        } catch (NumberFormatException e) {
+            // too large for a segment index
+            return -1;
+        }
+    }
+
+    /**
+     * Detects the byte order of a segment from its header.
+     *
+     * @param segment the segment buffer positioned anywhere
+     * @return the byte order of the segment
+     * @throws IllegalArgumentException if the buffer does not start with a valid segment header
+     */
+    public static ByteOrder byteOrderOf(ByteBuffer segment) {
+        if (segment.capacity() < HEADER_LENGTH) {
+            throw new IllegalArgumentException("The buffer is too small for a capture segment!");
+        }
+        ByteOrder order = segment.get(OFFSET_BYTE_ORDER) == 1 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        ByteBuffer header = segment.duplicate().order(order);
+        if (header.getInt(OFFSET_MAGIC) != MAGIC) {
+            throw new IllegalArgumentException("The buffer does not contain a capture segment!");
+        }
+        if (header.getShort(OFFSET_VERSION) != VERSION) {
+            throw new IllegalArgumentException("Unsupported capture version: " + header.getShort(OFFSET_VERSION));
+        }
+        return order;
+    }
+}
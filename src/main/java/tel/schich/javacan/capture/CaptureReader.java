@@ -0,0 +1,165 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.capture;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+import static tel.schich.javacan.capture.CaptureFormat.EXTENSION;
+
+/**
+ * Provides indexed random access to a capture written by {@link tel.schich.javacan.capture.CaptureWriter}.
+ * <p>
+ * All segments are memory-mapped and frames are handed to a {@link tel.schich.javacan.capture.CaptureVisitor} as
+ * views directly on the mapping, nothing is copied. Time range queries skip whole segments based on their headers and
+ * seek within a segment through its sparse time index, queries for a single CAN ID only touch the records of that ID.
+ * See {@link tel.schich.javacan.capture.CaptureSegment} for details on the indexes.
+ * </p>
+ * The reader is thread-safe.
+ */
+public class CaptureReader {
+
+    private final List<CaptureSegment> segments;
+
+    /**
+     * Creates a reader over the given segments, which are ordered by their segment index.
+     *
+     * @param segments the segments of the capture
+     */
+    public CaptureReader(Collection<CaptureSegment> segments) {
+        List<CaptureSegment> sorted = new ArrayList<>(segments);
+        sorted.sort(Comparator.comparingInt(CaptureSegment::getIndex));
+        this.segments = Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * Opens all segments of the capture with the given prefix in the given directory.
+     *
+     * @param directory the directory containing the segment files
+     * @param prefix the prefix of the segment file names as given to the {@link CaptureWriter}
+     * @return the reader
+     * @throws IOException if a segment could not be mapped
+     */
+    public static CaptureReader open(Path directory, String prefix) throws IOException {
+        List<CaptureSegment> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "-*" + EXTENSION)) {
+            for (Path file : files) {
+                // the glob also matches captures whose prefix starts with this prefix
+                if (CaptureFormat.segmentIndexOf(file, prefix) >= 0) {
+                    segments.add(new CaptureSegment(file));
+                }
+            }
+        }
+        return new CaptureReader(segments);
+    }
+
+    /**
+     * Returns the segments of this capture ordered by their index.
+     *
+     * @return the segments
+     */
+    public List<CaptureSegment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * Returns the amount of frames in the capture according to the segment headers.
+     *
+     * @return the amount of frames
+     */
+    public long getFrameCount() {
+        long count = 0;
+        for (CaptureSegment segment : segments) {
+            count += segment.getFrameCount();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the normalized CAN IDs of all frames in the capture, see {@link CaptureSegment#key(int)}.
+     *
+     * @return the CAN IDs in ascending order
+     */
+    public int[] getIds() {
+        TreeSet<Integer> ids = new TreeSet<>();
+        for (CaptureSegment segment : segments) {
+            for (int id : segment.getIds()) {
+                ids.add(id);
+            }
+        }
+        int[] result = new int[ids.size()];
+        int i = 0;
+        for (Integer id : ids) {
+            result[i++] = id;
+        }
+        return result;
+    }
+
+    /**
+     * Visits all frames of the capture in order.
+     *
+     * @param visitor the visitor
+     */
+    public void forEach(CaptureVisitor visitor) {
+        query(Long.MIN_VALUE, Long.MAX_VALUE, visitor);
+    }
+
+    /**
+     * Visits all frames recorded within the given time range in order.
+     *
+     * @param from the start of the range in nanoseconds since the epoch, inclusive
+     * @param to the end of the range in nanoseconds since the epoch, exclusive
+     * @param visitor the visitor
+     */
+    public void query(long from, long to, CaptureVisitor visitor) {
+        for (CaptureSegment segment : segments) {
+            if (segment.overlaps(from, to) && !segment.query(from, to, visitor)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Visits all frames with the given CAN ID recorded within the given time range in order.
+     *
+     * @param id the CAN ID, extended IDs must have the {@link tel.schich.javacan.CanId#EFF_FLAG} set
+     * @param from the start of the range in nanoseconds since the epoch, inclusive
+     * @param to the end of the range in nanoseconds since the epoch, exclusive
+     * @param visitor the visitor
+     */
+    public void query(int id, long from, long to, CaptureVisitor visitor) {
+        for (CaptureSegment segment : segments) {
+            if (segment.overlaps(from, to) && !segment.query(id, from, to, visitor)) {
+                return;
+            }
+        }
+    }
+}
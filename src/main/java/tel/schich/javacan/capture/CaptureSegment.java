@@ -0,0 +1,427 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.capture;
+
+import tel.schich.javacan.CanFrameView;
+import tel.schich.javacan.CanId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static tel.schich.javacan.capture.CaptureFormat.*;
+
+/**
+ * A single read-only mapped capture segment together with its indexes.
+ * <p>
+ * The indexes are built on first use by a single pass over the records and are extended by later queries if the
+ * segment is still being written to. Two indexes are maintained: a sparse time index that divides the frame records
+ * into blocks of {@link #TIME_INDEX_INTERVAL} and a posting list of record offsets per CAN ID. Records are not required
+ * to be in timestamp order: each block of the time index knows its earliest timestamp and the latest timestamp up to
+ * its end, so queries start at the first block that may contain matching frames and skip blocks that cannot.
+ * </p>
+ * Segments are thread-safe, each query works on its own view of the mapping.
+ */
+public final class CaptureSegment {
+
+    /**
+     * The amount of frame records between two entries of the time index.
+     */
+    public static final int TIME_INDEX_INTERVAL = 64;
+
+    private static final String[] NO_DEVICES = new String[0];
+
+    private final Path path;
+    private final MappedByteBuffer mapping;
+    private final ByteOrder order;
+    private final int index;
+
+    // guarded by this
+    private int indexedEnd;
+    private long indexedFrames;
+    private String[] devices = NO_DEVICES;
+    private int[] timeIndexOffsets = new int[16];
+    // the earliest timestamp within each block
+    private long[] timeIndexMin = new long[16];
+    // the latest timestamp up to the end of each block, this never decreases
+    private long[] timeIndexMax = new long[16];
+    private int timeIndexSize;
+    private final Map<Integer, Postings> postings = new HashMap<>();
+
+    /**
+     * Maps the given segment file.
+     *
+     * @param path the segment file
+     * @throws IOException if the file could not be mapped or is not a capture segment
+     */
+    public CaptureSegment(Path path) throws IOException {
+        this.path = path;
+        try (FileChannel ch = FileChannel.open(path, READ)) {
+            if (ch.size() > Integer.MAX_VALUE) {
+                throw new IOException("Segment too large: " + path);
+            }
+            // the mapping stays valid after the channel has been closed
+            this.mapping = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        try {
+            this.order = byteOrderOf(mapping);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(path + ": " + e.getMessage(), e);
+        }
+        mapping.order(order);
+        this.index = mapping.getInt(OFFSET_SEGMENT_INDEX);
+        this.indexedEnd = mapping.getInt(OFFSET_HEADER_LENGTH);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the index of this segment within its capture.
+     *
+     * @return the segment index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the amount of frames in this segment according to its header.
+     *
+     * @return the amount of frames
+     */
+    public long getFrameCount() {
+        return mapping.getLong(OFFSET_FRAME_COUNT);
+    }
+
+    /**
+     * Returns the earliest timestamp of all frames according to its header.
+     *
+     * @return the timestamp in nanoseconds since the epoch or {@link CaptureFormat#NO_TIMESTAMP}
+     */
+    public long getFirstTimestamp() {
+        return mapping.getLong(OFFSET_FIRST_TIMESTAMP);
+    }
+
+    /**
+     * Returns the latest timestamp of all frames according to its header.
+     *
+     * @return the timestamp in nanoseconds since the epoch or {@link CaptureFormat#NO_TIMESTAMP}
+     */
+    public long getLastTimestamp() {
+        return mapping.getLong(OFFSET_LAST_TIMESTAMP);
+    }
+
+    /**
+     * Checks whether this segment may contain frames recorded in the given time range.
+     *
+     * @param from the start of the range in nanoseconds since the epoch, inclusive
+     * @param to the end of the range in nanoseconds since the epoch, exclusive
+     * @return true if the segment overlaps the range
+     */
+    public boolean overlaps(long from, long to) {
+        long first = getFirstTimestamp();
+        return first != NO_TIMESTAMP && first < to && getLastTimestamp() >= from;
+    }
+
+    /**
+     * Returns the normalized CAN IDs of all indexed frames, see {@link #key(int)}.
+     *
+     * @return the CAN IDs in ascending order
+     */
+    public synchronized int[] getIds() {
+        refresh();
+        int[] ids = new int[postings.size()];
+        int i = 0;
+        for (Integer id : postings.keySet()) {
+            ids[i++] = id;
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Normalizes a CAN ID for lookups in the ID index: standard IDs are reduced to their 11 bits, extended IDs to
+     * their 29 bits plus the {@link tel.schich.javacan.CanId#EFF_FLAG}. The RTR and error flags are not part of the key.
+     *
+     * @param rawId the CAN ID as given by the kernel
+     * @return the key
+     */
+    public static int key(int rawId) {
+        if (CanId.isExtended(rawId)) {
+            return (rawId & CanId.EFF_MASK) | CanId.EFF_FLAG;
+        }
+        return rawId & CanId.SFF_MASK;
+    }
+
+    /**
+     * Visits all frames recorded within the given time range in the order they have been written.
+     *
+     * @param from the start of the range in nanoseconds since the epoch, inclusive
+     * @param to the end of the range in nanoseconds since the epoch, exclusive
+     * @param visitor the visitor
+     * @return false if the visitor ended the query
+     */
+    public boolean query(long from, long to, CaptureVisitor visitor) {
+        final int end;
+        final String[] names;
+        final TimeIndex blocks;
+        synchronized (this) {
+            refresh();
+            end = indexedEnd;
+            names = devices;
+            blocks = timeIndex();
+        }
+        final ByteBuffer buffer = view();
+        final CanFrameView frame = new CanFrameView();
+        for (int block = blocks.firstBlockReaching(from); block < blocks.size; block++) {
+            if (blocks.min[block] >= to) {
+                continue;
+            }
+            final int blockEnd = blocks.end(block, end);
+            int record = blocks.offsets[block];
+            while (record < blockEnd) {
+                final int length = buffer.getInt(record + RECORD_OFFSET_LENGTH);
+                if (buffer.getShort(record + RECORD_OFFSET_TYPE) == RECORD_FRAME) {
+                    final long timestamp = buffer.getLong(record + RECORD_OFFSET_TIMESTAMP);
+                    if (timestamp >= from && timestamp < to
+                            && !visit(buffer, record, length, timestamp, names, frame, visitor)) {
+                        return false;
+                    }
+                }
+                record += recordSize(length);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Visits all frames with the given CAN ID recorded within the given time range in the order they have been
+     * written.
+     *
+     * @param id the CAN ID, see {@link #key(int)}
+     * @param from the start of the range in nanoseconds since the epoch, inclusive
+     * @param to the end of the range in nanoseconds since the epoch, exclusive
+     * @param visitor the visitor
+     * @return false if the visitor ended the query
+     */
+    public boolean query(int id, long from, long to, CaptureVisitor visitor) {
+        final int[] offsets;
+        final int count;
+        final int end;
+        final String[] names;
+        final TimeIndex blocks;
+        synchronized (this) {
+            refresh();
+            Postings list = postings.get(key(id));
+            if (list == null) {
+                return true;
+            }
+            // offsets are only ever appended, so the prefix stays valid outside of the lock
+            offsets = list.offsets;
+            count = list.size;
+            end = indexedEnd;
+            names = devices;
+            blocks = timeIndex();
+        }
+        final ByteBuffer buffer = view();
+        final CanFrameView frame = new CanFrameView();
+        int posting = 0;
+        for (int block = blocks.firstBlockReaching(from); block < blocks.size && posting < count; block++) {
+            if (blocks.min[block] >= to) {
+                continue;
+            }
+            final int blockEnd = blocks.end(block, end);
+            posting = firstPostingAtOrAfter(offsets, posting, count, blocks.offsets[block]);
+            for (; posting < count && offsets[posting] < blockEnd; posting++) {
+                final int record = offsets[posting];
+                final long timestamp = buffer.getLong(record + RECORD_OFFSET_TIMESTAMP);
+                if (timestamp >= from && timestamp < to
+                        && !visit(buffer, record, buffer.getInt(record + RECORD_OFFSET_LENGTH), timestamp, names, frame, visitor)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private ByteBuffer view() {
+        return mapping.duplicate().order(order);
+    }
+
+    private static boolean visit(ByteBuffer buffer, int record, int length, long timestamp, String[] names,
+                                 CanFrameView frame, CaptureVisitor visitor) {
+        final int device = buffer.getShort(record + RECORD_OFFSET_DEVICE);
+        frame.wrap(buffer, record + RECORD_HEADER_LENGTH, length);
+        final boolean proceed = visitor.visit(timestamp, device < names.length ? names[device] : null, frame);
+        // the visitor may have moved the limit through the frame
+        buffer.clear();
+        return proceed;
+    }
+
+    private TimeIndex timeIndex() {
+        // completed blocks never change and the arrays are replaced when growing, so they can be used outside of
+        // the lock. The earliest timestamp of the last block may still decrease, which only makes skipping less
+        // likely.
+        return new TimeIndex(timeIndexOffsets, timeIndexMin, timeIndexMax, timeIndexSize);
+    }
+
+    private static int firstPostingAtOrAfter(int[] offsets, int from, int count, int offset) {
+        int low = from;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (offsets[mid] < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Extends the indexes up to the end of the last complete record.
+     */
+    private void refresh() {
+        final int end = (int) Math.min(mapping.getLong(OFFSET_END), mapping.capacity());
+        int record = indexedEnd;
+        while (record + RECORD_HEADER_LENGTH <= end) {
+            final int length = mapping.getInt(record + RECORD_OFFSET_LENGTH);
+            if (length == 0) {
+                break;
+            }
+            final short type = mapping.getShort(record + RECORD_OFFSET_TYPE);
+            final int device = mapping.getShort(record + RECORD_OFFSET_DEVICE);
+            if (type == RECORD_FRAME) {
+                final long timestamp = mapping.getLong(record + RECORD_OFFSET_TIMESTAMP);
+                if (indexedFrames % TIME_INDEX_INTERVAL == 0) {
+                    addTimeIndexEntry(timestamp, record);
+                } else {
+                    final int block = timeIndexSize - 1;
+                    timeIndexMin[block] = Math.min(timeIndexMin[block], timestamp);
+                    timeIndexMax[block] = Math.max(timeIndexMax[block], timestamp);
+                }
+                indexedFrames++;
+                int id = key(mapping.getInt(record + RECORD_HEADER_LENGTH));
+                Postings list = postings.get(id);
+                if (list == null) {
+                    list = new Postings();
+                    postings.put(id, list);
+                }
+                list.add(record);
+            } else if (type == RECORD_DEVICE) {
+                declareDevice(device, record, length);
+            }
+            record += recordSize(length);
+        }
+        indexedEnd = record;
+    }
+
+    private void addTimeIndexEntry(long timestamp, int record) {
+        if (timeIndexSize == timeIndexOffsets.length) {
+            timeIndexOffsets = Arrays.copyOf(timeIndexOffsets, timeIndexSize * 2);
+            timeIndexMin = Arrays.copyOf(timeIndexMin, timeIndexSize * 2);
+            timeIndexMax = Arrays.copyOf(timeIndexMax, timeIndexSize * 2);
+        }
+        timeIndexOffsets[timeIndexSize] = record;
+        timeIndexMin[timeIndexSize] = timestamp;
+        timeIndexMax[timeIndexSize] = timeIndexSize == 0 ? timestamp : Math.max(timeIndexMax[timeIndexSize - 1], timestamp);
+        timeIndexSize++;
+    }
+
+    private void declareDevice(int device, int record, int length) {
+        byte[] name = new byte[length];
+        ByteBuffer buffer = view();
+        buffer.position(record + RECORD_HEADER_LENGTH);
+        buffer.get(name);
+        // queries keep the array they started with, so it is replaced instead of modified
+        String[] updated = Arrays.copyOf(devices, Math.max(devices.length, device + 1));
+        updated[device] = new String(name, DEVICE_NAME_CHARSET);
+        devices = updated;
+    }
+
+    @Override
+    public String toString() {
+        return "CaptureSegment(path=" + path + ", index=" + index + ", frames=" + getFrameCount() + ")";
+    }
+
+    private static final class TimeIndex {
+        final int[] offsets;
+        final long[] min;
+        final long[] max;
+        final int size;
+
+        TimeIndex(int[] offsets, long[] min, long[] max, int size) {
+            this.offsets = offsets;
+            this.min = min;
+            this.max = max;
+            this.size = size;
+        }
+
+        /**
+         * Finds the first block that may contain the given timestamp or a later one, all frames in the blocks before
+         * it are earlier.
+         *
+         * @param timestamp the timestamp
+         * @return the index of the block or {@link #size} if all frames are earlier
+         */
+        int firstBlockReaching(long timestamp) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (max[mid] < timestamp) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        int end(int block, int end) {
+            return block + 1 < size ? offsets[block + 1] : end;
+        }
+    }
+
+    private static final class Postings {
+        private int[] offsets = new int[8];
+        private int size;
+
+        void add(int offset) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            offsets[size++] = offset;
+        }
+    }
+}
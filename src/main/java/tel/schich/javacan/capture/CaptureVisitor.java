@@ -0,0 +1,44 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.capture;
+
+import tel.schich.javacan.CanFrame;
+
+/**
+ * Capture visitors are called by a {@link tel.schich.javacan.capture.CaptureReader} for each frame of a query.
+ * <p>
+ * The frame passed to a visitor is a view directly on the mapped segment that is reused for the next frame, so it is
+ * only valid for the duration of the call. Use {@link tel.schich.javacan.CanFrame#copy()} to retain it.
+ */
+@FunctionalInterface
+public interface CaptureVisitor {
+    /**
+     * Visits a recorded frame.
+     *
+     * @param timestamp the time the frame has been recorded in nanoseconds since the epoch
+     * @param device the name of the device the frame has been recorded on
+     * @param frame the recorded frame
+     * @return true to continue with the next frame, false to end the query
+     */
+    boolean visit(long timestamp, String device, CanFrame frame);
+}
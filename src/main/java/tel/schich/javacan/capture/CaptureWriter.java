@@ -0,0 +1,414 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.capture;
+
+import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.NetworkDevice;
+import tel.schich.javacan.RawCanChannel;
+import tel.schich.javacan.util.FrameHandler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static tel.schich.javacan.capture.CaptureFormat.*;
+
+/**
+ * Appends CAN frames to memory-mapped segment files in the format described by
+ * {@link tel.schich.javacan.capture.CaptureFormat}.
+ * <p>
+ * Segments are allocated with their full size upfront and a new segment is started once a record does not fit into the
+ * current one. Frames are copied straight from their backing buffer into the mapping, so recording does not allocate
+ * per frame. The writer is a {@link tel.schich.javacan.util.FrameHandler}, so it can be added to a
+ * {@link tel.schich.javacan.util.CanBroker} directly, in which case frames are timestamped on arrival in the handler.
+ * </p>
+ * Records become visible to readers of the same segment as soon as the header has been updated, they are only
+ * guaranteed to be on disk after {@link #flush()} or after their segment has been completed.
+ */
+public class CaptureWriter implements FrameHandler, Closeable {
+
+    /**
+     * The default size of segment files.
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The smallest supported segment size.
+     */
+    public static final long MIN_SEGMENT_SIZE = 4096;
+
+    private final Path directory;
+    private final String prefix;
+    private final int segmentSize;
+    private final long epochBase;
+    private final long nanoBase;
+
+    private final Map<String, Short> deviceIds = new HashMap<>();
+    private final List<String> devices = new ArrayList<>();
+    private final Deque<Path> segments = new ArrayDeque<>();
+    private int maxSegments = 0;
+
+    private int nextSegmentIndex = 0;
+    private FileChannel file;
+    private MappedByteBuffer segment;
+    private int position;
+    private long frameCount;
+    private long totalFrames;
+    private boolean redeclaring = false;
+    private boolean closed = false;
+
+    /**
+     * Creates a writer with the {@link #DEFAULT_SEGMENT_SIZE}.
+     *
+     * @param directory the directory of the segment files, it is created if necessary
+     * @param prefix the prefix of the segment file names
+     * @throws IOException if the directory could not be created
+     */
+    public CaptureWriter(Path directory, String prefix) throws IOException {
+        this(directory, prefix, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Creates a writer. Segment files are named {@code <prefix>-<index><extension>} and the index continues after the
+     * highest index already present in the directory, so existing captures are never overwritten.
+     *
+     * @param directory the directory of the segment files, it is created if necessary
+     * @param prefix the prefix of the segment file names
+     * @param segmentSize the size of each segment file in bytes
+     * @throws IOException if the directory could not be created
+     */
+    public CaptureWriter(Path directory, String prefix, long segmentSize) throws IOException {
+        this(directory, prefix, segmentSize, -1);
+    }
+
+    /**
+     * Creates a writer that starts with the given segment index instead of the next free one.
+     *
+     * @param directory the directory of the segment files, it is created if necessary
+     * @param prefix the prefix of the segment file names
+     * @param segmentSize the size of each segment file in bytes
+     * @param firstSegmentIndex the index of the first segment or -1 to continue after the existing segments
+     * @throws IOException if the directory could not be created
+     */
+    CaptureWriter(Path directory, String prefix, long segmentSize, int firstSegmentIndex) throws IOException {
+        if (segmentSize < MIN_SEGMENT_SIZE || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The segment size must be between " + MIN_SEGMENT_SIZE + " and "
+                    + Integer.MAX_VALUE + " bytes!");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.prefix = prefix;
+        this.segmentSize = (int) segmentSize;
+        this.epochBase = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        this.nanoBase = System.nanoTime();
+        if (firstSegmentIndex < 0) {
+            this.nextSegmentIndex = nextFreeSegmentIndex(this.directory, prefix);
+        } else {
+            this.nextSegmentIndex = firstSegmentIndex;
+        }
+    }
+
+    /**
+     * Limits the amount of segments kept on disk. Once a new segment is started and the limit is exceeded, the oldest
+     * segments written by this writer are deleted.
+     *
+     * @param maxSegments the maximum amount of segments or 0 to keep all segments
+     */
+    public synchronized void setMaxSegments(int maxSegments) {
+        if (maxSegments < 0) {
+            throw new IllegalArgumentException("maxSegments must not be negative!");
+        }
+        this.maxSegments = maxSegments;
+    }
+
+    public synchronized int getMaxSegments() {
+        return maxSegments;
+    }
+
+    /**
+     * Returns the paths of the segments written by this writer that still exist, oldest first.
+     *
+     * @return the segment paths
+     */
+    public synchronized List<Path> getSegments() {
+        return new ArrayList<>(segments);
+    }
+
+    /**
+     * Returns the total amount of frames written by this writer.
+     *
+     * @return the amount of frames
+     */
+    public synchronized long getFrameCount() {
+        return totalFrames;
+    }
+
+    /**
+     * Returns the current time in nanoseconds since the epoch as used for frames passed to
+     * {@link #handle(RawCanChannel, CanFrame)}. The time is derived from {@link System#nanoTime()}, so it is
+     * monotonic within this writer.
+     *
+     * @return the current time in nanoseconds
+     */
+    public long now() {
+        return epochBase + (System.nanoTime() - nanoBase);
+    }
+
+    /**
+     * Appends the frame with the current time as its timestamp. I/O errors are rethrown as
+     * {@link java.io.UncheckedIOException} as the handler interface does not allow checked exceptions.
+     *
+     * @param ch the channel that received the frame
+     * @param frame the frame that has been received
+     */
+    @Override
+    public void handle(RawCanChannel ch, CanFrame frame) {
+        try {
+            write(ch.getDevice(), frame, now());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends a frame.
+     *
+     * @param device the device the frame has been received on
+     * @param frame the frame
+     * @param timestamp the time the frame has been received in nanoseconds since the epoch, e.g. a kernel timestamp
+     * @throws IOException if a new segment could not be created
+     */
+    public void write(NetworkDevice device, CanFrame frame, long timestamp) throws IOException {
+        write(device.getName(), frame, timestamp);
+    }
+
+    /**
+     * Appends a frame. The timestamp may be earlier than the one of the previously written frame, which happens for
+     * instance when kernel timestamps of several channels are interleaved.
+     *
+     * @param device the name of the device the frame has been received on
+     * @param frame the frame
+     * @param timestamp the time the frame has been received in nanoseconds since the epoch, e.g. a kernel timestamp
+     * @throws IOException if a new segment could not be created
+     */
+    public synchronized void write(String device, CanFrame frame, long timestamp) throws IOException {
+        if (closed) {
+            throw new IOException("The capture writer has been closed!");
+        }
+        final int size = frame.getSize();
+        final int recordSize = recordSize(size);
+        if (segment == null || position + recordSize > segmentSize) {
+            nextSegment();
+        }
+        Short deviceId = deviceIds.get(device);
+        if (deviceId == null) {
+            deviceId = declareDevice(device);
+        }
+        if (position + recordSize > segmentSize) {
+            // the device declaration took the last bit of space
+            nextSegment();
+        }
+
+        final int record = position;
+        segment.putShort(record + RECORD_OFFSET_TYPE, RECORD_FRAME)
+                .putShort(record + RECORD_OFFSET_DEVICE, deviceId)
+                .putLong(record + RECORD_OFFSET_TIMESTAMP, timestamp);
+        segment.position(record + RECORD_HEADER_LENGTH);
+        segment.put(frame.getBuffer());
+        commit(record, size, recordSize);
+
+        if (frameCount == 0 || timestamp < segment.getLong(OFFSET_FIRST_TIMESTAMP)) {
+            segment.putLong(OFFSET_FIRST_TIMESTAMP, timestamp);
+        }
+        if (frameCount == 0 || timestamp > segment.getLong(OFFSET_LAST_TIMESTAMP)) {
+            segment.putLong(OFFSET_LAST_TIMESTAMP, timestamp);
+        }
+        frameCount++;
+        totalFrames++;
+        segment.putLong(OFFSET_FRAME_COUNT, frameCount);
+    }
+
+    /**
+     * Forces the written records of the current segment to disk.
+     */
+    public synchronized void flush() {
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    private short declareDevice(String device) throws IOException {
+        if (devices.size() > Short.MAX_VALUE) {
+            throw new IOException("Too many devices in capture!");
+        }
+        short id = (short) devices.size();
+        devices.add(device);
+        deviceIds.put(device, id);
+        writeDevice(id, device);
+        return id;
+    }
+
+    private void writeDevice(short id, String device) throws IOException {
+        byte[] name = device.getBytes(DEVICE_NAME_CHARSET);
+        int recordSize = recordSize(name.length);
+        if (HEADER_LENGTH + recordSize > segmentSize) {
+            throw new IOException("Device name too long: " + device);
+        }
+        if (position + recordSize > segmentSize) {
+            if (redeclaring) {
+                throw new IOException("The segment size is too small to declare all devices!");
+            }
+            // the new segment declares all known devices including this one
+            nextSegment();
+            return;
+        }
+        final int record = position;
+        segment.putShort(record + RECORD_OFFSET_TYPE, RECORD_DEVICE)
+                .putShort(record + RECORD_OFFSET_DEVICE, id)
+                .putLong(record + RECORD_OFFSET_TIMESTAMP, now());
+        segment.position(record + RECORD_HEADER_LENGTH);
+        segment.put(name);
+        commit(record, name.length, recordSize);
+    }
+
+    private void commit(int record, int payloadLength, int recordSize) {
+        position = record + recordSize;
+        // the length is written last, so a concurrent reader never sees a partial record
+        segment.putInt(record + RECORD_OFFSET_LENGTH, payloadLength);
+        segment.putLong(OFFSET_END, position);
+    }
+
+    /**
+     * Finds the index after the highest index of the existing segments with the given prefix.
+     *
+     * @param directory the directory of the segment files
+     * @param prefix the prefix of the segment file names
+     * @return the next free index
+     * @throws IOException if the directory could not be listed
+     */
+    static int nextFreeSegmentIndex(Path directory, String prefix) throws IOException {
+        int next = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "-*" + EXTENSION)) {
+            for (Path file : files) {
+                int index = CaptureFormat.segmentIndexOf(file, prefix);
+                if (index >= 0) {
+                    next = Math.max(next, index + 1);
+                }
+            }
+        }
+        return next;
+    }
+
+    private Path segmentPath(int index) {
+        return directory.resolve(String.format("%s-%06d%s", prefix, index, EXTENSION));
+    }
+
+    private void nextSegment() throws IOException {
+        completeSegment();
+
+        final int index = nextSegmentIndex++;
+        final Path path = segmentPath(index);
+        final FileChannel channel = FileChannel.open(path, CREATE_NEW, READ, WRITE);
+        final MappedByteBuffer mapped;
+        try {
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } catch (IOException e) {
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e1) {
+                e.addSuppressed(e1);
+            }
+            throw e;
+        }
+        mapped.order(ByteOrder.nativeOrder());
+        mapped.putInt(OFFSET_MAGIC, MAGIC)
+                .putShort(OFFSET_VERSION, VERSION)
+                .put(OFFSET_BYTE_ORDER, (byte) (mapped.order() == ByteOrder.LITTLE_ENDIAN ? 1 : 0))
+                .putInt(OFFSET_HEADER_LENGTH, HEADER_LENGTH)
+                .putInt(OFFSET_SEGMENT_INDEX, index)
+                .putLong(OFFSET_CREATED, now())
+                .putLong(OFFSET_END, HEADER_LENGTH)
+                .putLong(OFFSET_FRAME_COUNT, 0)
+                .putLong(OFFSET_FIRST_TIMESTAMP, NO_TIMESTAMP)
+                .putLong(OFFSET_LAST_TIMESTAMP, NO_TIMESTAMP);
+
+        this.file = channel;
+        this.segment = mapped;
+        this.position = HEADER_LENGTH;
+        this.frameCount = 0;
+        segments.addLast(path);
+
+        redeclaring = true;
+        try {
+            for (short id = 0; id < devices.size(); id++) {
+                writeDevice(id, devices.get(id));
+            }
+        } finally {
+            redeclaring = false;
+        }
+        enforceRetention();
+    }
+
+    private void completeSegment() throws IOException {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+        if (file != null) {
+            // the mapping stays valid until it is garbage collected, closing the channel does not affect it
+            file.close();
+            file = null;
+        }
+    }
+
+    private void enforceRetention() throws IOException {
+        while (maxSegments > 0 && segments.size() > maxSegments) {
+            Files.deleteIfExists(segments.removeFirst());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            completeSegment();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.capture;
+
+/**
+ * The textual CAN log formats that can be parsed into frames.
+ */
+public enum LogFormat {
+    /**
+     * Logs written by {@code candump -l} of the {@code can-utils}.
+     */
+    CANDUMP {
+        @Override
+        public LogParser newParser() {
+            return new CandumpLogParser();
+        }
+    },
+    /**
+     * Vector ASC logs.
+     */
+    ASC {
+        @Override
+        public LogParser newParser() {
+            return new AscLogParser();
+        }
+    },
+    ;
+
+    /**
+     * Creates a new parser for this format.
+     *
+     * @return the parser
+     */
+    public abstract LogParser newParser();
+}
@@ -0,0 +1,370 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.capture;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Imports textual CAN logs by parsing memory-mapped windows of the log file.
+ * <p>
+ * A log can either be streamed to a {@link tel.schich.javacan.capture.CaptureVisitor} or be converted into a
+ * capture. Conversions can be split across fork/join workers: the log is cut into parts at line boundaries and each
+ * part is written into its own range of segment indexes, so the resulting capture is read back in log order by a
+ * {@link tel.schich.javacan.capture.CaptureReader}. Logs whose lines depend on each other (see
+ * {@link LogParser#isSplittable()}) are always imported sequentially.
+ * </p>
+ */
+public class LogImporter {
+
+    /**
+     * The default size of the mapped windows.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The segment indexes reserved for each part of a parallel import.
+     */
+    static final int SEGMENTS_PER_PART = 100_000;
+
+    private static final int MAX_PARTS = 1024;
+    private static final int PARTS_PER_WORKER = 4;
+    private static final long MIN_PART_SIZE = 1024 * 1024;
+    private static final int HEAD_SIZE = 64 * 1024;
+
+    private final LogFormat format;
+    private int parallelism = 1;
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+    private long timeOffset = 0;
+    private long segmentSize = CaptureWriter.DEFAULT_SEGMENT_SIZE;
+
+    public LogImporter(LogFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * Sets the amount of fork/join workers used to convert logs into captures.
+     *
+     * @param parallelism the amount of workers, 1 imports on the calling thread
+     * @return this importer
+     */
+    public LogImporter setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1!");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Sets the size of the windows of the log that are mapped at once. A single line must fit into a window.
+     *
+     * @param windowSize the window size in bytes
+     * @return this importer
+     */
+    public LogImporter setWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be positive!");
+        }
+        this.windowSize = windowSize;
+        return this;
+    }
+
+    /**
+     * Sets a time offset that is added to all timestamps, see {@link LogParser#setTimeOffset(long)}.
+     *
+     * @param nanos the offset in nanoseconds
+     * @return this importer
+     */
+    public LogImporter setTimeOffset(long nanos) {
+        this.timeOffset = nanos;
+        return this;
+    }
+
+    /**
+     * Sets the size of the segments of captures created by this importer.
+     *
+     * @param segmentSize the segment size in bytes
+     * @return this importer
+     */
+    public LogImporter setSegmentSize(long segmentSize) {
+        this.segmentSize = segmentSize;
+        return this;
+    }
+
+    /**
+     * Parses the given log on the calling thread and passes all frames to the visitor in log order.
+     *
+     * @param log the log file
+     * @param visitor the visitor
+     * @return the result of the import
+     * @throws IOException if the log could not be read
+     */
+    public Result importTo(Path log, CaptureVisitor visitor) throws IOException {
+        try (FileChannel ch = FileChannel.open(log, READ)) {
+            LogParser parser = newParser(ch);
+            parse(ch, 0, ch.size(), parser, visitor);
+            return new Result(parser.getFrameCount(), parser.getSkippedLines());
+        }
+    }
+
+    /**
+     * Converts the given log into a capture. The segments continue after the existing segments of a capture with the
+     * same prefix. If the import fails, the segments created by it are deleted again.
+     *
+     * @param log the log file
+     * @param directory the directory of the capture
+     * @param prefix the prefix of the segment file names
+     * @return the result of the import
+     * @throws IOException if the log could not be read or the capture could not be written
+     */
+    public Result importTo(Path log, Path directory, String prefix) throws IOException {
+        Files.createDirectories(directory);
+        final int firstSegment = CaptureWriter.nextFreeSegmentIndex(directory, prefix);
+        try (FileChannel ch = FileChannel.open(log, READ)) {
+            final long[] bounds = split(ch, newParser(ch).isSplittable() ? parallelism : 1);
+            final int parts = bounds.length - 1;
+            if (parts > 1 && (long) firstSegment + (long) parts * SEGMENTS_PER_PART > Integer.MAX_VALUE) {
+                throw new IOException("No segment indexes left for capture " + prefix);
+            }
+            try {
+                if (parts == 1) {
+                    return importPart(ch, bounds[0], bounds[1], directory, prefix, firstSegment);
+                }
+                return importParallel(ch, bounds, directory, prefix, firstSegment);
+            } catch (IOException | RuntimeException e) {
+                deleteSegments(directory, prefix, firstSegment, firstSegment + (long) parts * SEGMENTS_PER_PART, e);
+                throw e;
+            }
+        }
+    }
+
+    private Result importParallel(FileChannel ch, long[] bounds, Path directory, String prefix, int firstSegment)
+            throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new PartTask(ch, bounds, 0, bounds.length - 1, directory, prefix, firstSegment));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+            // after a failure the other parts may still be writing segments
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Deletes the segments of the capture within the given range of segment indexes. Failures are added to the given
+     * exception as suppressed exceptions.
+     */
+    private static void deleteSegments(Path directory, String prefix, long from, long to, Exception failure) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "-*" + CaptureFormat.EXTENSION)) {
+            for (Path file : files) {
+                int index = CaptureFormat.segmentIndexOf(file, prefix);
+                if (index >= from && index < to) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private LogParser newParser(FileChannel ch) throws IOException {
+        LogParser parser = format.newParser();
+        parser.setTimeOffset(timeOffset);
+        parser.prepare(ch.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(HEAD_SIZE, ch.size())));
+        return parser;
+    }
+
+    private Result importPart(FileChannel ch, long start, long end, Path directory, String prefix, int firstSegment)
+            throws IOException {
+        LogParser parser = newParser(ch);
+        try (CaptureWriter writer = new CaptureWriter(directory, prefix, segmentSize, firstSegment)) {
+            final IOException[] error = new IOException[1];
+            parse(ch, start, end, parser, (timestamp, device, frame) -> {
+                try {
+                    writer.write(device, frame, timestamp);
+                    return true;
+                } catch (IOException e) {
+                    error[0] = e;
+                    return false;
+                }
+            });
+            if (error[0] != null) {
+                throw error[0];
+            }
+        }
+        return new Result(parser.getFrameCount(), parser.getSkippedLines());
+    }
+
+    private void parse(FileChannel ch, long start, long end, LogParser parser, CaptureVisitor visitor)
+            throws IOException {
+        long position = start;
+        while (position < end) {
+            final long length = Math.min(windowSize, end - position);
+            final boolean endOfInput = position + length == end;
+            final MappedByteBuffer window = ch.map(FileChannel.MapMode.READ_ONLY, position, length);
+            if (!parser.parse(window, endOfInput, visitor)) {
+                return;
+            }
+            if (window.position() == 0 && !endOfInput) {
+                throw new IOException("A line at offset " + position + " exceeds the window size of " + windowSize + " bytes!");
+            }
+            position += window.position();
+        }
+    }
+
+    /**
+     * Splits the log into parts that start at line boundaries.
+     *
+     * @return the offsets of the parts followed by the end of the log
+     */
+    private static long[] split(FileChannel ch, int parallelism) throws IOException {
+        final long size = ch.size();
+        final int parts = (int) Math.max(1, Math.min(Math.min(MAX_PARTS, (long) parallelism * PARTS_PER_WORKER), size / MIN_PART_SIZE));
+        if (parallelism == 1 || parts == 1) {
+            return new long[]{0, size};
+        }
+        final List<Long> bounds = new ArrayList<>(parts + 1);
+        bounds.add(0L);
+        for (int i = 1; i < parts; i++) {
+            long start = lineStartAfter(ch, size * i / parts);
+            if (start > bounds.get(bounds.size() - 1) && start < size) {
+                bounds.add(start);
+            }
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private static long lineStartAfter(FileChannel ch, long offset) throws IOException {
+        final long size = ch.size();
+        while (offset < size) {
+            final MappedByteBuffer chunk = ch.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(HEAD_SIZE, size - offset));
+            for (int i = 0; i < chunk.limit(); i++) {
+                if (chunk.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += chunk.limit();
+        }
+        return size;
+    }
+
+    private final class PartTask extends RecursiveTask<Result> {
+        private final FileChannel ch;
+        private final long[] bounds;
+        private final int from;
+        private final int to;
+        private final Path directory;
+        private final String prefix;
+        private final int firstSegment;
+
+        PartTask(FileChannel ch, long[] bounds, int from, int to, Path directory, String prefix, int firstSegment) {
+            this.ch = ch;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+            this.directory = directory;
+            this.prefix = prefix;
+            this.firstSegment = firstSegment;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from == 1) {
+                try {
+                    return importPart(ch, bounds[from], bounds[to], directory, prefix, firstSegment + from * SEGMENTS_PER_PART);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            final int middle = (from + to) >>> 1;
+            PartTask left = new PartTask(ch, bounds, from, middle, directory, prefix, firstSegment);
+            PartTask right = new PartTask(ch, bounds, middle, to, directory, prefix, firstSegment);
+            right.fork();
+            Result result = left.compute();
+            return result.plus(right.join());
+        }
+    }
+
+    /**
+     * The result of an import.
+     */
+    public static final class Result {
+        private final long frames;
+        private final long skippedLines;
+
+        Result(long frames, long skippedLines) {
+            this.frames = frames;
+            this.skippedLines = skippedLines;
+        }
+
+        public long getFrameCount() {
+            return frames;
+        }
+
+        /**
+         * Returns the amount of lines that could not be parsed and have been skipped.
+         *
+         * @return the amount of skipped lines
+         */
+        public long getSkippedLines() {
+            return skippedLines;
+        }
+
+        Result plus(Result other) {
+            return new Result(frames + other.frames, skippedLines + other.skippedLines);
+        }
+
+        @Override
+        public String toString() {
+            return "Result(frames=" + frames + ", skippedLines=" + skippedLines + ")";
+        }
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.capture;
+
+import tel.schich.javacan.CanFrameView;
+import tel.schich.javacan.RawCanChannel;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static tel.schich.javacan.CanFrame.HEADER_LENGTH;
+import static tel.schich.javacan.CanFrame.MAX_FD_DATA_LENGTH;
+
+/**
+ * Base class of the parsers for textual CAN logs. Parsers work directly on the bytes of a {@link java.nio.ByteBuffer}
+ * line by line and decode each frame into a reused frame buffer, so parsing does not allocate per line.
+ * <p>
+ * Decoded frames are passed to a {@link tel.schich.javacan.capture.CaptureVisitor} with the same lifetime rules as
+ * frames read from a capture. Lines that cannot be parsed are skipped and counted. Parsers are not thread-safe, but
+ * they are cheap to create, see {@link tel.schich.javacan.capture.LogFormat#newParser()}.
+ * </p>
+ */
+public abstract class LogParser {
+
+    /**
+     * Returned by {@link #parseLine(ByteBuffer, int, int)} if the line contained a frame.
+     */
+    protected static final int FRAME = 0;
+
+    /**
+     * Returned by {@link #parseLine(ByteBuffer, int, int)} if the line carries no frame by design, e.g. a header.
+     */
+    protected static final int IGNORED = 1;
+
+    /**
+     * Returned by {@link #parseLine(ByteBuffer, int, int)} if the line could not be parsed.
+     */
+    protected static final int INVALID = 2;
+
+    private static final byte[] HEX = new byte[128];
+
+    static {
+        Arrays.fill(HEX, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX['a' + i] = (byte) (10 + i);
+            HEX['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private final ByteBuffer frameBuffer = ByteBuffer.allocateDirect(RawCanChannel.FD_MTU).order(ByteOrder.nativeOrder());
+    private final CanFrameView frame = new CanFrameView();
+    private byte[][] deviceKeys = new byte[4][];
+    private String[] deviceNames = new String[4];
+    private int deviceCount;
+
+    private long timeOffset;
+    private long timestamp;
+    private String device;
+    private boolean fdFrame;
+    private long skippedLines;
+    private long frames;
+
+    /**
+     * Gives the parser a chance to read format options from the start of the log before parsing a part of it. This
+     * is used when a log is split into several parts, so every part is parsed with the options of the log.
+     *
+     * @param head the start of the log between position and limit, which is not changed
+     */
+    public void prepare(ByteBuffer head) {
+    }
+
+    /**
+     * Checks whether parts of a log can be parsed independently after {@link #prepare(ByteBuffer)}, which is not the
+     * case if lines depend on the lines before them.
+     *
+     * @return true if the log can be split at any line
+     */
+    public boolean isSplittable() {
+        return true;
+    }
+
+    /**
+     * Sets a time offset that is added to all timestamps of the log, e.g. to turn timestamps relative to the start
+     * of a measurement into timestamps since the epoch.
+     *
+     * @param nanos the offset in nanoseconds
+     */
+    public void setTimeOffset(long nanos) {
+        this.timeOffset = nanos;
+    }
+
+    public long getTimeOffset() {
+        return timeOffset;
+    }
+
+    /**
+     * Parses the complete lines between the position and the limit of the given buffer. Afterwards the position
+     * points to the first byte that has not been consumed, which is the start of an incomplete last line or the
+     * limit.
+     *
+     * @param buffer the buffer
+     * @param endOfInput whether the limit is the end of the log, in which case a final line without a line break is
+     *                   parsed as well
+     * @param visitor the visitor to pass the frames to
+     * @return false if the visitor ended the parsing
+     */
+    public boolean parse(ByteBuffer buffer, boolean endOfInput, CaptureVisitor visitor) {
+        final int limit = buffer.limit();
+        int start = buffer.position();
+        while (start < limit) {
+            int end = start;
+            while (end < limit && buffer.get(end) != '\n') {
+                end++;
+            }
+            if (end == limit && !endOfInput) {
+                break;
+            }
+            final int next = end + 1;
+            if (end > start && buffer.get(end - 1) == '\r') {
+                end--;
+            }
+            final int result = end > start ? parseLine(buffer, start, end) : IGNORED;
+            start = Math.min(next, limit);
+            if (result == FRAME) {
+                frames++;
+                frame.wrap(frameBuffer, 0, fdFrame ? RawCanChannel.FD_MTU : RawCanChannel.MTU);
+                boolean proceed = visitor.visit(timeOffset + timestamp, device, frame);
+                frameBuffer.clear();
+                if (!proceed) {
+                    buffer.position(start);
+                    return false;
+                }
+            } else if (result == INVALID) {
+                skippedLines++;
+            }
+        }
+        buffer.position(start);
+        return true;
+    }
+
+    /**
+     * Parses a single line without its line break.
+     *
+     * @param buffer the buffer containing the line
+     * @param start the offset of the first byte of the line
+     * @param end the offset after the last byte of the line
+     * @return {@link #FRAME} after the frame has been stored using {@link #setFrame(long, String, int, byte, int, boolean)}
+     *         and {@link #setData(int, byte)}, otherwise {@link #IGNORED} or {@link #INVALID}
+     */
+    protected abstract int parseLine(ByteBuffer buffer, int start, int end);
+
+    /**
+     * Returns the amount of lines that could not be parsed.
+     *
+     * @return the amount of skipped lines
+     */
+    public long getSkippedLines() {
+        return skippedLines;
+    }
+
+    /**
+     * Returns the amount of frames that have been parsed.
+     *
+     * @return the amount of frames
+     */
+    public long getFrameCount() {
+        return frames;
+    }
+
+    /**
+     * Stores the header of the frame of the current line and clears its data.
+     *
+     * @param timestamp the timestamp in nanoseconds since the epoch
+     * @param device the device name
+     * @param rawId the CAN ID as the kernel represents it including the flags
+     * @param flags the CAN FD flags
+     * @param length the data length
+     * @param fd whether this is an FD frame
+     */
+    protected final void setFrame(long timestamp, String device, int rawId, byte flags, int length, boolean fd) {
+        this.timestamp = timestamp;
+        this.device = device;
+        this.fdFrame = fd;
+        frameBuffer.putInt(0, rawId)
+                .put(4, (byte) length)
+                .put(5, flags)
+                .put(6, (byte) 0)
+                .put(7, (byte) 0);
+        for (int i = HEADER_LENGTH; i < HEADER_LENGTH + MAX_FD_DATA_LENGTH; i += Long.BYTES) {
+            frameBuffer.putLong(i, 0);
+        }
+    }
+
+    /**
+     * Updates the data length of the frame of the current line, if it is only known after the data has been parsed.
+     *
+     * @param length the data length
+     */
+    protected final void setLength(int length) {
+        frameBuffer.put(4, (byte) length);
+    }
+
+    /**
+     * Stores a data byte of the frame of the current line.
+     *
+     * @param index the index of the byte in the frame data
+     * @param value the value
+     */
+    protected final void setData(int index, byte value) {
+        frameBuffer.put(HEADER_LENGTH + index, value);
+    }
+
+    /**
+     * Returns the value of a hexadecimal digit.
+     *
+     * @param c the character
+     * @return the value or -1 if the character is no hexadecimal digit
+     */
+    protected static int hexValue(byte c) {
+        return c >= 0 ? HEX[c] : -1;
+    }
+
+    /**
+     * Skips spaces and tabs.
+     *
+     * @param buffer the buffer
+     * @param offset the offset to start at
+     * @param end the end of the line
+     * @return the offset of the first other character or the end of the line
+     */
+    protected static int skipBlanks(ByteBuffer buffer, int offset, int end) {
+        while (offset < end) {
+            byte c = buffer.get(offset);
+            if (c != ' ' && c != '\t') {
+                break;
+            }
+            offset++;
+        }
+        return offset;
+    }
+
+    /**
+     * Finds the end of a token.
+     *
+     * @param buffer the buffer
+     * @param offset the start of the token
+     * @param end the end of the line
+     * @return the offset of the first space or tab after the token or the end of the line
+     */
+    protected static int tokenEnd(ByteBuffer buffer, int offset, int end) {
+        while (offset < end) {
+            byte c = buffer.get(offset);
+            if (c == ' ' || c == '\t') {
+                break;
+            }
+            offset++;
+        }
+        return offset;
+    }
+
+    /**
+     * Parses a decimal number of seconds with an optional fraction into nanoseconds.
+     *
+     * @param buffer the buffer
+     * @param start the start of the number
+     * @param end the end of the number
+     * @return the nanoseconds or -1 if the number is invalid
+     */
+    protected static long parseSeconds(ByteBuffer buffer, int start, int end) {
+        long seconds = 0;
+        long nanos = 0;
+        long scale = 100_000_000;
+        boolean fraction = false;
+        if (start == end) {
+            return -1;
+        }
+        for (int i = start; i < end; i++) {
+            byte c = buffer.get(i);
+            if (c == '.' && !fraction) {
+                fraction = true;
+            } else if (c >= '0' && c <= '9') {
+                if (fraction) {
+                    nanos += (c - '0') * scale;
+                    scale /= 10;
+                } else {
+                    seconds = seconds * 10 + (c - '0');
+                }
+            } else {
+                return -1;
+            }
+        }
+        return seconds * 1_000_000_000L + nanos;
+    }
+
+    /**
+     * Returns the device name for the given bytes, names are only decoded the first time they are encountered.
+     *
+     * @param buffer the buffer
+     * @param start the start of the name
+     * @param end the end of the name
+     * @return the name
+     */
+    protected final String device(ByteBuffer buffer, int start, int end) {
+        String name = findDevice(buffer, start, end);
+        if (name == null) {
+            byte[] key = copy(buffer, start, end);
+            name = device(key, new String(key, StandardCharsets.UTF_8));
+        }
+        return name;
+    }
+
+    /**
+     * Looks up a device that has been registered before.
+     *
+     * @param buffer the buffer
+     * @param start the start of the bytes identifying the device
+     * @param end the end of the bytes identifying the device
+     * @return the name or null if the device is unknown
+     */
+    protected final String findDevice(ByteBuffer buffer, int start, int end) {
+        final int length = end - start;
+        outer:
+        for (int i = 0; i < deviceCount; i++) {
+            byte[] key = deviceKeys[i];
+            if (key.length != length) {
+                continue;
+            }
+            for (int j = 0; j < length; j++) {
+                if (key[j] != buffer.get(start + j)) {
+                    continue outer;
+                }
+            }
+            return deviceNames[i];
+        }
+        return null;
+    }
+
+    /**
+     * Copies a range of the buffer.
+     *
+     * @param buffer the buffer
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return the bytes
+     */
+    protected static byte[] copy(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int j = 0; j < bytes.length; j++) {
+            bytes[j] = buffer.get(start + j);
+        }
+        return bytes;
+    }
+
+    /**
+     * Registers a device name that does not appear literally in the log.
+     *
+     * @param key the bytes identifying the device in the log
+     * @param name the device name
+     * @return the name
+     */
+    protected final String device(byte[] key, String name) {
+        if (deviceCount == deviceKeys.length) {
+            deviceKeys = Arrays.copyOf(deviceKeys, deviceCount * 2);
+            deviceNames = Arrays.copyOf(deviceNames, deviceCount * 2);
+        }
+        deviceKeys[deviceCount] = key;
+        deviceNames[deviceCount] = name;
+        deviceCount++;
+        return name;
+    }
+}
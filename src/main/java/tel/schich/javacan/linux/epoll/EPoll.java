@@ -33,6 +33,9 @@ class EPoll {
 
     public static final int EPOLLIN = 0x001;
     public static final int EPOLLOUT = 0x004;
+    public static final int EPOLLEXCLUSIVE = 1 << 28;
+    public static final int EPOLLONESHOT = 1 << 30;
+    public static final int EPOLLET = 1 << 31;
 
     public static native int create();
 
@@ -0,0 +1,43 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.linux.epoll;
+
+import java.io.IOException;
+
+import tel.schich.javacan.select.NativeChannel;
+
+/**
+ * Event handlers are called by an {@link tel.schich.javacan.linux.epoll.EPollEventLoop} for each IO event of the
+ * {@link tel.schich.javacan.select.NativeChannel} they have been registered with.
+ */
+@FunctionalInterface
+public interface EPollEventHandler {
+    /**
+     * Handles IO events of a channel.
+     *
+     * @param ch the channel that is ready
+     * @param readyOps the ready operations using the constants of {@link java.nio.channels.SelectionKey}
+     * @throws IOException if the handler has IO failures
+     */
+    void handle(NativeChannel ch, int readyOps) throws IOException;
+}
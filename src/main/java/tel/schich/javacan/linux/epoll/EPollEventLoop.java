@@ -0,0 +1,358 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.linux.epoll;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.IllegalSelectorException;
+import java.util.Arrays;
+
+import tel.schich.javacan.linux.LinuxNativeOperationException;
+import tel.schich.javacan.linux.UnixFileDescriptor;
+import tel.schich.javacan.metrics.PollMetrics;
+import tel.schich.javacan.select.NativeChannel;
+import tel.schich.javacan.select.NativeHandle;
+
+/**
+ * This class is a low level alternative to {@link tel.schich.javacan.linux.epoll.EPollSelector}. Instead of
+ * maintaining {@link java.nio.channels.SelectionKey} sets as required by the {@link java.nio.channels.Selector} API,
+ * it directly invokes the {@link tel.schich.javacan.linux.epoll.EPollEventHandler} that has been registered together
+ * with a channel for each event returned by epoll. Handlers are looked up in a table indexed by file descriptor, so
+ * polling does not allocate.
+ * <p>
+ * Handlers are invoked on the thread calling {@link #poll(long)}, which should only be called by one thread at a time.
+ * Registrations can be changed from any thread, including from within handlers.
+ */
+public class EPollEventLoop implements Closeable {
+
+    private static final int INITIAL_FD_TABLE_SIZE = 64;
+
+    private final int epollfd;
+    private final long eventsPointer;
+    private final int maxEvents;
+    private final int eventfd;
+
+    private final int[] readyEvents;
+    private final int[] readyFds;
+    private final Object pollLock = new Object();
+
+    private Registration[] registrations = new Registration[INITIAL_FD_TABLE_SIZE];
+    private int registrationCount = 0;
+    private final Object registrationLock = new Object();
+
+    private volatile boolean open = true;
+    private volatile long lastWakeupNanos;
+    private volatile PollMetrics metrics;
+
+    public EPollEventLoop() throws LinuxNativeOperationException {
+        this(100);
+    }
+
+    public EPollEventLoop(int maxEvents) throws LinuxNativeOperationException {
+        this.epollfd = EPoll.create();
+        this.maxEvents = maxEvents;
+        this.eventsPointer = EPoll.newEvents(maxEvents);
+
+        this.eventfd = EPoll.createEventfd(false);
+        EPoll.addFileDescriptor(epollfd, eventfd, EPoll.EPOLLIN);
+
+        this.readyEvents = new int[maxEvents];
+        this.readyFds = new int[maxEvents];
+    }
+
+    private void ensureOpen() {
+        if (!open) {
+            throw new ClosedSelectorException();
+        }
+    }
+
+    private static int fdOf(NativeChannel ch) {
+        final NativeHandle nativeHandle = ch.getHandle();
+        if (!(nativeHandle instanceof UnixFileDescriptor)) {
+            throw new IllegalSelectorException();
+        }
+        return ((UnixFileDescriptor) nativeHandle).getFD();
+    }
+
+    /**
+     * Registers a channel with its handler.
+     *
+     * @param ch the channel to register
+     * @param ops the interested ops using the constants of {@link java.nio.channels.SelectionKey}
+     * @param handler the handler to call for events of the channel
+     * @throws IOException if the native calls fail
+     */
+    public void register(NativeChannel ch, int ops, EPollEventHandler handler) throws IOException {
+        register(ch, ops, 0, handler);
+    }
+
+    /**
+     * Registers a channel with its handler and additional epoll flags.
+     *
+     * @param ch the channel to register
+     * @param ops the interested ops using the constants of {@link java.nio.channels.SelectionKey}
+     * @param flags a combination of {@link EPollSelector#EDGE_TRIGGERED}, {@link EPollSelector#ONE_SHOT} and
+     *              {@link EPollSelector#EXCLUSIVE}
+     * @param handler the handler to call for events of the channel
+     * @throws IOException if the native calls fail
+     */
+    public void register(NativeChannel ch, int ops, int flags, EPollEventHandler handler) throws IOException {
+        ensureOpen();
+        EPollSelector.checkFlags(flags);
+        if (handler == null) {
+            throw new NullPointerException("handler must not be null!");
+        }
+        final int fd = fdOf(ch);
+        synchronized (registrationLock) {
+            if (fd < registrations.length && registrations[fd] != null) {
+                throw new IllegalArgumentException("Channel already registered!");
+            }
+            EPoll.addFileDescriptor(epollfd, fd, EPollSelector.translateInterestsToEPoll(ops) | flags);
+            if (fd >= registrations.length) {
+                registrations = Arrays.copyOf(registrations, Math.max(registrations.length * 2, fd + 1));
+            }
+            registrations[fd] = new Registration(ch, handler, flags);
+            registrationCount++;
+        }
+    }
+
+    /**
+     * Changes the interested ops of a registered channel. This also re-arms channels registered in
+     * {@link EPollSelector#ONE_SHOT} mode.
+     *
+     * @param ch the registered channel
+     * @param ops the interested ops using the constants of {@link java.nio.channels.SelectionKey}
+     * @throws IOException if the native calls fail
+     */
+    public void updateOps(NativeChannel ch, int ops) throws IOException {
+        ensureOpen();
+        final int fd = fdOf(ch);
+        synchronized (registrationLock) {
+            Registration registration = lookup(fd);
+            if (registration == null) {
+                throw new IllegalArgumentException("Channel not registered!");
+            }
+            int interests = EPollSelector.translateInterestsToEPoll(ops) | registration.flags;
+            if ((registration.flags & EPollSelector.EXCLUSIVE) != 0) {
+                // epoll does not allow modifying exclusive registrations, so they have to be replaced
+                EPoll.removeFileDescriptor(epollfd, fd);
+                EPoll.addFileDescriptor(epollfd, fd, interests);
+            } else {
+                EPoll.updateFileDescriptor(epollfd, fd, interests);
+            }
+        }
+    }
+
+    /**
+     * Removes the registration of the given channel. This must happen before the channel is closed.
+     *
+     * @param ch the registered channel
+     * @throws IOException if the native calls fail
+     */
+    public void unregister(NativeChannel ch) throws IOException {
+        ensureOpen();
+        final int fd = fdOf(ch);
+        synchronized (registrationLock) {
+            if (lookup(fd) == null) {
+                throw new IllegalArgumentException("Channel not registered!");
+            }
+            registrations[fd] = null;
+            registrationCount--;
+            EPoll.removeFileDescriptor(epollfd, fd);
+        }
+    }
+
+    /**
+     * Checks if the given channel is registered.
+     *
+     * @param ch the channel
+     * @return true if the channel is registered
+     */
+    public boolean isRegistered(NativeChannel ch) {
+        final int fd = fdOf(ch);
+        synchronized (registrationLock) {
+            Registration registration = lookup(fd);
+            return registration != null && registration.channel == ch;
+        }
+    }
+
+    /**
+     * Checks if any channels are registered.
+     *
+     * @return true only if no channels are registered
+     */
+    public boolean isEmpty() {
+        synchronized (registrationLock) {
+            return registrationCount == 0;
+        }
+    }
+
+    private Registration lookup(int fd) {
+        if (fd < 0 || fd >= registrations.length) {
+            return null;
+        }
+        return registrations[fd];
+    }
+
+    /**
+     * Waits for IO events and invokes the handlers of all ready channels.
+     *
+     * @param timeout the timeout in milliseconds, 0 to return immediately and -1 to block indefinitely
+     * @return the amount of events that have been handled
+     * @throws IOException if the native calls fail or a handler failed
+     */
+    public int poll(long timeout) throws IOException {
+        synchronized (pollLock) {
+            ensureOpen();
+            int n = EPoll.poll(epollfd, eventsPointer, maxEvents, timeout);
+            lastWakeupNanos = System.nanoTime();
+            final PollMetrics metrics = this.metrics;
+            if (metrics != null) {
+                metrics.recordWakeup(n);
+            }
+            if (EPoll.extractEvents(eventsPointer, n, readyEvents, readyFds) != 0) {
+                throw new LinuxNativeOperationException("Unable to extract events");
+            }
+
+            int handled = 0;
+            for (int i = 0; i < n; ++i) {
+                final int fd = readyFds[i];
+                if (fd == eventfd) {
+                    EPoll.clearEvent(eventfd);
+                    continue;
+                }
+                final Registration registration;
+                synchronized (registrationLock) {
+                    registration = lookup(fd);
+                }
+                // the channel might have been unregistered by a previous handler
+                if (registration != null) {
+                    registration.handler.handle(registration.channel, EPollSelector.translateInterestsFromEPoll(readyEvents[i]));
+                    handled++;
+                }
+            }
+            return handled;
+        }
+    }
+
+    /**
+     * Sets the {@link tel.schich.javacan.metrics.PollMetrics} recording the wakeups of this event loop.
+     *
+     * @param metrics the metrics or null to disable recording
+     */
+    public void setMetrics(PollMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the {@link tel.schich.javacan.metrics.PollMetrics} recording the wakeups of this event loop.
+     *
+     * @return the metrics or null if none are recorded
+     */
+    public PollMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the time at which the last {@link #poll(long)} call returned from epoll, as given by
+     * {@link System#nanoTime()}. Handlers can use this to measure their dispatch latency.
+     *
+     * @return the time of the last wakeup
+     */
+    public long getLastWakeupNanos() {
+        return lastWakeupNanos;
+    }
+
+    /**
+     * Interrupts a blocking {@link #poll(long)} call.
+     *
+     * @throws IOException if the native calls fail
+     */
+    public void wakeup() throws IOException {
+        ensureOpen();
+        EPoll.signalEvent(eventfd, 1);
+    }
+
+    /**
+     * Checks if this event loop is still open.
+     *
+     * @return true if the event loop is open
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (registrationLock) {
+            if (!open) {
+                return;
+            }
+            open = false;
+            Arrays.fill(registrations, null);
+            registrationCount = 0;
+        }
+        IOException e = null;
+        try {
+            // interrupt a concurrent poll, so that the native resources are no longer in use
+            EPoll.signalEvent(eventfd, 1);
+        } catch (LinuxNativeOperationException ex) {
+            e = ex;
+        }
+        synchronized (pollLock) {
+            EPoll.freeEvents(eventsPointer);
+            try {
+                EPoll.close(epollfd);
+            } catch (LinuxNativeOperationException ex) {
+                if (e != null) {
+                    ex.addSuppressed(e);
+                }
+                e = ex;
+            }
+            try {
+                EPoll.close(eventfd);
+            } catch (LinuxNativeOperationException eventfdClose) {
+                if (e != null) {
+                    eventfdClose.addSuppressed(e);
+                }
+                e = eventfdClose;
+            }
+        }
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    private static final class Registration {
+        final NativeChannel channel;
+        final EPollEventHandler handler;
+        final int flags;
+
+        Registration(NativeChannel channel, EPollEventHandler handler, int flags) {
+            this.channel = channel;
+            this.handler = handler;
+            this.flags = flags;
+        }
+    }
+}
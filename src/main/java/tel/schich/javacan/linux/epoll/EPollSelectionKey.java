@@ -38,6 +38,7 @@ public class EPollSelectionKey extends AbstractSelectionKey {
     private final int fd;
     private volatile int interestOps;
     private volatile int readyOps;
+    private volatile int flags;
 
     /**
      * Creates a new selection key given an {@link EPollSelector},
@@ -49,11 +50,27 @@ public class EPollSelectionKey extends AbstractSelectionKey {
      * @param interestOps the interested ops
      */
     public EPollSelectionKey(EPollSelector selector, SelectableChannel channel, int fd, int interestOps) {
+        this(selector, channel, fd, interestOps, 0);
+    }
+
+    /**
+     * Creates a new selection key given an {@link EPollSelector},
+     * a {@link java.nio.channels.SelectableChannel}, the underlying socket file descriptor, the interested ops and
+     * the epoll flags it has been registered with.
+     *
+     * @param selector    the selector
+     * @param channel     the channel
+     * @param fd          the underlying socket file descriptor
+     * @param interestOps the interested ops
+     * @param flags       the registration flags as defined by {@link EPollSelector}
+     */
+    public EPollSelectionKey(EPollSelector selector, SelectableChannel channel, int fd, int interestOps, int flags) {
         this.selector = selector;
         this.channel = channel;
         this.fd = fd;
         this.interestOps = interestOps;
         this.readyOps = 0;
+        this.flags = flags;
     }
 
     /**
@@ -83,7 +100,7 @@ public class EPollSelectionKey extends AbstractSelectionKey {
     @Override
     public synchronized SelectionKey interestOps(int ops) {
         try {
-            selector.updateOps(this, ops);
+            selector.updateOps(this, ops, flags);
             interestOps = ops;
         } catch (IOException e) {
             throw new RuntimeException("Interest change could not be propagated to the kernel!", e);
@@ -91,6 +108,34 @@ public class EPollSelectionKey extends AbstractSelectionKey {
         return this;
     }
 
+    /**
+     * Returns the epoll flags of this key.
+     *
+     * @return a combination of {@link EPollSelector#EDGE_TRIGGERED}, {@link EPollSelector#ONE_SHOT} and
+     *         {@link EPollSelector#EXCLUSIVE}
+     */
+    public int flags() {
+        return flags;
+    }
+
+    /**
+     * Changes the epoll flags of this key. This also re-arms keys in {@link EPollSelector#ONE_SHOT} mode.
+     *
+     * @param flags a combination of {@link EPollSelector#EDGE_TRIGGERED}, {@link EPollSelector#ONE_SHOT} and
+     *              {@link EPollSelector#EXCLUSIVE}
+     * @return fluent interface
+     */
+    public synchronized EPollSelectionKey flags(int flags) {
+        EPollSelector.checkFlags(flags);
+        try {
+            selector.updateOps(this, interestOps, flags);
+            this.flags = flags;
+        } catch (IOException e) {
+            throw new RuntimeException("Flag change could not be propagated to the kernel!", e);
+        }
+        return this;
+    }
+
     @Override
     public int readyOps() {
         return readyOps;
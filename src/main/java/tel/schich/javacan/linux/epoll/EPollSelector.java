@@ -24,6 +24,7 @@ package tel.schich.javacan.linux.epoll;
 
 import tel.schich.javacan.linux.LinuxNativeOperationException;
 import tel.schich.javacan.linux.UnixFileDescriptor;
+import tel.schich.javacan.metrics.PollMetrics;
 import tel.schich.javacan.select.NativeChannel;
 import tel.schich.javacan.select.NativeHandle;
 import tel.schich.javacan.util.UngrowableSet;
@@ -50,10 +51,36 @@ import static java.util.Collections.unmodifiableSet;
  * {@link java.nio.channels.Channel} implementations as Java's selector is requires the channels to implement non-public
  * interface to expose the underlying file descriptor.
  * <p>
- * This implementation does not expose any more public APIs.
+ * Beyond the {@link java.nio.channels.Selector} API this implementation allows registering file descriptors with
+ * additional epoll flags: {@link #EDGE_TRIGGERED}, {@link #ONE_SHOT} and {@link #EXCLUSIVE}. Default flags for all
+ * registrations can be given to the constructor and flags of individual keys can be changed using
+ * {@link tel.schich.javacan.linux.epoll.EPollSelectionKey#flags(int)}.
  */
 public class EPollSelector extends AbstractSelector {
 
+    /**
+     * Registers file descriptors in edge-triggered mode: a key is only selected when new data arrives, so the channel
+     * has to be read until it would block before selecting again.
+     */
+    public static final int EDGE_TRIGGERED = EPoll.EPOLLET;
+
+    /**
+     * Registers file descriptors in one-shot mode: after a key has been selected once, it is disabled until it is
+     * re-armed by setting its interest ops using {@link java.nio.channels.SelectionKey#interestOps(int)}.
+     */
+    public static final int ONE_SHOT = EPoll.EPOLLONESHOT;
+
+    /**
+     * Registers file descriptors in exclusive mode: if the same file descriptor is registered with several selectors
+     * in exclusive mode, only one or some of them are woken up per event instead of all of them. This flag can not be
+     * combined with {@link #ONE_SHOT}.
+     */
+    public static final int EXCLUSIVE = EPoll.EPOLLEXCLUSIVE;
+
+    private static final int ALL_FLAGS = EDGE_TRIGGERED | ONE_SHOT | EXCLUSIVE;
+
+    private static final int INITIAL_FD_TABLE_SIZE = 64;
+
     private static final long SELECT_NO_BLOCKING = 0;
     private static final long SELECT_BLOCK_INDEFINITELY = -1;
 
@@ -61,11 +88,16 @@ public class EPollSelector extends AbstractSelector {
     private final long eventsPointer;
     private final int maxEvents;
     private final int eventfd;
+    private final int registrationFlags;
 
     private final Set<SelectionKey> keys;
     private final Set<SelectionKey> selectionKeys;
-    private final Map<Integer, EPollSelectionKey> fdToKey;
+    private EPollSelectionKey[] fdToKey;
+    private final int[] readyEvents;
+    private final int[] readyFds;
+    private final Object pollLock = new Object();
     private final Object keyCollectionsLock = new Object();
+    private volatile PollMetrics metrics;
 
     private final Set<SelectionKey> publicKeys;
     private final Set<SelectionKey> publicSelectionKeys;
@@ -75,8 +107,22 @@ public class EPollSelector extends AbstractSelector {
     }
 
     public EPollSelector(SelectorProvider provider, int maxEvents) throws LinuxNativeOperationException {
+        this(provider, maxEvents, 0);
+    }
+
+    /**
+     * Creates a new selector that applies the given flags to all registrations.
+     *
+     * @param provider the selector provider
+     * @param maxEvents the maximum amount of events per select call
+     * @param registrationFlags a combination of {@link #EDGE_TRIGGERED}, {@link #ONE_SHOT} and {@link #EXCLUSIVE}
+     * @throws LinuxNativeOperationException if the native calls fail
+     */
+    public EPollSelector(SelectorProvider provider, int maxEvents, int registrationFlags) throws LinuxNativeOperationException {
         super(provider);
+        checkFlags(registrationFlags);
 
+        this.registrationFlags = registrationFlags;
         this.epollfd = EPoll.create();
         this.maxEvents = maxEvents;
         this.eventsPointer = EPoll.newEvents(maxEvents);
@@ -86,7 +132,9 @@ public class EPollSelector extends AbstractSelector {
 
         this.keys = newSetFromMap(new IdentityHashMap<>());
         this.selectionKeys = newSetFromMap(new IdentityHashMap<>());
-        this.fdToKey = new HashMap<>();
+        this.fdToKey = new EPollSelectionKey[INITIAL_FD_TABLE_SIZE];
+        this.readyEvents = new int[maxEvents];
+        this.readyFds = new int[maxEvents];
 
         this.publicKeys = unmodifiableSet(this.keys);
         this.publicSelectionKeys = new UngrowableSet<>(this.selectionKeys);
@@ -119,8 +167,35 @@ public class EPollSelector extends AbstractSelector {
             throw new ClosedSelectorException();
     }
 
-    void updateOps(EPollSelectionKey key, int ops) throws IOException {
-        EPoll.updateFileDescriptor(epollfd, key.getFd(), ops);
+    /**
+     * Returns the flags that are applied to all registrations of this selector.
+     *
+     * @return the registration flags
+     */
+    public int getRegistrationFlags() {
+        return registrationFlags;
+    }
+
+    static void checkFlags(int flags) {
+        if ((flags & ~ALL_FLAGS) != 0) {
+            throw new IllegalArgumentException("Unknown registration flags: " + Integer.toHexString(flags & ~ALL_FLAGS));
+        }
+        if ((flags & EXCLUSIVE) != 0 && (flags & ONE_SHOT) != 0) {
+            throw new IllegalArgumentException("EXCLUSIVE can not be combined with ONE_SHOT!");
+        }
+    }
+
+    void updateOps(EPollSelectionKey key, int ops, int flags) throws IOException {
+        final int interests = translateInterestsToEPoll(ops) | flags;
+        if ((key.flags() & EXCLUSIVE) != 0 || (flags & EXCLUSIVE) != 0) {
+            // epoll does not allow modifying exclusive registrations, so they have to be replaced
+            synchronized (keyCollectionsLock) {
+                EPoll.removeFileDescriptor(epollfd, key.getFd());
+                EPoll.addFileDescriptor(epollfd, key.getFd(), interests);
+            }
+        } else {
+            EPoll.updateFileDescriptor(epollfd, key.getFd(), interests);
+        }
     }
 
     @Override
@@ -136,21 +211,24 @@ public class EPollSelector extends AbstractSelector {
         int socket = ((UnixFileDescriptor) nativeHandle).getFD();
 
         try {
-            EPoll.addFileDescriptor(epollfd, socket, translateInterestsToEPoll(ops));
+            EPoll.addFileDescriptor(epollfd, socket, translateInterestsToEPoll(ops) | registrationFlags);
         } catch (LinuxNativeOperationException ex) {
             throw new RuntimeException(ex);
         }
 
-        EPollSelectionKey key = new EPollSelectionKey(this, ch, socket, ops);
+        EPollSelectionKey key = new EPollSelectionKey(this, ch, socket, ops, registrationFlags);
         key.attach(att);
         synchronized (keyCollectionsLock) {
             this.keys.add(key);
-            this.fdToKey.put(socket, key);
+            if (socket >= fdToKey.length) {
+                fdToKey = Arrays.copyOf(fdToKey, Math.max(fdToKey.length * 2, socket + 1));
+            }
+            this.fdToKey[socket] = key;
         }
         return key;
     }
 
-    private static int translateInterestsToEPoll(int ops) {
+    static int translateInterestsToEPoll(int ops) {
         int newOps = 0;
         if ((ops & SelectionKey.OP_READ) != 0)
             newOps |= EPoll.EPOLLIN;
@@ -163,7 +241,7 @@ public class EPollSelector extends AbstractSelector {
         return newOps;
     }
 
-    private static int translateInterestsFromEPoll(int ops) {
+    static int translateInterestsFromEPoll(int ops) {
         int newOps = 0;
         if ((ops & EPoll.EPOLLIN) != 0)
             newOps |= SelectionKey.OP_READ;
@@ -187,7 +265,9 @@ public class EPollSelector extends AbstractSelector {
 
     private void deregisterKey(EPollSelectionKey key) throws IOException {
         synchronized (keyCollectionsLock) {
-            fdToKey.remove(key.getFd());
+            if (fdToKey[key.getFd()] == key) {
+                fdToKey[key.getFd()] = null;
+            }
             keys.remove(key);
             deregister(key);
             EPoll.removeFileDescriptor(epollfd, key.getFd());
@@ -215,47 +295,71 @@ public class EPollSelector extends AbstractSelector {
         }
     }
 
+    /**
+     * Sets the {@link tel.schich.javacan.metrics.PollMetrics} recording the wakeups of this selector.
+     *
+     * @param metrics the metrics or null to disable recording
+     */
+    public void setMetrics(PollMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the {@link tel.schich.javacan.metrics.PollMetrics} recording the wakeups of this selector.
+     *
+     * @return the metrics or null if none are recorded
+     */
+    public PollMetrics getMetrics() {
+        return metrics;
+    }
+
     private int poll(long timeout) throws IOException {
         ensureOpen();
 
         processDeregisterQueue();
 
-        int n;
-        begin();
-        try {
-            n = EPoll.poll(epollfd, eventsPointer, maxEvents, timeout);
-        } finally {
-            end();
-        }
+        // the event arrays are preallocated and shared, so concurrent selects have to be serialized
+        synchronized (pollLock) {
+            int n;
+            begin();
+            try {
+                n = EPoll.poll(epollfd, eventsPointer, maxEvents, timeout);
+            } finally {
+                end();
+            }
+            final PollMetrics metrics = this.metrics;
+            if (metrics != null) {
+                metrics.recordWakeup(n);
+            }
 
-        int[] events = new int[n];
-        int[] fds = new int[n];
-        if (EPoll.extractEvents(eventsPointer, n, events, fds) != 0) {
-            throw new LinuxNativeOperationException("Unable to extract events");
-        }
+            if (EPoll.extractEvents(eventsPointer, n, readyEvents, readyFds) != 0) {
+                throw new LinuxNativeOperationException("Unable to extract events");
+            }
 
-        synchronized (keyCollectionsLock) {
-            int fd;
-            for (int i = 0; i < n; ++i) {
-                fd = fds[i];
-                if (fd == eventfd) {
-                    EPoll.clearEvent(eventfd);
-                } else {
-                    EPollSelectionKey key = fdToKey.get(fd);
-                    if (key != null) {
-                        int ops = translateInterestsFromEPoll(events[i]);
-                        boolean added = selectionKeys.add(key);
-                        if (added) {
-                            key.setReadyOps(ops);
-                        } else {
-                            key.mergeReadyOps(ops);
+            synchronized (keyCollectionsLock) {
+                final EPollSelectionKey[] table = fdToKey;
+                int fd;
+                for (int i = 0; i < n; ++i) {
+                    fd = readyFds[i];
+                    if (fd == eventfd) {
+                        EPoll.clearEvent(eventfd);
+                    } else if (fd >= 0 && fd < table.length) {
+                        EPollSelectionKey key = table[fd];
+                        if (key != null) {
+                            int ops = translateInterestsFromEPoll(readyEvents[i]);
+                            boolean added = selectionKeys.add(key);
+                            if (added) {
+                                key.setReadyOps(ops);
+                            } else {
+                                key.mergeReadyOps(ops);
+                            }
                         }
                     }
                 }
             }
-        }
 
-        return n;
+            return n;
+        }
     }
 
     @Override
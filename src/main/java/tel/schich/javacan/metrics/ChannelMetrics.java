@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.metrics;
+
+/**
+ * This class holds the metrics of CAN channels, see
+ * {@link tel.schich.javacan.AbstractCanChannel#setMetrics(ChannelMetrics)}. A single instance can be shared by
+ * several channels to aggregate their metrics. For ISOTP channels a frame is a complete ISOTP message.
+ */
+public final class ChannelMetrics {
+
+    private final Counter framesRead;
+    private final Counter bytesRead;
+    private final Counter framesWritten;
+    private final Counter bytesWritten;
+    private final Counter syscalls;
+    private final Counter exceptions;
+
+    /**
+     * Creates the channel metrics in the given registry.
+     *
+     * @param registry the registry
+     * @param prefix the prefix of the metric names, e.g. {@code "can0"}
+     */
+    public ChannelMetrics(MetricsRegistry registry, String prefix) {
+        this.framesRead = registry.counter(prefix + ".frames.read");
+        this.bytesRead = registry.counter(prefix + ".bytes.read");
+        this.framesWritten = registry.counter(prefix + ".frames.written");
+        this.bytesWritten = registry.counter(prefix + ".bytes.written");
+        this.syscalls = registry.counter(prefix + ".syscalls");
+        this.exceptions = registry.counter(prefix + ".exceptions");
+    }
+
+    public void recordRead(long frames, long bytes) {
+        framesRead.add(frames);
+        bytesRead.add(bytes);
+    }
+
+    public void recordWrite(long frames, long bytes) {
+        framesWritten.add(frames);
+        bytesWritten.add(bytes);
+    }
+
+    public void recordSyscall() {
+        syscalls.increment();
+    }
+
+    public void recordException() {
+        exceptions.increment();
+    }
+
+    public Counter getFramesRead() {
+        return framesRead;
+    }
+
+    public Counter getBytesRead() {
+        return bytesRead;
+    }
+
+    public Counter getFramesWritten() {
+        return framesWritten;
+    }
+
+    public Counter getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public Counter getSyscalls() {
+        return syscalls;
+    }
+
+    /**
+     * Returns the amount of failed system calls. A non-blocking operation that would have blocked is not counted.
+     *
+     * @return the exception counter
+     */
+    public Counter getExceptions() {
+        return exceptions;
+    }
+}
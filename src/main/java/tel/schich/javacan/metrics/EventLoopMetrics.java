@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.metrics;
+
+import tel.schich.javacan.util.LatencyHistogram;
+
+/**
+ * This class holds the metrics of {@link tel.schich.javacan.util.EventLoop}s like
+ * {@link tel.schich.javacan.util.CanBroker}. Timing metrics are only taken while metrics are enabled, so the
+ * additional {@link System#nanoTime()} calls do not burden uninstrumented event loops.
+ */
+public final class EventLoopMetrics {
+
+    private final Counter wakeups;
+    private final Counter dispatches;
+    private final Counter exceptions;
+    private final LatencyHistogram handlerLatency;
+    private final LatencyHistogram lockWait;
+
+    /**
+     * Creates the event loop metrics in the given registry.
+     *
+     * @param registry the registry
+     * @param prefix the prefix of the metric names, e.g. {@code "broker"}
+     */
+    public EventLoopMetrics(MetricsRegistry registry, String prefix) {
+        this.wakeups = registry.counter(prefix + ".wakeups");
+        this.dispatches = registry.counter(prefix + ".dispatches");
+        this.exceptions = registry.counter(prefix + ".exceptions");
+        this.handlerLatency = registry.histogram(prefix + ".handler-nanos");
+        this.lockWait = registry.histogram(prefix + ".lock-wait-nanos");
+    }
+
+    public void recordWakeup() {
+        wakeups.increment();
+    }
+
+    /**
+     * Records a handler invocation.
+     *
+     * @param nanos the time spent in the handler
+     */
+    public void recordDispatch(long nanos) {
+        dispatches.increment();
+        handlerLatency.record(nanos);
+    }
+
+    /**
+     * Records the time spent waiting for the lock guarding the handlers.
+     *
+     * @param nanos the time spent waiting
+     */
+    public void recordLockWait(long nanos) {
+        lockWait.record(nanos);
+    }
+
+    public void recordException() {
+        exceptions.increment();
+    }
+
+    public Counter getWakeups() {
+        return wakeups;
+    }
+
+    public Counter getDispatches() {
+        return dispatches;
+    }
+
+    public Counter getExceptions() {
+        return exceptions;
+    }
+
+    public LatencyHistogram getHandlerLatency() {
+        return handlerLatency;
+    }
+
+    public LatencyHistogram getLockWait() {
+        return lockWait;
+    }
+}
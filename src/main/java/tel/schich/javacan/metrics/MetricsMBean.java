@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import tel.schich.javacan.util.LatencyHistogram;
+
+/**
+ * This class exposes the metrics of a {@link tel.schich.javacan.metrics.MetricsRegistry} as a read-only JMX MBean.
+ * Every counter is an attribute with its name, every histogram provides the attributes {@code <name>.count},
+ * {@code <name>.mean}, {@code <name>.p50}, {@code <name>.p99} and {@code <name>.max}. Metrics created after the
+ * registration show up automatically.
+ */
+public class MetricsMBean implements DynamicMBean {
+
+    /**
+     * The JMX domain used by {@link #register(MetricsRegistry, String)}.
+     */
+    public static final String DOMAIN = "tel.schich.javacan";
+
+    private static final String[] HISTOGRAM_ATTRIBUTES = { "count", "mean", "p50", "p99", "max" };
+
+    private final MetricsRegistry registry;
+
+    public MetricsMBean(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Registers the metrics of the given registry with the platform MBean server.
+     *
+     * @param registry the registry to expose
+     * @param name the name of the MBean within the {@link #DOMAIN}
+     * @return the object name of the registered MBean, which can be used to unregister it again
+     * @throws JMException if the registration fails
+     */
+    public static ObjectName register(MetricsRegistry registry, String name) throws JMException {
+        ObjectName objectName = new ObjectName(DOMAIN + ":type=Metrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(registry), objectName);
+        return objectName;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Counter counter = registry.getCounters().get(attribute);
+        if (counter != null) {
+            return counter.get();
+        }
+        int split = attribute.lastIndexOf('.');
+        if (split > 0) {
+            LatencyHistogram histogram = registry.getHistograms().get(attribute.substring(0, split));
+            if (histogram != null) {
+                switch (attribute.substring(split + 1)) {
+                    case "count":
+                        return histogram.getCount();
+                    case "mean":
+                        return histogram.getMean();
+                    case "p50":
+                        return histogram.getPercentile(50);
+                    case "p99":
+                        return histogram.getPercentile(99);
+                    case "max":
+                        return histogram.getMax();
+                    default:
+                        break;
+                }
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException ignored) {
+                // unknown attributes are omitted as specified by DynamicMBean
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : registry.getCounters().keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, long.class.getName(), "Counter " + name, true, false, false));
+        }
+        for (Map.Entry<String, LatencyHistogram> histogram : registry.getHistograms().entrySet()) {
+            for (String suffix : HISTOGRAM_ATTRIBUTES) {
+                String type = "mean".equals(suffix) ? double.class.getName() : long.class.getName();
+                String name = histogram.getKey() + "." + suffix;
+                attributes.add(new MBeanAttributeInfo(name, type, "Histogram " + name, true, false, false));
+            }
+        }
+        return new MBeanInfo(getClass().getName(), "JavaCAN metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+    }
+}
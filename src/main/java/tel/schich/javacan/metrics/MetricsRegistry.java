@@ -0,0 +1,64 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.metrics;
+
+import java.util.Map;
+
+import tel.schich.javacan.util.LatencyHistogram;
+
+/**
+ * Implementations of this interface hold the named counters and histograms of the instrumented components of this
+ * library. Metrics are created on first access and shared by all components using the same name, so several
+ * channels can for example accumulate into the same counters.
+ */
+public interface MetricsRegistry {
+    /**
+     * Returns the counter with the given name, creating it if necessary.
+     *
+     * @param name the name of the counter
+     * @return the counter
+     */
+    Counter counter(String name);
+
+    /**
+     * Returns the histogram with the given name, creating it if necessary.
+     *
+     * @param name the name of the histogram
+     * @return the histogram
+     */
+    LatencyHistogram histogram(String name);
+
+    /**
+     * Returns all counters by their names.
+     *
+     * @return an immutable snapshot of the counters
+     */
+    Map<String, Counter> getCounters();
+
+    /**
+     * Returns all histograms by their names.
+     *
+     * @return an immutable snapshot of the histograms
+     */
+    Map<String, LatencyHistogram> getHistograms();
+}
@@ -0,0 +1,76 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.metrics;
+
+import tel.schich.javacan.util.LatencyHistogram;
+
+/**
+ * This class holds the metrics of epoll based pollers like {@link tel.schich.javacan.linux.epoll.EPollSelector}
+ * and {@link tel.schich.javacan.linux.epoll.EPollEventLoop}.
+ */
+public final class PollMetrics {
+
+    private final Counter wakeups;
+    private final Counter events;
+    private final LatencyHistogram eventsPerWakeup;
+
+    /**
+     * Creates the poll metrics in the given registry.
+     *
+     * @param registry the registry
+     * @param prefix the prefix of the metric names, e.g. {@code "selector"}
+     */
+    public PollMetrics(MetricsRegistry registry, String prefix) {
+        this.wakeups = registry.counter(prefix + ".wakeups");
+        this.events = registry.counter(prefix + ".events");
+        this.eventsPerWakeup = registry.histogram(prefix + ".events-per-wakeup");
+    }
+
+    /**
+     * Records a return from {@code epoll_wait}, each of which is a system call.
+     *
+     * @param readyEvents the amount of events returned
+     */
+    public void recordWakeup(int readyEvents) {
+        wakeups.increment();
+        events.add(readyEvents);
+        eventsPerWakeup.record(readyEvents);
+    }
+
+    public Counter getWakeups() {
+        return wakeups;
+    }
+
+    public Counter getEvents() {
+        return events;
+    }
+
+    /**
+     * Returns the distribution of events per wakeup. The histogram counts events instead of nanoseconds.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getEventsPerWakeup() {
+        return eventsPerWakeup;
+    }
+}
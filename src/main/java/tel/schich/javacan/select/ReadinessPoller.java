@@ -0,0 +1,270 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.select;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+
+import tel.schich.javacan.linux.epoll.EPollEventHandler;
+import tel.schich.javacan.linux.epoll.EPollEventLoop;
+import tel.schich.javacan.linux.epoll.EPollSelector;
+
+/**
+ * This class allows threads to wait for {@link tel.schich.javacan.select.NativeChannel}s to become readable or
+ * writable by parking them using {@link java.util.concurrent.locks.LockSupport} instead of blocking in a system call.
+ * A single polling thread waits for readiness of all channels using epoll in one-shot mode and unparks the waiting
+ * threads. Since parked virtual threads release their carrier thread, this allows a large number of virtual threads
+ * to use channels in a blocking style.
+ * <p>
+ * Instead of parking, callers can also register callbacks using {@link #whenReady(NativeChannel, int, Runnable)},
+ * which are run on the polling thread.
+ * <p>
+ * Channels usually do not use this class directly: see
+ * {@link tel.schich.javacan.AbstractCanChannel#setReadinessPoller(ReadinessPoller)}.
+ */
+public class ReadinessPoller implements Closeable {
+
+    private final EPollEventLoop eventLoop;
+    private final Thread pollingThread;
+    private final IdentityHashMap<NativeChannel, Waiters> waiters = new IdentityHashMap<>();
+    private final Object waitersLock = new Object();
+
+    private volatile boolean running = true;
+
+    /**
+     * Creates a new poller and starts its polling thread.
+     *
+     * @param threadFactory the factory for the polling thread
+     * @throws IOException if the native calls fail
+     */
+    public ReadinessPoller(ThreadFactory threadFactory) throws IOException {
+        this.eventLoop = new EPollEventLoop();
+        this.pollingThread = threadFactory.newThread(this::poll);
+        this.pollingThread.start();
+    }
+
+    private void poll() {
+        while (running) {
+            try {
+                eventLoop.poll(-1);
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Readiness polling failed:");
+                    e.printStackTrace(System.err);
+                }
+            }
+        }
+    }
+
+    /**
+     * Parks the current thread until the given channel is ready for any of the given operations, the timeout expired,
+     * the channel got cancelled or the thread got interrupted. Just like
+     * {@link java.util.concurrent.locks.LockSupport#park()} this might also return spuriously, so callers have to
+     * check whether the operation can actually be performed.
+     *
+     * @param ch the channel to wait for
+     * @param ops {@link java.nio.channels.SelectionKey#OP_READ} and/or {@link java.nio.channels.SelectionKey#OP_WRITE}
+     * @param timeoutNanos the maximum time to wait in nanoseconds or a negative value to wait without timeout
+     * @throws IOException if the native calls fail
+     */
+    public void await(NativeChannel ch, int ops, long timeoutNanos) throws IOException {
+        if (!running) {
+            throw new ClosedSelectorException();
+        }
+        final Thread current = Thread.currentThread();
+        final Runnable unpark = () -> LockSupport.unpark(current);
+        final Waiters w = enqueue(ch, ops, unpark);
+        if (w == null) {
+            return;
+        }
+        try {
+            if (timeoutNanos < 0) {
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, timeoutNanos);
+            }
+        } finally {
+            synchronized (w) {
+                w.readers.remove(unpark);
+                w.writers.remove(unpark);
+            }
+        }
+    }
+
+    /**
+     * Runs the given callback once on the polling thread when the given channel becomes ready for any of the given
+     * operations or when the channel gets cancelled. Callbacks must not block, as they delay all other channels.
+     *
+     * @param ch the channel to wait for
+     * @param ops {@link java.nio.channels.SelectionKey#OP_READ} and/or {@link java.nio.channels.SelectionKey#OP_WRITE}
+     * @param callback the callback to run
+     * @throws IOException if the native calls fail
+     */
+    public void whenReady(NativeChannel ch, int ops, Runnable callback) throws IOException {
+        if (!running) {
+            throw new ClosedSelectorException();
+        }
+        if (enqueue(ch, ops, callback) == null) {
+            callback.run();
+        }
+    }
+
+    private Waiters enqueue(NativeChannel ch, int ops, Runnable waiter) throws IOException {
+        final Waiters w = waitersFor(ch);
+        synchronized (w) {
+            if (w.cancelled) {
+                return null;
+            }
+            if ((ops & SelectionKey.OP_READ) != 0) {
+                w.readers.add(waiter);
+            }
+            if ((ops & SelectionKey.OP_WRITE) != 0) {
+                w.writers.add(waiter);
+            }
+            eventLoop.updateOps(ch, w.interests());
+        }
+        return w;
+    }
+
+    /**
+     * Removes the given channel from this poller and unparks all threads waiting for it.
+     * This must be called before the channel's file descriptor gets closed.
+     *
+     * @param ch the channel
+     * @throws IOException if the native calls fail
+     */
+    public void cancel(NativeChannel ch) throws IOException {
+        final Waiters w;
+        synchronized (waitersLock) {
+            w = waiters.remove(ch);
+        }
+        if (w == null) {
+            return;
+        }
+        synchronized (w) {
+            w.cancelled = true;
+            if (eventLoop.isOpen()) {
+                eventLoop.unregister(ch);
+            }
+            w.wakeAll();
+        }
+    }
+
+    private Waiters waitersFor(NativeChannel ch) throws IOException {
+        synchronized (waitersLock) {
+            Waiters w = waiters.get(ch);
+            if (w == null) {
+                w = new Waiters();
+                eventLoop.register(ch, 0, EPollSelector.ONE_SHOT, w);
+                waiters.put(ch, w);
+            }
+            return w;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        synchronized (waitersLock) {
+            for (Waiters w : waiters.values()) {
+                synchronized (w) {
+                    w.cancelled = true;
+                    w.wakeAll();
+                }
+            }
+            waiters.clear();
+        }
+        eventLoop.close();
+        try {
+            pollingThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final class Waiters implements EPollEventHandler {
+        final List<Runnable> readers = new ArrayList<>(1);
+        final List<Runnable> writers = new ArrayList<>(1);
+        boolean cancelled = false;
+
+        int interests() {
+            int ops = 0;
+            if (!readers.isEmpty()) {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (!writers.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            return ops;
+        }
+
+        void wakeAll() {
+            wake(readers);
+            wake(writers);
+        }
+
+        private void wake(List<Runnable> waiters) {
+            if (waiters.isEmpty()) {
+                return;
+            }
+            // waiters might enqueue themselves again
+            Runnable[] woken = waiters.toArray(new Runnable[0]);
+            waiters.clear();
+            for (Runnable waiter : woken) {
+                try {
+                    waiter.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Readiness callback failed:");
+                    e.printStackTrace(System.err);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void handle(NativeChannel ch, int readyOps) throws IOException {
+            if (cancelled) {
+                return;
+            }
+            if ((readyOps & SelectionKey.OP_READ) != 0) {
+                wake(readers);
+            }
+            if ((readyOps & SelectionKey.OP_WRITE) != 0) {
+                wake(writers);
+            }
+            // the registration is one-shot, so it has to be re-armed for the remaining waiters
+            int remaining = interests();
+            if (remaining != 0) {
+                eventLoop.updateOps(ch, remaining);
+            }
+        }
+    }
+}
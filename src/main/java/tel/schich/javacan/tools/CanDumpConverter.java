@@ -44,6 +44,7 @@ import java.util.regex.Pattern;
  * </p>
  * The resulting dump can be replayed with the {@code canplayer} from the {@code can-utils} package.
  *
+ * @see tel.schich.javacan.capture.LogImporter for importing {@code candump -l} logs
  * @author Maik Scheibler
  */
 public class CanDumpConverter {
@@ -0,0 +1,170 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.tools;
+
+import java.util.Random;
+
+import static tel.schich.javacan.CanId.SFF_MASK;
+
+/**
+ * A distribution of standard CAN IDs used by the {@link tel.schich.javacan.tools.LoadGenerator} to pick the ID of each
+ * generated frame.
+ */
+public abstract class IdDistribution {
+
+    private final int min;
+    private final int max;
+
+    private IdDistribution(int min, int max) {
+        if (min < 0 || max > SFF_MASK || min > max) {
+            throw new IllegalArgumentException("invalid ID range: " + min + "-" + max);
+        }
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Returns the smallest ID this distribution produces.
+     *
+     * @return the smallest ID
+     */
+    public int getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the largest ID this distribution produces.
+     *
+     * @return the largest ID
+     */
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * Picks the ID of the next frame.
+     *
+     * @param random the random source of the calling thread
+     * @param sequence the sequence number of the frame
+     * @return the ID
+     */
+    public abstract int next(Random random, int sequence);
+
+    /**
+     * Cycles through all IDs of the range in order.
+     *
+     * @param min the smallest ID
+     * @param max the largest ID
+     * @return the distribution
+     */
+    public static IdDistribution sequential(int min, int max) {
+        return new IdDistribution(min, max) {
+            @Override
+            public int next(Random random, int sequence) {
+                return min + Integer.remainderUnsigned(sequence, max - min + 1);
+            }
+
+            @Override
+            public String toString() {
+                return String.format("sequential:0x%X-0x%X", min, max);
+            }
+        };
+    }
+
+    /**
+     * Picks every ID of the range with the same probability.
+     *
+     * @param min the smallest ID
+     * @param max the largest ID
+     * @return the distribution
+     */
+    public static IdDistribution uniform(int min, int max) {
+        return new IdDistribution(min, max) {
+            @Override
+            public int next(Random random, int sequence) {
+                return min + random.nextInt(max - min + 1);
+            }
+
+            @Override
+            public String toString() {
+                return String.format("uniform:0x%X-0x%X", min, max);
+            }
+        };
+    }
+
+    /**
+     * Sends 90% of the frames on the lowest 10% of the range (at least one ID), the rest uniformly over the remaining
+     * IDs. This resembles a bus with a few high frequency messages.
+     *
+     * @param min the smallest ID
+     * @param max the largest ID
+     * @return the distribution
+     */
+    public static IdDistribution hotspot(int min, int max) {
+        final int range = max - min + 1;
+        final int hot = Math.max(1, range / 10);
+        return new IdDistribution(min, max) {
+            @Override
+            public int next(Random random, int sequence) {
+                if (hot == range || random.nextInt(10) != 0) {
+                    return min + random.nextInt(hot);
+                }
+                return min + hot + random.nextInt(range - hot);
+            }
+
+            @Override
+            public String toString() {
+                return String.format("hotspot:0x%X-0x%X", min, max);
+            }
+        };
+    }
+
+    /**
+     * Parses a distribution in the form {@code <kind>:<min>-<max>} with kind being one of {@code sequential},
+     * {@code uniform} or {@code hotspot}. IDs may be given as decimal or with a {@code 0x} prefix as hexadecimal.
+     *
+     * @param spec the distribution specification
+     * @return the distribution
+     * @throws IllegalArgumentException if the specification is invalid
+     */
+    public static IdDistribution parse(String spec) {
+        int colon = spec.indexOf(':');
+        int dash = spec.indexOf('-', colon + 1);
+        if (colon < 0 || dash < 0) {
+            throw new IllegalArgumentException("expected <kind>:<min>-<max> but got: " + spec);
+        }
+        String kind = spec.substring(0, colon);
+        int min = Integer.decode(spec.substring(colon + 1, dash));
+        int max = Integer.decode(spec.substring(dash + 1));
+        switch (kind) {
+            case "sequential":
+                return sequential(min, max);
+            case "uniform":
+                return uniform(min, max);
+            case "hotspot":
+                return hotspot(min, max);
+            default:
+                throw new IllegalArgumentException("unknown distribution: " + kind);
+        }
+    }
+}
@@ -0,0 +1,722 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.tools;
+
+import tel.schich.javacan.CanChannels;
+import tel.schich.javacan.CanFilter;
+import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.CanFrameView;
+import tel.schich.javacan.IsotpCanChannel;
+import tel.schich.javacan.NetworkDevice;
+import tel.schich.javacan.RawCanChannel;
+import tel.schich.javacan.linux.LinuxNativeOperationException;
+import tel.schich.javacan.util.CanBroker;
+import tel.schich.javacan.util.IsotpListener;
+import tel.schich.javacan.util.LatencyHistogram;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.time.Duration.ofMillis;
+import static java.time.Duration.ofSeconds;
+import static tel.schich.javacan.CanChannels.PROVIDER;
+import static tel.schich.javacan.CanFrame.FD_NO_FLAGS;
+import static tel.schich.javacan.CanFrame.HEADER_LENGTH;
+import static tel.schich.javacan.CanSocketOptions.RXQ_OVFL;
+import static tel.schich.javacan.CanSocketOptions.SO_RCVTIMEO;
+
+/**
+ * Drives frames through (virtual) CAN interfaces at a configurable rate and measures how the receiving side keeps up.
+ * <p>
+ * The load is generated by a number of lanes, each being a sender thread with its own channel. Lanes are spread over
+ * the configured interfaces. Every message carries its lane, a sequence number and the low 32 bits of
+ * {@link System#nanoTime()} at the time of sending, which allows the receiver to compute the one-way latency (up to
+ * about 4 seconds) and to detect lost and reordered messages. The receiving side is one of the {@link Mode}s, so the
+ * different ways of receiving can be compared under the same load.
+ * </p>
+ * The interfaces should not carry other traffic while the generator is running, as only the payload length and the
+ * lane number are used to tell generated frames apart.
+ */
+public class LoadGenerator {
+
+    /**
+     * The receiving side of a run.
+     */
+    public enum Mode {
+        /**
+         * One {@link tel.schich.javacan.RawCanChannel} per interface, read by a dedicated thread with blocking reads.
+         */
+        BLOCKING,
+        /**
+         * A single {@link tel.schich.javacan.util.CanBroker} with all interfaces added.
+         */
+        BROKER,
+        /**
+         * One pair of {@link tel.schich.javacan.IsotpCanChannel}s per lane, the receiving channels are added to a
+         * single {@link tel.schich.javacan.util.IsotpListener}. The ID distribution does not apply to this mode.
+         */
+        ISOTP,
+    }
+
+    /**
+     * The length of the generated payload.
+     */
+    public static final int PAYLOAD_LENGTH = 8;
+
+    /**
+     * The first ISO-TP address used to send messages, lane {@code n} uses this plus {@code n}.
+     */
+    public static final int ISOTP_TX_BASE = 0x600;
+
+    /**
+     * The first ISO-TP address used to receive messages, lane {@code n} uses this plus {@code n}.
+     */
+    public static final int ISOTP_RX_BASE = 0x680;
+
+    /**
+     * The maximum amount of lanes, limited by the lane number in the payload and the ISO-TP address ranges.
+     */
+    public static final int MAX_LANES = ISOTP_RX_BASE - ISOTP_TX_BASE;
+
+    private static final int SEQUENCE_MASK = 0xFFFFFF;
+    private static final long SEED = 0x7EA;
+    private static final Duration READ_TIMEOUT = ofMillis(100);
+
+    private final List<NetworkDevice> devices;
+    private int lanes = 1;
+    private long rate = 0;
+    private Duration duration = ofSeconds(10);
+    private Duration drainTimeout = ofSeconds(1);
+    private IdDistribution ids = IdDistribution.uniform(0x100, 0x1FF);
+
+    public LoadGenerator(List<NetworkDevice> devices) {
+        if (devices.isEmpty()) {
+            throw new IllegalArgumentException("at least one device is required!");
+        }
+        this.devices = new ArrayList<>(devices);
+    }
+
+    /**
+     * Sets the amount of sending lanes, each having its own thread and channel.
+     *
+     * @param lanes the amount of lanes
+     * @return this generator
+     */
+    public LoadGenerator setLanes(int lanes) {
+        if (lanes < 1 || lanes > MAX_LANES) {
+            throw new IllegalArgumentException("lanes must be between 1 and " + MAX_LANES);
+        }
+        this.lanes = lanes;
+        return this;
+    }
+
+    /**
+     * Sets the total rate at which messages are sent, which is split evenly between the lanes.
+     *
+     * @param rate the messages per second or 0 to send as fast as possible
+     * @return this generator
+     */
+    public LoadGenerator setRate(long rate) {
+        if (rate < 0) {
+            throw new IllegalArgumentException("rate must not be negative!");
+        }
+        this.rate = rate;
+        return this;
+    }
+
+    /**
+     * Sets how long messages are sent.
+     *
+     * @param duration the duration of a run
+     * @return this generator
+     */
+    public LoadGenerator setDuration(Duration duration) {
+        this.duration = duration;
+        return this;
+    }
+
+    /**
+     * Sets how long to wait for outstanding messages after the senders stopped. Messages that did not arrive within
+     * this time are counted as dropped.
+     *
+     * @param drainTimeout the drain timeout
+     * @return this generator
+     */
+    public LoadGenerator setDrainTimeout(Duration drainTimeout) {
+        this.drainTimeout = drainTimeout;
+        return this;
+    }
+
+    /**
+     * Sets the distribution of the CAN IDs of generated frames.
+     *
+     * @param ids the ID distribution
+     * @return this generator
+     */
+    public LoadGenerator setIdDistribution(IdDistribution ids) {
+        this.ids = ids;
+        return this;
+    }
+
+    /**
+     * Runs the generator once with the given receiving side.
+     *
+     * @param mode the receiving side
+     * @return the results of the run
+     * @throws IOException if setting up the channels fails
+     * @throws InterruptedException if the calling thread has been interrupted while waiting for the run
+     */
+    public Report run(Mode mode) throws IOException, InterruptedException {
+        final Run run = new Run(lanes);
+        final List<Closeable> resources = new ArrayList<>();
+        final List<Sender> senders = new ArrayList<>(lanes);
+        try {
+            switch (mode) {
+                case BLOCKING:
+                    for (NetworkDevice device : devices) {
+                        BlockingReceiver receiver = new BlockingReceiver(run, CanChannels.newRawChannel(device));
+                        resources.add(receiver);
+                        receiver.start();
+                    }
+                    break;
+                case BROKER:
+                    CanBroker broker = new CanBroker(daemon("load-broker"));
+                    resources.add(broker);
+                    broker.setDropMonitoring(true);
+                    broker.setFrameReuse(true);
+                    broker.addFilter(CanFilter.ANY);
+                    final byte[] brokerScratch = new byte[PAYLOAD_LENGTH];
+                    for (NetworkDevice device : devices) {
+                        broker.addDevice(device, (ch, frame) -> receiveFrame(run, frame, brokerScratch));
+                    }
+                    resources.add(() -> run.kernelDropped.add(broker.getDroppedFrames()));
+                    break;
+                case ISOTP:
+                    IsotpListener listener = new IsotpListener(daemon("load-isotp"), PROVIDER, READ_TIMEOUT);
+                    resources.add(listener);
+                    final byte[] isotpScratch = new byte[PAYLOAD_LENGTH];
+                    for (int lane = 0; lane < lanes; lane++) {
+                        NetworkDevice device = deviceOf(lane);
+                        IsotpCanChannel rx = CanChannels.newIsotpChannel(device, ISOTP_TX_BASE + lane, ISOTP_RX_BASE + lane);
+                        resources.add(rx);
+                        listener.addChannel(rx, (ch, buffer) -> {
+                            if (buffer.remaining() == PAYLOAD_LENGTH) {
+                                buffer.get(isotpScratch);
+                                run.receive(isotpScratch, System.nanoTime());
+                            }
+                        });
+                    }
+                    break;
+            }
+
+            for (int lane = 0; lane < lanes; lane++) {
+                Sender sender;
+                if (mode == Mode.ISOTP) {
+                    IsotpCanChannel tx = CanChannels.newIsotpChannel(deviceOf(lane), ISOTP_RX_BASE + lane, ISOTP_TX_BASE + lane);
+                    resources.add(tx);
+                    sender = new IsotpSender(run, lane, tx);
+                } else {
+                    RawCanChannel tx = CanChannels.newRawChannel(deviceOf(lane));
+                    resources.add(tx);
+                    sender = new FrameSender(run, lane, tx);
+                }
+                senders.add(sender);
+            }
+
+            final long cpuStart = processCpuTime();
+            final long start = System.nanoTime();
+            for (Sender sender : senders) {
+                sender.thread.start();
+            }
+            Thread.sleep(duration.toMillis());
+            run.running = false;
+            for (Sender sender : senders) {
+                sender.thread.join();
+            }
+            final long sendEnd = System.nanoTime();
+
+            final long drainDeadline = sendEnd + drainTimeout.toNanos();
+            while (!run.isComplete() && System.nanoTime() < drainDeadline) {
+                Thread.sleep(10);
+            }
+            final long cpu = processCpuTime() - cpuStart;
+            close(resources);
+            resources.clear();
+
+            return new Report(mode, run, Duration.ofNanos(sendEnd - start), cpuStart < 0 ? -1 : cpu);
+        } finally {
+            run.running = false;
+            for (Sender sender : senders) {
+                sender.thread.interrupt();
+            }
+            close(resources);
+        }
+    }
+
+    private NetworkDevice deviceOf(int lane) {
+        return devices.get(lane % devices.size());
+    }
+
+    private static void receiveFrame(Run run, CanFrame frame, byte[] scratch) {
+        if (frame.getDataLength() == PAYLOAD_LENGTH) {
+            frame.getData(scratch, 0, PAYLOAD_LENGTH);
+            run.receive(scratch, System.nanoTime());
+        }
+    }
+
+    private static void close(List<Closeable> resources) throws IOException {
+        IOException e = null;
+        // close in reverse order, so receivers are closed after the senders that feed them
+        for (int i = resources.size() - 1; i >= 0; i--) {
+            try {
+                resources.get(i).close();
+            } catch (IOException e1) {
+                if (e != null) {
+                    e1.addSuppressed(e);
+                }
+                e = e1;
+            }
+        }
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    private static long processCpuTime() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    static void encode(byte[] payload, int lane, int sequence, int timestamp) {
+        payload[0] = (byte) lane;
+        payload[1] = (byte) (sequence >>> 16);
+        payload[2] = (byte) (sequence >>> 8);
+        payload[3] = (byte) sequence;
+        payload[4] = (byte) (timestamp >>> 24);
+        payload[5] = (byte) (timestamp >>> 16);
+        payload[6] = (byte) (timestamp >>> 8);
+        payload[7] = (byte) timestamp;
+    }
+
+    /**
+     * The state shared between the senders and receivers of a single run.
+     */
+    private static final class Run {
+        private final int lanes;
+        private final AtomicLongArray sent;
+        private final AtomicLongArray received;
+        // only accessed by the single thread receiving the lane
+        private final int[] expectedSequence;
+        private final LongAdder reordered = new LongAdder();
+        private final LongAdder transmitErrors = new LongAdder();
+        private final LongAdder kernelDropped = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private volatile boolean running = true;
+
+        Run(int lanes) {
+            this.lanes = lanes;
+            this.sent = new AtomicLongArray(lanes);
+            this.received = new AtomicLongArray(lanes);
+            this.expectedSequence = new int[lanes];
+        }
+
+        void receive(byte[] payload, long now) {
+            int lane = payload[0] & 0xFF;
+            if (lane >= lanes) {
+                return;
+            }
+            int sequence = ((payload[1] & 0xFF) << 16) | ((payload[2] & 0xFF) << 8) | (payload[3] & 0xFF);
+            int timestamp = ((payload[4] & 0xFF) << 24) | ((payload[5] & 0xFF) << 16) | ((payload[6] & 0xFF) << 8) | (payload[7] & 0xFF);
+            received.incrementAndGet(lane);
+            if (sequence != expectedSequence[lane]) {
+                reordered.increment();
+            }
+            expectedSequence[lane] = (sequence + 1) & SEQUENCE_MASK;
+            latency.record(((int) now - timestamp) & 0xFFFFFFFFL);
+        }
+
+        boolean isComplete() {
+            for (int i = 0; i < lanes; i++) {
+                if (received.get(i) < sent.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long sum(AtomicLongArray counts) {
+            long sum = 0;
+            for (int i = 0; i < lanes; i++) {
+                sum += counts.get(i);
+            }
+            return sum;
+        }
+    }
+
+    private abstract class Sender implements Runnable {
+        protected final Run run;
+        protected final int lane;
+        protected final byte[] payload = new byte[PAYLOAD_LENGTH];
+        final Thread thread;
+
+        Sender(Run run, int lane) {
+            this.run = run;
+            this.lane = lane;
+            this.thread = new Thread(this, "load-sender-" + lane);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            final long interval = rate == 0 ? 0 : Math.max(1, 1_000_000_000L * lanes / rate);
+            final Random random = new Random(SEED + lane);
+            final long start = System.nanoTime();
+            long count = 0;
+            int sequence = 0;
+            while (run.running) {
+                if (interval > 0) {
+                    final long due = start + count * interval;
+                    long delay;
+                    while ((delay = due - System.nanoTime()) > 0 && run.running) {
+                        LockSupport.parkNanos(delay);
+                    }
+                }
+                encode(payload, lane, sequence, (int) System.nanoTime());
+                try {
+                    transmit(ids.next(random, sequence));
+                    run.sent.incrementAndGet(lane);
+                    sequence = (sequence + 1) & SEQUENCE_MASK;
+                } catch (IOException e) {
+                    if (!run.running) {
+                        break;
+                    }
+                    // usually a full transmit queue, which is exactly what saturation looks like
+                    run.transmitErrors.increment();
+                    Thread.yield();
+                }
+                count++;
+            }
+        }
+
+        protected abstract void transmit(int id) throws IOException;
+    }
+
+    private final class FrameSender extends Sender {
+        private final RawCanChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(RawCanChannel.MTU).order(ByteOrder.nativeOrder());
+        private final CanFrameView view = new CanFrameView();
+
+        FrameSender(Run run, int lane, RawCanChannel channel) {
+            super(run, lane);
+            this.channel = channel;
+            buffer.put(4, (byte) PAYLOAD_LENGTH);
+            buffer.put(5, FD_NO_FLAGS);
+        }
+
+        @Override
+        protected void transmit(int id) throws IOException {
+            buffer.putInt(0, id);
+            buffer.position(HEADER_LENGTH);
+            buffer.put(payload);
+            buffer.clear();
+            channel.write(view.wrap(buffer));
+        }
+    }
+
+    private final class IsotpSender extends Sender {
+        private final IsotpCanChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(PAYLOAD_LENGTH);
+
+        IsotpSender(Run run, int lane, IsotpCanChannel channel) {
+            super(run, lane);
+            this.channel = channel;
+        }
+
+        @Override
+        protected void transmit(int id) throws IOException {
+            buffer.clear();
+            buffer.put(payload);
+            buffer.flip();
+            channel.write(buffer);
+        }
+    }
+
+    private static final class BlockingReceiver implements Runnable, Closeable {
+        private final Run run;
+        private final RawCanChannel channel;
+        private final Thread thread;
+        private volatile boolean receiving = true;
+
+        BlockingReceiver(Run run, RawCanChannel channel) throws IOException {
+            this.run = run;
+            this.channel = channel;
+            this.thread = new Thread(this, "load-receiver-" + channel.getDevice().getName());
+            this.thread.setDaemon(true);
+            // the timeout lets the thread notice the end of the run
+            channel.setOption(SO_RCVTIMEO, READ_TIMEOUT);
+            channel.setOption(RXQ_OVFL, true);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(RawCanChannel.FD_MTU);
+            final CanFrameView view = new CanFrameView();
+            final byte[] scratch = new byte[PAYLOAD_LENGTH];
+            while (receiving) {
+                try {
+                    buffer.clear();
+                    receiveFrame(run, channel.read(buffer, view), scratch);
+                } catch (LinuxNativeOperationException e) {
+                    if (!e.mayTryAgain()) {
+                        break;
+                    }
+                } catch (IOException e) {
+                    break;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            receiving = false;
+            try {
+                thread.join(2 * READ_TIMEOUT.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            run.kernelDropped.add(channel.getDroppedFrames());
+            channel.close();
+        }
+    }
+
+    /**
+     * The results of a single run.
+     */
+    public static final class Report {
+        private final Mode mode;
+        private final long sent;
+        private final long received;
+        private final long reordered;
+        private final long transmitErrors;
+        private final long kernelDropped;
+        private final LatencyHistogram latency;
+        private final Duration elapsed;
+        private final long cpuNanos;
+
+        private Report(Mode mode, Run run, Duration elapsed, long cpuNanos) {
+            this.mode = mode;
+            this.sent = run.sum(run.sent);
+            this.received = run.sum(run.received);
+            this.reordered = run.reordered.sum();
+            this.transmitErrors = run.transmitErrors.sum();
+            this.kernelDropped = run.kernelDropped.sum();
+            this.latency = run.latency;
+            this.elapsed = elapsed;
+            this.cpuNanos = cpuNanos;
+        }
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        public long getSent() {
+            return sent;
+        }
+
+        public long getReceived() {
+            return received;
+        }
+
+        /**
+         * Returns the amount of sent messages that did not arrive within the drain timeout.
+         *
+         * @return the amount of lost messages
+         */
+        public long getDropped() {
+            return Math.max(0, sent - received);
+        }
+
+        /**
+         * Returns the amount of frames the kernel reported as dropped from the receive queues. This is not available in
+         * {@link Mode#ISOTP}.
+         *
+         * @return the amount of frames dropped by the kernel
+         */
+        public long getKernelDropped() {
+            return kernelDropped;
+        }
+
+        /**
+         * Returns the amount of messages that did not arrive in the order they have been sent, including the first
+         * message after a gap.
+         *
+         * @return the amount of reordered messages
+         */
+        public long getReordered() {
+            return reordered;
+        }
+
+        /**
+         * Returns the amount of failed send attempts, usually caused by a full transmit queue.
+         *
+         * @return the amount of failed sends
+         */
+        public long getTransmitErrors() {
+            return transmitErrors;
+        }
+
+        /**
+         * Returns the one-way latencies from before the send call until the message reached the handler.
+         *
+         * @return the latency histogram
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public Duration getElapsed() {
+            return elapsed;
+        }
+
+        /**
+         * Returns the CPU time of the whole process, senders included, per received message.
+         *
+         * @return the CPU time in nanoseconds or a negative value if the JVM does not provide the process CPU time
+         */
+        public double getCpuNanosPerMessage() {
+            if (cpuNanos < 0) {
+                return -1;
+            }
+            return received == 0 ? 0 : (double) cpuNanos / received;
+        }
+
+        public double getMessagesPerSecond() {
+            long nanos = elapsed.toNanos();
+            return nanos == 0 ? 0 : received * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: sent=%d received=%d (%.0f/s) dropped=%d kernel-dropped=%d reordered=%d tx-errors=%d%n"
+                            + "  latency: mean=%.0fns p50<=%dns p90<=%dns p99<=%dns p99.9<=%dns max=%dns%n"
+                            + "  cpu per message: %.0fns",
+                    mode, sent, received, getMessagesPerSecond(), getDropped(), kernelDropped, reordered, transmitErrors,
+                    latency.getMean(), latency.getPercentile(50), latency.getPercentile(90), latency.getPercentile(99),
+                    latency.getPercentile(99.9), latency.getMax(), getCpuNanosPerMessage());
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<NetworkDevice> devices = new ArrayList<>();
+        List<Mode> modes = new ArrayList<>();
+        int lanes = 1;
+        long rate = 0;
+        Duration duration = ofSeconds(10);
+        IdDistribution ids = null;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("missing value for " + args[i]);
+                }
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--interfaces":
+                        for (String name : value.split(",")) {
+                            devices.add(NetworkDevice.lookup(name));
+                        }
+                        break;
+                    case "--lanes":
+                        lanes = Integer.parseInt(value);
+                        break;
+                    case "--rate":
+                        rate = Long.parseLong(value);
+                        break;
+                    case "--duration":
+                        duration = ofSeconds(Long.parseLong(value));
+                        break;
+                    case "--ids":
+                        ids = IdDistribution.parse(value);
+                        break;
+                    case "--modes":
+                        for (String mode : value.split(",")) {
+                            modes.add(Mode.valueOf(mode.toUpperCase()));
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option: " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println("usage: LoadGenerator [--interfaces vcan0,...] [--lanes n] [--rate messages/s, 0 = unthrottled] "
+                    + "[--duration seconds] [--ids sequential|uniform|hotspot:min-max] [--modes blocking,broker,isotp]");
+            return;
+        }
+        if (devices.isEmpty()) {
+            devices.add(NetworkDevice.lookup("vcan0"));
+        }
+        if (modes.isEmpty()) {
+            modes.add(Mode.BLOCKING);
+            modes.add(Mode.BROKER);
+            modes.add(Mode.ISOTP);
+        }
+
+        LoadGenerator generator = new LoadGenerator(devices)
+                .setLanes(lanes)
+                .setRate(rate)
+                .setDuration(duration);
+        if (ids != null) {
+            generator.setIdDistribution(ids);
+        }
+        for (Mode mode : modes) {
+            System.out.println(generator.run(mode));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.tools;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+import tel.schich.javacan.capture.LogFormat;
+import tel.schich.javacan.capture.LogImporter;
+
+/**
+ * Converts a {@code candump -l} or Vector ASC log into a capture that can be read with the
+ * {@link tel.schich.javacan.capture.CaptureReader}.
+ * <p>
+ * Usage: {@code LogImport <log> <directory> <prefix> [--format candump|asc] [--parallelism n] [--time-offset nanos]}
+ * </p>
+ */
+public class LogImport {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("usage: LogImport <log> <directory> <prefix> [--format candump|asc] [--parallelism n] [--time-offset nanos]");
+            return;
+        }
+        Path log = Paths.get(args[0]);
+        LogFormat format = log.toString().toLowerCase(Locale.ROOT).endsWith(".asc") ? LogFormat.ASC : LogFormat.CANDUMP;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        long timeOffset = 0;
+        for (int i = 3; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--format":
+                    format = LogFormat.valueOf(args[i + 1].toUpperCase(Locale.ROOT));
+                    break;
+                case "--parallelism":
+                    parallelism = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--time-offset":
+                    timeOffset = Long.parseLong(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        long start = System.nanoTime();
+        LogImporter.Result result = new LogImporter(format)
+                .setParallelism(parallelism)
+                .setTimeOffset(timeOffset)
+                .importTo(log, Paths.get(args[1]), args[2]);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("imported " + result.getFrameCount() + " frames in " + millis + " ms, skipped "
+                + result.getSkippedLines() + " lines");
+    }
+}
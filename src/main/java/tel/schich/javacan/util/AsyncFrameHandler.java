@@ -0,0 +1,264 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.CanFrameView;
+import tel.schich.javacan.RawCanChannel;
+
+/**
+ * This {@link tel.schich.javacan.util.FrameHandler} decouples the polling thread of a
+ * {@link tel.schich.javacan.util.CanBroker} from a potentially slow downstream handler. Received frames are copied
+ * into a preallocated ring of frame slots and handed to the downstream handler by a drain task running on the given
+ * {@link java.util.concurrent.Executor}. The drain task is only ever scheduled once at a time, so the downstream
+ * handler is never called concurrently and observes the frames in the order they were received.
+ * <p>
+ * The ring is lock-free and may be fed by several polling threads at once, for example by the shards of a
+ * {@link tel.schich.javacan.util.ShardedCanBroker}. If the ring is full, the configured {@link OverflowPolicy} decides
+ * what happens to the frame.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * broker.addDevice(device, new AsyncFrameHandler(handler, executor, 4096, OverflowPolicy.DROP_OLDEST));
+ * }</pre>
+ */
+public class AsyncFrameHandler implements FrameHandler {
+
+    /**
+     * The policy that is applied when a frame is received while the ring is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * The oldest frame in the ring is discarded to make room for the received frame.
+         */
+        DROP_OLDEST,
+        /**
+         * The received frame is discarded.
+         */
+        DROP_NEWEST,
+        /**
+         * The polling thread waits until the drain task made room for the received frame. This applies back pressure
+         * to the socket, which might overflow its receive buffer in turn.
+         */
+        BLOCK,
+    }
+
+    private static final long BLOCK_PARK_NANOS = 10_000L;
+
+    private final FrameHandler handler;
+    private final Executor executor;
+    private final OverflowPolicy overflowPolicy;
+    private final int capacity;
+
+    private final ByteBuffer slots;
+    private final int[] slotLengths;
+    private final RawCanChannel[] slotChannels;
+    private final AtomicLongArray sequences;
+    private final AtomicLong enqueuePosition = new AtomicLong();
+    private final AtomicLong dequeuePosition = new AtomicLong();
+
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Runnable drainTask = this::drain;
+    private final ByteBuffer drainBuffer = RawCanChannel.allocateSufficientMemory();
+    private final CanFrameView drainView = new CanFrameView();
+    private RawCanChannel drainChannel;
+
+    private final AtomicLong dispatchedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+
+    /**
+     * Creates a new asynchronous handler.
+     *
+     * @param handler the downstream handler
+     * @param executor the executor to run the drain task on
+     * @param capacity the number of frames the ring can hold
+     * @param overflowPolicy the policy to apply if the ring is full
+     */
+    public AsyncFrameHandler(FrameHandler handler, Executor executor, int capacity, OverflowPolicy overflowPolicy) {
+        if (handler == null || executor == null || overflowPolicy == null) {
+            throw new NullPointerException("handler, executor and overflowPolicy must not be null!");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive!");
+        }
+        this.handler = handler;
+        this.executor = executor;
+        this.overflowPolicy = overflowPolicy;
+        this.capacity = capacity;
+        this.slots = RawCanChannel.allocateSufficientMemory(capacity);
+        this.slotLengths = new int[capacity];
+        this.slotChannels = new RawCanChannel[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            this.sequences.set(i, i);
+        }
+    }
+
+    @Override
+    public void handle(RawCanChannel ch, CanFrame frame) {
+        while (!offer(ch, frame)) {
+            switch (overflowPolicy) {
+                case DROP_NEWEST:
+                    droppedFrames.incrementAndGet();
+                    return;
+                case DROP_OLDEST:
+                    if (poll(null)) {
+                        droppedFrames.incrementAndGet();
+                    }
+                    break;
+                case BLOCK:
+                    schedule();
+                    LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                    break;
+            }
+        }
+        schedule();
+    }
+
+    /**
+     * Returns the number of frames that are currently waiting to be dispatched.
+     *
+     * @return the backlog
+     */
+    public int getBacklog() {
+        long backlog = enqueuePosition.get() - dequeuePosition.get();
+        return (int) Math.max(0, Math.min(capacity, backlog));
+    }
+
+    /**
+     * Returns the number of frames the ring can hold.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of frames that have been passed on to the downstream handler.
+     *
+     * @return the number of dispatched frames
+     */
+    public long getDispatchedFrames() {
+        return dispatchedFrames.get();
+    }
+
+    /**
+     * Returns the number of frames that have been discarded due to the {@link OverflowPolicy}.
+     *
+     * @return the number of dropped frames
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    private boolean offer(RawCanChannel ch, CanFrame frame) {
+        long pos = enqueuePosition.get();
+        while (true) {
+            int slot = (int) (pos % capacity);
+            long diff = sequences.get(slot) - pos;
+            if (diff == 0) {
+                if (enqueuePosition.compareAndSet(pos, pos + 1)) {
+                    copy(frame.getBuffer(), frame.getBase(), slots, slot * RawCanChannel.FD_MTU, frame.getSize());
+                    slotLengths[slot] = frame.getSize();
+                    slotChannels[slot] = ch;
+                    sequences.set(slot, pos + 1);
+                    return true;
+                }
+                pos = enqueuePosition.get();
+            } else if (diff < 0) {
+                // the slot has not been consumed yet: the ring is full
+                return false;
+            } else {
+                pos = enqueuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest frame from the ring.
+     *
+     * @param view the view to point at a copy of the frame or null to discard it
+     * @return true if a frame has been removed, false if the ring is empty
+     */
+    private boolean poll(CanFrameView view) {
+        long pos = dequeuePosition.get();
+        while (true) {
+            int slot = (int) (pos % capacity);
+            long diff = sequences.get(slot) - (pos + 1);
+            if (diff == 0) {
+                if (dequeuePosition.compareAndSet(pos, pos + 1)) {
+                    if (view != null) {
+                        int length = slotLengths[slot];
+                        copy(slots, slot * RawCanChannel.FD_MTU, drainBuffer, 0, length);
+                        view.wrap(drainBuffer, 0, length);
+                        drainChannel = slotChannels[slot];
+                    }
+                    slotChannels[slot] = null;
+                    sequences.set(slot, pos + capacity);
+                    return true;
+                }
+                pos = dequeuePosition.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = dequeuePosition.get();
+            }
+        }
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(drainTask);
+        }
+    }
+
+    private void drain() {
+        try {
+            while (poll(drainView)) {
+                RawCanChannel ch = drainChannel;
+                drainChannel = null;
+                dispatchedFrames.incrementAndGet();
+                handler.handle(ch, drainView);
+            }
+        } finally {
+            scheduled.set(false);
+            if (getBacklog() > 0) {
+                schedule();
+            }
+        }
+    }
+
+    private static void copy(ByteBuffer source, int sourceOffset, ByteBuffer dest, int destOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            dest.put(destOffset + i, source.get(sourceOffset + i));
+        }
+    }
+}
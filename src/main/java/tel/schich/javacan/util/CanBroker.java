@@ -29,45 +29,76 @@ import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.spi.SelectorProvider;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ThreadFactory;
 
 import tel.schich.javacan.CanChannels;
 import tel.schich.javacan.NetworkDevice;
 import tel.schich.javacan.CanFilter;
+import tel.schich.javacan.CanFilterManager;
 import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.CanFrameView;
 import tel.schich.javacan.RawCanChannel;
+import tel.schich.javacan.linux.epoll.EPollEventLoop;
+import tel.schich.javacan.metrics.EventLoopMetrics;
 
 import static java.time.Duration.ofMinutes;
 import static tel.schich.javacan.CanChannels.PROVIDER;
-import static tel.schich.javacan.CanSocketOptions.FILTER;
 import static tel.schich.javacan.CanSocketOptions.LOOPBACK;
+import static tel.schich.javacan.CanSocketOptions.RXQ_OVFL;
 
 /**
  * This class implements an event driven interface over several CAN interface to send and receive
  * {@link tel.schich.javacan.CanFrame}s over multiple {@link tel.schich.javacan.NetworkDevice}s. Received
  * frames are passed on to a {@link tel.schich.javacan.util.FrameHandler} for for each specific interface.
  * Frames can be send either to individual interfaces or all at once.
+ * <p>
+ * Additionally handlers can be subscribed to the frames matching a {@link tel.schich.javacan.CanFilter} on any
+ * interface using {@link #subscribe(CanFilter, FrameHandler)}. Subscriptions are dispatched through a
+ * {@link tel.schich.javacan.util.CanIdRoutingTable} and their filters are applied to the underlying channels
+ * together with the filters added using {@link #addFilter(CanFilter)}.
  */
 public class CanBroker extends EventLoop {
 
     public static final Duration DEFAULT_TIMEOUT = ofMinutes(1);
     private static final CanFilter[] NO_FILTERS = { CanFilter.NONE };
+    private static final FrameHandler NO_HANDLER = (ch, frame) -> {};
+
+    /**
+     * The maximum amount of frames read with a single system call when draining a channel.
+     */
+    public static final int MAX_BATCH_SIZE = 64;
 
     private final ByteBuffer readBuffer = RawCanChannel.allocateSufficientMemory();
+    private final CanFrameView frameView = new CanFrameView();
+    private int readBudget = 1;
+    private boolean frameReuse = false;
+    private ByteBuffer batchBuffer;
+    private int[] batchLengths;
 
     private final IdentityHashMap<RawCanChannel, FrameHandler> handlerMap = new IdentityHashMap<>();
     private final HashMap<NetworkDevice, RawCanChannel> channelMap = new HashMap<>();
     private final Object handlerLock = new Object();
     private final Set<CanFilter> filters = new HashSet<>();
     private CanFilter[] filterArray = new CanFilter[0];
+    private int maxKernelFilters = 0;
+    private long falsePositiveBudget = Long.MAX_VALUE;
+    private CanIdRoutingTable<CanFilter> postFilter = null;
     private final Object filterLock = new Object();
+    private final CanFilterManager filterManager = new CanFilterManager(getThreadFactory());
+    private final CanIdRoutingTable<FrameHandler> routes = new CanIdRoutingTable<>();
+    private final ArrayList<FrameHandler> routedHandlers = new ArrayList<>();
 
     private volatile boolean loopback = true;
+    private volatile boolean dropMonitoring = false;
+    private long droppedFramesOfRemoved = 0;
 
     public CanBroker(ThreadFactory threadFactory) throws IOException {
         this(threadFactory, PROVIDER, DEFAULT_TIMEOUT);
@@ -78,7 +109,24 @@ public class CanBroker extends EventLoop {
     }
 
     public CanBroker(ThreadFactory threadFactory, SelectorProvider provider, Duration timeout) throws IOException {
-        super("CAN", threadFactory, provider, timeout);
+        this("CAN", threadFactory, provider, timeout);
+    }
+
+    CanBroker(String name, ThreadFactory threadFactory, SelectorProvider provider, Duration timeout) throws IOException {
+        super(name, threadFactory, provider, timeout);
+    }
+
+    /**
+     * Creates a broker that dispatches events directly from the given
+     * {@link tel.schich.javacan.linux.epoll.EPollEventLoop} instead of going through a
+     * {@link java.nio.channels.Selector}. The event loop is owned by the broker afterwards.
+     *
+     * @param threadFactory the factory for the polling thread
+     * @param eventLoop the event loop to run on
+     * @param timeout the timeout used on epoll wait calls
+     */
+    public CanBroker(ThreadFactory threadFactory, EPollEventLoop eventLoop, Duration timeout) {
+        super("CAN", threadFactory, eventLoop, timeout);
     }
 
     /**
@@ -113,6 +161,105 @@ public class CanBroker extends EventLoop {
         }
     }
 
+    /**
+     * Sends the given {@link tel.schich.javacan.CanFrame}s to all known devices using a single system call per device.
+     *
+     * @param frames the frames to send
+     * @return the number of frames accepted by the kernel summed up over all devices
+     * @throws IOException if the native call fails
+     */
+    public int sendBatch(CanFrame[] frames) throws IOException {
+        synchronized (handlerLock) {
+            int accepted = 0;
+            for (RawCanChannel ch : this.channelMap.values()) {
+                accepted += ch.writeBatch(frames);
+            }
+            return accepted;
+        }
+    }
+
+    /**
+     * Sends the given {@link tel.schich.javacan.CanFrame}s to the given known
+     * {@link tel.schich.javacan.NetworkDevice} using a single system call.
+     *
+     * @param device the device to send the frames to
+     * @param frames the frames to send
+     * @return the number of frames accepted by the kernel
+     * @throws IOException if the native call fails
+     */
+    public int sendBatch(NetworkDevice device, CanFrame[] frames) throws IOException {
+        synchronized (handlerLock) {
+            RawCanChannel ch = channelMap.get(device);
+            if (ch == null) {
+                throw new IllegalArgumentException("CAN device not known!");
+            }
+
+            return ch.writeBatch(frames);
+        }
+    }
+
+    /**
+     * Sets the maximum amount of frames that are read from a single channel per readiness event. With a budget of 1
+     * (the default) a single frame is read per event. Larger budgets drain the channel in batches of up to
+     * {@link #MAX_BATCH_SIZE} frames until either nothing is left to read or the budget is exhausted, which saves an
+     * epoll round trip per frame on busy buses while still serving other channels fairly.
+     *
+     * @param budget the maximum amount of frames to read per channel and event
+     */
+    public void setReadBudget(int budget) {
+        if (budget < 1) {
+            throw new IllegalArgumentException("The read budget must be positive!");
+        }
+        synchronized (handlerLock) {
+            this.readBudget = budget;
+            if (budget > 1) {
+                int batchSize = Math.min(budget, MAX_BATCH_SIZE);
+                this.batchBuffer = RawCanChannel.allocateSufficientMemory(batchSize);
+                this.batchLengths = new int[batchSize];
+            } else {
+                this.batchBuffer = null;
+                this.batchLengths = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum amount of frames that are read from a single channel per readiness event.
+     *
+     * @return the read budget
+     */
+    public int getReadBudget() {
+        synchronized (handlerLock) {
+            return readBudget;
+        }
+    }
+
+    /**
+     * Sets whether received frames are passed to the handlers through a single reused
+     * {@link tel.schich.javacan.CanFrameView} instead of a new {@link tel.schich.javacan.CanFrame} per frame. Reusing
+     * the view removes the last allocation from the receive path, but the frame passed to a handler is repointed with
+     * the next frame, so handlers must {@link tel.schich.javacan.CanFrame#copy()} every frame they retain. Frame
+     * reuse is disabled by default.
+     *
+     * @param enable whether to reuse a single view for all frames
+     */
+    public void setFrameReuse(boolean enable) {
+        synchronized (handlerLock) {
+            this.frameReuse = enable;
+        }
+    }
+
+    /**
+     * Checks if received frames are passed to the handlers through a single reused view.
+     *
+     * @return true if frames are reused
+     */
+    public boolean isFrameReuse() {
+        synchronized (handlerLock) {
+            return frameReuse;
+        }
+    }
+
     /**
      * Sets the loopback mode for all known devices.
      *
@@ -133,6 +280,60 @@ public class CanBroker extends EventLoop {
         return loopback;
     }
 
+    /**
+     * Sets whether the kernel reports frames dropped due to full receive queues on all known devices.
+     *
+     * @param enable whether to enable drop monitoring
+     * @throws IOException if the native call fails
+     * @see tel.schich.javacan.CanSocketOptions#RXQ_OVFL
+     */
+    public synchronized void setDropMonitoring(boolean enable) throws IOException {
+        this.dropMonitoring = enable;
+        this.updateOption(RXQ_OVFL, enable);
+    }
+
+    /**
+     * Checks if drop monitoring is enabled on the devices of this broker.
+     *
+     * @return true if drop monitoring is enabled
+     */
+    public boolean isDropMonitoring() {
+        return dropMonitoring;
+    }
+
+    /**
+     * Returns the total amount of frames the kernel dropped on the devices of this broker, including devices that
+     * have been removed already. This requires drop monitoring to be enabled.
+     *
+     * @return the amount of dropped frames
+     * @see #setDropMonitoring(boolean)
+     */
+    public long getDroppedFrames() {
+        synchronized (handlerLock) {
+            long dropped = droppedFramesOfRemoved;
+            for (RawCanChannel ch : channelMap.values()) {
+                dropped += ch.getDroppedFrames();
+            }
+            return dropped;
+        }
+    }
+
+    /**
+     * Returns the amount of frames the kernel dropped on the given device because the broker did not keep up.
+     *
+     * @param device the device
+     * @return the amount of dropped frames
+     */
+    public long getDroppedFrames(NetworkDevice device) {
+        synchronized (handlerLock) {
+            RawCanChannel ch = channelMap.get(device);
+            if (ch == null) {
+                throw new IllegalArgumentException("CAN device not known!");
+            }
+            return ch.getDroppedFrames();
+        }
+    }
+
     /**
      * Adds a filter that will be added to all underlying channels.
      *
@@ -175,16 +376,109 @@ public class CanBroker extends EventLoop {
         }
     }
 
+    /**
+     * Subscribes a {@link tel.schich.javacan.util.FrameHandler} to all frames matching the given filter on any of the
+     * devices of this broker. The filter is applied to the underlying channels, so the kernel only delivers frames
+     * that are either subscribed or match a filter added with {@link #addFilter(CanFilter)}. A handler that is
+     * subscribed with several filters matching a frame will receive the frame only once.
+     *
+     * @param filter the filter to subscribe to
+     * @param handler the handler receiving the matching frames
+     * @throws IOException if the native call fails
+     */
+    public void subscribe(CanFilter filter, FrameHandler handler) throws IOException {
+        synchronized (filterLock) {
+            if (routes.add(filter, handler) && !filters.contains(filter)) {
+                updateFilters();
+            }
+        }
+    }
+
+    /**
+     * Unsubscribes a {@link tel.schich.javacan.util.FrameHandler} from the given filter.
+     *
+     * @param filter the filter the handler was subscribed to
+     * @param handler the handler
+     * @return true if the subscription existed
+     * @throws IOException if the native call fails
+     */
+    public boolean unsubscribe(CanFilter filter, FrameHandler handler) throws IOException {
+        synchronized (filterLock) {
+            if (!routes.remove(filter, handler)) {
+                return false;
+            }
+            updateFilters();
+            return true;
+        }
+    }
+
+    /**
+     * Enables the compaction of the filters applied to the underlying channels. If there are more filters than
+     * allowed, exact filters are merged into masked filters using
+     * {@link tel.schich.javacan.util.CanFilterOptimizer#compact(CanFilter[], int, long)}, which reduces the per-frame
+     * cost of the kernel filtering. The excess frames let through by the compacted filters are dropped by the broker
+     * before any handler is called.
+     *
+     * @param maxFilters the maximum amount of filters to apply to the channels or 0 to disable compaction
+     * @param falsePositiveBudget the maximum amount of CAN IDs that may be let through in addition
+     * @throws IOException if the native call fails
+     */
+    public void setFilterCompaction(int maxFilters, long falsePositiveBudget) throws IOException {
+        if (maxFilters < 0) {
+            throw new IllegalArgumentException("The maximum amount of filters must not be negative!");
+        }
+        if (falsePositiveBudget < 0) {
+            throw new IllegalArgumentException("The false positive budget must not be negative!");
+        }
+        synchronized (filterLock) {
+            this.maxKernelFilters = maxFilters;
+            this.falsePositiveBudget = falsePositiveBudget;
+            updateFilters();
+        }
+    }
+
+    /**
+     * Sets the window within which filter changes are coalesced. Changes of the filters or subscriptions within the
+     * window are applied to the underlying channels at once at the end of the window, which turns bursts of changes
+     * into a single system call per channel. With a window of zero (the default) changes are applied immediately.
+     * Failures of coalesced updates are reported on {@link System#err}.
+     *
+     * @param window the coalescing window
+     */
+    public void setFilterUpdateWindow(Duration window) {
+        filterManager.setCoalescingWindow(window);
+    }
+
     private void updateFilters() throws IOException {
         synchronized (filterLock) {
-            synchronized (this.handlerLock) {
-                if (filters.isEmpty()) {
-                    this.filterArray = NO_FILTERS;
-                } else {
-                    filterArray = this.filters.toArray(new CanFilter[0]);
+            Set<CanFilter> effective = this.filters;
+            if (!routes.isEmpty()) {
+                effective = new HashSet<>(this.filters);
+                effective.addAll(Arrays.asList(routes.getFilters()));
+            }
+            CanIdRoutingTable<CanFilter> updatedPostFilter = null;
+            CanFilter[] updated;
+            if (effective.isEmpty()) {
+                updated = NO_FILTERS;
+            } else {
+                updated = effective.toArray(new CanFilter[0]);
+                if (maxKernelFilters > 0 && updated.length > maxKernelFilters) {
+                    CanFilter[] compacted = CanFilterOptimizer.compact(updated, maxKernelFilters, falsePositiveBudget);
+                    updatedPostFilter = new CanIdRoutingTable<>();
+                    for (CanFilter filter : updated) {
+                        updatedPostFilter.add(filter, filter);
+                    }
+                    updated = compacted;
                 }
-                updateOption(FILTER, filterArray);
             }
+            final List<RawCanChannel> channels;
+            synchronized (this.handlerLock) {
+                this.postFilter = updatedPostFilter;
+                this.filterArray = updated;
+                channels = new ArrayList<>(this.channelMap.values());
+            }
+            // the system calls happen outside of the handler lock to not stall the event loop
+            filterManager.update(channels, updated);
         }
     }
 
@@ -207,6 +501,18 @@ public class CanBroker extends EventLoop {
         }
     }
 
+    /**
+     * Adds a new {@link tel.schich.javacan.NetworkDevice} to this broker instance without a device handler. Frames
+     * received on the device are only passed on to subscribed handlers.
+     *
+     * @param device the device
+     * @throws IOException if the native call fails
+     * @see #subscribe(CanFilter, FrameHandler)
+     */
+    public void addDevice(NetworkDevice device) throws IOException {
+        addDevice(device, NO_HANDLER);
+    }
+
     /**
      * Adds a new {@link tel.schich.javacan.NetworkDevice} to this broker instance together with a
      * {@link tel.schich.javacan.util.FrameHandler} to handle incoming frames.
@@ -225,8 +531,11 @@ public class CanBroker extends EventLoop {
             }
             RawCanChannel ch = CanChannels.newRawChannel(device);
             ch.configureBlocking(false);
-            ch.setOption(FILTER, filterArray);
+            filterManager.apply(ch, filterArray);
             ch.setOption(LOOPBACK, loopback);
+            if (dropMonitoring) {
+                ch.setOption(RXQ_OVFL, true);
+            }
             register(ch, SelectionKey.OP_READ);
             this.handlerMap.put(ch, handler);
             this.channelMap.put(device, ch);
@@ -249,9 +558,11 @@ public class CanBroker extends EventLoop {
 
             ch = this.channelMap.remove(device);
             this.handlerMap.remove(ch);
+            this.droppedFramesOfRemoved += ch.getDroppedFrames();
         }
         cancel(ch);
         lazyShutdown();
+        filterManager.remove(ch);
         ch.close();
     }
 
@@ -263,29 +574,120 @@ public class CanBroker extends EventLoop {
 
     @Override
     protected void processEvents(Iterator<SelectionKey> keys) throws IOException {
+        final EventLoopMetrics metrics = getMetrics();
+        final long start = metrics == null ? 0 : System.nanoTime();
         synchronized (handlerLock) {
+            if (metrics != null) {
+                metrics.recordLockWait(System.nanoTime() - start);
+            }
             while (keys.hasNext()) {
                 SelectionKey key = keys.next();
                 keys.remove();
-                SelectableChannel ch = key.channel();
-                if (ch instanceof RawCanChannel) {
-                    RawCanChannel raw = (RawCanChannel) ch;
-                    FrameHandler handler = handlerMap.get(ch);
-                    if (handler != null) {
-                        readBuffer.clear();
-                        handler.handle(raw, raw.read(readBuffer));
-                    } else {
-                        System.err.println("Handler not found for channel: " + ch);
-                    }
+                processChannel(key.channel());
+            }
+        }
+    }
+
+    @Override
+    protected void processEvent(SelectableChannel ch, int readyOps) throws IOException {
+        final EventLoopMetrics metrics = getMetrics();
+        final long start = metrics == null ? 0 : System.nanoTime();
+        synchronized (handlerLock) {
+            if (metrics != null) {
+                metrics.recordLockWait(System.nanoTime() - start);
+            }
+            processChannel(ch);
+        }
+    }
+
+    private void processChannel(SelectableChannel ch) throws IOException {
+        if (ch instanceof RawCanChannel) {
+            RawCanChannel raw = (RawCanChannel) ch;
+            FrameHandler handler = handlerMap.get(ch);
+            if (handler != null) {
+                if (readBudget > 1) {
+                    drain(raw, handler);
                 } else {
-                    System.err.println("Unsupported channel: " + ch);
+                    readBuffer.clear();
+                    CanFrame frame = frameReuse ? raw.read(readBuffer, frameView) : raw.read(readBuffer);
+                    recordDispatch();
+                    dispatch(raw, handler, frame);
+                }
+            } else {
+                System.err.println("Handler not found for channel: " + ch);
+            }
+        } else {
+            System.err.println("Unsupported channel: " + ch);
+        }
+    }
+
+    private void drain(RawCanChannel ch, FrameHandler handler) throws IOException {
+        int remaining = readBudget;
+        while (remaining > 0) {
+            int requested = Math.min(remaining, batchLengths.length);
+            batchBuffer.clear();
+            int count = ch.readBatch(batchBuffer, batchLengths, requested);
+            if (count > 0) {
+                recordDispatch();
+            }
+            int offset = 0;
+            for (int i = 0; i < count; i++) {
+                dispatch(ch, handler, frameAt(offset, batchLengths[i]));
+                offset += batchLengths[i];
+                if (handlerMap.get(ch) != handler) {
+                    // the handler removed the channel
+                    return;
+                }
+            }
+            if (count < requested) {
+                return;
+            }
+            remaining -= count;
+        }
+    }
+
+    private CanFrame frameAt(int offset, int length) {
+        if (frameReuse) {
+            return frameView.wrap(batchBuffer, offset, length);
+        }
+        batchBuffer.limit(offset + length);
+        batchBuffer.position(offset);
+        return CanFrame.create(batchBuffer);
+    }
+
+    private void dispatch(RawCanChannel ch, FrameHandler handler, CanFrame frame) throws IOException {
+        if (postFilter != null && !postFilter.hasRoute(frame.getRawId())) {
+            // let through by compacted filters only
+            return;
+        }
+        final EventLoopMetrics metrics = getMetrics();
+        final long start = metrics == null ? 0 : System.nanoTime();
+        handler.handle(ch, frame);
+        if (metrics != null) {
+            metrics.recordDispatch(System.nanoTime() - start);
+        }
+        if (routes.isEmpty()) {
+            return;
+        }
+        // handlers are only dispatched while holding the handler lock, so the list can be reused
+        routedHandlers.clear();
+        routes.collect(frame.getRawId(), routedHandlers);
+        try {
+            for (int i = 0; i < routedHandlers.size(); i++) {
+                final long routedStart = metrics == null ? 0 : System.nanoTime();
+                routedHandlers.get(i).handle(ch, frame);
+                if (metrics != null) {
+                    metrics.recordDispatch(System.nanoTime() - routedStart);
                 }
             }
+        } finally {
+            routedHandlers.clear();
         }
     }
 
     @Override
     protected void closeResources() throws IOException {
+        filterManager.close();
         IOException e = null;
         for (RawCanChannel channel : this.channelMap.values()) {
             try {
@@ -0,0 +1,208 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import tel.schich.javacan.CanFilter;
+
+import static tel.schich.javacan.CanId.EFF_FLAG;
+import static tel.schich.javacan.CanId.EFF_MASK;
+import static tel.schich.javacan.CanId.ERR_FLAG;
+import static tel.schich.javacan.CanId.RTR_FLAG;
+import static tel.schich.javacan.CanId.SFF_MASK;
+
+/**
+ * This class compacts sets of {@link tel.schich.javacan.CanFilter}s into fewer filters, which reduces the per-frame
+ * cost of the kernel's linear filter evaluation.
+ * <p>
+ * Exact filters are merged into masked filters covering several IDs at once, which usually also lets through IDs
+ * that none of the original filters accepted. These false positives need to be removed in userspace, e.g. by checking
+ * received frames against the original filters using a {@link tel.schich.javacan.util.CanIdRoutingTable}.
+ * Masked and inverted filters are passed through unchanged.
+ */
+public final class CanFilterOptimizer {
+
+    private static final int EXACT_MASK = CanFilter.EXACT & ~ERR_FLAG;
+    private static final int FORMAT_FLAGS = EFF_FLAG | RTR_FLAG;
+
+    private CanFilterOptimizer() {}
+
+    /**
+     * Compacts the given filters into at most the given amount of filters without any limit on false positives.
+     *
+     * @param filters the filters to compact
+     * @param maxFilters the maximum amount of filters to return
+     * @return the compacted filters
+     * @see #compact(tel.schich.javacan.CanFilter[], int, long)
+     */
+    public static CanFilter[] compact(CanFilter[] filters, int maxFilters) {
+        return compact(filters, maxFilters, Long.MAX_VALUE);
+    }
+
+    /**
+     * Compacts the given filters into at most the given amount of filters. The resulting filters accept every CAN ID
+     * accepted by the given filters. Exact filters are merged greedily, always choosing the merge that admits the
+     * fewest additional CAN IDs, until either the amount of filters is small enough or the next merge would exceed
+     * the false positive budget. Only exact filters of the same frame format (standard, extended, remote
+     * transmission request) are merged.
+     * <p>
+     * If the budget is exhausted or if there are more masked and inverted filters than allowed, the result may
+     * contain more filters than requested.
+     *
+     * @param filters the filters to compact
+     * @param maxFilters the maximum amount of filters to return
+     * @param falsePositiveBudget the maximum amount of CAN IDs that may be accepted in addition to the CAN IDs
+     *                            accepted by the given filters
+     * @return the compacted filters
+     */
+    public static CanFilter[] compact(CanFilter[] filters, int maxFilters, long falsePositiveBudget) {
+        if (maxFilters < 1) {
+            throw new IllegalArgumentException("At least one filter must be allowed!");
+        }
+        if (falsePositiveBudget < 0) {
+            throw new IllegalArgumentException("The false positive budget must not be negative!");
+        }
+        Set<CanFilter> unique = new LinkedHashSet<>(Arrays.asList(filters));
+        if (unique.size() <= maxFilters) {
+            return unique.toArray(new CanFilter[0]);
+        }
+
+        List<CanFilter> passThrough = new ArrayList<>();
+        Map<Integer, List<Cluster>> byFormat = new HashMap<>();
+        for (CanFilter filter : unique) {
+            if (isMergeable(filter)) {
+                int id = filter.getId() & EXACT_MASK;
+                byFormat.computeIfAbsent(id & FORMAT_FLAGS, f -> new ArrayList<>()).add(new Cluster(id));
+            } else {
+                passThrough.add(filter);
+            }
+        }
+
+        int count = passThrough.size();
+        for (List<Cluster> clusters : byFormat.values()) {
+            clusters.sort(Comparator.comparingInt(c -> c.value));
+            count += clusters.size();
+        }
+
+        long budget = falsePositiveBudget;
+        while (count > maxFilters) {
+            List<Cluster> bestGroup = null;
+            int bestIndex = -1;
+            long bestCost = Long.MAX_VALUE;
+            for (List<Cluster> clusters : byFormat.values()) {
+                for (int i = 0; i + 1 < clusters.size(); i++) {
+                    long cost = mergeCost(clusters.get(i), clusters.get(i + 1));
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestGroup = clusters;
+                        bestIndex = i;
+                    }
+                }
+            }
+            if (bestGroup == null || bestCost > budget) {
+                break;
+            }
+            Cluster merged = bestGroup.get(bestIndex).merge(bestGroup.get(bestIndex + 1));
+            bestGroup.remove(bestIndex + 1);
+            bestGroup.set(bestIndex, merged);
+            count--;
+            // absorb clusters that are fully covered by the merged one
+            for (int i = bestGroup.size() - 1; i >= 0; i--) {
+                Cluster other = bestGroup.get(i);
+                if (other != merged && merged.covers(other)) {
+                    merged.members += other.members;
+                    bestGroup.remove(i);
+                    count--;
+                }
+            }
+            bestGroup.sort(Comparator.comparingInt(c -> c.value));
+            budget -= bestCost;
+        }
+
+        List<CanFilter> result = new ArrayList<>(count);
+        for (List<Cluster> clusters : byFormat.values()) {
+            for (Cluster cluster : clusters) {
+                result.add(new CanFilter(cluster.value, cluster.mask));
+            }
+        }
+        result.addAll(passThrough);
+        return result.toArray(new CanFilter[0]);
+    }
+
+    private static boolean isMergeable(CanFilter filter) {
+        if (filter.isInverted() || filter.getMask() != EXACT_MASK) {
+            return false;
+        }
+        int id = filter.getId();
+        int addressBits = (id & EFF_FLAG) != 0 ? EFF_MASK : SFF_MASK;
+        return (id & ~(FORMAT_FLAGS | addressBits | ERR_FLAG)) == 0;
+    }
+
+    private static long mergeCost(Cluster a, Cluster b) {
+        int mask = a.mask & b.mask & ~(a.value ^ b.value);
+        long covered = coveredIds(mask, a.value);
+        return covered - a.members - b.members - a.falsePositives() - b.falsePositives();
+    }
+
+    private static long coveredIds(int mask, int value) {
+        int addressBits = (value & EFF_FLAG) != 0 ? EFF_MASK : SFF_MASK;
+        return 1L << Integer.bitCount(addressBits & ~mask);
+    }
+
+    private static final class Cluster {
+        final int value;
+        final int mask;
+        long members;
+
+        Cluster(int id) {
+            this(id, EXACT_MASK, 1);
+        }
+
+        private Cluster(int value, int mask, long members) {
+            this.value = value;
+            this.mask = mask;
+            this.members = members;
+        }
+
+        long falsePositives() {
+            return coveredIds(mask, value) - members;
+        }
+
+        boolean covers(Cluster other) {
+            return (other.mask & mask) == mask && (other.value & mask) == value;
+        }
+
+        Cluster merge(Cluster other) {
+            int merged = mask & other.mask & ~(value ^ other.value);
+            return new Cluster(value & merged, merged, members + other.members);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.spi.SelectorProvider;
+import java.time.Duration;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.concurrent.ThreadFactory;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import tel.schich.javacan.CanChannels;
+import tel.schich.javacan.CanFilter;
+import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.CanFrameView;
+import tel.schich.javacan.NetworkDevice;
+import tel.schich.javacan.RawCanChannel;
+
+import static tel.schich.javacan.CanChannels.PROVIDER;
+import static tel.schich.javacan.CanSocketOptions.FILTER;
+import static tel.schich.javacan.CanSocketOptions.SO_RCVBUF;
+
+/**
+ * This class implements a Reactive Streams {@link org.reactivestreams.Publisher} of the
+ * {@link tel.schich.javacan.CanFrame}s received on a {@link tel.schich.javacan.NetworkDevice}, so it can be consumed
+ * by libraries like Reactor or Akka Streams.
+ * <p>
+ * Each subscription uses its own {@link tel.schich.javacan.RawCanChannel}, which is only polled for frames while the
+ * subscriber has outstanding demand. Without demand, frames are queued by the kernel in the socket's receive buffer
+ * (see {@link #setReceiveBufferSize(int)}), and once the receive buffer is full the kernel drops frames instead of
+ * this process buffering them in memory.
+ * <p>
+ * The frames passed to subscribers are independent copies and can be retained.
+ */
+public class CanFramePublisher extends EventLoop implements Publisher<CanFrame> {
+
+    /**
+     * The maximum amount of frames delivered to a single subscriber per readiness event.
+     */
+    public static final int MAX_BATCH_SIZE = 64;
+
+    private final NetworkDevice device;
+    private final CanFilter[] filters;
+    private volatile int receiveBufferSize = 0;
+
+    private final IdentityHashMap<RawCanChannel, FrameSubscription> subscriptions = new IdentityHashMap<>();
+    private final Object subscriptionLock = new Object();
+
+    private final ByteBuffer readBuffer = RawCanChannel.allocateSufficientMemory(MAX_BATCH_SIZE);
+    private final int[] frameLengths = new int[MAX_BATCH_SIZE];
+    private final CanFrameView frameView = new CanFrameView();
+
+    public CanFramePublisher(ThreadFactory threadFactory, NetworkDevice device, CanFilter... filters) throws IOException {
+        this(threadFactory, PROVIDER, CanBroker.DEFAULT_TIMEOUT, device, filters);
+    }
+
+    public CanFramePublisher(ThreadFactory threadFactory, SelectorProvider provider, Duration timeout, NetworkDevice device, CanFilter... filters) throws IOException {
+        super("CAN-publisher", threadFactory, provider, timeout);
+        this.device = device;
+        this.filters = filters.length == 0 ? new CanFilter[] { CanFilter.ANY } : filters.clone();
+    }
+
+    /**
+     * Sets the size of the kernel receive buffer of the sockets of future subscriptions. This determines how many
+     * frames can be held back while subscribers have no demand.
+     *
+     * @param bytes the size of the receive buffer in bytes or 0 to use the system default
+     */
+    public void setReceiveBufferSize(int bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("The receive buffer size must not be negative!");
+        }
+        this.receiveBufferSize = bytes;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super CanFrame> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber must not be null!");
+        }
+        final RawCanChannel ch;
+        try {
+            ch = CanChannels.newRawChannel(device);
+            ch.configureBlocking(false);
+            ch.setOption(FILTER, filters);
+            if (receiveBufferSize > 0) {
+                ch.setOption(SO_RCVBUF, receiveBufferSize);
+            }
+        } catch (IOException | RuntimeException e) {
+            subscriber.onSubscribe(CancelledSubscription.INSTANCE);
+            subscriber.onError(e);
+            return;
+        }
+        final FrameSubscription subscription = new FrameSubscription(ch, subscriber);
+        subscriber.onSubscribe(subscription);
+        synchronized (subscriptionLock) {
+            if (subscription.cancelled) {
+                return;
+            }
+            try {
+                register(ch, subscription.interestOps());
+            } catch (IOException e) {
+                subscription.fail(e);
+                return;
+            }
+            subscriptions.put(ch, subscription);
+            subscription.registered = true;
+        }
+        start();
+    }
+
+    @Override
+    protected boolean isEmpty() {
+        synchronized (subscriptionLock) {
+            return subscriptions.isEmpty();
+        }
+    }
+
+    @Override
+    protected void processEvents(Iterator<SelectionKey> keys) throws IOException {
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            processEvent(key.channel(), key.readyOps());
+        }
+    }
+
+    @Override
+    protected void processEvent(SelectableChannel ch, int readyOps) throws IOException {
+        final FrameSubscription subscription;
+        synchronized (subscriptionLock) {
+            subscription = subscriptions.get(ch);
+        }
+        if (subscription != null) {
+            subscription.drain();
+        }
+    }
+
+    @Override
+    protected void closeResources() throws IOException {
+        final FrameSubscription[] remaining;
+        synchronized (subscriptionLock) {
+            remaining = subscriptions.values().toArray(new FrameSubscription[0]);
+            subscriptions.clear();
+            // the registrations died with the selector
+            for (FrameSubscription subscription : remaining) {
+                subscription.registered = false;
+            }
+        }
+        for (FrameSubscription subscription : remaining) {
+            subscription.complete();
+        }
+    }
+
+    private final class FrameSubscription implements Subscription {
+        private final RawCanChannel channel;
+        private final Subscriber<? super CanFrame> subscriber;
+
+        // guarded by subscriptionLock
+        private long demand = 0;
+        private volatile boolean cancelled = false;
+        private boolean registered = false;
+        private Throwable pendingError = null;
+
+        FrameSubscription(RawCanChannel channel, Subscriber<? super CanFrame> subscriber) {
+            this.channel = channel;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            IOException failure = null;
+            synchronized (subscriptionLock) {
+                if (cancelled) {
+                    return;
+                }
+                final int previousOps = interestOps();
+                if (n <= 0) {
+                    // rule 1.3: the error must be signalled from the polling thread, which drains it next
+                    if (pendingError == null) {
+                        pendingError = new IllegalArgumentException("Demand must be positive, but was " + n + " (rule 3.9)");
+                    }
+                } else {
+                    demand += n;
+                    if (demand < 0) {
+                        // effectively unbounded
+                        demand = Long.MAX_VALUE;
+                    }
+                }
+                final int ops = interestOps();
+                if (registered && ops != previousOps) {
+                    try {
+                        updateInterest(channel, ops);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+            }
+            if (failure != null) {
+                fail(failure);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            terminate();
+        }
+
+        /**
+         * Determines the interested ops of the channel while holding the subscription lock. A pending error also
+         * registers interest in writes, as a raw socket is practically always writable, so the polling thread picks
+         * the error up right away.
+         *
+         * @return the interested ops
+         */
+        int interestOps() {
+            if (pendingError != null) {
+                return SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+            }
+            return demand > 0 ? SelectionKey.OP_READ : 0;
+        }
+
+        void drain() {
+            final int requested;
+            final Throwable error;
+            synchronized (subscriptionLock) {
+                if (cancelled) {
+                    return;
+                }
+                error = pendingError;
+                if (error == null && demand <= 0) {
+                    return;
+                }
+                requested = (int) Math.min(demand, MAX_BATCH_SIZE);
+            }
+            if (error != null) {
+                fail(error);
+                return;
+            }
+            final int count;
+            try {
+                readBuffer.clear();
+                count = channel.readBatch(readBuffer, frameLengths, requested);
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            IOException failure = null;
+            synchronized (subscriptionLock) {
+                if (demand != Long.MAX_VALUE) {
+                    // requests may only have added to the demand since it was sampled, so this cannot go negative
+                    demand = Math.max(0, demand - count);
+                }
+                if (demand == 0 && pendingError == null && !cancelled) {
+                    try {
+                        updateInterest(channel, 0);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+            }
+            if (failure != null) {
+                fail(failure);
+                return;
+            }
+            int offset = 0;
+            for (int i = 0; i < count && !cancelled; i++) {
+                CanFrame frame = frameView.wrap(readBuffer, offset, frameLengths[i]).copy();
+                offset += frameLengths[i];
+                subscriber.onNext(frame);
+            }
+        }
+
+        void fail(Throwable t) {
+            if (terminate()) {
+                subscriber.onError(t);
+            }
+        }
+
+        void complete() {
+            if (terminate()) {
+                subscriber.onComplete();
+            }
+        }
+
+        /**
+         * Marks this subscription as terminated and releases its channel. Only the first call succeeds, so at most
+         * one terminal signal is ever sent (rule 1.7).
+         *
+         * @return true if this call terminated the subscription
+         */
+        private boolean terminate() {
+            synchronized (subscriptionLock) {
+                if (cancelled) {
+                    return false;
+                }
+                cancelled = true;
+                if (registered) {
+                    registered = false;
+                    subscriptions.remove(channel);
+                    try {
+                        CanFramePublisher.this.cancel(channel);
+                    } catch (IOException ignored) {
+                        // closing the channel below removes it from the event loop as well
+                    }
+                }
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            return true;
+        }
+    }
+
+    private enum CancelledSubscription implements Subscription {
+        INSTANCE;
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import tel.schich.javacan.CanFilter;
+
+import static tel.schich.javacan.CanId.ERR_FLAG;
+import static tel.schich.javacan.CanId.SFF_MASK;
+
+/**
+ * This class routes raw CAN IDs to the targets subscribed with a matching {@link tel.schich.javacan.CanFilter},
+ * using the same matching semantics as the kernel (see {@link tel.schich.javacan.CanFilter#matchId(int)}).
+ * <p>
+ * Exact standard frame IDs are looked up in a direct table with 2048 entries, all other filters are grouped by their
+ * mask and looked up in a hash table per distinct mask. This makes a lookup O(1) for exact IDs and O(m) for m
+ * distinct masks, independent of the number of subscriptions. Inverted filters are matched one by one.
+ * <p>
+ * Modifications rebuild the index and are synchronized, lookups work on an immutable snapshot of the index and can be
+ * done concurrently without locking.
+ *
+ * @param <T> the type of the routing targets
+ */
+public final class CanIdRoutingTable<T> {
+
+    private static final int EXACT_MASK = CanFilter.EXACT & ~ERR_FLAG;
+
+    private final Map<CanFilter, List<T>> routes = new LinkedHashMap<>();
+    private volatile Index index = Index.EMPTY;
+
+    /**
+     * Adds a route from the given filter to the given target. The same target can be added for several filters.
+     *
+     * @param filter the filter to match
+     * @param target the target
+     * @return true if the filter was not routed to any target before
+     */
+    public synchronized boolean add(CanFilter filter, T target) {
+        if (filter == null || target == null) {
+            throw new NullPointerException("filter and target must not be null!");
+        }
+        List<T> targets = routes.get(filter);
+        boolean newFilter = targets == null;
+        if (newFilter) {
+            targets = new ArrayList<>(1);
+            routes.put(filter, targets);
+        }
+        targets.add(target);
+        rebuild();
+        return newFilter;
+    }
+
+    /**
+     * Removes one route from the given filter to the given target.
+     *
+     * @param filter the filter of the route
+     * @param target the target of the route
+     * @return true if the route existed
+     */
+    public synchronized boolean remove(CanFilter filter, T target) {
+        List<T> targets = routes.get(filter);
+        if (targets == null) {
+            return false;
+        }
+        for (int i = 0; i < targets.size(); i++) {
+            if (targets.get(i) == target) {
+                targets.remove(i);
+                if (targets.isEmpty()) {
+                    routes.remove(filter);
+                }
+                rebuild();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes all routes.
+     */
+    public synchronized void clear() {
+        routes.clear();
+        index = Index.EMPTY;
+    }
+
+    /**
+     * Checks if there are any routes.
+     *
+     * @return true if there are no routes
+     */
+    public boolean isEmpty() {
+        return index.filters.length == 0;
+    }
+
+    /**
+     * Returns the distinct filters of all routes, which is the union of filters that needs to be applied to a socket
+     * in order to receive every frame that has a route.
+     *
+     * @return the filters
+     */
+    public CanFilter[] getFilters() {
+        return index.filters.clone();
+    }
+
+    /**
+     * Checks if the given raw CAN ID is routed to any target.
+     *
+     * @param id the raw CAN ID including its flags
+     * @return true if any route matches the ID
+     */
+    public boolean hasRoute(int id) {
+        final Index index = this.index;
+        final int exactKey = id & EXACT_MASK;
+        if ((exactKey & ~SFF_MASK) == 0 && index.standard[exactKey] != null) {
+            return true;
+        }
+        for (int i = 0; i < index.masks.length; i++) {
+            if (index.groups[i].get(id & index.masks[i]) != null) {
+                return true;
+            }
+        }
+        for (CanFilter filter : index.inverted) {
+            if (!filter.matchId(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collects the targets routed from the given raw CAN ID into the given list. Every target is added at most
+     * once, even if it is routed from several matching filters. This method does not allocate unless the list
+     * needs to grow.
+     *
+     * @param id the raw CAN ID including its flags
+     * @param out the list to add the targets to
+     * @return the number of targets added
+     */
+    public int collect(int id, List<? super T> out) {
+        final Index index = this.index;
+        final int sizeBefore = out.size();
+        final int exactKey = id & EXACT_MASK;
+        if ((exactKey & ~SFF_MASK) == 0) {
+            addAll(index.standard[exactKey], sizeBefore, out);
+        }
+        for (int i = 0; i < index.masks.length; i++) {
+            addAll(index.groups[i].get(id & index.masks[i]), sizeBefore, out);
+        }
+        for (int i = 0; i < index.inverted.length; i++) {
+            if (!index.inverted[i].matchId(id)) {
+                addAll(index.invertedTargets[i], sizeBefore, out);
+            }
+        }
+        return out.size() - sizeBefore;
+    }
+
+    private static <T> void addAll(Object[] targets, int from, List<T> out) {
+        if (targets == null) {
+            return;
+        }
+        outer:
+        for (Object target : targets) {
+            for (int i = from; i < out.size(); i++) {
+                if (out.get(i) == target) {
+                    continue outer;
+                }
+            }
+            @SuppressWarnings("unchecked")
+            T t = (T) target;
+            out.add(t);
+        }
+    }
+
+    private void rebuild() {
+        Object[][] standard = new Object[SFF_MASK + 1][];
+        Map<Integer, Map<Integer, List<Object>>> byMask = new LinkedHashMap<>();
+        List<CanFilter> inverted = new ArrayList<>();
+        List<Object[]> invertedTargets = new ArrayList<>();
+
+        for (Map.Entry<CanFilter, List<T>> route : routes.entrySet()) {
+            CanFilter filter = route.getKey();
+            Object[] targets = route.getValue().toArray();
+            if (filter.isInverted()) {
+                inverted.add(filter);
+                invertedTargets.add(targets);
+                continue;
+            }
+            int mask = filter.getMask();
+            int key = filter.getId() & mask;
+            if (mask == EXACT_MASK && (key & ~SFF_MASK) == 0) {
+                standard[key] = concat(standard[key], targets);
+            } else {
+                List<Object> group = byMask.computeIfAbsent(mask, m -> new LinkedHashMap<>())
+                        .computeIfAbsent(key, k -> new ArrayList<>());
+                group.addAll(Arrays.asList(targets));
+            }
+        }
+
+        int[] masks = new int[byMask.size()];
+        IntMap[] groups = new IntMap[byMask.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Map<Integer, List<Object>>> group : byMask.entrySet()) {
+            masks[i] = group.getKey();
+            groups[i] = new IntMap(group.getValue());
+            i++;
+        }
+
+        index = new Index(routes.keySet().toArray(new CanFilter[0]), standard, masks, groups,
+                inverted.toArray(new CanFilter[0]), invertedTargets.toArray(new Object[0][]));
+    }
+
+    private static Object[] concat(Object[] a, Object[] b) {
+        if (a == null) {
+            return b;
+        }
+        Object[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static final class Index {
+        static final Index EMPTY = new Index(new CanFilter[0], new Object[SFF_MASK + 1][], new int[0],
+                new IntMap[0], new CanFilter[0], new Object[0][]);
+
+        final CanFilter[] filters;
+        final Object[][] standard;
+        final int[] masks;
+        final IntMap[] groups;
+        final CanFilter[] inverted;
+        final Object[][] invertedTargets;
+
+        Index(CanFilter[] filters, Object[][] standard, int[] masks, IntMap[] groups, CanFilter[] inverted,
+                Object[][] invertedTargets) {
+            this.filters = filters;
+            this.standard = standard;
+            this.masks = masks;
+            this.groups = groups;
+            this.inverted = inverted;
+            this.invertedTargets = invertedTargets;
+        }
+    }
+
+    /**
+     * An immutable open addressing hash table from int keys to target arrays, which avoids boxing on lookups.
+     */
+    private static final class IntMap {
+        private final int[] keys;
+        private final Object[][] values;
+        private final int mask;
+
+        IntMap(Map<Integer, List<Object>> entries) {
+            int capacity = Integer.highestOneBit(Math.max(1, entries.size() * 2 - 1)) << 1;
+            this.keys = new int[capacity];
+            this.values = new Object[capacity][];
+            this.mask = capacity - 1;
+            for (Map.Entry<Integer, List<Object>> entry : entries.entrySet()) {
+                int key = entry.getKey();
+                int slot = slotOf(key);
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = entry.getValue().toArray();
+            }
+        }
+
+        private int slotOf(int key) {
+            int h = key * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        Object[] get(int key) {
+            int slot = slotOf(key);
+            Object[] value;
+            while ((value = values[slot]) != null) {
+                if (keys[slot] == key) {
+                    return value;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+    }
+}
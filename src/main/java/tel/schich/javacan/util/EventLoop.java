@@ -24,6 +24,7 @@ package tel.schich.javacan.util;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.SelectableChannel;
@@ -35,13 +36,42 @@ import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.ThreadFactory;
 
+import tel.schich.javacan.linux.epoll.EPollEventHandler;
+import tel.schich.javacan.linux.epoll.EPollEventLoop;
+import tel.schich.javacan.metrics.EventLoopMetrics;
+import tel.schich.javacan.select.NativeChannel;
+
+/**
+ * This class implements a polling thread over either a {@link java.nio.channels.Selector} or an
+ * {@link tel.schich.javacan.linux.epoll.EPollEventLoop}. When running on a selector, implementations receive the
+ * selected keys via {@link #processEvents(java.util.Iterator)}, when running on an event loop, each event is passed to
+ * {@link #processEvent(java.nio.channels.SelectableChannel, int)} directly.
+ */
 public abstract class EventLoop implements Closeable {
     private final String name;
 
     private final ThreadFactory threadFactory;
     private final SelectorProvider provider;
     private final AbstractSelector selector;
+    private final EPollEventLoop eventLoop;
+    private final EPollEventHandler dispatcher = (ch, readyOps) -> processEvent((SelectableChannel) ch, readyOps);
     private final Duration timeout;
+    private final PollStrategy.Selection selection = new PollStrategy.Selection() {
+        @Override
+        public int selectNow() throws IOException {
+            return EventLoop.this.selectNow();
+        }
+
+        @Override
+        public int select(long timeout) throws IOException {
+            return EventLoop.this.select(timeout);
+        }
+    };
+
+    private volatile PollStrategy pollStrategy = PollStrategy.blocking();
+    private volatile LatencyHistogram latencyHistogram;
+    private volatile EventLoopMetrics metrics;
+    private long lastWakeupNanos;
 
     private PollingThread poller;
     private final Object pollerLock = new Object();
@@ -51,6 +81,25 @@ public abstract class EventLoop implements Closeable {
         this.threadFactory = threadFactory;
         this.provider = provider;
         this.selector = provider.openSelector();
+        this.eventLoop = null;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Creates an event loop that runs on the given {@link tel.schich.javacan.linux.epoll.EPollEventLoop} instead of a
+     * {@link java.nio.channels.Selector}. The event loop will be closed together with this instance.
+     *
+     * @param name the name used for the polling thread
+     * @param threadFactory the factory for the polling thread
+     * @param eventLoop the event loop to run on
+     * @param timeout the timeout used on epoll wait calls
+     */
+    public EventLoop(String name, ThreadFactory threadFactory, EPollEventLoop eventLoop, Duration timeout) {
+        this.name = name;
+        this.threadFactory = threadFactory;
+        this.provider = null;
+        this.selector = null;
+        this.eventLoop = eventLoop;
         this.timeout = timeout;
     }
 
@@ -66,7 +115,7 @@ public abstract class EventLoop implements Closeable {
     /**
      * Exposes the {@link java.nio.channels.spi.SelectorProvider} used by this event loop.
      *
-     * @return the selector provider
+     * @return the selector provider or null if running on an {@link tel.schich.javacan.linux.epoll.EPollEventLoop}
      */
     public SelectorProvider getSelectorProvider() {
         return provider;
@@ -81,24 +130,122 @@ public abstract class EventLoop implements Closeable {
         return timeout;
     }
 
+    /**
+     * Sets the {@link tel.schich.javacan.util.PollStrategy} used to wait for IO events.
+     *
+     * @param pollStrategy the strategy
+     */
+    public void setPollStrategy(PollStrategy pollStrategy) {
+        if (pollStrategy == null) {
+            throw new NullPointerException("pollStrategy must not be null!");
+        }
+        this.pollStrategy = pollStrategy;
+    }
+
+    /**
+     * Returns the {@link tel.schich.javacan.util.PollStrategy} used to wait for IO events.
+     *
+     * @return the strategy
+     */
+    public PollStrategy getPollStrategy() {
+        return pollStrategy;
+    }
+
+    /**
+     * Sets the {@link tel.schich.javacan.util.LatencyHistogram} that records the time between the polling thread
+     * waking up and the handler of an event being called.
+     *
+     * @param latencyHistogram the histogram or null to disable recording
+     */
+    public void setLatencyHistogram(LatencyHistogram latencyHistogram) {
+        this.latencyHistogram = latencyHistogram;
+    }
+
+    /**
+     * Returns the {@link tel.schich.javacan.util.LatencyHistogram} that records the dispatch latency.
+     *
+     * @return the histogram or null if recording is disabled
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    /**
+     * Sets the {@link tel.schich.javacan.metrics.EventLoopMetrics} recording the activity of this event loop.
+     *
+     * @param metrics the metrics or null to disable recording
+     */
+    public void setMetrics(EventLoopMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the {@link tel.schich.javacan.metrics.EventLoopMetrics} recording the activity of this event loop.
+     *
+     * @return the metrics or null if none are recorded
+     */
+    public EventLoopMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Records the time since the polling thread woke up into the latency histogram if one has been configured.
+     * Implementations should call this right before calling a handler.
+     */
+    protected final void recordDispatch() {
+        final LatencyHistogram histogram = latencyHistogram;
+        if (histogram != null) {
+            final long wakeup = eventLoop == null ? lastWakeupNanos : eventLoop.getLastWakeupNanos();
+            histogram.record(System.nanoTime() - wakeup);
+        }
+    }
+
     /**
      * Registers a channel to the {@link java.nio.channels.Selector}.
      *
      * @param ch the channel to register
      * @param ops the interested ops
      * @throws ClosedChannelException if the channel is already closed
+     * @throws IOException if the native call fails
+     */
+    protected final void register(SelectableChannel ch, int ops) throws IOException {
+        if (eventLoop == null) {
+            ch.register(selector, ops);
+            return;
+        }
+        if (!ch.isOpen()) {
+            throw new ClosedChannelException();
+        }
+        eventLoop.register((NativeChannel) ch, ops, dispatcher);
+    }
+
+    /**
+     * Changes the interested ops of a registered channel.
+     *
+     * @param ch the registered channel
+     * @param ops the interested ops
+     * @throws IOException if the native call fails
      */
-    protected final void register(SelectableChannel ch, int ops) throws ClosedChannelException {
-        ch.register(selector, ops);
+    protected final void updateInterest(SelectableChannel ch, int ops) throws IOException {
+        if (eventLoop == null) {
+            ch.keyFor(selector).interestOps(ops);
+            return;
+        }
+        eventLoop.updateOps((NativeChannel) ch, ops);
     }
 
     /**
      * Cancels the given {@link java.nio.channels.SelectableChannel}'s {@link java.nio.channels.SelectionKey}.
      *
      * @param ch the channel to cancel the key for
+     * @throws IOException if the native call fails
      */
-    protected final void cancel(SelectableChannel ch) {
-        ch.keyFor(selector).cancel();
+    protected final void cancel(SelectableChannel ch) throws IOException {
+        if (eventLoop == null) {
+            ch.keyFor(selector).cancel();
+            return;
+        }
+        eventLoop.unregister((NativeChannel) ch);
     }
 
     /**
@@ -109,7 +256,27 @@ public abstract class EventLoop implements Closeable {
      * @throws IOException if the native call fails
      */
     protected final int select(long timeout) throws IOException {
-        return this.selector.select(timeout);
+        if (eventLoop != null) {
+            return eventLoop.poll(timeout <= 0 ? -1 : timeout);
+        }
+        int n = this.selector.select(timeout);
+        lastWakeupNanos = System.nanoTime();
+        return n;
+    }
+
+    /**
+     * Passes the call through to the underlying {@link java.nio.channels.Selector} without blocking.
+     *
+     * @return the number of events
+     * @throws IOException if the native call fails
+     */
+    protected final int selectNow() throws IOException {
+        if (eventLoop != null) {
+            return eventLoop.poll(0);
+        }
+        int n = this.selector.selectNow();
+        lastWakeupNanos = System.nanoTime();
+        return n;
     }
 
     /**
@@ -118,6 +285,9 @@ public abstract class EventLoop implements Closeable {
      * @return the selected keys
      */
     protected final Set<SelectionKey> selectedKeys() {
+        if (eventLoop != null) {
+            throw new IllegalStateException("Events are dispatched directly when running on an EPollEventLoop!");
+        }
         return this.selector.selectedKeys();
     }
 
@@ -143,7 +313,7 @@ public abstract class EventLoop implements Closeable {
      * A direct call is not necessary, as implementations should start the loop upon adding a channel.
      */
     public final void start() {
-        if (!selector.isOpen()) {
+        if (eventLoop == null ? !selector.isOpen() : !eventLoop.isOpen()) {
             throw new ClosedSelectorException();
         }
         synchronized (pollerLock) {
@@ -172,7 +342,7 @@ public abstract class EventLoop implements Closeable {
             }
             try {
                 this.poller.stop();
-                this.selector.wakeup();
+                wakeup();
                 this.poller.join();
             } finally {
                 this.poller = null;
@@ -191,13 +361,30 @@ public abstract class EventLoop implements Closeable {
         if (lazyShutdown()) {
             return true;
         }
-        int n = select(timeout);
-        if (n > 0) {
+        int n = pollStrategy.poll(selection, timeout);
+        final EventLoopMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.recordWakeup();
+        }
+        if (n > 0 && eventLoop == null) {
             processEvents(selectedKeys().iterator());
         }
         return true;
     }
 
+    private void wakeup() {
+        if (eventLoop == null) {
+            this.selector.wakeup();
+            return;
+        }
+        try {
+            eventLoop.wakeup();
+        } catch (IOException e) {
+            // shutdown() does not allow checked exceptions
+            throw new UncheckedIOException(e);
+        }
+    }
+
     /**
      * Handles the {@link java.lang.Throwable} that got thrown in the event loop.
      *
@@ -207,6 +394,10 @@ public abstract class EventLoop implements Closeable {
      * @return true if the event loop should continue, false for the event loop to exit
      */
     protected boolean handleException(Thread thread, Throwable t, boolean terminal) {
+        final EventLoopMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.recordException();
+        }
         System.err.println("Polling thread failed: " + thread.getName());
         t.printStackTrace(System.err);
         System.err.println("Terminating other threads.");
@@ -236,6 +427,18 @@ public abstract class EventLoop implements Closeable {
      */
     protected abstract void processEvents(Iterator<SelectionKey> selectedKeys) throws IOException;
 
+    /**
+     * Processes the events of a single channel. This is called instead of {@link #processEvents(java.util.Iterator)}
+     * when running on an {@link tel.schich.javacan.linux.epoll.EPollEventLoop}.
+     *
+     * @param ch the channel that is ready
+     * @param readyOps the ready ops using the constants of {@link java.nio.channels.SelectionKey}
+     * @throws IOException if the implementation has IO failures
+     */
+    protected void processEvent(SelectableChannel ch, int readyOps) throws IOException {
+        throw new UnsupportedOperationException(getClass().getName() + " can not run on an EPollEventLoop!");
+    }
+
     /**
      * Closes the event loop by shutting it down and then
      *
@@ -249,7 +452,11 @@ public abstract class EventLoop implements Closeable {
             throw new IOException(e);
         } finally {
             try {
-                selector.close();
+                if (eventLoop == null) {
+                    selector.close();
+                } else {
+                    eventLoop.close();
+                }
             } finally {
                 closeResources();
             }
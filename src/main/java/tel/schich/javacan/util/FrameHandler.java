@@ -28,6 +28,11 @@ import tel.schich.javacan.RawCanChannel;
 /**
  * Frame handlers are called by a {@link tel.schich.javacan.util.CanBroker} for each {@link tel.schich.javacan.CanFrame}
  * received by the {@link tel.schich.javacan.RawCanChannel} it has been added with.
+ * <p>
+ * The frame passed to a handler is backed by a buffer that is reused for the next read, so it is only valid for the
+ * duration of the call. Use {@link tel.schich.javacan.CanFrame#copy()} to retain it. If frame reuse has been enabled
+ * using {@link tel.schich.javacan.util.CanBroker#setFrameReuse(boolean)}, the frame object itself is a
+ * {@link tel.schich.javacan.CanFrameView} that is repointed to the next frame as well.
  */
 @FunctionalInterface
 public interface FrameHandler {
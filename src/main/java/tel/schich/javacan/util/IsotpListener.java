@@ -23,6 +23,7 @@
 package tel.schich.javacan.util;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
@@ -33,6 +34,7 @@ import java.util.Iterator;
 import java.util.concurrent.ThreadFactory;
 
 import tel.schich.javacan.IsotpCanChannel;
+import tel.schich.javacan.linux.epoll.EPollEventLoop;
 
 /**
  * This class implements an event driven interface over several {@link tel.schich.javacan.IsotpCanChannel}s to
@@ -40,7 +42,15 @@ import tel.schich.javacan.IsotpCanChannel;
  * for for each specific channel.
  */
 public class IsotpListener extends EventLoop {
+    /**
+     * The maximum amount of messages read with a single system call when draining a channel.
+     */
+    public static final int MAX_BATCH_SIZE = 16;
+
     private final ByteBuffer readBuffer = IsotpCanChannel.allocateSufficientMemory();
+    private int readBudget = 1;
+    private ByteBuffer batchBuffer;
+    private int[] batchLengths;
 
     private final IdentityHashMap<IsotpCanChannel, MessageHandler> handlerMap = new IdentityHashMap<>();
     private final Object handlerLock = new Object();
@@ -49,6 +59,54 @@ public class IsotpListener extends EventLoop {
         super("ISOTP", threadFactory, provider, timeout);
     }
 
+    /**
+     * Creates a listener that dispatches events directly from the given
+     * {@link tel.schich.javacan.linux.epoll.EPollEventLoop} instead of going through a
+     * {@link java.nio.channels.Selector}. The event loop is owned by the listener afterwards.
+     *
+     * @param threadFactory the factory for the polling thread
+     * @param eventLoop the event loop to run on
+     * @param timeout the timeout used on epoll wait calls
+     */
+    public IsotpListener(ThreadFactory threadFactory, EPollEventLoop eventLoop, Duration timeout) {
+        super("ISOTP", threadFactory, eventLoop, timeout);
+    }
+
+    /**
+     * Sets the maximum amount of messages that are read from a single channel per readiness event. With a budget of 1
+     * (the default) a single message is read per event. Larger budgets drain the channel in batches of up to
+     * {@link #MAX_BATCH_SIZE} messages until either nothing is left to read or the budget is exhausted.
+     *
+     * @param budget the maximum amount of messages to read per channel and event
+     */
+    public void setReadBudget(int budget) {
+        if (budget < 1) {
+            throw new IllegalArgumentException("The read budget must be positive!");
+        }
+        synchronized (handlerLock) {
+            this.readBudget = budget;
+            if (budget > 1) {
+                int batchSize = Math.min(budget, MAX_BATCH_SIZE);
+                this.batchBuffer = IsotpCanChannel.allocateSufficientMemory(batchSize);
+                this.batchLengths = new int[batchSize];
+            } else {
+                this.batchBuffer = null;
+                this.batchLengths = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum amount of messages that are read from a single channel per readiness event.
+     *
+     * @return the read budget
+     */
+    public int getReadBudget() {
+        synchronized (handlerLock) {
+            return readBudget;
+        }
+    }
+
     /**
      * Adds the given {@link tel.schich.javacan.IsotpCanChannel} together with its
      * {@link tel.schich.javacan.util.MessageHandler} to this listener.
@@ -89,7 +147,11 @@ public class IsotpListener extends EventLoop {
             }
 
             this.handlerMap.remove(ch);
-            cancel(ch);
+            try {
+                cancel(ch);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
 
             if (isEmpty()) {
                 try {
@@ -113,22 +175,63 @@ public class IsotpListener extends EventLoop {
             while (keys.hasNext()) {
                 SelectionKey key = keys.next();
                 keys.remove();
-                SelectableChannel ch = key.channel();
-                if (ch instanceof IsotpCanChannel) {
-                    IsotpCanChannel isotp = (IsotpCanChannel) ch;
-                    MessageHandler handler = handlerMap.get(ch);
-                    if (handler != null) {
-                        readBuffer.clear();
-                        isotp.read(readBuffer);
-                        readBuffer.flip();
-                        handler.handle(isotp, readBuffer.asReadOnlyBuffer());
-                    } else {
-                        System.err.println("Handler not found for channel: " + ch);
-                    }
+                processChannel(key.channel());
+            }
+        }
+    }
+
+    @Override
+    protected void processEvent(SelectableChannel ch, int readyOps) throws IOException {
+        synchronized (handlerLock) {
+            processChannel(ch);
+        }
+    }
+
+    private void processChannel(SelectableChannel ch) throws IOException {
+        if (ch instanceof IsotpCanChannel) {
+            IsotpCanChannel isotp = (IsotpCanChannel) ch;
+            MessageHandler handler = handlerMap.get(ch);
+            if (handler != null) {
+                if (readBudget > 1) {
+                    drain(isotp, handler);
                 } else {
-                    System.err.println("Unsupported channel: " + ch);
+                    readBuffer.clear();
+                    isotp.read(readBuffer);
+                    readBuffer.flip();
+                    recordDispatch();
+                    handler.handle(isotp, readBuffer.asReadOnlyBuffer());
+                }
+            } else {
+                System.err.println("Handler not found for channel: " + ch);
+            }
+        } else {
+            System.err.println("Unsupported channel: " + ch);
+        }
+    }
+
+    private void drain(IsotpCanChannel ch, MessageHandler handler) throws IOException {
+        int remaining = readBudget;
+        while (remaining > 0) {
+            int requested = Math.min(remaining, batchLengths.length);
+            batchBuffer.clear().limit(requested * (IsotpCanChannel.MAX_MESSAGE_LENGTH + 1));
+            int count = ch.readBatch(batchBuffer, batchLengths);
+            if (count > 0) {
+                recordDispatch();
+            }
+            int offset = 0;
+            for (int i = 0; i < count; i++) {
+                batchBuffer.limit(offset + batchLengths[i]).position(offset);
+                handler.handle(ch, batchBuffer.asReadOnlyBuffer());
+                offset += batchLengths[i];
+                if (handlerMap.get(ch) != handler) {
+                    // the handler removed the channel
+                    return;
                 }
             }
+            if (count < requested) {
+                return;
+            }
+            remaining -= count;
         }
     }
 }
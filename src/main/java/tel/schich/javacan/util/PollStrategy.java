@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.util;
+
+import java.io.IOException;
+
+/**
+ * This interface decides how an {@link tel.schich.javacan.util.EventLoop} waits for IO events. Blocking waits are
+ * cheap on CPU, but every event has to wake up the polling thread first. Spinning strategies trade CPU time for
+ * latency and are intended for polling threads pinned to an isolated core.
+ * <p>
+ * A single call to {@link #poll(Selection, long)} must return eventually even without events, so that the polling
+ * thread can be stopped.
+ */
+@FunctionalInterface
+public interface PollStrategy {
+
+    /**
+     * The operations a strategy can use to wait for events.
+     */
+    interface Selection {
+        /**
+         * Checks for events without blocking.
+         *
+         * @return the number of events
+         * @throws IOException if the native calls fail
+         */
+        int selectNow() throws IOException;
+
+        /**
+         * Waits for events.
+         *
+         * @param timeout the timeout in milliseconds
+         * @return the number of events
+         * @throws IOException if the native calls fail
+         */
+        int select(long timeout) throws IOException;
+    }
+
+    /**
+     * Waits for events using the given {@link Selection}.
+     *
+     * @param selection the selection to wait on
+     * @param timeout the configured timeout of the event loop in milliseconds
+     * @return the number of events
+     * @throws IOException if the native calls fail
+     */
+    int poll(Selection selection, long timeout) throws IOException;
+
+    /**
+     * Always blocks with the configured timeout. This is the default strategy.
+     *
+     * @return the strategy
+     */
+    static PollStrategy blocking() {
+        return (selection, timeout) -> selection.select(timeout);
+    }
+
+    /**
+     * Never blocks, the polling thread will keep a CPU core busy at all times.
+     *
+     * @return the strategy
+     */
+    static PollStrategy busySpin() {
+        return (selection, timeout) -> selection.selectNow();
+    }
+
+    /**
+     * Checks for events without blocking up to the given amount of times before blocking with the configured timeout.
+     *
+     * @param spins the amount of non-blocking checks before blocking
+     * @return the strategy
+     */
+    static PollStrategy spinThenBlock(int spins) {
+        if (spins < 1) {
+            throw new IllegalArgumentException("spins must be positive!");
+        }
+        return (selection, timeout) -> {
+            for (int i = 0; i < spins; i++) {
+                int n = selection.selectNow();
+                if (n > 0) {
+                    return n;
+                }
+            }
+            return selection.select(timeout);
+        };
+    }
+}
@@ -0,0 +1,458 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.spi.SelectorProvider;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.concurrent.ThreadFactory;
+
+import tel.schich.javacan.CanFilter;
+import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.NetworkDevice;
+
+import static tel.schich.javacan.CanChannels.PROVIDER;
+import static tel.schich.javacan.util.CanBroker.DEFAULT_TIMEOUT;
+
+/**
+ * This class offers the same interface as {@link tel.schich.javacan.util.CanBroker}, but distributes the
+ * {@link tel.schich.javacan.NetworkDevice}s over several independent brokers (shards), each with its own selector
+ * and polling thread. Handlers of devices on different shards are called concurrently, so a slow handler only stalls
+ * the devices of its own shard.
+ * <p>
+ * Devices are assigned to a shard by the hash of the device, unless a shard is given explicitly.
+ * Filters, subscriptions and all other settings apply to all shards.
+ */
+public class ShardedCanBroker implements Closeable {
+
+    private final CanBroker[] shards;
+    private final HashMap<NetworkDevice, CanBroker> deviceShards = new HashMap<>();
+    private final Object shardLock = new Object();
+
+    public ShardedCanBroker(ThreadFactory threadFactory, int shardCount) throws IOException {
+        this(threadFactory, shardCount, PROVIDER, DEFAULT_TIMEOUT);
+    }
+
+    public ShardedCanBroker(ThreadFactory threadFactory, int shardCount, Duration timeout) throws IOException {
+        this(threadFactory, shardCount, PROVIDER, timeout);
+    }
+
+    public ShardedCanBroker(ThreadFactory threadFactory, int shardCount, SelectorProvider provider, Duration timeout) throws IOException {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("At least one shard is required!");
+        }
+        this.shards = new CanBroker[shardCount];
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                this.shards[i] = new CanBroker("CAN-shard-" + i, threadFactory, provider, timeout);
+            }
+        } catch (IOException e) {
+            try {
+                close();
+            } catch (IOException e1) {
+                e.addSuppressed(e1);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of shards of this broker.
+     *
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns the shard a {@link tel.schich.javacan.NetworkDevice} would be assigned to by
+     * {@link #addDevice(tel.schich.javacan.NetworkDevice, FrameHandler)}.
+     *
+     * @param device the device
+     * @return the index of the shard
+     */
+    public int shardFor(NetworkDevice device) {
+        return Math.floorMod(device.hashCode(), shards.length);
+    }
+
+    /**
+     * Sends a {@link tel.schich.javacan.CanFrame} to all known devices.
+     *
+     * @param frame the frame to send
+     * @throws IOException if the native call fails
+     */
+    public void send(CanFrame frame) throws IOException {
+        for (CanBroker shard : shards) {
+            shard.send(frame);
+        }
+    }
+
+    /**
+     * Sends a {@link tel.schich.javacan.CanFrame} to the given known {@link tel.schich.javacan.NetworkDevice}.
+     *
+     * @param device the device to send the frame to
+     * @param frame the frame to send
+     * @throws IOException if the native call fails
+     */
+    public void send(NetworkDevice device, CanFrame frame) throws IOException {
+        shardOf(device).send(device, frame);
+    }
+
+    /**
+     * Sends the given {@link tel.schich.javacan.CanFrame}s to all known devices using a single system call per device.
+     *
+     * @param frames the frames to send
+     * @return the number of frames accepted by the kernel summed up over all devices
+     * @throws IOException if the native call fails
+     */
+    public int sendBatch(CanFrame[] frames) throws IOException {
+        int accepted = 0;
+        for (CanBroker shard : shards) {
+            accepted += shard.sendBatch(frames);
+        }
+        return accepted;
+    }
+
+    /**
+     * Sends the given {@link tel.schich.javacan.CanFrame}s to the given known
+     * {@link tel.schich.javacan.NetworkDevice} using a single system call.
+     *
+     * @param device the device to send the frames to
+     * @param frames the frames to send
+     * @return the number of frames accepted by the kernel
+     * @throws IOException if the native call fails
+     */
+    public int sendBatch(NetworkDevice device, CanFrame[] frames) throws IOException {
+        return shardOf(device).sendBatch(device, frames);
+    }
+
+    /**
+     * Sets the maximum amount of frames that are read from a single channel per readiness event on all shards.
+     *
+     * @param budget the maximum amount of frames to read per channel and event
+     * @see CanBroker#setReadBudget(int)
+     */
+    public void setReadBudget(int budget) {
+        for (CanBroker shard : shards) {
+            shard.setReadBudget(budget);
+        }
+    }
+
+    /**
+     * Returns the maximum amount of frames that are read from a single channel per readiness event.
+     *
+     * @return the read budget
+     */
+    public int getReadBudget() {
+        return shards[0].getReadBudget();
+    }
+
+    /**
+     * Sets the loopback mode for all known devices.
+     *
+     * @param enable whether to enable loopback
+     * @throws IOException if the native call fails
+     */
+    public void setLoopback(boolean enable) throws IOException {
+        for (CanBroker shard : shards) {
+            shard.setLoopback(enable);
+        }
+    }
+
+    /**
+     * Sets whether received frames are passed to the handlers through a reused view on all shards.
+     *
+     * @param enable whether to reuse a single view per shard for all frames
+     * @see CanBroker#setFrameReuse(boolean)
+     */
+    public void setFrameReuse(boolean enable) {
+        for (CanBroker shard : shards) {
+            shard.setFrameReuse(enable);
+        }
+    }
+
+    /**
+     * Checks if received frames are passed to the handlers through a reused view.
+     *
+     * @return true if frames are reused
+     */
+    public boolean isFrameReuse() {
+        return shards[0].isFrameReuse();
+    }
+
+    /**
+     * Checks if the devices of this broker are in loopback mode.
+     *
+     * @return true if the devices are in loopback mode
+     */
+    public boolean isLoopback() {
+        return shards[0].isLoopback();
+    }
+
+    /**
+     * Sets whether the kernel reports frames dropped due to full receive queues on all known devices.
+     *
+     * @param enable whether to enable drop monitoring
+     * @throws IOException if the native call fails
+     * @see CanBroker#setDropMonitoring(boolean)
+     */
+    public void setDropMonitoring(boolean enable) throws IOException {
+        for (CanBroker shard : shards) {
+            shard.setDropMonitoring(enable);
+        }
+    }
+
+    /**
+     * Checks if drop monitoring is enabled on the devices of this broker.
+     *
+     * @return true if drop monitoring is enabled
+     */
+    public boolean isDropMonitoring() {
+        return shards[0].isDropMonitoring();
+    }
+
+    /**
+     * Returns the total amount of frames the kernel dropped on the devices of all shards, including devices that
+     * have been removed already. This requires drop monitoring to be enabled.
+     *
+     * @return the amount of dropped frames
+     * @see #setDropMonitoring(boolean)
+     */
+    public long getDroppedFrames() {
+        long dropped = 0;
+        for (CanBroker shard : shards) {
+            dropped += shard.getDroppedFrames();
+        }
+        return dropped;
+    }
+
+    /**
+     * Returns the amount of frames the kernel dropped on the given device because its shard did not keep up.
+     *
+     * @param device the device
+     * @return the amount of dropped frames
+     */
+    public long getDroppedFrames(NetworkDevice device) {
+        return shardOf(device).getDroppedFrames(device);
+    }
+
+    /**
+     * Adds a filter that will be added to all underlying channels.
+     *
+     * @param filter the new filter
+     * @throws IOException if the native call fails
+     */
+    public void addFilter(CanFilter filter) throws IOException {
+        for (CanBroker shard : shards) {
+            shard.addFilter(filter);
+        }
+    }
+
+    /**
+     * Remove a filter from all underlying channels.
+     *
+     * @param filter the new filter
+     * @throws IOException if the native call fails
+     */
+    public void removeFilter(CanFilter filter) throws IOException {
+        for (CanBroker shard : shards) {
+            shard.removeFilter(filter);
+        }
+    }
+
+    /**
+     * Clears all filters.
+     *
+     * @throws IOException if the native call fails
+     */
+    public void clearFilters() throws IOException {
+        for (CanBroker shard : shards) {
+            shard.clearFilters();
+        }
+    }
+
+    /**
+     * Subscribes a {@link tel.schich.javacan.util.FrameHandler} to all frames matching the given filter on any of the
+     * devices of all shards.
+     *
+     * @param filter the filter to subscribe to
+     * @param handler the handler receiving the matching frames
+     * @throws IOException if the native call fails
+     * @see CanBroker#subscribe(CanFilter, FrameHandler)
+     */
+    public void subscribe(CanFilter filter, FrameHandler handler) throws IOException {
+        for (CanBroker shard : shards) {
+            shard.subscribe(filter, handler);
+        }
+    }
+
+    /**
+     * Unsubscribes a {@link tel.schich.javacan.util.FrameHandler} from the given filter on all shards.
+     *
+     * @param filter the filter the handler was subscribed to
+     * @param handler the handler
+     * @return true if the subscription existed
+     * @throws IOException if the native call fails
+     */
+    public boolean unsubscribe(CanFilter filter, FrameHandler handler) throws IOException {
+        boolean existed = false;
+        for (CanBroker shard : shards) {
+            existed |= shard.unsubscribe(filter, handler);
+        }
+        return existed;
+    }
+
+    /**
+     * Enables the compaction of the filters applied to the underlying channels of all shards.
+     *
+     * @param maxFilters the maximum amount of filters to apply to the channels or 0 to disable compaction
+     * @param falsePositiveBudget the maximum amount of CAN IDs that may be let through in addition
+     * @throws IOException if the native call fails
+     * @see CanBroker#setFilterCompaction(int, long)
+     */
+    public void setFilterCompaction(int maxFilters, long falsePositiveBudget) throws IOException {
+        for (CanBroker shard : shards) {
+            shard.setFilterCompaction(maxFilters, falsePositiveBudget);
+        }
+    }
+
+    /**
+     * Sets the window within which filter changes are coalesced on all shards.
+     *
+     * @param window the coalescing window
+     * @see CanBroker#setFilterUpdateWindow(Duration)
+     */
+    public void setFilterUpdateWindow(Duration window) {
+        for (CanBroker shard : shards) {
+            shard.setFilterUpdateWindow(window);
+        }
+    }
+
+    /**
+     * Adds a new {@link tel.schich.javacan.NetworkDevice} to the shard chosen by {@link #shardFor(NetworkDevice)}
+     * without a device handler. Frames received on the device are only passed on to subscribed handlers.
+     *
+     * @param device the device
+     * @throws IOException if the native call fails
+     * @see #subscribe(CanFilter, FrameHandler)
+     */
+    public void addDevice(NetworkDevice device) throws IOException {
+        addDevice(device, shardFor(device), null);
+    }
+
+    /**
+     * Adds a new {@link tel.schich.javacan.NetworkDevice} to the shard chosen by {@link #shardFor(NetworkDevice)}.
+     *
+     * @param device the device
+     * @param handler the handler
+     * @throws IOException if the native call fails
+     */
+    public void addDevice(NetworkDevice device, FrameHandler handler) throws IOException {
+        addDevice(device, shardFor(device), handler);
+    }
+
+    /**
+     * Adds a new {@link tel.schich.javacan.NetworkDevice} to the given shard together with a
+     * {@link tel.schich.javacan.util.FrameHandler} to handle incoming frames.
+     *
+     * @param device the device
+     * @param shard the index of the shard
+     * @param handler the handler or null to only pass frames on to subscribed handlers
+     * @throws IOException if the native call fails
+     */
+    public void addDevice(NetworkDevice device, int shard, FrameHandler handler) throws IOException {
+        if (shard < 0 || shard >= shards.length) {
+            throw new IndexOutOfBoundsException("Shard " + shard + " does not exist!");
+        }
+        synchronized (shardLock) {
+            if (deviceShards.containsKey(device)) {
+                throw new IllegalArgumentException("Device already added!");
+            }
+            CanBroker broker = shards[shard];
+            if (handler == null) {
+                broker.addDevice(device);
+            } else {
+                broker.addDevice(device, handler);
+            }
+            deviceShards.put(device, broker);
+        }
+    }
+
+    /**
+     * Removes a {@link tel.schich.javacan.NetworkDevice} from this broker instance
+     *
+     * @param device the device to remove
+     * @throws IOException if the native call fails
+     */
+    public void removeDevice(NetworkDevice device) throws IOException {
+        final CanBroker broker;
+        synchronized (shardLock) {
+            broker = deviceShards.remove(device);
+            if (broker == null) {
+                throw new IllegalArgumentException("Device not known!");
+            }
+        }
+        broker.removeDevice(device);
+    }
+
+    public boolean isEmpty() {
+        synchronized (shardLock) {
+            return deviceShards.isEmpty();
+        }
+    }
+
+    private CanBroker shardOf(NetworkDevice device) {
+        final CanBroker broker;
+        synchronized (shardLock) {
+            broker = deviceShards.get(device);
+        }
+        if (broker == null) {
+            throw new IllegalArgumentException("CAN device not known!");
+        }
+        return broker;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException e = null;
+        for (CanBroker shard : shards) {
+            if (shard == null) {
+                continue;
+            }
+            try {
+                shard.close();
+            } catch (IOException e1) {
+                if (e != null) {
+                    e1.addSuppressed(e);
+                }
+                e = e1;
+            }
+        }
+        if (e != null) {
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.test;
+
+import org.junit.jupiter.api.Test;
+import tel.schich.javacan.BpfFilter;
+import tel.schich.javacan.CanFrame;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static tel.schich.javacan.CanFrame.FD_NO_FLAGS;
+import static tel.schich.javacan.CanId.EFF_FLAG;
+
+class BpfFilterTest {
+
+    @Test
+    void testPredicates() {
+        BpfFilter filter = BpfFilter.builder()
+                .id(0x123)
+                .dataByte(0, 0x02)
+                .or()
+                .id(0x18DA0000 | EFF_FLAG, 0x1FFF0000 | EFF_FLAG)
+                .dataLength(2, 8)
+                .or()
+                .dataByte(3, 0x80, 0x80)
+                .build();
+
+        assertTrue(filter.matches(CanFrame.create(0x123, FD_NO_FLAGS, new byte[]{0x02})));
+        assertFalse(filter.matches(CanFrame.create(0x123, FD_NO_FLAGS, new byte[]{0x03})));
+        assertFalse(filter.matches(CanFrame.create(0x123, FD_NO_FLAGS, new byte[]{})));
+        assertFalse(filter.matches(CanFrame.create(0x124, FD_NO_FLAGS, new byte[]{0x02})));
+
+        assertTrue(filter.matches(CanFrame.createExtended(0x18DA1234, FD_NO_FLAGS, new byte[]{1, 2})));
+        assertFalse(filter.matches(CanFrame.createExtended(0x18DA1234, FD_NO_FLAGS, new byte[]{1})));
+        assertFalse(filter.matches(CanFrame.createExtended(0x18DB1234, FD_NO_FLAGS, new byte[]{1, 2})));
+
+        assertTrue(filter.matches(CanFrame.create(0x7FF, FD_NO_FLAGS, new byte[]{0, 0, 0, (byte) 0x81})));
+        assertFalse(filter.matches(CanFrame.create(0x7FF, FD_NO_FLAGS, new byte[]{0, 0, 0, 0x7F})));
+    }
+
+    @Test
+    void testEmptyFilterAcceptsAll() {
+        assertTrue(BpfFilter.builder().build().matches(CanFrame.create(0x001, FD_NO_FLAGS, new byte[]{})));
+    }
+
+    @Test
+    void testNativeRepresentation() {
+        BpfFilter filter = BpfFilter.builder().id(0x7E0).or().dataByte(1, 0x10).build();
+        ByteBuffer buffer = ByteBuffer.allocate(filter.getLength() * BpfFilter.INSTRUCTION_BYTES);
+        filter.writeTo(buffer);
+        buffer.flip();
+        assertEquals(filter, BpfFilter.readFrom(buffer, filter.getLength()));
+    }
+
+    @Test
+    void testInvalidPredicates() {
+        assertThrows(IllegalArgumentException.class, () -> BpfFilter.builder().dataByte(64, 0));
+        assertThrows(IllegalArgumentException.class, () -> BpfFilter.builder().dataLength(4, 2));
+    }
+}
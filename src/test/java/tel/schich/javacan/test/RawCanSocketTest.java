@@ -23,14 +23,24 @@
 package tel.schich.javacan.test;
 
 import org.junit.jupiter.api.Test;
+import tel.schich.javacan.BpfFilter;
 import tel.schich.javacan.CanChannels;
 import tel.schich.javacan.CanFilter;
+import tel.schich.javacan.CanFilterManager;
 import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.CanFrameView;
+import tel.schich.javacan.FrameTimestamp;
 import tel.schich.javacan.RawCanChannel;
 import tel.schich.javacan.linux.LinuxNativeOperationException;
+import tel.schich.javacan.select.ReadinessPoller;
 
 import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
 import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static java.time.Duration.ofMillis;
 import static java.time.Duration.ofSeconds;
@@ -112,6 +122,76 @@ class RawCanSocketTest {
         }
     }
 
+    @Test
+    @SuppressWarnings("deprecated")
+    void testFilterManager() throws Exception {
+        try (final RawCanChannel socket = CanChannels.newRawChannel();
+             final CanFilterManager manager = new CanFilterManager(Thread::new)) {
+            socket.bind(CAN_INTERFACE);
+
+            CanFilter[] first = { new CanFilter(0x123), new CanFilter(0x456, 0x7F0) };
+            manager.apply(socket, first);
+            assertArrayEquals(first, socket.getOption(FILTER), "Filters should be applied immediately");
+
+            manager.setCoalescingWindow(Duration.ofSeconds(10));
+            CanFilter[] second = { new CanFilter(0x789) };
+            manager.update(Collections.singletonList(socket), second);
+            assertArrayEquals(first, socket.getOption(FILTER), "Coalesced updates should not be applied yet");
+            manager.flush();
+            assertArrayEquals(second, socket.getOption(FILTER), "Flushing should apply pending updates");
+        }
+    }
+
+    @Test
+    void testDroppedFrames() throws Exception {
+        try (final RawCanChannel reader = CanChannels.newRawChannel();
+             final RawCanChannel writer = CanChannels.newRawChannel()) {
+            reader.bind(CAN_INTERFACE);
+            writer.bind(CAN_INTERFACE);
+            assertFalse(reader.getOption(RXQ_OVFL), "Drops are not reported by default");
+            reader.setOption(RXQ_OVFL, true);
+            assertTrue(reader.getOption(RXQ_OVFL), "Drops are reported after enabling it");
+            reader.setOption(SO_RCVBUF, 1024);
+            reader.configureBlocking(false);
+
+            final CanFrame frame = CanFrame.create(0x7ED, FD_NO_FLAGS, new byte[]{1, 2, 3, 4});
+            for (int i = 0; i < 1000; i++) {
+                writer.write(frame);
+            }
+            Thread.sleep(50);
+
+            assertEquals(0, reader.getDroppedFrames(), "Drops are only noticed when reading");
+            assertEquals(frame, reader.read());
+            assertTrue(reader.getDroppedFrames() > 0, "The tiny receive buffer should have overflown");
+        }
+    }
+
+    @Test
+    void testBpfFilter() throws Exception {
+        try (final RawCanChannel socket = CanChannels.newRawChannel()) {
+            socket.bind(CAN_INTERFACE);
+            socket.configureBlocking(false);
+            assertNull(socket.getOption(BPF_FILTER), "No BPF filter by default");
+
+            BpfFilter filter = BpfFilter.builder()
+                    .id(0x7EC)
+                    .dataByte(0, 0x02)
+                    .build();
+            socket.setOption(BPF_FILTER, filter);
+            assertEquals(filter, socket.getOption(BPF_FILTER), "What comes in should come out");
+
+            final CanFrame dropped = CanFrame.create(0x7EC, FD_NO_FLAGS, new byte[]{0x01, 0x11});
+            final CanFrame accepted = CanFrame.create(0x7EC, FD_NO_FLAGS, new byte[]{0x02, 0x22});
+            CanTestHelper.sendFrameViaUtils(CAN_INTERFACE, dropped);
+            CanTestHelper.sendFrameViaUtils(CAN_INTERFACE, accepted);
+            Thread.sleep(50);
+            assertEquals(accepted, socket.read(), "The frame with the wrong mux byte should have been dropped");
+
+            socket.setOption(BPF_FILTER, null);
+            assertNull(socket.getOption(BPF_FILTER), "The BPF filter should have been detached");
+        }
+    }
+
     @Test
     void testNonBlockingRead() throws Exception {
         try (final RawCanChannel socket = CanChannels.newRawChannel()) {
@@ -159,6 +239,57 @@ class RawCanSocketTest {
         }
     }
 
+    @Test
+    void testParkingRead() throws Exception {
+        try (final ReadinessPoller poller = new ReadinessPoller(Thread::new)) {
+            try (final RawCanChannel socket = CanChannels.newRawChannel()) {
+                socket.bind(CAN_INTERFACE);
+                socket.setReadinessPoller(poller);
+                assertTrue(socket.isBlocking(), "Socket is still blocking from the outside");
+
+                final CanFrame input = CanFrame.create(0x7EA, FD_NO_FLAGS, new byte[]{0x34, 0x52, 0x34});
+                final CompletableFuture<CanFrame> output = new CompletableFuture<>();
+                final Thread reader = new Thread(() -> {
+                    try {
+                        output.complete(socket.read());
+                    } catch (Throwable t) {
+                        output.completeExceptionally(t);
+                    }
+                });
+                reader.start();
+
+                Thread.sleep(100);
+                assertEquals(Thread.State.WAITING, reader.getState(), "The reader should be parked");
+                CanTestHelper.sendFrameViaUtils(CAN_INTERFACE, input);
+                assertEquals(input, output.get(2, TimeUnit.SECONDS), "What comes in should come out");
+            }
+        }
+    }
+
+    @Test
+    void testParkingReadClose() throws Exception {
+        try (final ReadinessPoller poller = new ReadinessPoller(Thread::new)) {
+            final RawCanChannel socket = CanChannels.newRawChannel();
+            socket.bind(CAN_INTERFACE);
+            socket.setReadinessPoller(poller);
+
+            final CompletableFuture<CanFrame> output = new CompletableFuture<>();
+            final Thread reader = new Thread(() -> {
+                try {
+                    output.complete(socket.read());
+                } catch (Throwable t) {
+                    output.completeExceptionally(t);
+                }
+            });
+            reader.start();
+
+            Thread.sleep(100);
+            socket.close();
+            final ExecutionException e = assertThrows(ExecutionException.class, () -> output.get(2, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof AsynchronousCloseException, "Closing should release the parked reader");
+        }
+    }
+
     @Test
     void testLoopback() throws Exception {
         try (final RawCanChannel a = CanChannels.newRawChannel()) {
@@ -215,6 +346,151 @@ class RawCanSocketTest {
         }
     }
 
+    @Test
+    void testBatchRead() throws Exception {
+        try (final RawCanChannel socket = CanChannels.newRawChannel()) {
+            socket.bind(CAN_INTERFACE);
+            socket.setOption(RECV_OWN_MSGS, true);
+            socket.setOption(FD_FRAMES, true);
+            socket.configureBlocking(false);
+
+            byte[] fdData = {0x00, 0x11, 0x11, 0x11, 0x11, 0x11, 0x11, 0x11, 0x22, 0x22, 0x22, 0x22};
+            final CanFrame[] input = {
+                    CanFrame.create(0x7E1, FD_NO_FLAGS, new byte[]{0x20, 0x33}),
+                    CanFrame.create(0x7E2, FD_NO_FLAGS, fdData),
+                    CanFrame.create(0x7E3, FD_NO_FLAGS, new byte[]{0x01}),
+            };
+            for (CanFrame frame : input) {
+                socket.write(frame);
+            }
+
+            ByteBuffer buffer = RawCanChannel.allocateSufficientMemory(8);
+            int[] lengths = new int[8];
+            assertEquals(input.length, socket.readBatch(buffer, lengths), "All frames should be read at once");
+            assertEquals(RawCanChannel.MTU, lengths[0]);
+            assertEquals(RawCanChannel.FD_MTU, lengths[1]);
+            assertEquals(RawCanChannel.MTU, lengths[2]);
+
+            buffer.flip();
+            int offset = 0;
+            for (int i = 0; i < input.length; i++) {
+                buffer.limit(offset + lengths[i]).position(offset);
+                assertEquals(input[i], CanFrame.create(buffer.slice()), "What comes in should come out");
+                offset += lengths[i];
+            }
+
+            buffer.clear();
+            assertEquals(0, socket.readBatch(buffer, lengths), "Nothing left to read");
+        }
+    }
+
+    @Test
+    void testBatchWrite() throws Exception {
+        try (final RawCanChannel socket = CanChannels.newRawChannel()) {
+            socket.bind(CAN_INTERFACE);
+            socket.setOption(RECV_OWN_MSGS, true);
+            socket.configureBlocking(false);
+
+            final CanFrame[] input = {
+                    CanFrame.create(0x7E4, FD_NO_FLAGS, new byte[]{0x20, 0x33}),
+                    CanFrame.create(0x7E5, FD_NO_FLAGS, new byte[]{0x01, 0x02, 0x03}),
+            };
+            assertEquals(input.length, socket.writeBatch(input), "All frames should be accepted");
+            for (CanFrame frame : input) {
+                assertEquals(frame, socket.read(), "What comes in should come out");
+            }
+
+            ByteBuffer buffer = RawCanChannel.allocateSufficientMemory(input.length);
+            int[] lengths = new int[input.length];
+            for (int i = 0; i < input.length; i++) {
+                buffer.put(input[i].getBuffer());
+                lengths[i] = input[i].getSize();
+            }
+            buffer.flip();
+            assertEquals(input.length, socket.writeBatch(buffer, lengths, input.length), "All frames should be accepted");
+            assertFalse(buffer.hasRemaining(), "All frames should be consumed from the buffer");
+            for (CanFrame frame : input) {
+                assertEquals(frame, socket.read(), "What comes in should come out");
+            }
+        }
+    }
+
+    @Test
+    void testReadWithTimestamp() throws Exception {
+        try (final RawCanChannel socket = CanChannels.newRawChannel()) {
+            socket.bind(CAN_INTERFACE);
+            socket.setOption(RECV_OWN_MSGS, true);
+            socket.configureBlocking(false);
+
+            assertFalse(socket.getOption(TIMESTAMP_NS), "Timestamps are disabled by default");
+            socket.setOption(TIMESTAMP_NS, true);
+            assertTrue(socket.getOption(TIMESTAMP_NS), "Timestamps are enabled after enabling them");
+
+            final FrameTimestamp timestamp = new FrameTimestamp();
+            final CanFrame input = CanFrame.create(0x7E6, FD_NO_FLAGS, new byte[]{0x20, 0x33});
+            final long before = System.currentTimeMillis();
+            socket.write(input);
+            final CanFrame output = socket.readWithTimestamp(RawCanChannel.allocateSufficientMemory(), timestamp);
+            final long after = System.currentTimeMillis();
+
+            assertEquals(input, output, "What comes in should come out");
+            assertTrue(timestamp.hasSoftwareTimestamp(), "A software timestamp should be provided");
+            final long millis = timestamp.getSoftwareNanos() / 1_000_000L;
+            assertTrue(millis >= before && millis <= after, "The timestamp should be taken while reading");
+
+            final ByteBuffer buffer = RawCanChannel.allocateSufficientMemory();
+            final CanFrameView view = new CanFrameView();
+            socket.write(input);
+            assertSame(view, socket.readWithTimestamp(buffer, view, timestamp), "The given view should be returned");
+            assertEquals(input, view, "What comes in should come out");
+            assertTrue(timestamp.hasSoftwareTimestamp(), "A software timestamp should be provided for views");
+
+            socket.setOption(TIMESTAMP_NS, false);
+            socket.write(input);
+            socket.readWithTimestamp(RawCanChannel.allocateSufficientMemory(), timestamp);
+            assertFalse(timestamp.hasSoftwareTimestamp(), "No timestamp after disabling them");
+        }
+    }
+
+    @Test
+    void testReadIntoView() throws Exception {
+        try (final RawCanChannel socket = CanChannels.newRawChannel()) {
+            socket.bind(CAN_INTERFACE);
+            socket.setOption(RECV_OWN_MSGS, true);
+            socket.configureBlocking(false);
+
+            final CanFrame first = CanFrame.create(0x7E1, FD_NO_FLAGS, new byte[]{0x01, 0x02});
+            final CanFrame second = CanFrame.create(0x7E2, FD_NO_FLAGS, new byte[]{0x03});
+            socket.write(first);
+            socket.write(second);
+
+            final ByteBuffer buffer = RawCanChannel.allocateSufficientMemory();
+            final CanFrameView view = new CanFrameView();
+
+            assertSame(view, socket.read(buffer, view), "The given view should be returned");
+            assertEquals(first, view);
+            final CanFrame retained = view.copy();
+
+            buffer.clear();
+            socket.read(buffer, view);
+            assertEquals(second, view, "The view should point to the latest frame");
+            assertEquals(first, retained, "The copy should be independent of the buffer");
+        }
+    }
+
+    @Test
+    void testViewWrapValidation() {
+        final ByteBuffer buffer = RawCanChannel.allocateSufficientMemory(2);
+        final CanFrameView view = new CanFrameView();
+        assertThrows(IllegalArgumentException.class, () -> view.wrap(buffer, 0, 20));
+        assertThrows(IndexOutOfBoundsException.class, () -> view.wrap(buffer, buffer.capacity() - 1, RawCanChannel.MTU));
+
+        final CanFrame frame = CanFrame.create(0x123, FD_NO_FLAGS, new byte[]{0x42});
+        buffer.position(RawCanChannel.MTU);
+        buffer.put(frame.getBuffer());
+        assertEquals(frame, view.wrap(buffer, RawCanChannel.MTU, RawCanChannel.MTU));
+    }
+
     @Test
     void testBufferReuseWithNonZeroBase() {
         byte[] data = new byte[MAX_FD_DATA_LENGTH];
@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.test.async;
+
+import org.junit.jupiter.api.Test;
+import tel.schich.javacan.CanChannels;
+import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.async.AsyncRawCanChannel;
+import tel.schich.javacan.select.ReadinessPoller;
+
+import java.nio.channels.AsynchronousCloseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+import static tel.schich.javacan.CanFrame.FD_NO_FLAGS;
+import static tel.schich.javacan.CanSocketOptions.RECV_OWN_MSGS;
+import static tel.schich.javacan.test.CanTestHelper.CAN_INTERFACE;
+
+class AsyncCanChannelTest {
+
+    @Test
+    void testPipelinedReads() throws Exception {
+        try (ReadinessPoller poller = new ReadinessPoller(Thread::new)) {
+            try (AsyncRawCanChannel ch = new AsyncRawCanChannel(CanChannels.newRawChannel(CAN_INTERFACE), poller)) {
+                ch.getChannel().setOption(RECV_OWN_MSGS, true);
+
+                List<CompletableFuture<CanFrame>> reads = new ArrayList<>();
+                for (int i = 0; i < 5; i++) {
+                    reads.add(ch.read());
+                }
+                assertEquals(5, ch.getPendingOperations(), "Nothing has been received yet");
+
+                for (int i = 0; i < 5; i++) {
+                    CanFrame frame = CanFrame.create(0x7E0 + i, FD_NO_FLAGS, new byte[]{(byte) i});
+                    assertEquals(frame.getSize(), ch.write(frame).get(1, SECONDS).intValue());
+                }
+
+                for (int i = 0; i < 5; i++) {
+                    CanFrame frame = reads.get(i).get(2, SECONDS);
+                    assertEquals(0x7E0 + i, frame.getId(), "Reads should complete in submission order");
+                }
+                assertEquals(0, ch.getPendingOperations());
+            }
+        }
+    }
+
+    @Test
+    void testCompletionOutsideOfQueueLock() throws Exception {
+        try (ReadinessPoller poller = new ReadinessPoller(Thread::new)) {
+            try (AsyncRawCanChannel ch = new AsyncRawCanChannel(CanChannels.newRawChannel(CAN_INTERFACE), poller)) {
+                ch.getChannel().setOption(RECV_OWN_MSGS, true);
+
+                // the dependent action waits for another thread that needs the read queue
+                CompletableFuture<Integer> pending = ch.read()
+                        .thenApply(frame -> CompletableFuture.supplyAsync(ch::getPendingOperations).join());
+
+                CanFrame frame = CanFrame.create(0x7E0, FD_NO_FLAGS, new byte[]{1});
+                ch.write(frame).get(1, SECONDS);
+
+                assertEquals(0, pending.get(2, SECONDS).intValue());
+            }
+        }
+    }
+
+    @Test
+    void testCloseFailsPendingReads() throws Exception {
+        try (ReadinessPoller poller = new ReadinessPoller(Thread::new)) {
+            AsyncRawCanChannel ch = new AsyncRawCanChannel(CanChannels.newRawChannel(CAN_INTERFACE), poller);
+            CompletableFuture<CanFrame> read = ch.read();
+            ch.close();
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> read.get(1, SECONDS));
+            assertTrue(e.getCause() instanceof AsynchronousCloseException);
+            assertFalse(ch.isOpen());
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.test.capture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.CanId;
+import tel.schich.javacan.NetworkDevice;
+import tel.schich.javacan.capture.CaptureReader;
+import tel.schich.javacan.capture.CaptureWriter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static tel.schich.javacan.CanFrame.FD_NO_FLAGS;
+
+class CaptureReaderTest {
+
+    private static final int FRAMES = 20000;
+    private static final long BASE = 1000;
+
+    private Path directory;
+
+    @BeforeEach
+    void writeCapture() throws IOException {
+        directory = Files.createTempDirectory("javacan-capture");
+        NetworkDevice a = () -> "can0";
+        NetworkDevice b = () -> "can1";
+        try (CaptureWriter writer = new CaptureWriter(directory, "bus", 64 * 1024)) {
+            for (int i = 0; i < FRAMES; i++) {
+                writer.write(i % 2 == 0 ? a : b, frame(i), BASE + i);
+            }
+        }
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static CanFrame frame(int i) {
+        if (i % 7 == 0) {
+            return CanFrame.createExtended(0x18DAF110, FD_NO_FLAGS, new byte[]{(byte) i});
+        }
+        return CanFrame.create(0x100 + i % 16, FD_NO_FLAGS, new byte[]{(byte) i, (byte) (i >> 8)});
+    }
+
+    @Test
+    void testForEach() throws IOException {
+        CaptureReader reader = CaptureReader.open(directory, "bus");
+        assertTrue(reader.getSegments().size() > 1, "the capture should span several segments");
+        assertEquals(FRAMES, reader.getFrameCount());
+        assertEquals(17, reader.getIds().length);
+
+        List<CanFrame> frames = new ArrayList<>();
+        reader.forEach((timestamp, device, frame) -> {
+            int i = frames.size();
+            assertEquals(BASE + i, timestamp);
+            assertEquals(i % 2 == 0 ? "can0" : "can1", device);
+            frames.add(frame.copy());
+            return true;
+        });
+        assertEquals(FRAMES, frames.size());
+        for (int i = 0; i < FRAMES; i++) {
+            assertEquals(frame(i), frames.get(i));
+        }
+    }
+
+    @Test
+    void testPrefixIsolation() throws IOException {
+        final int segments = CaptureReader.open(directory, "bus").getSegments().size();
+        try (CaptureWriter writer = new CaptureWriter(directory, "bus-a", 64 * 1024)) {
+            writer.write(() -> "can0", frame(1), BASE);
+        }
+
+        CaptureReader reader = CaptureReader.open(directory, "bus");
+        assertEquals(segments, reader.getSegments().size(), "segments of other captures should not be picked up");
+        assertEquals(FRAMES, reader.getFrameCount());
+        assertEquals(1, CaptureReader.open(directory, "bus-a").getFrameCount());
+    }
+
+    @Test
+    void testTimeQuery() throws IOException {
+        CaptureReader reader = CaptureReader.open(directory, "bus");
+        long[] count = {0};
+        reader.query(BASE + 4321, BASE + 12345, (timestamp, device, frame) -> {
+            assertEquals(BASE + 4321 + count[0], timestamp);
+            count[0]++;
+            return true;
+        });
+        assertEquals(12345 - 4321, count[0]);
+
+        count[0] = 0;
+        reader.query(BASE + 100, BASE + 200, (timestamp, device, frame) -> ++count[0] < 10);
+        assertEquals(10, count[0], "the visitor should be able to end the query");
+    }
+
+    @Test
+    void testIdQuery() throws IOException {
+        CaptureReader reader = CaptureReader.open(directory, "bus");
+        long expected = 0;
+        for (int i = 5000; i < 12000; i++) {
+            if (i % 7 != 0 && i % 16 == 5) {
+                expected++;
+            }
+        }
+        long[] count = {0};
+        reader.query(0x105, BASE + 5000, BASE + 12000, (timestamp, device, frame) -> {
+            assertEquals(0x105, frame.getId());
+            assertTrue(timestamp >= BASE + 5000 && timestamp < BASE + 12000);
+            count[0]++;
+            return true;
+        });
+        assertEquals(expected, count[0]);
+
+        count[0] = 0;
+        reader.query(0x18DAF110 | CanId.EFF_FLAG, Long.MIN_VALUE, Long.MAX_VALUE, (timestamp, device, frame) -> {
+            assertTrue(CanId.isExtended(frame.getRawId()));
+            count[0]++;
+            return true;
+        });
+        assertEquals((FRAMES + 6) / 7, count[0]);
+
+        count[0] = 0;
+        reader.query(0x7E8, Long.MIN_VALUE, Long.MAX_VALUE, (timestamp, device, frame) -> ++count[0] > 0);
+        assertEquals(0, count[0]);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.test.capture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tel.schich.javacan.CanFilter;
+import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.NetworkDevice;
+import tel.schich.javacan.capture.CaptureFormat;
+import tel.schich.javacan.capture.CaptureReader;
+import tel.schich.javacan.capture.CaptureWriter;
+import tel.schich.javacan.test.CanTestHelper;
+import tel.schich.javacan.util.CanBroker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static tel.schich.javacan.CanFrame.FD_NO_FLAGS;
+import static tel.schich.javacan.capture.CaptureFormat.*;
+import static tel.schich.javacan.test.CanTestHelper.CAN_INTERFACE;
+
+class CaptureWriterTest {
+
+    private Path directory;
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("javacan-capture");
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    void testOutOfOrderTimestamps() throws IOException {
+        NetworkDevice a = () -> "can0";
+        List<Long> written = new ArrayList<>();
+        final Path segment;
+        try (CaptureWriter writer = new CaptureWriter(directory, "bus")) {
+            for (int i = 0; i < 300; i++) {
+                // e.g. earlier kernel timestamps of another channel
+                long timestamp = i % 50 == 49 ? 500 + i : 1000 + 10 * i;
+                writer.write(a, CanFrame.create(0x100 + i % 2, FD_NO_FLAGS, new byte[]{(byte) i}), timestamp);
+                written.add(timestamp);
+            }
+            segment = writer.getSegments().get(0);
+        }
+
+        MappedByteBuffer header = map(segment);
+        assertEquals(549, header.getLong(OFFSET_FIRST_TIMESTAMP));
+        assertEquals(3980, header.getLong(OFFSET_LAST_TIMESTAMP));
+
+        CaptureReader reader = CaptureReader.open(directory, "bus");
+        long[][] ranges = {{Long.MIN_VALUE, Long.MAX_VALUE}, {500, 800}, {700, 1200}, {2000, 2500}, {3900, 4000}};
+        for (long[] range : ranges) {
+            List<Long> expected = new ArrayList<>();
+            List<Long> expectedById = new ArrayList<>();
+            for (int i = 0; i < written.size(); i++) {
+                long timestamp = written.get(i);
+                if (timestamp >= range[0] && timestamp < range[1]) {
+                    expected.add(timestamp);
+                    if (i % 2 == 0) {
+                        expectedById.add(timestamp);
+                    }
+                }
+            }
+
+            List<Long> timestamps = new ArrayList<>();
+            reader.query(range[0], range[1], (timestamp, device, f) -> timestamps.add(timestamp));
+            assertEquals(expected, timestamps, "frames should keep their timestamp and be found in write order");
+
+            List<Long> timestampsById = new ArrayList<>();
+            reader.query(0x100, range[0], range[1], (timestamp, device, f) -> timestampsById.add(timestamp));
+            assertEquals(expectedById, timestampsById, "frames should be found by ID regardless of their order");
+        }
+    }
+
+    @Test
+    void testRolling() throws IOException {
+        NetworkDevice a = () -> "can0";
+        NetworkDevice b = () -> "can1";
+        try (CaptureWriter writer = new CaptureWriter(directory, "bus", CaptureWriter.MIN_SEGMENT_SIZE)) {
+            writer.setMaxSegments(2);
+            for (int i = 0; i < 500; i++) {
+                CanFrame frame = CanFrame.create(0x100 + i % 16, FD_NO_FLAGS, new byte[]{(byte) i});
+                writer.write(i % 2 == 0 ? a : b, frame, 1000 + i);
+            }
+            assertEquals(500, writer.getFrameCount());
+
+            List<Path> segments = writer.getSegments();
+            assertEquals(2, segments.size());
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(2, files.count(), "older segments should have been deleted");
+            }
+
+            MappedByteBuffer last = map(segments.get(1));
+            assertEquals(HEADER_LENGTH, last.getInt(OFFSET_HEADER_LENGTH));
+            long frames = last.getLong(OFFSET_FRAME_COUNT);
+            assertTrue(frames > 0);
+            assertEquals(1499, last.getLong(OFFSET_LAST_TIMESTAMP));
+            assertEquals(1500 - frames, last.getLong(OFFSET_FIRST_TIMESTAMP));
+
+            // every segment declares its devices before using them
+            int record = HEADER_LENGTH;
+            assertEquals(RECORD_DEVICE, last.getShort(record + RECORD_OFFSET_TYPE));
+            assertEquals("can0", deviceName(last, record));
+            record += recordSize(last.getInt(record));
+            assertEquals(RECORD_DEVICE, last.getShort(record + RECORD_OFFSET_TYPE));
+            assertEquals("can1", deviceName(last, record));
+            record += recordSize(last.getInt(record));
+
+            int count = 0;
+            while (last.getInt(record + RECORD_OFFSET_LENGTH) != 0) {
+                assertEquals(RECORD_FRAME, last.getShort(record + RECORD_OFFSET_TYPE));
+                count++;
+                record += recordSize(last.getInt(record));
+            }
+            assertEquals(frames, count);
+            assertEquals(record, last.getLong(OFFSET_END));
+        }
+    }
+
+    @Test
+    void testBrokerHandler() throws Exception {
+        CanFrame expected = CanFrame.create(0x7EA, FD_NO_FLAGS, new byte[]{1, 2, 3, 4});
+        try (CaptureWriter writer = new CaptureWriter(directory, "broker")) {
+            try (CanBroker broker = new CanBroker(Thread::new)) {
+                broker.addFilter(new CanFilter(0x7EA));
+                broker.addDevice(CAN_INTERFACE, writer);
+                long before = writer.now();
+                CanTestHelper.sendFrameViaUtils(CAN_INTERFACE, expected);
+
+                long deadline = System.currentTimeMillis() + 2000;
+                while (writer.getFrameCount() == 0 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertEquals(1, writer.getFrameCount());
+
+                MappedByteBuffer segment = map(writer.getSegments().get(0));
+                int record = HEADER_LENGTH + recordSize(segment.getInt(HEADER_LENGTH));
+                assertEquals(RECORD_FRAME, segment.getShort(record + RECORD_OFFSET_TYPE));
+                assertTrue(segment.getLong(record + RECORD_OFFSET_TIMESTAMP) >= before);
+
+                ByteBuffer frameBuffer = segment.duplicate();
+                frameBuffer.position(record + RECORD_HEADER_LENGTH);
+                frameBuffer.limit(frameBuffer.position() + segment.getInt(record));
+                assertEquals(expected, CanFrame.createUnsafe(frameBuffer.slice().order(segment.order())));
+            }
+        }
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path)) {
+            MappedByteBuffer buffer = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            buffer.order(CaptureFormat.byteOrderOf(buffer));
+            return buffer;
+        }
+    }
+
+    private static String deviceName(ByteBuffer segment, int record) {
+        byte[] name = new byte[segment.getInt(record)];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = segment.get(record + RECORD_HEADER_LENGTH + i);
+        }
+        return new String(name, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.test.capture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.CanId;
+import tel.schich.javacan.capture.CaptureFormat;
+import tel.schich.javacan.capture.CaptureReader;
+import tel.schich.javacan.capture.CaptureWriter;
+import tel.schich.javacan.capture.LogFormat;
+import tel.schich.javacan.capture.LogImporter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogImporterTest {
+
+    private Path directory;
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("javacan-import");
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private Path write(String name, String content) throws IOException {
+        Path file = directory.resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+    private static byte[] data(CanFrame frame) {
+        byte[] data = new byte[frame.getDataLength()];
+        frame.getData(data, 0, data.length);
+        return data;
+    }
+
+    @Test
+    void testCandump() throws IOException {
+        Path log = write("candump.log", "(1576495052.545849) can0 301#084C014E02C20C5C\n"
+                + "(1576495052.545900) can1 18DAF110#0102\n"
+                + "(1576495052.546000) can0 123#R\n"
+                + "(1576495052.546100) can0 7FF##1" + "00112233445566778899AABB\n"
+                + "this is not a frame\n"
+                + "(1576495052.546200) can0 123#R4");
+
+        List<Long> timestamps = new ArrayList<>();
+        List<String> devices = new ArrayList<>();
+        List<CanFrame> frames = new ArrayList<>();
+        LogImporter.Result result = new LogImporter(LogFormat.CANDUMP).importTo(log, (timestamp, device, frame) -> {
+            timestamps.add(timestamp);
+            devices.add(device);
+            frames.add(frame.copy());
+            return true;
+        });
+
+        assertEquals(5, result.getFrameCount());
+        assertEquals(1, result.getSkippedLines());
+        assertEquals(1576495052545849000L, (long) timestamps.get(0));
+        assertEquals("can1", devices.get(1));
+
+        assertEquals(0x301, frames.get(0).getId());
+        assertArrayEquals(new byte[]{0x08, 0x4C, 0x01, 0x4E, 0x02, (byte) 0xC2, 0x0C, 0x5C}, data(frames.get(0)));
+
+        assertTrue(CanId.isExtended(frames.get(1).getRawId()));
+        assertEquals(0x18DAF110, frames.get(1).getRawId() & CanId.EFF_MASK);
+        assertArrayEquals(new byte[]{0x01, 0x02}, data(frames.get(1)));
+
+        assertTrue(CanId.isRemoteTransmissionRequest(frames.get(2).getRawId()));
+        assertEquals(0, frames.get(2).getDataLength());
+
+        assertTrue(frames.get(3).isFDFrame());
+        assertEquals(1, frames.get(3).getFlags());
+        assertEquals(12, frames.get(3).getDataLength());
+
+        assertTrue(CanId.isRemoteTransmissionRequest(frames.get(4).getRawId()));
+        assertEquals(4, frames.get(4).getDataLength());
+    }
+
+    @Test
+    void testAsc() throws IOException {
+        Path log = write("trace.asc", "date Wed Dec 11 17:26:46 2019\n"
+                + "base hex  timestamps absolute\n"
+                + "internal events logged\n"
+                + "Begin Triggerblock Wed Dec 11 17:26:46 2019\n"
+                + "   0.000000 Start of measurement\n"
+                + "   0.001000 1  301             Rx   d 8 08 4C 01 4E 02 C2 0C 5C\n"
+                + "   0.002000 2  18DAF110x       Rx   d 2 01 02\n"
+                + "   0.003000 1  123             Rx   r\n"
+                + "   0.004000 CANFD   1 Rx        7ff                                   1 0 9 12 "
+                + "00 11 22 33 44 55 66 77 88 99 aa bb\n"
+                + "End TriggerBlock\n");
+
+        List<Long> timestamps = new ArrayList<>();
+        List<String> devices = new ArrayList<>();
+        List<CanFrame> frames = new ArrayList<>();
+        LogImporter.Result result = new LogImporter(LogFormat.ASC)
+                .setTimeOffset(1_000_000_000L)
+                .importTo(log, (timestamp, device, frame) -> {
+                    timestamps.add(timestamp);
+                    devices.add(device);
+                    frames.add(frame.copy());
+                    return true;
+                });
+
+        assertEquals(4, result.getFrameCount());
+        assertEquals(1_001_000_000L, (long) timestamps.get(0));
+        assertEquals("can0", devices.get(0));
+        assertEquals("can1", devices.get(1));
+        assertEquals(0x301, frames.get(0).getId());
+        assertEquals(0x18DAF110, frames.get(1).getRawId() & CanId.EFF_MASK);
+        assertTrue(CanId.isRemoteTransmissionRequest(frames.get(2).getRawId()));
+        assertTrue(frames.get(3).isFDFrame());
+        assertEquals(12, frames.get(3).getDataLength());
+    }
+
+    @Test
+    void testSmallWindows() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append('(').append(1000 + i).append(".000000) can0 ")
+                    .append(String.format("%03X#%02X\n", i % 0x800, i & 0xFF));
+        }
+        Path log = write("small.log", content.toString());
+
+        long[] next = {0};
+        LogImporter.Result result = new LogImporter(LogFormat.CANDUMP)
+                .setWindowSize(64)
+                .importTo(log, (timestamp, device, frame) -> {
+                    assertEquals((1000 + next[0]) * 1_000_000_000L, timestamp);
+                    assertEquals(next[0] % 0x800, frame.getId());
+                    next[0]++;
+                    return true;
+                });
+        assertEquals(1000, result.getFrameCount());
+        assertEquals(0, result.getSkippedLines());
+        assertEquals(1000, next[0]);
+    }
+
+    @Test
+    void testParallelImport() throws IOException {
+        final int lines = 150000;
+        Path log = directory.resolve("large.log");
+        try (BufferedWriter writer = Files.newBufferedWriter(log, StandardCharsets.US_ASCII)) {
+            for (int i = 0; i < lines; i++) {
+                writer.write(String.format("(%d.%06d) can%d %03X#%08X\n", 1000 + i / 1000, i % 1000, i % 2, i % 0x800, i));
+            }
+        }
+
+        Path capture = directory.resolve("capture");
+        LogImporter.Result result = new LogImporter(LogFormat.CANDUMP)
+                .setParallelism(4)
+                .setSegmentSize(256 * 1024)
+                .importTo(log, capture, "bus");
+        assertEquals(lines, result.getFrameCount());
+        assertEquals(0, result.getSkippedLines());
+
+        {
+            CaptureReader reader = CaptureReader.open(capture, "bus");
+            assertTrue(reader.getSegments().size() > 1);
+            assertEquals(lines, reader.getFrameCount());
+            long[] next = {0};
+            reader.forEach((timestamp, device, frame) -> {
+                int i = (int) next[0]++;
+                assertEquals("can" + (i % 2), device);
+                assertEquals(i % 0x800, frame.getId());
+                assertEquals(4, frame.getDataLength());
+                return true;
+            });
+            assertEquals(lines, next[0]);
+        }
+    }
+
+    @Test
+    void testFailedParallelImport() throws IOException {
+        final int lines = 150000;
+        Path log = directory.resolve("broken.log");
+        try (BufferedWriter writer = Files.newBufferedWriter(log, StandardCharsets.US_ASCII)) {
+            for (int i = 0; i < lines; i++) {
+                if (i == lines - lines / 4) {
+                    // exceeds the window size, which fails the part containing it
+                    writer.write(String.join("", Collections.nCopies(8192, "x")) + "\n");
+                }
+                writer.write(String.format("(%d.%06d) can%d %03X#%08X\n", 1000 + i / 1000, i % 1000, i % 2, i % 0x800, i));
+            }
+        }
+
+        Path capture = directory.resolve("capture");
+        Files.createDirectories(capture);
+        try (CaptureWriter writer = new CaptureWriter(capture, "bus")) {
+            writer.write("can0", CanFrame.create(0x123, CanFrame.FD_NO_FLAGS, new byte[]{1}), 1);
+        }
+
+        assertThrows(IOException.class, () -> new LogImporter(LogFormat.CANDUMP)
+                .setParallelism(4)
+                .setWindowSize(4096)
+                .setSegmentSize(256 * 1024)
+                .importTo(log, capture, "bus"));
+
+        try (Stream<Path> files = Files.list(capture)) {
+            assertEquals(Collections.singletonList(capture.resolve("bus-000000" + CaptureFormat.EXTENSION)),
+                    files.collect(Collectors.toList()), "only the existing segment should be left");
+        }
+    }
+
+    @Test
+    void testStop() throws IOException {
+        Path log = write("stop.log", "(1.0) can0 001#01\n(2.0) can0 002#02\n(3.0) can0 003#03\n");
+        List<CanFrame> frames = new ArrayList<>();
+        new LogImporter(LogFormat.CANDUMP).importTo(log, (timestamp, device, frame) -> {
+            frames.add(frame.copy());
+            return frames.size() < 2;
+        });
+        assertEquals(2, frames.size());
+        assertFalse(CanId.isRemoteTransmissionRequest(frames.get(1).getRawId()));
+    }
+}
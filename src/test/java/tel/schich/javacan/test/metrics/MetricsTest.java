@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.test.metrics;
+
+import org.junit.jupiter.api.Test;
+import tel.schich.javacan.CanChannels;
+import tel.schich.javacan.CanFilter;
+import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.RawCanChannel;
+import tel.schich.javacan.metrics.ChannelMetrics;
+import tel.schich.javacan.metrics.DefaultMetricsRegistry;
+import tel.schich.javacan.metrics.EventLoopMetrics;
+import tel.schich.javacan.metrics.MetricsMBean;
+import tel.schich.javacan.metrics.MetricsRegistry;
+import tel.schich.javacan.test.CanTestHelper;
+import tel.schich.javacan.util.CanBroker;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static tel.schich.javacan.CanFrame.FD_NO_FLAGS;
+import static tel.schich.javacan.test.CanTestHelper.CAN_INTERFACE;
+
+class MetricsTest {
+
+    @Test
+    void testChannelMetrics() throws Exception {
+        MetricsRegistry registry = new DefaultMetricsRegistry();
+        ChannelMetrics metrics = new ChannelMetrics(registry, "raw");
+        try (final RawCanChannel a = CanChannels.newRawChannel();
+             final RawCanChannel b = CanChannels.newRawChannel()) {
+            a.bind(CAN_INTERFACE);
+            b.bind(CAN_INTERFACE);
+            a.setMetrics(metrics);
+            b.setMetrics(metrics);
+
+            final CanFrame frame = CanFrame.create(0x7EE, FD_NO_FLAGS, new byte[]{1, 2});
+            a.write(frame);
+            assertEquals(frame, b.read());
+
+            assertEquals(1, metrics.getFramesWritten().get());
+            assertEquals(RawCanChannel.MTU, metrics.getBytesWritten().get());
+            assertEquals(1, metrics.getFramesRead().get());
+            assertEquals(RawCanChannel.MTU, metrics.getBytesRead().get());
+            assertEquals(2, metrics.getSyscalls().get());
+            assertEquals(0, metrics.getExceptions().get());
+        }
+    }
+
+    @Test
+    void testBrokerMetricsViaJmx() throws Exception {
+        MetricsRegistry registry = new DefaultMetricsRegistry();
+        ObjectName name = MetricsMBean.register(registry, "broker-test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        CompletableFuture<CanFrame> f = new CompletableFuture<>();
+        try (CanBroker broker = new CanBroker(Thread::new)) {
+            broker.setMetrics(new EventLoopMetrics(registry, "broker"));
+            broker.addFilter(new CanFilter(0x7EF));
+            broker.addDevice(CAN_INTERFACE, (ch, frame) -> f.complete(frame.copy()));
+            CanTestHelper.sendFrameViaUtils(CAN_INTERFACE, CanFrame.create(0x7EF, FD_NO_FLAGS, new byte[]{1}));
+            f.get(2, SECONDS);
+
+            // the dispatch is recorded after the handler returned
+            long deadline = System.currentTimeMillis() + 1000;
+            while (registry.getCounters().get("broker.dispatches").get() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(1L, server.getAttribute(name, "broker.dispatches"));
+            assertTrue((Long) server.getAttribute(name, "broker.wakeups") >= 1);
+            assertEquals(1L, server.getAttribute(name, "broker.handler-nanos.count"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
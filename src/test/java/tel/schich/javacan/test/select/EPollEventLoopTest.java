@@ -0,0 +1,79 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.test.select;
+
+import org.junit.jupiter.api.Test;
+import tel.schich.javacan.CanChannels;
+import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.RawCanChannel;
+import tel.schich.javacan.linux.epoll.EPollEventLoop;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tel.schich.javacan.CanFrame.FD_NO_FLAGS;
+import static tel.schich.javacan.CanSocketOptions.RECV_OWN_MSGS;
+import static tel.schich.javacan.test.CanTestHelper.CAN_INTERFACE;
+
+public class EPollEventLoopTest {
+
+    @Test
+    public void testDispatch() throws IOException {
+        try (RawCanChannel ch = CanChannels.newRawChannel()) {
+            try (EPollEventLoop loop = new EPollEventLoop()) {
+                ch.setOption(RECV_OWN_MSGS, true);
+                ch.configureBlocking(false);
+                ch.bind(CAN_INTERFACE);
+
+                final CanFrame inputFrame = CanFrame.create(0x7EF, FD_NO_FLAGS, new byte[]{1, 2, 3, 4});
+                final AtomicInteger calls = new AtomicInteger();
+                loop.register(ch, SelectionKey.OP_READ, (c, readyOps) -> {
+                    assertSame(ch, c, "The registered channel should be passed to the handler!");
+                    assertEquals(SelectionKey.OP_READ, readyOps);
+                    assertEquals(inputFrame, ch.read(), "What goes in should come out!");
+                    calls.incrementAndGet();
+                });
+                assertTrue(loop.isRegistered(ch));
+
+                ch.write(inputFrame);
+                assertEquals(1, loop.poll(100));
+                assertEquals(1, calls.get());
+
+                loop.unregister(ch);
+                assertTrue(loop.isEmpty());
+                ch.write(inputFrame);
+                assertEquals(0, loop.poll(100), "Unregistered channels should not be dispatched");
+            }
+        }
+    }
+
+    @Test
+    public void testWakeup() throws IOException {
+        try (EPollEventLoop loop = new EPollEventLoop()) {
+            loop.wakeup();
+            assertEquals(0, loop.poll(-1), "The wakeup event should not be dispatched");
+        }
+    }
+}
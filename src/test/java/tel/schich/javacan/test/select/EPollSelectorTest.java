@@ -27,6 +27,8 @@ import org.junit.jupiter.api.function.Executable;
 import tel.schich.javacan.CanChannels;
 import tel.schich.javacan.CanFrame;
 import tel.schich.javacan.RawCanChannel;
+import tel.schich.javacan.linux.epoll.EPollSelectionKey;
+import tel.schich.javacan.linux.epoll.EPollSelector;
 import tel.schich.javacan.select.ExtensibleSelectorProvider;
 
 import java.io.IOException;
@@ -82,4 +84,38 @@ public class EPollSelectorTest {
             assertTimeoutPreemptively(ofMillis(200), (Executable) selector::select);
         }
     }
+
+    @Test
+    public void testOneShot() throws IOException {
+        ExtensibleSelectorProvider provider = new ExtensibleSelectorProvider();
+        try (RawCanChannel ch = CanChannels.newRawChannel()) {
+            try (EPollSelector selector = new EPollSelector(provider, 10, EPollSelector.ONE_SHOT)) {
+                ch.setOption(RECV_OWN_MSGS, true);
+                ch.configureBlocking(false);
+                ch.bind(CAN_INTERFACE);
+                SelectionKey key = ch.register(selector, SelectionKey.OP_READ);
+                assertEquals(EPollSelector.ONE_SHOT, ((EPollSelectionKey) key).flags());
+
+                CanFrame inputFrame = CanFrame.create(0x7EF, FD_NO_FLAGS, new byte[]{1, 2, 3, 4});
+                ch.write(inputFrame);
+                assertEquals(1, selector.select(100), "The first event should be reported");
+                selector.selectedKeys().clear();
+                ch.read();
+
+                ch.write(inputFrame);
+                assertEquals(0, selector.select(100), "The key should be disabled after the first event");
+
+                key.interestOps(SelectionKey.OP_READ);
+                assertEquals(1, selector.select(100), "The key should be re-armed by setting the interest ops");
+                assertEquals(inputFrame, ch.read());
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidFlags() {
+        ExtensibleSelectorProvider provider = new ExtensibleSelectorProvider();
+        assertThrows(IllegalArgumentException.class, () -> new EPollSelector(provider, 10, EPollSelector.ONE_SHOT | EPollSelector.EXCLUSIVE));
+        assertThrows(IllegalArgumentException.class, () -> new EPollSelector(provider, 10, 0x100));
+    }
 }
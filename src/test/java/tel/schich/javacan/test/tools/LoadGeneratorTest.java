@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.test.tools;
+
+import org.junit.jupiter.api.Test;
+import tel.schich.javacan.tools.IdDistribution;
+import tel.schich.javacan.tools.LoadGenerator;
+
+import java.util.Random;
+
+import static java.time.Duration.ofMillis;
+import static java.time.Duration.ofSeconds;
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static tel.schich.javacan.test.CanTestHelper.CAN_INTERFACE;
+
+class LoadGeneratorTest {
+
+    @Test
+    void testIdDistributions() {
+        Random random = new Random(0);
+        IdDistribution sequential = IdDistribution.parse("sequential:0x100-0x102");
+        assertEquals(0x100, sequential.next(random, 0));
+        assertEquals(0x102, sequential.next(random, 2));
+        assertEquals(0x100, sequential.next(random, 3));
+
+        for (String kind : new String[]{"uniform", "hotspot"}) {
+            IdDistribution ids = IdDistribution.parse(kind + ":256-511");
+            for (int i = 0; i < 1000; i++) {
+                int id = ids.next(random, i);
+                assertTrue(id >= 0x100 && id <= 0x1FF, kind + " produced " + id);
+            }
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> IdDistribution.parse("uniform"));
+        assertThrows(IllegalArgumentException.class, () -> IdDistribution.parse("gaussian:1-2"));
+        assertThrows(IllegalArgumentException.class, () -> IdDistribution.parse("uniform:0x200-0x100"));
+    }
+
+    @Test
+    void testRun() throws Exception {
+        LoadGenerator generator = new LoadGenerator(singletonList(CAN_INTERFACE))
+                .setLanes(2)
+                .setRate(1000)
+                .setDuration(ofMillis(500))
+                .setDrainTimeout(ofSeconds(1));
+
+        for (LoadGenerator.Mode mode : LoadGenerator.Mode.values()) {
+            LoadGenerator.Report report = generator.run(mode);
+            assertTrue(report.getSent() > 0, mode + " sent nothing");
+            assertEquals(report.getSent(), report.getReceived(), mode + " lost messages");
+            assertEquals(0, report.getReordered());
+            assertEquals(report.getReceived(), report.getLatency().getCount());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.test.util;
+
+import org.junit.jupiter.api.Test;
+import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.util.AsyncFrameHandler;
+import tel.schich.javacan.util.AsyncFrameHandler.OverflowPolicy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AsyncFrameHandlerTest {
+
+    private static CanFrame frame(int id) {
+        return CanFrame.create(id, CanFrame.FD_NO_FLAGS, new byte[]{(byte) id});
+    }
+
+    private static void runAll(Queue<Runnable> tasks) {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    @Test
+    void testDispatchInOrder() {
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        List<CanFrame> received = new ArrayList<>();
+        AsyncFrameHandler async = new AsyncFrameHandler((ch, f) -> received.add(f.copy()), tasks::add, 8, OverflowPolicy.BLOCK);
+
+        for (int i = 1; i <= 5; i++) {
+            async.handle(null, frame(i));
+        }
+        assertEquals(1, tasks.size(), "The drain task should only be scheduled once");
+        assertEquals(5, async.getBacklog());
+
+        runAll(tasks);
+        assertEquals(0, async.getBacklog());
+        assertEquals(5, async.getDispatchedFrames());
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(frame(i), received.get(i - 1), "Frames should be dispatched in order");
+        }
+    }
+
+    @Test
+    void testDropNewest() {
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        List<CanFrame> received = new ArrayList<>();
+        AsyncFrameHandler async = new AsyncFrameHandler((ch, f) -> received.add(f.copy()), tasks::add, 4, OverflowPolicy.DROP_NEWEST);
+
+        for (int i = 1; i <= 6; i++) {
+            async.handle(null, frame(i));
+        }
+        assertEquals(4, async.getBacklog());
+        assertEquals(2, async.getDroppedFrames());
+
+        runAll(tasks);
+        assertEquals(4, received.size());
+        assertEquals(frame(1), received.get(0), "The oldest frames should be retained");
+        assertEquals(frame(4), received.get(3));
+    }
+
+    @Test
+    void testDropOldest() {
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        List<CanFrame> received = new ArrayList<>();
+        AsyncFrameHandler async = new AsyncFrameHandler((ch, f) -> received.add(f.copy()), tasks::add, 4, OverflowPolicy.DROP_OLDEST);
+
+        for (int i = 1; i <= 6; i++) {
+            async.handle(null, frame(i));
+        }
+        assertEquals(4, async.getBacklog());
+        assertEquals(2, async.getDroppedFrames());
+
+        runAll(tasks);
+        assertEquals(4, received.size());
+        assertEquals(frame(3), received.get(0), "The newest frames should be retained");
+        assertEquals(frame(6), received.get(3));
+    }
+}
@@ -24,18 +24,33 @@ package tel.schich.javacan.test.util;
 
 import org.junit.Assert;
 import org.junit.jupiter.api.Test;
+import tel.schich.javacan.CanChannels;
 import tel.schich.javacan.CanFilter;
 import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.RawCanChannel;
+import tel.schich.javacan.linux.epoll.EPollEventLoop;
 import tel.schich.javacan.test.CanTestHelper;
 import tel.schich.javacan.util.CanBroker;
+import tel.schich.javacan.util.LatencyHistogram;
+import tel.schich.javacan.util.PollStrategy;
+import tel.schich.javacan.util.ShardedCanBroker;
 
 import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static tel.schich.javacan.test.CanTestHelper.CAN_INTERFACE;
 
 class CanBrokerTest {
@@ -98,4 +113,226 @@ class CanBrokerTest {
         assertNotNull(actual, "CAN frame should have been captured!");
         assertEquals(expected, actual, "What goes in should come out!");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSharded() throws Exception {
+        final int id = 0x7E0;
+        CanFrame expected = CanFrame.create(id, CanFrame.FD_NO_FLAGS, new byte[]{1, 2, 3});
+        CompletableFuture<CanFrame> f = new CompletableFuture<>();
+
+        try (ShardedCanBroker can = new ShardedCanBroker(FACTORY, 4)) {
+            assertEquals(4, can.getShardCount());
+            can.addFilter(new CanFilter(id));
+            can.addDevice(CAN_INTERFACE, 3, (ch, frame) -> {
+                f.complete(frame.copy());
+            });
+
+            CanTestHelper.sendFrameViaUtils(CAN_INTERFACE, expected);
+
+            CanFrame actual = f.get(2, SECONDS);
+            assertNotNull(actual, "CAN frame should have been captured!");
+            assertEquals(expected, actual, "What goes in should come out!");
+
+            can.removeDevice(CAN_INTERFACE);
+            assertTrue(can.isEmpty());
+        }
+    }
+
+    @Test
+    void testReadBudget() throws Exception {
+        final int id = 0x7E0;
+        final int count = 100;
+        CountDownLatch received = new CountDownLatch(count);
+
+        try (CanBroker can = new CanBroker(FACTORY)) {
+            can.setReadBudget(16);
+            can.addFilter(new CanFilter(id));
+            can.addDevice(CAN_INTERFACE, (ch, frame) -> received.countDown());
+
+            try (RawCanChannel sender = CanChannels.newRawChannel(CAN_INTERFACE)) {
+                for (int i = 0; i < count; i++) {
+                    sender.write(CanFrame.create(id, CanFrame.FD_NO_FLAGS, new byte[]{(byte) i}));
+                }
+            }
+
+            assertTrue(received.await(2, SECONDS), "All frames should have been handled!");
+        }
+    }
+
+    @Test
+    void testReadBudgetPerWakeup() throws Exception {
+        final int id = 0x7E0;
+        final int budget = 100;
+        final int count = 2 * budget;
+        final CountDownLatch sent = new CountDownLatch(1);
+        final CountDownLatch received = new CountDownLatch(count);
+
+        try (CountingBroker can = new CountingBroker()) {
+            can.setReadBudget(budget);
+            can.addFilter(new CanFilter(id));
+            can.addDevice(CAN_INTERFACE, (ch, frame) -> {
+                try {
+                    // hold the event loop until the queue holds more frames than the budget
+                    sent.await(2, SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                can.framesOfWakeup++;
+                received.countDown();
+            });
+
+            try (RawCanChannel sender = CanChannels.newRawChannel(CAN_INTERFACE)) {
+                for (int i = 0; i < count; i++) {
+                    sender.write(CanFrame.create(id, CanFrame.FD_NO_FLAGS, new byte[]{(byte) i}));
+                }
+            }
+            sent.countDown();
+
+            assertTrue(received.await(2, SECONDS), "All frames should have been handled!");
+            final int max = can.maxPerWakeup.get();
+            assertTrue(max <= budget, "At most " + budget + " frames should be read per wakeup, but " + max + " were!");
+        }
+    }
+
+    private static final class CountingBroker extends CanBroker {
+        private int framesOfWakeup;
+        private final AtomicInteger maxPerWakeup = new AtomicInteger();
+
+        CountingBroker() throws IOException {
+            super(FACTORY);
+        }
+
+        @Override
+        protected void processEvents(Iterator<SelectionKey> keys) throws IOException {
+            framesOfWakeup = 0;
+            super.processEvents(keys);
+            maxPerWakeup.accumulateAndGet(framesOfWakeup, Math::max);
+        }
+    }
+
+    @Test
+    void testFrameReuse() throws Exception {
+        final int id = 0x7E0;
+        for (boolean reuse : new boolean[]{false, true}) {
+            List<CanFrame> frames = new CopyOnWriteArrayList<>();
+            CountDownLatch received = new CountDownLatch(2);
+
+            try (CanBroker can = new CanBroker(FACTORY)) {
+                assertFalse(can.isFrameReuse(), "Frames should not be reused by default!");
+                can.setFrameReuse(reuse);
+                can.addFilter(new CanFilter(id));
+                can.addDevice(CAN_INTERFACE, (ch, frame) -> {
+                    frames.add(frame);
+                    received.countDown();
+                });
+
+                CanTestHelper.sendFrameViaUtils(CAN_INTERFACE, CanFrame.create(id, CanFrame.FD_NO_FLAGS, new byte[]{1}));
+                CanTestHelper.sendFrameViaUtils(CAN_INTERFACE, CanFrame.create(id, CanFrame.FD_NO_FLAGS, new byte[]{2}));
+
+                assertTrue(received.await(2, SECONDS), "All frames should have been handled!");
+                assertEquals(reuse, frames.get(0) == frames.get(1), "Only reused frames should be the same object!");
+            }
+        }
+    }
+
+    @Test
+    void testEventLoop() throws Exception {
+        final int id = 0x7E0;
+        CanFrame expected = CanFrame.create(id, CanFrame.FD_NO_FLAGS, new byte[]{1, 2, 3});
+        CompletableFuture<CanFrame> f = new CompletableFuture<>();
+
+        try (CanBroker can = new CanBroker(FACTORY, new EPollEventLoop(), CanBroker.DEFAULT_TIMEOUT)) {
+            can.addFilter(new CanFilter(id));
+            can.addDevice(CAN_INTERFACE, (ch, frame) -> {
+                f.complete(frame.copy());
+            });
+
+            CanTestHelper.sendFrameViaUtils(CAN_INTERFACE, expected);
+
+            CanFrame actual = f.get(2, SECONDS);
+            assertNotNull(actual, "CAN frame should have been captured!");
+            assertEquals(expected, actual, "What goes in should come out!");
+        }
+    }
+
+    @Test
+    void testBusySpin() throws Exception {
+        final int id = 0x7E0;
+        CanFrame expected = CanFrame.create(id, CanFrame.FD_NO_FLAGS, new byte[]{1, 2, 3});
+        CompletableFuture<CanFrame> f = new CompletableFuture<>();
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        try (CanBroker can = new CanBroker(FACTORY)) {
+            can.setPollStrategy(PollStrategy.busySpin());
+            can.setLatencyHistogram(histogram);
+            can.addFilter(new CanFilter(id));
+            can.addDevice(CAN_INTERFACE, (ch, frame) -> {
+                f.complete(frame.copy());
+            });
+
+            CanTestHelper.sendFrameViaUtils(CAN_INTERFACE, expected);
+
+            assertEquals(expected, f.get(2, SECONDS), "What goes in should come out!");
+            assertEquals(1, histogram.getCount(), "The dispatch latency should have been recorded");
+        }
+    }
+
+    @Test
+    void testSubscribe() throws Exception {
+        CanFrame a = CanFrame.create(0x7E1, CanFrame.FD_NO_FLAGS, new byte[]{1});
+        CanFrame b = CanFrame.create(0x7E2, CanFrame.FD_NO_FLAGS, new byte[]{2});
+        CompletableFuture<CanFrame> fa = new CompletableFuture<>();
+        CompletableFuture<CanFrame> fb = new CompletableFuture<>();
+
+        try (CanBroker can = new CanBroker(FACTORY)) {
+            can.addDevice(CAN_INTERFACE);
+            can.subscribe(new CanFilter(a.getId()), (ch, frame) -> fa.complete(frame.copy()));
+            can.subscribe(new CanFilter(b.getId()), (ch, frame) -> fb.complete(frame.copy()));
+
+            CanTestHelper.sendFrameViaUtils(CAN_INTERFACE, b);
+            CanTestHelper.sendFrameViaUtils(CAN_INTERFACE, a);
+
+            assertEquals(a, fa.get(2, SECONDS), "Only the subscribed frame should be routed!");
+            assertEquals(b, fb.get(2, SECONDS), "Only the subscribed frame should be routed!");
+        }
+    }
+
+    @Test
+    void testFilterCompaction() throws Exception {
+        CanFrame excess = CanFrame.create(0x7E1, CanFrame.FD_NO_FLAGS, new byte[]{1});
+        CanFrame expected = CanFrame.create(0x7E3, CanFrame.FD_NO_FLAGS, new byte[]{2});
+        CompletableFuture<CanFrame> f = new CompletableFuture<>();
+
+        try (CanBroker can = new CanBroker(FACTORY)) {
+            can.setFilterCompaction(1, Long.MAX_VALUE);
+            can.addFilter(new CanFilter(0x7E0));
+            can.addFilter(new CanFilter(0x7E3));
+            can.addDevice(CAN_INTERFACE, (ch, frame) -> f.complete(frame.copy()));
+
+            CanTestHelper.sendFrameViaUtils(CAN_INTERFACE, excess);
+            CanTestHelper.sendFrameViaUtils(CAN_INTERFACE, expected);
+
+            assertEquals(expected, f.get(2, SECONDS), "Frames let through by compaction should be dropped!");
+        }
+    }
+
+    @Test
+    void testFilterUpdateWindow() throws Exception {
+        final int id = 0x7E4;
+        CanFrame expected = CanFrame.create(id, CanFrame.FD_NO_FLAGS, new byte[]{1, 2, 3});
+        CompletableFuture<CanFrame> f = new CompletableFuture<>();
+
+        try (CanBroker can = new CanBroker(FACTORY)) {
+            can.setFilterUpdateWindow(Duration.ofMillis(50));
+            can.addDevice(CAN_INTERFACE, (ch, frame) -> f.complete(frame.copy()));
+            for (int i = 0; i < 100; i++) {
+                can.addFilter(new CanFilter(0x100 + i));
+            }
+            can.addFilter(new CanFilter(id));
+            Thread.sleep(200);
+
+            CanTestHelper.sendFrameViaUtils(CAN_INTERFACE, expected);
+            assertEquals(expected, f.get(2, SECONDS), "The coalesced filters should have been applied!");
+        }
+    }
+}
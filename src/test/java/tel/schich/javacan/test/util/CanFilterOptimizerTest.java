@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.test.util;
+
+import org.junit.jupiter.api.Test;
+import tel.schich.javacan.CanFilter;
+import tel.schich.javacan.util.CanFilterOptimizer;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static tel.schich.javacan.CanId.EFF_FLAG;
+import static tel.schich.javacan.CanId.SFF_MASK;
+
+class CanFilterOptimizerTest {
+
+    private static boolean accepts(CanFilter[] filters, int id) {
+        for (CanFilter filter : filters) {
+            if (filter.isInverted() != filter.matchId(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int falsePositives(CanFilter[] original, CanFilter[] compacted) {
+        int falsePositives = 0;
+        for (int id = 0; id <= SFF_MASK; id++) {
+            boolean expected = accepts(original, id);
+            boolean actual = accepts(compacted, id);
+            assertFalse(expected && !actual, "ID " + Integer.toHexString(id) + " must still be accepted!");
+            if (actual && !expected) {
+                falsePositives++;
+            }
+        }
+        return falsePositives;
+    }
+
+    @Test
+    void testAdjacentIdsMergeExactly() {
+        CanFilter[] filters = { new CanFilter(0x7E8), new CanFilter(0x7E9), new CanFilter(0x7EA), new CanFilter(0x7EB) };
+        CanFilter[] compacted = CanFilterOptimizer.compact(filters, 1, 0);
+        assertEquals(1, compacted.length);
+        assertEquals(0, falsePositives(filters, compacted));
+    }
+
+    @Test
+    void testBudget() {
+        Random random = new Random(42);
+        CanFilter[] filters = new CanFilter[200];
+        for (int i = 0; i < filters.length; i++) {
+            filters[i] = new CanFilter(random.nextInt(SFF_MASK + 1));
+        }
+
+        CanFilter[] unlimited = CanFilterOptimizer.compact(filters, 16);
+        assertTrue(unlimited.length <= 16);
+        falsePositives(filters, unlimited);
+
+        CanFilter[] limited = CanFilterOptimizer.compact(filters, 16, 100);
+        assertTrue(falsePositives(filters, limited) <= 100);
+    }
+
+    @Test
+    void testFormatsAreKeptApart() {
+        CanFilter masked = new CanFilter(0x700, 0x700);
+        CanFilter[] filters = { new CanFilter(0x100), new CanFilter(0x100 | EFF_FLAG), masked };
+        CanFilter[] compacted = CanFilterOptimizer.compact(filters, 1);
+        assertEquals(3, compacted.length);
+        assertEquals(masked, compacted[2]);
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> CanFilterOptimizer.compact(new CanFilter[0], 0));
+        assertThrows(IllegalArgumentException.class, () -> CanFilterOptimizer.compact(new CanFilter[0], 1, -1));
+    }
+}
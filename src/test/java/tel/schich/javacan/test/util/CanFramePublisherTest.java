@@ -0,0 +1,193 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.test.util;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import tel.schich.javacan.CanFilter;
+import tel.schich.javacan.CanFrame;
+import tel.schich.javacan.test.CanTestHelper;
+import tel.schich.javacan.util.CanFramePublisher;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static tel.schich.javacan.test.CanTestHelper.CAN_INTERFACE;
+
+class CanFramePublisherTest {
+    private static final ThreadFactory FACTORY = r -> {
+        Thread t = new Thread(r);
+        t.setName("can-publisher-test" + Math.random());
+        return t;
+    };
+
+    @Test
+    void testBackpressure() throws Exception {
+        final int id = 0x7E3;
+        CanFrame expected = CanFrame.create(id, CanFrame.FD_NO_FLAGS, new byte[]{1, 2, 3});
+        BlockingQueue<CanFrame> received = new LinkedBlockingQueue<>();
+        CompletableFuture<Subscription> subscription = new CompletableFuture<>();
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+
+        try (CanFramePublisher publisher = new CanFramePublisher(FACTORY, CAN_INTERFACE, new CanFilter(id))) {
+            publisher.subscribe(new Subscriber<CanFrame>() {
+                @Override
+                public void onSubscribe(Subscription s) {
+                    subscription.complete(s);
+                }
+
+                @Override
+                public void onNext(CanFrame frame) {
+                    received.add(frame);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    completed.completeExceptionally(t);
+                }
+
+                @Override
+                public void onComplete() {
+                    completed.complete(null);
+                }
+            });
+            Subscription s = subscription.get(2, SECONDS);
+
+            CanTestHelper.sendFrameViaUtils(CAN_INTERFACE, expected);
+            CanTestHelper.sendFrameViaUtils(CAN_INTERFACE, expected);
+            assertNull(received.poll(200, MILLISECONDS), "No frames should be delivered without demand!");
+
+            s.request(1);
+            assertEquals(expected, received.poll(2, SECONDS));
+            assertNull(received.poll(200, MILLISECONDS), "Only the requested frames should be delivered!");
+
+            s.request(1);
+            assertEquals(expected, received.poll(2, SECONDS));
+        }
+        completed.get(2, SECONDS);
+        assertTrue(completed.isDone());
+    }
+
+    @Test
+    void testNonPositiveRequest() throws Exception {
+        CompletableFuture<Subscription> subscription = new CompletableFuture<>();
+        CompletableFuture<Thread> signalled = new CompletableFuture<>();
+        CompletableFuture<Throwable> error = new CompletableFuture<>();
+
+        try (CanFramePublisher publisher = new CanFramePublisher(FACTORY, CAN_INTERFACE)) {
+            publisher.subscribe(new Subscriber<CanFrame>() {
+                @Override
+                public void onSubscribe(Subscription s) {
+                    subscription.complete(s);
+                }
+
+                @Override
+                public void onNext(CanFrame frame) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    signalled.complete(Thread.currentThread());
+                    error.complete(t);
+                }
+
+                @Override
+                public void onComplete() {
+                    signalled.complete(Thread.currentThread());
+                }
+            });
+            subscription.get(2, SECONDS).request(0);
+
+            assertTrue(error.get(2, SECONDS) instanceof IllegalArgumentException);
+            assertNotSame(Thread.currentThread(), signalled.get(), "onError must not be called from request()!");
+        }
+    }
+
+    @Test
+    void testConcurrentTermination() throws Exception {
+        for (int round = 0; round < 50; round++) {
+            CompletableFuture<Subscription> subscription = new CompletableFuture<>();
+            AtomicInteger terminalSignals = new AtomicInteger();
+
+            CanFramePublisher publisher = new CanFramePublisher(FACTORY, CAN_INTERFACE);
+            publisher.subscribe(new Subscriber<CanFrame>() {
+                @Override
+                public void onSubscribe(Subscription s) {
+                    s.request(Long.MAX_VALUE);
+                    subscription.complete(s);
+                }
+
+                @Override
+                public void onNext(CanFrame frame) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    terminalSignals.incrementAndGet();
+                }
+
+                @Override
+                public void onComplete() {
+                    terminalSignals.incrementAndGet();
+                }
+            });
+            Subscription s = subscription.get(2, SECONDS);
+
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++) {
+                final boolean invalid = i % 2 == 0;
+                threads[i] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (invalid) {
+                        s.request(-1);
+                    } else {
+                        s.cancel();
+                    }
+                });
+                threads[i].start();
+            }
+            start.countDown();
+            publisher.close();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertTrue(terminalSignals.get() <= 1, "At most one terminal signal may be sent (rule 1.7)!");
+        }
+    }
+}
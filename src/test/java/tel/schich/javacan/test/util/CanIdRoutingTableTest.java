@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ * Copyright © 2018 Phillip Schichtel
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package tel.schich.javacan.test.util;
+
+import org.junit.jupiter.api.Test;
+import tel.schich.javacan.CanFilter;
+import tel.schich.javacan.util.CanIdRoutingTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static tel.schich.javacan.CanFilter.INVERTED_BIT;
+import static tel.schich.javacan.CanId.EFF_FLAG;
+import static tel.schich.javacan.CanId.RTR_FLAG;
+
+class CanIdRoutingTableTest {
+
+    private static List<String> route(CanIdRoutingTable<String> table, int id) {
+        List<String> out = new ArrayList<>();
+        table.collect(id, out);
+        return out;
+    }
+
+    @Test
+    void testExactStandard() {
+        CanIdRoutingTable<String> table = new CanIdRoutingTable<>();
+        assertTrue(table.add(new CanFilter(0x7E8), "a"));
+        assertFalse(table.add(new CanFilter(0x7E8), "b"));
+        table.add(new CanFilter(0x123), "c");
+
+        assertEquals(Arrays.asList("a", "b"), route(table, 0x7E8));
+        assertEquals(Arrays.asList("c"), route(table, 0x123));
+        assertEquals(Arrays.asList(), route(table, 0x124));
+        assertEquals(Arrays.asList(), route(table, 0x7E8 | RTR_FLAG));
+        assertEquals(Arrays.asList(), route(table, 0x7E8 | EFF_FLAG));
+    }
+
+    @Test
+    void testExtendedAndMasked() {
+        CanIdRoutingTable<String> table = new CanIdRoutingTable<>();
+        table.add(new CanFilter(0x18DAF110 | EFF_FLAG), "exact");
+        table.add(new CanFilter(0x18DA0000 | EFF_FLAG, 0x1FFF0000 | EFF_FLAG), "masked");
+        table.add(new CanFilter(0x700, 0x700), "range");
+
+        assertEquals(Arrays.asList("exact", "masked"), route(table, 0x18DAF110 | EFF_FLAG));
+        assertEquals(Arrays.asList("masked"), route(table, 0x18DA1234 | EFF_FLAG));
+        assertEquals(Arrays.asList("range"), route(table, 0x7DF));
+        assertEquals(Arrays.asList(), route(table, 0x6DF));
+    }
+
+    @Test
+    void testMatchesKernelSemantics() {
+        CanFilter[] filters = {
+                new CanFilter(0x7E0), new CanFilter(0x7E0, 0x7F0), new CanFilter(0x100 | EFF_FLAG),
+                new CanFilter(0x100, 0x100), new CanFilter(0x7E0 | INVERTED_BIT, 0x7FF), CanFilter.ANY,
+        };
+        CanIdRoutingTable<CanFilter> table = new CanIdRoutingTable<>();
+        for (CanFilter filter : filters) {
+            table.add(filter, filter);
+        }
+        int[] ids = { 0x000, 0x100, 0x7E0, 0x7E5, 0x7F0, 0x7E0 | RTR_FLAG, 0x100 | EFF_FLAG, 0x1FFFFFFF | EFF_FLAG };
+        for (int id : ids) {
+            List<CanFilter> expected = new ArrayList<>();
+            for (CanFilter filter : filters) {
+                if (filter.isInverted() != filter.matchId(id)) {
+                    expected.add(filter);
+                }
+            }
+            List<CanFilter> actual = new ArrayList<>();
+            table.collect(id, actual);
+            assertEquals(expected.size(), actual.size(), "Routes for " + Integer.toHexString(id));
+            assertTrue(actual.containsAll(expected), "Routes for " + Integer.toHexString(id));
+        }
+    }
+
+    @Test
+    void testRemoveAndDeduplicate() {
+        CanIdRoutingTable<String> table = new CanIdRoutingTable<>();
+        table.add(new CanFilter(0x7E8), "a");
+        table.add(new CanFilter(0x700, 0x700), "a");
+        assertEquals(Arrays.asList("a"), route(table, 0x7E8));
+        assertEquals(2, table.getFilters().length);
+
+        assertTrue(table.remove(new CanFilter(0x7E8), "a"));
+        assertFalse(table.remove(new CanFilter(0x7E8), "a"));
+        assertEquals(1, table.getFilters().length);
+        assertEquals(Arrays.asList("a"), route(table, 0x7E8));
+
+        table.clear();
+        assertTrue(table.isEmpty());
+        assertEquals(Arrays.asList(), route(table, 0x7E8));
+    }
+}
@@ -48,6 +48,15 @@ class IsotpListenerTest {
 
     @Test
     void testBroker() throws Exception {
+        pingPong(1);
+    }
+
+    @Test
+    void testBrokerWithReadBudget() throws Exception {
+        pingPong(8);
+    }
+
+    private static void pingPong(int readBudget) throws Exception {
         ThreadFactory threadFactory = r -> {
             Thread t = new Thread(r);
             t.setName("broker-test-" + t.getName());
@@ -58,6 +67,8 @@ class IsotpListenerTest {
         IsotpSocketAddress addrb = IsotpSocketAddress.isotpAddress(SFF_ECU_RESPONSE_BASE + DESTINATION_ECU_1);
 
         try (IsotpListener broker = new IsotpListener(threadFactory, new ExtensibleSelectorProvider(), Duration.ofSeconds(5))) {
+            broker.setReadBudget(readBudget);
+            assertEquals(readBudget, broker.getReadBudget());
 
             try (IsotpCanChannel a = CanChannels.newIsotpChannel()) {
                 try (IsotpCanChannel b = CanChannels.newIsotpChannel()) {